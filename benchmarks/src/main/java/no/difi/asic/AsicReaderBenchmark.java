@@ -0,0 +1,41 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import no.difi.asic.extras.CmsEncryptedAsicReader;
+import no.difi.commons.asic.jaxb.asic.AsicManifest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of verifying containers and of reading every entry, decrypting encrypted entries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsicReaderBenchmark {
+
+    @Benchmark
+    public AsicManifest verify(ContainerState state) throws IOException {
+        return AsicVerifierFactory.newFactory(state.signatureMethod)
+                .verify(new ByteArrayInputStream(state.container))
+                .getAsicManifest();
+    }
+
+    @Benchmark
+    public AsicManifest read(ContainerState state) throws IOException {
+        AsicReader asicReader = state.readerFactory().open(new ByteArrayInputStream(state.container));
+        if (state.encrypted)
+            asicReader = new CmsEncryptedAsicReader(asicReader, state.privateKey);
+
+        try (AsicReader reader = asicReader) {
+            while (reader.getNextFile() != null)
+                reader.writeFile(ByteStreams.nullOutputStream());
+            return reader.getAsicManifest();
+        }
+    }
+}
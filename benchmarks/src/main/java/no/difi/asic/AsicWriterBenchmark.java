@@ -0,0 +1,40 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of creating and signing containers, written to a discarding stream.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsicWriterBenchmark {
+
+    @Benchmark
+    public void write(ContainerState state) throws IOException {
+        state.write(ByteStreams.nullOutputStream());
+    }
+
+    /** Same as {@link #write(ContainerState)}, but with one writer per thread reused through reset. */
+    @Benchmark
+    public void writeReused(ContainerState state, ReusedWriter reusedWriter) throws IOException {
+        state.write(reusedWriter.asicWriter.reset(ByteStreams.nullOutputStream()));
+    }
+
+    @State(Scope.Thread)
+    public static class ReusedWriter {
+
+        AsicWriter asicWriter;
+
+        @Setup(Level.Trial)
+        public void setUp(ContainerState state) throws IOException {
+            asicWriter = state.writerFactory().newContainer(ByteStreams.nullOutputStream());
+        }
+    }
+}
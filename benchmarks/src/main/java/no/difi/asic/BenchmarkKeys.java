@@ -0,0 +1,51 @@
+package no.difi.asic;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+/**
+ * Generates throw-away key material for benchmarks, so no key store has to be shipped with the benchmark jar.
+ */
+class BenchmarkKeys {
+
+    static final String ALIAS = "benchmark";
+    static final String PASSWORD = "benchmark";
+
+    private BenchmarkKeys() {
+        // No action
+    }
+
+    static KeyStore newKeyStore(String subject) {
+        try {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+            X500Name name = new X500Name("CN=" + subject);
+            long now = System.currentTimeMillis();
+            X509Certificate certificate = new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(
+                    name, BigInteger.valueOf(now), new Date(now - 60_000), new Date(now + 86_400_000), name, keyPair.getPublic())
+                    .build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+
+            KeyStore keyStore = KeyStore.getInstance(KeyStoreType.PKCS12.name());
+            keyStore.load(null, null);
+            keyStore.setKeyEntry(ALIAS, keyPair.getPrivate(), PASSWORD.toCharArray(), new X509Certificate[]{certificate});
+            return keyStore;
+        } catch (Exception e) {
+            throw new IllegalStateException(String.format("Unable to create key material: %s", e.getMessage()), e);
+        }
+    }
+
+    static SignatureHelper newSignatureHelper(String subject) {
+        return new SignatureHelper(newKeyStore(subject), ALIAS, PASSWORD);
+    }
+}
@@ -0,0 +1,89 @@
+package no.difi.asic;
+
+import no.difi.asic.extras.CmsEncryptedAsicWriter;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * Shared parameters, key material and synthetic inputs for container benchmarks.
+ */
+@State(Scope.Benchmark)
+public class ContainerState {
+
+    @Param({"1", "10"})
+    public int entryCount;
+
+    @Param({"1024", "1048576"})
+    public int entrySize;
+
+    @Param({"RANDOM", "TEXT"})
+    public Payloads.Compressibility compressibility;
+
+    @Param({"CAdES", "XAdES"})
+    public SignatureMethod signatureMethod;
+
+    @Param({"false", "true"})
+    public boolean encrypted;
+
+    byte[][] entries;
+
+    SignatureHelper signatureHelper;
+    X509Certificate certificate;
+    PrivateKey privateKey;
+
+    /** Container written from the parameters above, used as input by reading benchmarks. */
+    byte[] container;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyStore keyStore = BenchmarkKeys.newKeyStore("benchmark");
+        signatureHelper = new SignatureHelper(keyStore, BenchmarkKeys.ALIAS, BenchmarkKeys.PASSWORD);
+        certificate = (X509Certificate) keyStore.getCertificate(BenchmarkKeys.ALIAS);
+        privateKey = (PrivateKey) keyStore.getKey(BenchmarkKeys.ALIAS, BenchmarkKeys.PASSWORD.toCharArray());
+
+        entries = new byte[entryCount][];
+        for (int i = 0; i < entryCount; i++)
+            entries[i] = Payloads.generate(entrySize, compressibility, i);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        write(outputStream);
+        container = outputStream.toByteArray();
+    }
+
+    AsicWriterFactory writerFactory() {
+        return AsicWriterFactory.newFactory(signatureMethod);
+    }
+
+    AsicReaderFactory readerFactory() {
+        return AsicReaderFactory.newFactory(signatureMethod);
+    }
+
+    void write(OutputStream outputStream) throws IOException {
+        write(writerFactory().newContainer(outputStream));
+    }
+
+    /** Adds all entries to the given writer and signs the container. */
+    void write(AsicWriter asicWriter) throws IOException {
+        if (encrypted) {
+            CmsEncryptedAsicWriter encryptedWriter = new CmsEncryptedAsicWriter(asicWriter, certificate);
+            for (int i = 0; i < entries.length; i++)
+                encryptedWriter.addEncrypted(new ByteArrayInputStream(entries[i]), "entry-" + i + ".xml", MimeType.XML);
+            encryptedWriter.sign(signatureHelper);
+        } else {
+            for (int i = 0; i < entries.length; i++)
+                asicWriter.add(new ByteArrayInputStream(entries[i]), "entry-" + i + ".xml", MimeType.XML);
+            asicWriter.sign(signatureHelper);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package no.difi.asic;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of assembling small containers from content held in memory, comparing streams over arrays with
+ * {@link AsicWriter#add(byte[], String, MimeType)} and {@link SegmentedOutputStream}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InMemoryWriteBenchmark {
+
+    @Benchmark
+    public byte[] streams(ContainerState state) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        AsicWriter asicWriter = state.writerFactory().newContainer(outputStream);
+        for (int i = 0; i < state.entries.length; i++)
+            asicWriter.add(new ByteArrayInputStream(state.entries[i]), "entry-" + i + ".xml", MimeType.XML);
+        asicWriter.sign(state.signatureHelper);
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public SegmentedOutputStream segments(ContainerState state) throws IOException {
+        SegmentedOutputStream outputStream = new SegmentedOutputStream();
+        AsicWriter asicWriter = state.writerFactory().newContainer(outputStream);
+        for (int i = 0; i < state.entries.length; i++)
+            asicWriter.add(state.entries[i], "entry-" + i + ".xml", MimeType.XML);
+        asicWriter.sign(state.signatureHelper);
+        return outputStream;
+    }
+}
@@ -0,0 +1,60 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to write a container holding a single large entry, deflated on the writing thread or in parallel blocks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelDeflateBenchmark {
+
+    @Param({"67108864"})
+    public int entrySize;
+
+    @Param({"RANDOM", "TEXT"})
+    public Payloads.Compressibility compressibility;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private byte[] entry;
+    private SignatureHelper signatureHelper;
+    private ExecutorService executorService;
+    private AsicWriterFactory asicWriterFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyStore keyStore = BenchmarkKeys.newKeyStore("benchmark");
+        signatureHelper = new SignatureHelper(keyStore, BenchmarkKeys.ALIAS, BenchmarkKeys.PASSWORD);
+        entry = Payloads.generate(entrySize, compressibility, 0);
+
+        executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        asicWriterFactory = AsicWriterFactory.newFactory()
+                .setParallelDeflate(parallel ? executorService : null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdown();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        asicWriterFactory.newContainer(ByteStreams.nullOutputStream())
+                .add(new ByteArrayInputStream(entry), "entry.xml", MimeType.XML)
+                .sign(signatureHelper);
+    }
+}
@@ -0,0 +1,37 @@
+package no.difi.asic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Synthetic entry content for benchmarks.
+ */
+public class Payloads {
+
+    public enum Compressibility {
+        /** Random bytes, deflate gains nothing. */
+        RANDOM,
+        /** Repetitive XML-like text, deflates well. */
+        TEXT
+    }
+
+    private static final byte[] TEXT = ("<Invoice><ID>%d</ID><IssueDate>2015-07-02</IssueDate>"
+            + "<Note>Lorem ipsum dolor sit amet, consectetur adipiscing elit.</Note></Invoice>\n").getBytes(StandardCharsets.UTF_8);
+
+    private Payloads() {
+        // No action
+    }
+
+    static byte[] generate(int size, Compressibility compressibility, long seed) {
+        byte[] bytes = new byte[size];
+
+        if (compressibility == Compressibility.RANDOM) {
+            new Random(seed).nextBytes(bytes);
+        } else {
+            for (int i = 0; i < size; i++)
+                bytes[i] = TEXT[i % TEXT.length];
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,57 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of reading a large data object, inflating and digesting on the reading thread or in separate stages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelinedReadBenchmark {
+
+    @Param({"67108864"})
+    public int entrySize;
+
+    @Param({"RANDOM", "TEXT"})
+    public Payloads.Compressibility compressibility;
+
+    @Param({"false", "true"})
+    public boolean pipelined;
+
+    private byte[] container;
+    private AsicReaderFactory asicReaderFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyStore keyStore = BenchmarkKeys.newKeyStore("benchmark");
+        SignatureHelper signatureHelper = new SignatureHelper(keyStore, BenchmarkKeys.ALIAS, BenchmarkKeys.PASSWORD);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory()
+                .newContainer(outputStream)
+                .add(new ByteArrayInputStream(Payloads.generate(entrySize, compressibility, 0)), "entry.xml", MimeType.XML)
+                .sign(signatureHelper);
+        container = outputStream.toByteArray();
+
+        asicReaderFactory = AsicReaderFactory.newFactory().setPipelinedRead(pipelined);
+    }
+
+    @Benchmark
+    public void read() throws IOException {
+        try (AsicReader asicReader = asicReaderFactory.open(new ByteArrayInputStream(container))) {
+            while (asicReader.getNextFile() != null)
+                asicReader.writeFile(ByteStreams.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read a container from a source with latency, e.g. a HTTP response, on the reading thread or read ahead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadAheadBenchmark {
+
+    @Param({"16777216"})
+    public int entrySize;
+
+    /** Latency of each read of at most 64 KiB, in microseconds. */
+    @Param({"500"})
+    public int latency;
+
+    @Param({"0", "8"})
+    public int depth;
+
+    private byte[] container;
+    private AsicReaderFactory asicReaderFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyStore keyStore = BenchmarkKeys.newKeyStore("benchmark");
+        SignatureHelper signatureHelper = new SignatureHelper(keyStore, BenchmarkKeys.ALIAS, BenchmarkKeys.PASSWORD);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory()
+                .newContainer(outputStream)
+                .add(new ByteArrayInputStream(Payloads.generate(entrySize, Payloads.Compressibility.TEXT, 0)), "entry.xml", MimeType.XML)
+                .sign(signatureHelper);
+        container = outputStream.toByteArray();
+
+        asicReaderFactory = AsicReaderFactory.newFactory().setReadAhead(depth);
+    }
+
+    @Benchmark
+    public void read() throws IOException {
+        try (AsicReader asicReader = asicReaderFactory.open(new LatencyInputStream(new ByteArrayInputStream(container), latency))) {
+            while (asicReader.getNextFile() != null)
+                asicReader.writeFile(ByteStreams.nullOutputStream());
+        }
+    }
+
+    /**
+     * Source waiting before each read of at most 64 KiB.
+     */
+    private static class LatencyInputStream extends FilterInputStream {
+
+        private final long latency;
+
+        LatencyInputStream(InputStream inputStream, long latency) {
+            super(inputStream);
+            this.latency = latency;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                TimeUnit.MICROSECONDS.sleep(latency);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return super.read(b, off, Math.min(len, 64 * 1024));
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package no.difi.asic;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of CMS signing and of building a signed XAdES manifest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureHelperBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int entryCount;
+
+    private SignatureHelper signatureHelper;
+    private byte[] manifest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        signatureHelper = BenchmarkKeys.newSignatureHelper("benchmark");
+
+        CadesAsicManifest cadesAsicManifest = new CadesAsicManifest(MessageDigestAlgorithm.SHA256);
+        for (int i = 0; i < entryCount; i++) {
+            cadesAsicManifest.getMessageDigest().update(Payloads.generate(64, Payloads.Compressibility.RANDOM, i));
+            cadesAsicManifest.add("entry-" + i + ".xml", MimeType.XML);
+        }
+        cadesAsicManifest.setSignature("META-INF/signature.p7s", "application/x-pkcs7-signature");
+        manifest = cadesAsicManifest.toBytes();
+    }
+
+    @Benchmark
+    public byte[] signData() {
+        return signatureHelper.signData(manifest);
+    }
+
+    @Benchmark
+    public byte[] xadesManifest() {
+        XadesAsicManifest xadesAsicManifest = new XadesAsicManifest(MessageDigestAlgorithm.SHA256);
+        for (int i = 0; i < entryCount; i++)
+            xadesAsicManifest.add("entry-" + i + ".xml", MimeType.XML);
+        return xadesAsicManifest.toBytes(signatureHelper);
+    }
+}
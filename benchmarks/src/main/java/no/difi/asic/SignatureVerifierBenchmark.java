@@ -0,0 +1,44 @@
+package no.difi.asic;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verification throughput for CAdES signatures from a fixed set of senders, with and without the verifier cache.
+ * A cache size of zero disables caching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureVerifierBenchmark {
+
+    @Param({"0", "256"})
+    public long cacheSize;
+
+    @Param({"1", "32"})
+    public int senders;
+
+    private byte[] data;
+    private byte[][] signatures;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SignatureVerifier.setCacheSize(cacheSize);
+
+        data = "<ASiCManifest/>".getBytes();
+        signatures = new byte[senders][];
+        for (int i = 0; i < senders; i++)
+            signatures[i] = BenchmarkKeys.newSignatureHelper("sender-" + i).signData(data);
+    }
+
+    @Benchmark
+    public Object validate() {
+        next = (next + 1) % signatures.length;
+        return SignatureVerifier.validate(data, signatures[next]);
+    }
+}
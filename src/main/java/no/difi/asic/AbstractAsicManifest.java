@@ -1,7 +1,6 @@
 package no.difi.asic;
 
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 abstract class AbstractAsicManifest {
 
@@ -10,26 +9,69 @@ abstract class AbstractAsicManifest {
 
     public AbstractAsicManifest(MessageDigestAlgorithm messageDigestAlgorithm) {
         this.messageDigestAlgorithm = messageDigestAlgorithm;
+    }
 
-        // Create message digest
-        try {
-            messageDigest = MessageDigest.getInstance(messageDigestAlgorithm.getAlgorithm());
-            messageDigest.reset();
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(String.format("Algorithm %s not supported", messageDigestAlgorithm.getAlgorithm()), e);
+    /**
+     * Creates an empty manifest for the given signature method.
+     */
+    static AbstractAsicManifest newManifest(SignatureMethod signatureMethod, MessageDigestAlgorithm messageDigestAlgorithm) {
+        switch (signatureMethod) {
+            case CAdES:
+                return new CadesAsicManifest(messageDigestAlgorithm);
+            case XAdES:
+                return new XadesAsicManifest(messageDigestAlgorithm);
+            default:
+                throw new IllegalStateException(String.format("Not implemented: %s", signatureMethod));
         }
     }
 
+    public MessageDigestAlgorithm getMessageDigestAlgorithm() {
+        return messageDigestAlgorithm;
+    }
+
     /**
-     * @inheritDoc
+     * Message digest used by {@link #add(String, MimeType)}, fetched on first use. Writers calculate digests
+     * themselves and use {@link #add(String, MimeType, byte[])}.
      */
     public MessageDigest getMessageDigest() {
+        if (messageDigest == null)
+            messageDigest = ResourcePool.acquireDigest(messageDigestAlgorithm);
+
         messageDigest.reset();
         return messageDigest;
     }
 
     /**
-     * @inheritDoc
+     * Clears all data objects, making the manifest ready for a new container.
+     */
+    void reset() {
+        release();
+    }
+
+    /**
+     * Returns the message digest to the pool, if any.
+     */
+    void release() {
+        if (messageDigest != null) {
+            ResourcePool.releaseDigest(messageDigestAlgorithm, messageDigest);
+            messageDigest = null;
+        }
+    }
+
+    /**
+     * Adds a data object using the digest of the data written to {@link #getMessageDigest()}.
+     */
+    public void add(String filename, MimeType mimeType) {
+        if (messageDigest == null)
+            messageDigest = ResourcePool.acquireDigest(messageDigestAlgorithm);
+
+        add(filename, mimeType, messageDigest.digest());
+    }
+
+    /**
+     * Adds a data object.
+     *
+     * @param digest digest of the data object, calculated using the algorithm of this manifest.
      */
-    public abstract void add(String filename, MimeType mimeType);
+    public abstract void add(String filename, MimeType mimeType, byte[] digest);
 }
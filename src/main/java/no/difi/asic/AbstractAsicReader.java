@@ -1,7 +1,12 @@
 package no.difi.asic;
 
 import com.google.common.io.ByteStreams;
+import no.difi.asic.jfr.ContainerReadEvent;
+import no.difi.asic.jfr.EntryReadEvent;
+import no.difi.asic.pkix.CertificateValidator;
+import no.difi.asic.store.ContentStore;
 import no.difi.asic.zipbomb.MaxSizeProtectedOutputStream;
+import no.difi.commons.asic.jaxb.asic.AsicFile;
 import no.difi.commons.asic.jaxb.asic.AsicManifest;
 import no.difi.commons.asic.jaxb.asic.Certificate;
 import no.difi.commons.asic.jaxb.opendocument.manifest.Manifest;
@@ -10,11 +15,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.security.DigestInputStream;
-import java.security.DigestOutputStream;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.zip.ZipEntry;
 
@@ -27,32 +30,108 @@ abstract class AbstractAsicReader implements Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractAsicReader.class);
 
-    private MessageDigest messageDigest;
+    /** Every entry is digested once using all algorithms, as manifests in a container may use different algorithms. */
+    private MessageDigestAlgorithm[] messageDigestAlgorithms;
+    private MessageDigest[] messageDigests;
 
     private AsicInputStream zipInputStream;
     private ZipEntry currentZipEntry;
 
+    /** Stages inflating and digesting data objects apart from the calling thread, null to do it all on one thread. */
+    private ReadPipeline readPipeline;
+
+    /** Stream of the current container when read ahead, otherwise null. */
+    private ReadAheadInputStream readAheadInputStream;
+
     private ManifestVerifier manifestVerifier;
     private Manifest manifest;
 
+    private CertificateValidator certificateValidator;
+
+    /** Receiver of entry events, null when no measurements should be made. */
+    private AsicListener listener;
+    private AsicEntryEvent currentEvent;
+
+    /** Flight recorder events, committed when the entry and the container are completely read. */
+    private ContainerReadEvent containerReadEvent;
+    private EntryReadEvent entryReadEvent;
+
+    /** Requires signed manifests before any data object, verifying each data object as soon as it is read. */
+    private boolean manifestFirst;
+    private boolean manifestSeen = false;
+
     // Initiated with 'true' as the first file should not do anything.
     private boolean contentIsWritten = true;
 
+    /** Digests and sizes of the current entry are recorded once its content is read. */
+    private boolean entryRecorded = false;
+
     /**
      * Used to hold signature or manifest for CAdES as they are not in the same file.
      */
     private Map<String, Object> signingContent = new HashMap<>();
 
     AbstractAsicReader(MessageDigestAlgorithm messageDigestAlgorithm, InputStream inputStream) throws IOException {
-        this.manifestVerifier = new ManifestVerifier(messageDigestAlgorithm);
+        this(new MessageDigestAlgorithm[] {messageDigestAlgorithm}, inputStream, null, null, false);
+    }
 
-        try {
-            messageDigest = MessageDigest.getInstance(messageDigestAlgorithm.getAlgorithm());
-            messageDigest.reset();
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(String.format("Algorithm %s not supported", messageDigestAlgorithm.getAlgorithm()), e);
+    /**
+     * @param messageDigestAlgorithms digest algorithms accepted in manifests, the first being the default.
+     * @param certificateValidator validator of CAdES signer certificates, null to only verify signature values.
+     * @param listener receiver of entry events, null to disable measurements.
+     * @param manifestFirst true to reject data objects found before signed manifests, or not matching them.
+     */
+    AbstractAsicReader(MessageDigestAlgorithm[] messageDigestAlgorithms, InputStream inputStream, CertificateValidator certificateValidator, AsicListener listener, boolean manifestFirst) throws IOException {
+        this.messageDigestAlgorithms = messageDigestAlgorithms;
+        this.manifestVerifier = new ManifestVerifier(messageDigestAlgorithms);
+        this.certificateValidator = certificateValidator;
+        this.listener = listener;
+        this.manifestFirst = manifestFirst;
+
+        open(inputStream);
+    }
+
+    /**
+     * Inflates and digests data objects on stages of their own, see {@link ReadPipeline}.
+     */
+    void setPipelined(boolean pipelined) {
+        this.readPipeline = pipelined ? new ReadPipeline() : null;
+    }
+
+    /**
+     * Prepares for reading of a container, clearing state from any container read earlier while keeping
+     * message digest and collections. The previous input stream is not closed.
+     */
+    void open(InputStream inputStream) {
+        // Releases the inflater of the previous container without closing the stream of the caller.
+        if (zipInputStream != null)
+            zipInputStream.discard();
+        if (readAheadInputStream != null)
+            readAheadInputStream.stop();
+        readAheadInputStream = inputStream instanceof ReadAheadInputStream ? (ReadAheadInputStream) inputStream : null;
+
+        if (messageDigests == null) {
+            messageDigests = new MessageDigest[messageDigestAlgorithms.length];
+            for (int i = 0; i < messageDigestAlgorithms.length; i++)
+                messageDigests[i] = ResourcePool.acquireDigest(messageDigestAlgorithms[i]);
+        } else {
+            for (MessageDigest messageDigest : messageDigests)
+                messageDigest.reset();
         }
 
+        manifestVerifier.reset();
+        manifest = null;
+        signingContent.clear();
+        manifestSeen = false;
+        currentZipEntry = null;
+        contentIsWritten = true;
+        entryRecorded = false;
+        currentEvent = null;
+        entryReadEvent = null;
+
+        containerReadEvent = new ContainerReadEvent();
+        containerReadEvent.begin();
+
         zipInputStream = new AsicInputStream(inputStream);
         // Comment in ZIP is stored in Central Directory in the end of the file.
     }
@@ -62,21 +141,35 @@ abstract class AbstractAsicReader implements Closeable {
         if (!contentIsWritten)
             writeFile(ByteStreams.nullOutputStream());
 
-        // Write digest to manifest
+        // Write digests to manifest
         if (currentZipEntry != null) {
-            byte[] digest = messageDigest.digest();
-            logger.debug("Digest: {}", Base64.encode(digest));
-            manifestVerifier.update(currentZipEntry.getName(), digest, null);
+            if (!currentZipEntry.getName().startsWith("META-INF/") && !entryRecorded)
+                recordEntry();
+
+            entryFinished();
         }
 
         while ((currentZipEntry = zipInputStream.getNextEntry()) != null) {
             logger.info("Found file: {}", currentZipEntry.getName());
 
+            entryReadEvent = new EntryReadEvent();
+            entryReadEvent.begin();
+
+            if (listener != null) {
+                currentEvent = new AsicEntryEvent(currentZipEntry.getName());
+                listener.entryStarted(currentEvent);
+            }
+
             // Files used for validation are not exposed
-            if (currentZipEntry.getName().startsWith("META-INF/"))
+            if (currentZipEntry.getName().startsWith("META-INF/")) {
                 handleMetadataEntry();
-            else {
+                entryFinished();
+            } else {
+                if (manifestFirst)
+                    requireSignedManifests(currentZipEntry.getName());
+
                 contentIsWritten = false;
+                entryRecorded = false;
                 return currentZipEntry.getName();
             }
         }
@@ -90,22 +183,132 @@ abstract class AbstractAsicReader implements Closeable {
         if (signingContent.size() > 0)
             throw new IllegalStateException(String.format("Signature not verified: %s", signingContent.keySet().iterator().next()));
 
+        if (containerReadEvent != null) {
+            containerReadEvent.end();
+            if (containerReadEvent.shouldCommit()) {
+                containerReadEvent.signatures = manifestVerifier.getAsicManifest().getCertificate().size();
+                if (readAheadInputStream != null) {
+                    containerReadEvent.stalledReads = readAheadInputStream.getStalledReads();
+                    containerReadEvent.stalledTime = readAheadInputStream.getStalledNanos();
+                }
+                containerReadEvent.commit();
+            }
+            containerReadEvent = null;
+        }
+
         // Return null when container is out of content to read.
         return null;
     }
 
+    /**
+     * Makes sure a data object is found after verified manifests referencing it, so content not covered by a
+     * signature is never handed to the caller.
+     */
+    private void requireSignedManifests(String filename) {
+        if (!manifestSeen)
+            throw new IllegalStateException(String.format("File found before signed manifests: %s", filename));
+
+        if (signingContent.size() > 0)
+            throw new IllegalStateException(String.format("Signature not verified: %s", signingContent.keySet().iterator().next()));
+
+        if (!manifestVerifier.contains(filename))
+            throw new IllegalStateException(String.format("File not found in signed manifests: %s", filename));
+    }
+
     void writeFile(OutputStream outputStream) throws IOException {
         if (currentZipEntry == null)
             throw new IllegalStateException("No file to read.");
 
-        // Calculate digest while reading file
-        messageDigest.reset();
-        DigestOutputStream digestOutputStream = new DigestOutputStream(outputStream, messageDigest);
-        ByteStreams.copy(zipInputStream, digestOutputStream);
+        // Calculate digests while reading file
+        resetDigests();
+        if (readPipeline != null) {
+            readPipeline.copy(zipInputStream, messageDigests, outputStream, currentEvent);
+        } else if (currentEvent == null) {
+            DigestsOutputStream digestOutputStream = new DigestsOutputStream(outputStream, messageDigests);
+            ResourcePool.copy(zipInputStream, digestOutputStream);
+        } else {
+            ResourcePool.copy(new TimedDigestInputStream(zipInputStream, messageDigests, currentEvent), outputStream);
+        }
 
         zipInputStream.closeEntry();
 
         contentIsWritten = true;
+        recordEntry();
+    }
+
+    /**
+     * Writes the current data object to a content-addressed store, keyed by its digest using the first accepted
+     * algorithm. When a manifest already seen holds the digest, and the store holds that content, the content is
+     * still read and verified but not written. Otherwise the content is written aside, and only committed when the
+     * store does not already hold content with the calculated digest.
+     *
+     * @return digest the content is stored under.
+     */
+    byte[] writeFile(ContentStore contentStore) throws IOException {
+        if (currentZipEntry == null)
+            throw new IllegalStateException("No file to read.");
+
+        MessageDigestAlgorithm messageDigestAlgorithm = messageDigestAlgorithms[0];
+        byte[] expected = manifestVerifier.getDigest(currentZipEntry.getName(), messageDigestAlgorithm);
+        if (expected != null && contentStore.retain(messageDigestAlgorithm, expected)) {
+            logger.debug("Content of {} already stored", currentZipEntry.getName());
+            try {
+                writeFile(ByteStreams.nullOutputStream());
+            } catch (IOException | RuntimeException e) {
+                contentStore.release(messageDigestAlgorithm, expected);
+                throw e;
+            }
+            return expected;
+        }
+
+        try (ContentStore.PendingContent pendingContent = contentStore.newContent()) {
+            writeFile(pendingContent.getOutputStream());
+
+            byte[] digest = getCurrentFile().getEntryDigest().get(0).getValue();
+            if (contentStore.retain(messageDigestAlgorithm, digest))
+                logger.debug("Content of {} already stored", currentZipEntry.getName());
+            else
+                pendingContent.commit(messageDigestAlgorithm, digest);
+            return digest;
+        }
+    }
+
+    /**
+     * Hands digests and sizes of the current data object to the manifest verifier.
+     */
+    private void recordEntry() {
+        Map<MessageDigestAlgorithm, byte[]> digests = new LinkedHashMap<>();
+        for (int i = 0; i < messageDigests.length; i++) {
+            byte[] digest = messageDigests[i].digest();
+            logger.debug("Digest: {}", Base64.encode(digest));
+            digests.put(messageDigestAlgorithms[i], digest);
+        }
+        manifestVerifier.recordEntry(currentZipEntry.getName(), digests, currentZipEntry.getSize(), currentZipEntry.getCompressedSize());
+        entryRecorded = true;
+
+        // Mismatching digests are rejected by the verifier, leaving data objects no manifest could verify
+        if (manifestFirst && !manifestVerifier.isVerified(currentZipEntry.getName()))
+            throw new IllegalStateException(String.format("File not verified: %s", currentZipEntry.getName()));
+    }
+
+    /**
+     * @return uncompressed size of the current entry found in its local header, -1 when only found in a data
+     * descriptor after the content.
+     */
+    long getDeclaredSize() {
+        return currentZipEntry == null ? -1 : currentZipEntry.getSize();
+    }
+
+    /**
+     * Provides digests and sizes of the current data object once its content is read to the end, using every
+     * accepted digest algorithm. The record is part of {@link #getAsicManifest()}, and is marked as verified once a
+     * manifest holding a matching digest is read, which happens after the last data object unless manifests are
+     * written first.
+     *
+     * @return record of the current data object, null before its content is read.
+     */
+    public AsicFile getCurrentFile() {
+        return currentZipEntry != null && entryRecorded ? manifestVerifier.getFile(currentZipEntry.getName()) : null;
     }
 
     InputStream inputStream() {
@@ -115,8 +318,15 @@ abstract class AbstractAsicReader implements Closeable {
         // We must trust the user.
         contentIsWritten = true;
 
-        messageDigest.reset();
-        return new InputStreamWrapper(new DigestInputStream(zipInputStream, messageDigest));
+        resetDigests();
+        if (currentEvent != null)
+            return new InputStreamWrapper(new TimedDigestInputStream(zipInputStream, messageDigests, currentEvent));
+        return new InputStreamWrapper(new DigestsInputStream(zipInputStream, messageDigests));
+    }
+
+    private void resetDigests() {
+        for (MessageDigest messageDigest : messageDigests)
+            messageDigest.reset();
     }
 
     @Override
@@ -125,6 +335,12 @@ abstract class AbstractAsicReader implements Closeable {
             zipInputStream.close();
             zipInputStream = null;
         }
+
+        if (messageDigests != null) {
+            for (int i = 0; i < messageDigests.length; i++)
+                ResourcePool.releaseDigest(messageDigestAlgorithms[i], messageDigests[i]);
+            messageDigests = null;
+        }
     }
 
     /**
@@ -138,14 +354,24 @@ abstract class AbstractAsicReader implements Closeable {
 
         // Read content in file
         MaxSizeProtectedOutputStream contentsOfStream = new MaxSizeProtectedOutputStream();
-        ByteStreams.copy(zipInputStream, contentsOfStream);
+        long start = currentEvent == null ? 0 : System.nanoTime();
+        ResourcePool.copy(zipInputStream, contentsOfStream);
+        if (currentEvent != null) {
+            long now = System.nanoTime();
+            currentEvent.addCompressionNanos(now - start);
+            start = now;
+        }
 
         if (AsicUtils.PATTERN_CADES_MANIFEST.matcher(currentZipEntry.getName()).matches()) {
             // Handling manifest in ASiC CAdES.
             String sigReference = CadesAsicManifest.extractAndVerify(contentsOfStream.toString(), manifestVerifier);
             handleCadesSigning(sigReference, contentsOfStream.toString());
+            manifestSeen = true;
         } else if (AsicUtils.PATTERN_XADES_SIGNATURES.matcher(currentZipEntry.getName()).matches()) {
-            // Handling manifest in ASiC XAdES.
+            // Handling manifest in ASiC XAdES, where the signature is not verified.
+            if (manifestFirst)
+                throw new IllegalStateException(String.format("Manifest-first layout requires verified CAdES signatures: %s", currentZipEntry.getName()));
+
             XadesAsicManifest.extractAndVerify(contentsOfStream.toString(), manifestVerifier);
         } else if (AsicUtils.PATTERN_CADES_SIGNATURE.matcher(currentZipEntry.getName()).matches()) {
             // Handling signature in ASiC CAdES.
@@ -156,6 +382,32 @@ abstract class AbstractAsicReader implements Closeable {
         } else {
             throw new IllegalStateException(String.format("Contains unknown metadata file: %s", currentZipEntry.getName()));
         }
+
+        // Time spent verifying signatures is recorded separately.
+        if (currentEvent != null)
+            currentEvent.addXmlNanos(System.nanoTime() - start - currentEvent.getVerificationNanos());
+    }
+
+    private void entryFinished() {
+        // Sizes are known when the entry is read to the end.
+        containerReadEvent.entries++;
+        containerReadEvent.uncompressedBytes += currentZipEntry.getSize();
+
+        entryReadEvent.end();
+        if (entryReadEvent.shouldCommit()) {
+            entryReadEvent.entry = currentZipEntry.getName();
+            entryReadEvent.metadata = currentZipEntry.getName().startsWith("META-INF/");
+            entryReadEvent.uncompressedBytes = currentZipEntry.getSize();
+            entryReadEvent.compressedBytes = currentZipEntry.getCompressedSize();
+            entryReadEvent.commit();
+        }
+
+        if (currentEvent == null)
+            return;
+
+        currentEvent.setSizes(currentZipEntry.getSize(), currentZipEntry.getCompressedSize());
+        listener.entryFinished(currentEvent);
+        currentEvent = null;
     }
 
     private void handleCadesSigning(String sigReference, Object o) {
@@ -165,7 +417,10 @@ abstract class AbstractAsicReader implements Closeable {
             byte[] data = o instanceof String ? ((String) o).getBytes() : ((String) signingContent.get(sigReference)).getBytes();
             byte[] sign = o instanceof ByteArrayOutputStream ? ((ByteArrayOutputStream) o).toByteArray() : ((ByteArrayOutputStream) signingContent.get(sigReference)).toByteArray();
 
-            Certificate certificate = SignatureVerifier.validate(data, sign);
+            long start = currentEvent == null ? 0 : System.nanoTime();
+            Certificate certificate = SignatureVerifier.validate(data, sign, certificateValidator);
+            if (currentEvent != null)
+                currentEvent.addVerificationNanos(System.nanoTime() - start);
             certificate.setCert(currentZipEntry.getName());
             manifestVerifier.addCertificate(certificate);
 
@@ -4,22 +4,47 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.zip.ZipEntry;
 
+import com.google.common.io.ByteStreams;
+
+import no.difi.asic.jfr.ContainerWriteEvent;
+import no.difi.asic.jfr.EntryWriteEvent;
+import no.difi.asic.jfr.ManifestWriteEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.io.ByteStreams;
-
 abstract class AbstractAsicWriter implements AsicWriter {
 
     public static final Logger logger = LoggerFactory.getLogger(AbstractAsicWriter.class);
 
     protected AsicOutputStream asicOutputStream;
+
+    /** Primary manifest, always the first of {@link #asicManifests}. */
     protected AbstractAsicManifest asicManifest;
+    protected List<AbstractAsicManifest> asicManifests = new ArrayList<>();
+
+    /** One message digest per algorithm used by the manifests, all updated in the same pass over each entry. */
+    private Map<MessageDigestAlgorithm, MessageDigest> messageDigests = new EnumMap<>(MessageDigestAlgorithm.class);
+    private MessageDigest[] messageDigestArray;
+
+    /** Writes manifests and signatures right after mimetype, holding data objects back until signed. */
+    private boolean manifestFirst = false;
+    private List<PendingEntry> pendingEntries = new ArrayList<>();
+
+    /** Executor deflating blocks of each data object concurrently, null to deflate on the calling thread. */
+    private Executor deflateExecutor;
 
     protected boolean finished = false;
     protected OutputStream containerOutputStream = null;
@@ -27,23 +52,114 @@ abstract class AbstractAsicWriter implements AsicWriter {
 
     protected OasisManifest oasisManifest = null;
 
+    protected MimeTypeRegistry mimeTypeRegistry;
+
+    /** Receiver of entry events, null when no measurements should be made. */
+    protected AsicListener listener;
+
+    /** Flight recorder event covering the whole container, committed when the container is finished. */
+    protected ContainerWriteEvent containerWriteEvent;
+
     /**
      * Prepares creation of a new container.
      * @param outputStream Stream used to write container.
      */
     AbstractAsicWriter(OutputStream outputStream, boolean closeStreamOnClose, AbstractAsicManifest asicManifest) throws IOException {
-        // Keep original output stream
-        this.containerOutputStream = outputStream;
-        this.closeStreamOnClose = closeStreamOnClose;
+        this(outputStream, closeStreamOnClose, asicManifest, MimeTypeRegistry.defaultRegistry(), null);
+    }
+
+    /**
+     * Prepares creation of a new container.
+     * @param outputStream Stream used to write container.
+     * @param mimeTypeRegistry Registry used for entries added without MIME type.
+     * @param listener Receiver of entry events, may be null.
+     */
+    AbstractAsicWriter(OutputStream outputStream, boolean closeStreamOnClose, AbstractAsicManifest asicManifest, MimeTypeRegistry mimeTypeRegistry, AsicListener listener) throws IOException {
+        this.mimeTypeRegistry = mimeTypeRegistry;
+        this.listener = listener;
 
         // Initiate manifest
         this.asicManifest = asicManifest;
-
-        // Initiate zip container
-        asicOutputStream = new AsicOutputStream(outputStream);
+        this.asicManifests.add(asicManifest);
 
         // Add mimetype to OASIS OpenDocument manifest
         oasisManifest = new OasisManifest(MimeType.forString(AsicUtils.MIMETYPE_ASICE));
+
+        open(outputStream, closeStreamOnClose);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AsicWriter reset(OutputStream outputStream) throws IOException {
+        for (AbstractAsicManifest manifest : asicManifests)
+            manifest.reset();
+        oasisManifest.reset();
+        pendingEntries.clear();
+        finished = false;
+
+        open(outputStream, false);
+        return this;
+    }
+
+    private void open(OutputStream outputStream, boolean closeStreamOnClose) throws IOException {
+        // Keep original output stream
+        this.containerOutputStream = outputStream;
+        this.closeStreamOnClose = closeStreamOnClose;
+
+        containerWriteEvent = new ContainerWriteEvent();
+        containerWriteEvent.begin();
+
+        acquireDigests();
+
+        // Initiate zip container, reusing the zip writer of a previous container
+        if (asicOutputStream == null)
+            asicOutputStream = new AsicOutputStream(outputStream);
+        else
+            asicOutputStream.reset(outputStream);
+    }
+
+    /**
+     * Adds another manifest, resulting in another signature using the signature method and digest algorithm of the
+     * manifest. Must be called before any data object is added.
+     */
+    void addManifest(AbstractAsicManifest manifest) {
+        if (oasisManifest.size() > 1 || finished)
+            throw new IllegalStateException("Manifests must be added before data objects.");
+
+        asicManifests.add(manifest);
+        acquireDigests();
+    }
+
+    /**
+     * Enables the manifest-first layout, where data objects are read twice: once to calculate digests when added, and
+     * once to be written after the signed manifests. Only content that can be read twice is accepted.
+     */
+    void setManifestFirst(boolean manifestFirst) {
+        if (oasisManifest.size() > 1 || finished)
+            throw new IllegalStateException("Layout must be selected before data objects are added.");
+
+        this.manifestFirst = manifestFirst;
+    }
+
+    /**
+     * Deflates blocks of each data object concurrently on the given executor, see {@link ParallelDeflater}.
+     */
+    void setDeflateExecutor(Executor deflateExecutor) {
+        this.deflateExecutor = deflateExecutor;
+    }
+
+    private void acquireDigests() {
+        for (AbstractAsicManifest manifest : asicManifests)
+            if (!messageDigests.containsKey(manifest.getMessageDigestAlgorithm()))
+                messageDigests.put(manifest.getMessageDigestAlgorithm(), ResourcePool.acquireDigest(manifest.getMessageDigestAlgorithm()));
+
+        messageDigestArray = messageDigests.values().toArray(new MessageDigest[0]);
+    }
+
+    private void releaseDigests() {
+        for (Map.Entry<MessageDigestAlgorithm, MessageDigest> entry : messageDigests.entrySet())
+            ResourcePool.releaseDigest(entry.getKey(), entry.getValue());
+        messageDigests.clear();
     }
 
     /** {@inheritDoc} */
@@ -67,17 +183,14 @@ abstract class AbstractAsicWriter implements AsicWriter {
     /** {@inheritDoc} */
     @Override
     public AsicWriter add(Path path, String entryName) throws IOException {
-        try (InputStream inputStream = Files.newInputStream(path)) {
-            add(inputStream, entryName);
-        }
-        return this;
+        return add(path, entryName, mimeTypeRegistry.detect(entryName));
     }
 
     /** {@inheritDoc} */
     @Override
     public AsicWriter add(InputStream inputStream, String filename) throws IOException {
         // Add file to container
-        return add(inputStream, filename, AsicUtils.detectMime(filename));
+        return add(inputStream, filename, mimeTypeRegistry.detect(filename));
     }
 
     /** {@inheritDoc} */
@@ -89,6 +202,9 @@ abstract class AbstractAsicWriter implements AsicWriter {
     /** {@inheritDoc} */
     @Override
     public AsicWriter add(Path path, String entryName, MimeType mimeType) throws IOException {
+        if (manifestFirst)
+            return addPending(path, entryName, mimeType);
+
         try (InputStream inputStream = Files.newInputStream(path)) {
             add(inputStream, entryName, mimeType);
         }
@@ -98,35 +214,141 @@ abstract class AbstractAsicWriter implements AsicWriter {
     /** {@inheritDoc} */
     @Override
     public AsicWriter add(InputStream inputStream, String filename, MimeType mimeType) throws IOException {
-        // Check status
+        checkEntry(filename);
+
+        if (manifestFirst)
+            throw new IllegalStateException("Manifest-first layout requires content that can be read twice, such as a Path or a byte array.");
+
+        // Adds digests to manifests which will be signed and written once all data objects have been added
+        addToManifests(filename, mimeType, writeEntry(inputStream, filename, mimeType));
+
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AsicWriter add(byte[] content, String filename, MimeType mimeType) throws IOException {
+        return add(ByteBuffer.wrap(content), filename, mimeType);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AsicWriter add(ByteBuffer content, String filename, MimeType mimeType) throws IOException {
+        checkEntry(filename);
+
+        // Content in memory can be read twice, so it is held back by the manifest-first layout without copying
+        if (manifestFirst) {
+            for (MessageDigest messageDigest : messageDigestArray) {
+                messageDigest.reset();
+                messageDigest.update(content.duplicate());
+            }
+
+            PendingEntry pendingEntry = new PendingEntry(null, content.duplicate(), filename, mimeType, collectDigests());
+            addToManifests(filename, mimeType, pendingEntry.digests);
+            pendingEntries.add(pendingEntry);
+            return this;
+        }
+
+        addToManifests(filename, mimeType, writeEntry(content.duplicate(), filename, mimeType));
+        return this;
+    }
+
+    private void checkEntry(String filename) {
         if (finished)
             throw new IllegalStateException("Adding content to container after signing container is not supported.");
 
         if (filename.startsWith("META-INF/"))
             throw new IllegalStateException("Adding files to META-INF is not allowed.");
+    }
 
-        // Creates new zip entry
-        logger.debug("Writing file '{}' to container", filename);
-        asicOutputStream.putNextEntry(new ZipEntry(filename));
+    private void addToManifests(String filename, MimeType mimeType, Map<MessageDigestAlgorithm, byte[]> digests) {
+        for (AbstractAsicManifest manifest : asicManifests)
+            manifest.add(filename, mimeType, digests.get(manifest.getMessageDigestAlgorithm()));
 
-        // Prepare for calculation of message digest
-        DigestOutputStream zipOutputStreamWithDigest = new DigestOutputStream(asicOutputStream, asicManifest.getMessageDigest());
-        // Copy inputStream to zip output stream
-        ByteStreams.copy(inputStream, zipOutputStreamWithDigest);
-        zipOutputStreamWithDigest.flush();
+        // Add record of file to OASIS OpenDocument Manifest
+        oasisManifest.add(filename, mimeType);
+    }
 
-        // Closes the zip entry
-        asicOutputStream.closeEntry();
+    /**
+     * Calculates the digests of a file and adds them to the manifests, leaving the file to be written when signed.
+     */
+    private AsicWriter addPending(Path path, String filename, MimeType mimeType) throws IOException {
+        checkEntry(filename);
 
-        // Adds contents of input stream to manifest which will be signed and written once all data objects have been added
-        asicManifest.add(filename, mimeType);
+        for (MessageDigest messageDigest : messageDigestArray)
+            messageDigest.reset();
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            ResourcePool.copy(inputStream, new DigestsOutputStream(ByteStreams.nullOutputStream(), messageDigestArray));
+        }
 
-        // Add record of file to OASIS OpenDocument Manifest
-        oasisManifest.add(filename, mimeType);
+        PendingEntry pendingEntry = new PendingEntry(path, null, filename, mimeType, collectDigests());
+        addToManifests(filename, mimeType, pendingEntry.digests);
+        pendingEntries.add(pendingEntry);
 
         return this;
     }
 
+    private Map<MessageDigestAlgorithm, byte[]> collectDigests() {
+        Map<MessageDigestAlgorithm, byte[]> digests = new EnumMap<>(MessageDigestAlgorithm.class);
+        for (Map.Entry<MessageDigestAlgorithm, MessageDigest> entry : messageDigests.entrySet())
+            digests.put(entry.getKey(), entry.getValue().digest());
+        return digests;
+    }
+
+    /**
+     * Writes a data object to the container.
+     *
+     * @return digests of the content per algorithm.
+     */
+    private Map<MessageDigestAlgorithm, byte[]> writeEntry(InputStream inputStream, String filename, MimeType mimeType) throws IOException {
+        EntryOutputStream entryOutputStream = new EntryOutputStream(filename, mimeType, false);
+        // Copy inputStream to zip output stream
+        ResourcePool.copy(inputStream, entryOutputStream);
+        entryOutputStream.close();
+
+        return entryOutputStream.digests;
+    }
+
+    /**
+     * Writes a data object held in memory, reading arrays of heap buffers and direct buffers in place.
+     *
+     * @return digests of the content per algorithm.
+     */
+    private Map<MessageDigestAlgorithm, byte[]> writeEntry(ByteBuffer content, String filename, MimeType mimeType) throws IOException {
+        EntryOutputStream entryOutputStream = new EntryOutputStream(filename, mimeType, false);
+        if (content.hasArray())
+            entryOutputStream.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+        else
+            entryOutputStream.write(content);
+        entryOutputStream.close();
+
+        return entryOutputStream.digests;
+    }
+
+    /**
+     * Starts writing a data object, for content not available as a stream. The data object is added to the manifests
+     * when the returned stream is closed.
+     *
+     * @return stream digesting and deflating content of the data object.
+     */
+    OutputStream newEntry(String filename, MimeType mimeType) throws IOException {
+        checkEntry(filename);
+
+        if (manifestFirst)
+            throw new IllegalStateException("Manifest-first layout requires content that can be read twice, such as a Path or a byte array.");
+
+        return new EntryOutputStream(filename, mimeType, true);
+    }
+
+    /**
+     * Abandons the container in progress, releasing its deflater and message digests.
+     */
+    void discard() throws IOException {
+        finished = true;
+        asicOutputStream.discard();
+        releaseDigests();
+    }
+
     /** {@inheritDoc} */
     @Override
     public AsicWriter sign(File keyStoreFile, String keyStorePassword, String keyPassword) throws IOException {
@@ -155,16 +377,40 @@ abstract class AbstractAsicWriter implements AsicWriter {
         // Flip status to ensure nobody is allowed to sign more than once.
         finished = true;
 
-        // Delegates the actual signature creation to the signature helper
-        performSign(signatureHelper);
-
-        asicOutputStream.writeZipEntry("META-INF/manifest.xml", oasisManifest.toBytes());
+        boolean written = false;
+        try {
+            writeManifests(signatureHelper);
+
+            // Data objects held back by the manifest-first layout are read a second time, making sure they are unchanged
+            for (PendingEntry pendingEntry : pendingEntries) {
+                Map<MessageDigestAlgorithm, byte[]> digests;
+                if (pendingEntry.content != null) {
+                    digests = writeEntry(pendingEntry.content.duplicate(), pendingEntry.filename, pendingEntry.mimeType);
+                } else {
+                    try (InputStream inputStream = Files.newInputStream(pendingEntry.path)) {
+                        digests = writeEntry(inputStream, pendingEntry.filename, pendingEntry.mimeType);
+                    }
+                }
+
+                for (Map.Entry<MessageDigestAlgorithm, byte[]> digest : digests.entrySet())
+                    if (!Arrays.equals(digest.getValue(), pendingEntry.digests.get(digest.getKey())))
+                        throw new IllegalStateException(String.format("Content of %s changed while writing container.", pendingEntry.filename));
+            }
+            pendingEntries.clear();
+            written = true;
+        } finally {
+            // All digests are calculated, or the container is abandoned along with its deflater
+            releaseDigests();
+            if (!written)
+                asicOutputStream.discard();
+        }
 
         // Close container
         try {
             asicOutputStream.finish();
             asicOutputStream.close();
         } catch (IOException e) {
+            asicOutputStream.discard();
             throw new IllegalStateException(String.format("Unable to finish the container: %s", e.getMessage()), e);
         }
 
@@ -177,13 +423,281 @@ abstract class AbstractAsicWriter implements AsicWriter {
             }
         }
 
+        containerWriteEvent.end();
+        if (containerWriteEvent.shouldCommit()) {
+            StringBuilder signatureMethods = new StringBuilder();
+            for (AbstractAsicManifest manifest : asicManifests)
+                signatureMethods.append(signatureMethods.length() == 0 ? "" : "+")
+                        .append(manifest instanceof CadesAsicManifest ? SignatureMethod.CAdES : SignatureMethod.XAdES);
+            containerWriteEvent.signatureMethod = signatureMethods.toString();
+            containerWriteEvent.commit();
+        }
+
         return this;
     }
 
-    /** Creating the signature and writing it into the archive is delegated to the actual implementation */
-    abstract void performSign(SignatureHelper signatureHelper) throws IOException;
+    /**
+     * Writes manifests, signatures and the OASIS OpenDocument manifest.
+     */
+    private void writeManifests(SignatureHelper signatureHelper) throws IOException {
+        // Creates and writes each manifest and signature, numbering manifests of the same kind
+        int cadesCounter = 0;
+        int xadesCounter = 0;
+        for (AbstractAsicManifest manifest : asicManifests) {
+            if (manifest instanceof CadesAsicManifest) {
+                String suffix = ++cadesCounter == 1 ? "" : String.valueOf(cadesCounter);
+                signCades((CadesAsicManifest) manifest, "META-INF/" + AsicUtils.ASIC_MANIFEST_BASENAME + suffix + ".xml", signatureHelper);
+            } else {
+                String suffix = ++xadesCounter == 1 ? "" : String.valueOf(xadesCounter);
+                signXades((XadesAsicManifest) manifest, "META-INF/signatures" + suffix + ".xml", signatureHelper);
+            }
+        }
+
+        AsicEntryEvent event = entryStarted("META-INF/manifest.xml");
+        ManifestWriteEvent manifestWriteEvent = new ManifestWriteEvent();
+        manifestWriteEvent.begin();
+        long start = event == null ? 0 : System.nanoTime();
+        byte[] oasisManifestBytes = oasisManifest.toBytes();
+        if (event != null)
+            event.addXmlNanos(System.nanoTime() - start);
+        manifestWriteEvent.end();
+        if (manifestWriteEvent.shouldCommit()) {
+            manifestWriteEvent.manifest = "META-INF/manifest.xml";
+            manifestWriteEvent.references = oasisManifest.size();
+            manifestWriteEvent.bytes = oasisManifestBytes.length;
+            manifestWriteEvent.commit();
+        }
+        writeMetadataEntry("META-INF/manifest.xml", oasisManifestBytes, event);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AsicWriter setRootEntryName(String name) {
+        boolean found = false;
+        for (AbstractAsicManifest manifest : asicManifests) {
+            if (manifest instanceof CadesAsicManifest) {
+                ((CadesAsicManifest) manifest).setRootfileForEntry(name);
+                found = true;
+            }
+        }
+
+        if (!found)
+            throw new IllegalStateException("ASiC-E XAdES does not support defining root file.");
+
+        return this;
+    }
+
+    /**
+     * Writes a CAdES manifest and its detached signature (META-INF/signature-*.p7s).
+     */
+    void signCades(CadesAsicManifest manifest, String manifestFilename, SignatureHelper signatureHelper) throws IOException {
+        // Define signature filename containing UUID
+        String signatureFilename = String.format("META-INF/signature-%s.p7s", UUID.randomUUID().toString());
+
+        // Adding signature file to asic manifest before actual signing
+        manifest.setSignature(signatureFilename, "application/x-pkcs7-signature");
+
+        // Generates and writes manifest (META-INF/ASiCManifest*.xml) to the zip archive
+        AsicEntryEvent manifestEvent = entryStarted(manifestFilename);
+        ManifestWriteEvent manifestWriteEvent = new ManifestWriteEvent();
+        manifestWriteEvent.begin();
+        long start = manifestEvent == null ? 0 : System.nanoTime();
+        byte[] manifestBytes = manifest.toBytes();
+        if (manifestEvent != null)
+            manifestEvent.addXmlNanos(System.nanoTime() - start);
+        manifestWriteEvent.end();
+        if (manifestWriteEvent.shouldCommit()) {
+            manifestWriteEvent.manifest = manifestFilename;
+            manifestWriteEvent.references = manifest.getASiCManifestType().getDataObjectReference().size();
+            manifestWriteEvent.bytes = manifestBytes.length;
+            manifestWriteEvent.commit();
+        }
+        writeMetadataEntry(manifestFilename, manifestBytes, manifestEvent);
+
+        // Generates and writes signature (META-INF/signature-*.p7s) to the zip archive
+        AsicEntryEvent signatureEvent = entryStarted(signatureFilename);
+        start = signatureEvent == null ? 0 : System.nanoTime();
+        byte[] signatureBytes = signatureHelper.signData(manifestBytes);
+        if (signatureEvent != null)
+            signatureEvent.addSigningNanos(System.nanoTime() - start);
+        writeMetadataEntry(signatureFilename, signatureBytes, signatureEvent);
+    }
+
+    /**
+     * Writes a XAdES signature document (META-INF/signatures*.xml).
+     */
+    void signXades(XadesAsicManifest manifest, String filename, SignatureHelper signatureHelper) throws IOException {
+        AsicEntryEvent event = entryStarted(filename);
+        ManifestWriteEvent manifestWriteEvent = new ManifestWriteEvent();
+        manifestWriteEvent.begin();
+        byte[] manifestBytes = manifest.toBytes(signatureHelper, event);
+        manifestWriteEvent.end();
+        if (manifestWriteEvent.shouldCommit()) {
+            manifestWriteEvent.manifest = filename;
+            manifestWriteEvent.references = oasisManifest.size() - 1;
+            manifestWriteEvent.bytes = manifestBytes.length;
+            manifestWriteEvent.commit();
+        }
+        writeMetadataEntry(filename, manifestBytes, event);
+    }
+
+    /**
+     * Notifies the listener about a new entry.
+     *
+     * @return event to record measurements in, null when no listener is registered.
+     */
+    AsicEntryEvent entryStarted(String name) {
+        if (listener == null)
+            return null;
+
+        AsicEntryEvent event = new AsicEntryEvent(name);
+        listener.entryStarted(event);
+        return event;
+    }
+
+    /**
+     * Writes an entry in META-INF, timing compression when an event is given.
+     */
+    void writeMetadataEntry(String name, byte[] bytes, AsicEntryEvent event) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(name);
+
+        long start = event == null ? 0 : System.nanoTime();
+        asicOutputStream.writeZipEntry(zipEntry, bytes);
+        if (event != null)
+            event.addCompressionNanos(System.nanoTime() - start);
+
+        entryFinished(event, zipEntry);
+    }
+
+    private void entryFinished(AsicEntryEvent event, ZipEntry zipEntry) {
+        if (event == null)
+            return;
+
+        // Sizes are updated by the zip stream when the entry is closed.
+        event.setSizes(zipEntry.getSize(), zipEntry.getCompressedSize());
+        listener.entryFinished(event);
+    }
 
     public AbstractAsicManifest getAsicManifest() {
         return asicManifest;
     }
+
+    /**
+     * Content of a data object, digested and written to a zip entry of its own until closed.
+     */
+    private class EntryOutputStream extends OutputStream {
+
+        private final String filename;
+        private final MimeType mimeType;
+        private final boolean addToManifests;
+        private final AsicEntryEvent event;
+        private final EntryWriteEvent entryWriteEvent = new EntryWriteEvent();
+        private final ZipEntry zipEntry;
+        private final OutputStream outputStream;
+
+        /** Digests of the content per algorithm, available when closed. */
+        private Map<MessageDigestAlgorithm, byte[]> digests;
+
+        EntryOutputStream(String filename, MimeType mimeType, boolean addToManifests) throws IOException {
+            this.filename = filename;
+            this.mimeType = mimeType;
+            this.addToManifests = addToManifests;
+
+            event = entryStarted(filename);
+            entryWriteEvent.begin();
+
+            // Creates new zip entry
+            logger.debug("Writing file '{}' to container", filename);
+            zipEntry = new ZipEntry(filename);
+            if (deflateExecutor == null)
+                asicOutputStream.putNextEntry(zipEntry);
+            else
+                asicOutputStream.putNextEntry(zipEntry, deflateExecutor);
+
+            // Prepare for calculation of message digests, timed only when somebody listens
+            for (MessageDigest messageDigest : messageDigestArray)
+                messageDigest.reset();
+            outputStream = event == null ?
+                    new DigestsOutputStream(asicOutputStream, messageDigestArray) :
+                    new TimedDigestOutputStream(asicOutputStream, messageDigestArray, event);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            outputStream.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            outputStream.write(b, off, len);
+        }
+
+        /**
+         * Digests and deflates content held in a buffer, e.g. a direct buffer, without copying it to an array.
+         */
+        void write(ByteBuffer content) throws IOException {
+            long start = event == null ? 0 : System.nanoTime();
+            for (MessageDigest messageDigest : messageDigestArray)
+                messageDigest.update(content.duplicate());
+            long digested = event == null ? 0 : System.nanoTime();
+
+            asicOutputStream.write(content);
+            if (event != null) {
+                event.addDigestNanos(digested - start);
+                event.addCompressionNanos(System.nanoTime() - digested);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (digests != null)
+                return;
+
+            outputStream.flush();
+
+            // Closes the zip entry
+            long start = event == null ? 0 : System.nanoTime();
+            asicOutputStream.closeEntry();
+            if (event != null)
+                event.addCompressionNanos(System.nanoTime() - start);
+
+            digests = collectDigests();
+
+            entryFinished(event, zipEntry);
+
+            containerWriteEvent.entries++;
+            containerWriteEvent.uncompressedBytes += zipEntry.getSize();
+
+            entryWriteEvent.end();
+            if (entryWriteEvent.shouldCommit()) {
+                entryWriteEvent.entry = filename;
+                entryWriteEvent.mimeType = mimeType.toString();
+                entryWriteEvent.uncompressedBytes = zipEntry.getSize();
+                entryWriteEvent.compressedBytes = zipEntry.getCompressedSize();
+                entryWriteEvent.commit();
+            }
+
+            if (addToManifests)
+                AbstractAsicWriter.this.addToManifests(filename, mimeType, digests);
+        }
+    }
+
+    private static class PendingEntry {
+
+        /** File holding the content, null when held in memory. */
+        private final Path path;
+        /** Content held in memory, null when read from a file. */
+        private final ByteBuffer content;
+        private final String filename;
+        private final MimeType mimeType;
+        private final Map<MessageDigestAlgorithm, byte[]> digests;
+
+        PendingEntry(Path path, ByteBuffer content, String filename, MimeType mimeType, Map<MessageDigestAlgorithm, byte[]> digests) {
+            this.path = path;
+            this.content = content;
+            this.filename = filename;
+            this.mimeType = mimeType;
+            this.digests = digests;
+        }
+    }
 }
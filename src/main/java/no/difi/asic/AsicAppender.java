@@ -0,0 +1,239 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import no.difi.asic.pkix.CertificateValidator;
+import no.difi.commons.asic.jaxb.opendocument.manifest.FileEntry;
+import no.difi.commons.asic.jaxb.opendocument.manifest.Manifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Adds manifests and signatures to an existing container without rewriting its data objects.
+ * <p>
+ * Entries already in the container are copied as they are. New manifests and signatures are written where the central
+ * directory used to start, followed by a new central directory listing both old and new entries. Digests are taken
+ * from existing CAdES manifests when their signatures are valid and their signers pass the configured
+ * {@link CertificateValidator}, and only entries lacking such a digest for the requested algorithm are read and
+ * digested. Without validator, every data object is digested.
+ * <p>
+ * The new container is written to a temporary file next to the container, which then replaces the container in an
+ * atomic move. A failure while writing thus leaves the container as it was.
+ */
+public class AsicAppender {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsicAppender.class);
+
+    private Path path;
+    private List<AbstractAsicManifest> asicManifests;
+    private MimeTypeRegistry mimeTypeRegistry;
+    private CertificateValidator certificateValidator;
+
+    private String rootEntryName;
+    private boolean recomputeDigests = false;
+    private boolean finished = false;
+
+    AsicAppender(Path path, List<AbstractAsicManifest> asicManifests, MimeTypeRegistry mimeTypeRegistry, CertificateValidator certificateValidator) {
+        this.path = path;
+        this.asicManifests = asicManifests;
+        this.mimeTypeRegistry = mimeTypeRegistry;
+        this.certificateValidator = certificateValidator;
+    }
+
+    /**
+     * Marks an existing data object as root file in the new CAdES manifests.
+     *
+     * @param name name of the data object.
+     * @return reference to this AsicAppender
+     */
+    public AsicAppender setRootEntryName(String name) {
+        boolean found = false;
+        for (AbstractAsicManifest manifest : asicManifests)
+            found |= manifest instanceof CadesAsicManifest;
+
+        if (!found)
+            throw new IllegalStateException("ASiC-E XAdES does not support defining root file.");
+
+        this.rootEntryName = name;
+        return this;
+    }
+
+    /**
+     * Digests all data objects from their content instead of using digests found in existing manifests.
+     *
+     * @param recomputeDigests true to read and digest every data object.
+     * @return reference to this AsicAppender
+     */
+    public AsicAppender setRecomputeDigests(boolean recomputeDigests) {
+        this.recomputeDigests = recomputeDigests;
+        return this;
+    }
+
+    /**
+     * Creates and signs the new manifests and writes them to the container.
+     *
+     * @param signatureHelper signer of the new manifests.
+     * @throws IOException
+     */
+    public void sign(SignatureHelper signatureHelper) throws IOException {
+        if (finished)
+            throw new IllegalStateException("Container is already signed.");
+        finished = true;
+
+        Set<String> entryNames = new HashSet<>();
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            List<ZipEntry> dataObjects = new ArrayList<>();
+            Map<String, MimeType> mimeTypes = new HashMap<>();
+            ManifestVerifier manifestVerifier = new ManifestVerifier();
+
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                ZipEntry zipEntry = entries.nextElement();
+                entryNames.add(zipEntry.getName());
+
+                if (zipEntry.getName().equals("META-INF/manifest.xml")) {
+                    Manifest manifest = OasisManifest.read(zipFile.getInputStream(zipEntry));
+                    for (FileEntry fileEntry : manifest.getFileEntry())
+                        if (fileEntry.getMediaType() != null)
+                            mimeTypes.put(fileEntry.getFullPath(), MimeType.forString(fileEntry.getMediaType()));
+                } else if (!recomputeDigests && certificateValidator != null && AsicUtils.PATTERN_CADES_MANIFEST.matcher(zipEntry.getName()).matches()) {
+                    readCadesManifest(zipFile, zipEntry, manifestVerifier);
+                } else if (!zipEntry.getName().startsWith("META-INF/") && !zipEntry.getName().equals("mimetype")) {
+                    dataObjects.add(zipEntry);
+                }
+            }
+
+            for (ZipEntry dataObject : dataObjects)
+                addDataObject(zipFile, dataObject, manifestVerifier, mimeTypes);
+        }
+
+        if (rootEntryName != null)
+            for (AbstractAsicManifest manifest : asicManifests)
+                if (manifest instanceof CadesAsicManifest)
+                    ((CadesAsicManifest) manifest).setRootfileForEntry(rootEntryName);
+
+        // New entries are written to a separate archive, which is placed where the central directory used to be
+        ByteArrayOutputStream newEntries = new ByteArrayOutputStream();
+        try (AsicZipWriter zipWriter = new AsicZipWriter(newEntries)) {
+            for (Map.Entry<String, byte[]> entry : AsicManifestBuilder.signManifests(asicManifests, entryNames, signatureHelper).entrySet())
+                zipWriter.writeEntry(new ZipEntry(entry.getKey()), entry.getValue());
+        }
+        byte[] newBytes = newEntries.toByteArray();
+        ZipCentralDirectory newDirectory = ZipCentralDirectory.read(newBytes);
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            if (Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class))
+                Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(path));
+
+            try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ZipCentralDirectory centralDirectory = ZipCentralDirectory.read(source);
+                long offset = centralDirectory.getOffset();
+                centralDirectory.append(newDirectory, offset);
+
+                // Entries already present are copied without being inflated
+                long position = 0;
+                while (position < offset)
+                    position += source.transferTo(position, offset - position, target);
+
+                target.position(offset);
+                OutputStream outputStream = Channels.newOutputStream(target);
+                outputStream.write(newBytes, 0, (int) newDirectory.getOffset());
+                centralDirectory.write(outputStream, offset + newDirectory.getOffset());
+                outputStream.flush();
+                target.force(true);
+            }
+
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        for (AbstractAsicManifest manifest : asicManifests)
+            manifest.release();
+    }
+
+    private void readCadesManifest(ZipFile zipFile, ZipEntry zipEntry, ManifestVerifier manifestVerifier) throws IOException {
+        String xml;
+        try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+            xml = new String(ByteStreams.toByteArray(inputStream));
+        }
+
+        // Digests are only trusted when the signature of the manifest is valid and made by a trusted signer
+        String sigReference = CadesAsicManifest.extractAndVerify(xml, new ManifestVerifier());
+        ZipEntry signatureEntry = zipFile.getEntry(sigReference);
+        if (signatureEntry == null) {
+            logger.info("Not using digests of {}: Signature not found: {}", zipEntry.getName(), sigReference);
+            return;
+        }
+
+        try (InputStream inputStream = zipFile.getInputStream(signatureEntry)) {
+            SignatureVerifier.validate(xml.getBytes(), ByteStreams.toByteArray(inputStream), certificateValidator);
+        } catch (IllegalStateException e) {
+            logger.info("Not using digests of {}: {}", zipEntry.getName(), e.getMessage());
+            return;
+        }
+
+        CadesAsicManifest.extractAndVerify(xml, manifestVerifier);
+        logger.debug("Using digests of {}", zipEntry.getName());
+    }
+
+    private void addDataObject(ZipFile zipFile, ZipEntry zipEntry, ManifestVerifier manifestVerifier, Map<String, MimeType> mimeTypes) throws IOException {
+        String filename = zipEntry.getName();
+        MimeType mimeType = mimeTypes.containsKey(filename) ? mimeTypes.get(filename) : mimeTypeRegistry.detect(filename);
+
+        // Algorithms without a verified digest are computed in a single pass over the content
+        Map<MessageDigestAlgorithm, byte[]> digests = new HashMap<>();
+        List<MessageDigestAlgorithm> missing = new ArrayList<>();
+        for (AbstractAsicManifest manifest : asicManifests) {
+            MessageDigestAlgorithm algorithm = manifest.getMessageDigestAlgorithm();
+            byte[] digest = manifestVerifier.getDigest(filename, algorithm);
+            if (digest != null)
+                digests.put(algorithm, digest);
+            else if (!missing.contains(algorithm))
+                missing.add(algorithm);
+        }
+
+        if (!missing.isEmpty()) {
+            logger.debug("Digesting {}", filename);
+            MessageDigest[] messageDigests = new MessageDigest[missing.size()];
+            for (int i = 0; i < messageDigests.length; i++)
+                messageDigests[i] = ResourcePool.acquireDigest(missing.get(i));
+
+            try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                ResourcePool.copy(inputStream, new DigestsOutputStream(ByteStreams.nullOutputStream(), messageDigests));
+            }
+
+            for (int i = 0; i < messageDigests.length; i++) {
+                digests.put(missing.get(i), messageDigests[i].digest());
+                ResourcePool.releaseDigest(missing.get(i), messageDigests[i]);
+            }
+        }
+
+        for (AbstractAsicManifest manifest : asicManifests)
+            manifest.add(filename, mimeType, digests.get(manifest.getMessageDigestAlgorithm()));
+    }
+}
@@ -0,0 +1,187 @@
+package no.difi.asic;
+
+import no.difi.commons.asic.jaxb.asic.AsicFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+/**
+ * Streams data objects into a container around META-INF entries signed ahead of time by {@link AsicManifestBuilder}.
+ * <p>
+ * Only the signed entries are needed: the expected data objects and their digests are read from the manifests. Each
+ * data object is digested while written and rejected when the digest differs from the signed one. A container where a
+ * data object is rejected, or that fails to finish, is discarded, see {@link #discard()}.
+ */
+public class AsicAssembler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsicAssembler.class);
+
+    private SignedManifests signedManifests;
+    private AsicOutputStream asicOutputStream;
+
+    /** Expected digests per data object, removed when the data object is added. */
+    private Map<String, Map<MessageDigestAlgorithm, byte[]>> expected = new LinkedHashMap<>();
+    private Map<MessageDigestAlgorithm, MessageDigest> messageDigests = new EnumMap<>(MessageDigestAlgorithm.class);
+    private MessageDigest[] messageDigestArray;
+
+    private boolean manifestFirst;
+    private boolean finished = false;
+
+    AsicAssembler(SignedManifests signedManifests, OutputStream outputStream, boolean manifestFirst) throws IOException {
+        this.signedManifests = signedManifests;
+        this.manifestFirst = manifestFirst;
+
+        if (manifestFirst && signedManifests.getEntries().keySet().stream().anyMatch(name -> AsicUtils.PATTERN_XADES_SIGNATURES.matcher(name).matches()))
+            throw new IllegalStateException("Manifest-first layout requires CAdES signatures.");
+
+        ManifestVerifier manifestVerifier = new ManifestVerifier();
+        for (Map.Entry<String, byte[]> entry : signedManifests.getEntries().entrySet()) {
+            if (AsicUtils.PATTERN_CADES_MANIFEST.matcher(entry.getKey()).matches())
+                CadesAsicManifest.extractAndVerify(new String(entry.getValue()), manifestVerifier);
+            else if (AsicUtils.PATTERN_XADES_SIGNATURES.matcher(entry.getKey()).matches())
+                XadesAsicManifest.extractAndVerify(new String(entry.getValue()), manifestVerifier);
+        }
+
+        for (AsicFile asicFile : manifestVerifier.getAsicManifest().getFile()) {
+            Map<MessageDigestAlgorithm, byte[]> digests = new EnumMap<>(MessageDigestAlgorithm.class);
+            for (Map.Entry<String, byte[]> digest : manifestVerifier.getDigests(asicFile.getName()).entrySet()) {
+                MessageDigestAlgorithm messageDigestAlgorithm = MessageDigestAlgorithm.forUri(digest.getKey());
+                digests.put(messageDigestAlgorithm, digest.getValue());
+                if (!messageDigests.containsKey(messageDigestAlgorithm))
+                    messageDigests.put(messageDigestAlgorithm, ResourcePool.acquireDigest(messageDigestAlgorithm));
+            }
+            expected.put(asicFile.getName(), digests);
+        }
+        messageDigestArray = messageDigests.values().toArray(new MessageDigest[0]);
+
+        boolean written = false;
+        try {
+            asicOutputStream = new AsicOutputStream(outputStream);
+            if (manifestFirst)
+                writeSignedEntries();
+            written = true;
+        } finally {
+            if (!written)
+                discard();
+        }
+    }
+
+    /**
+     * Adds a data object referenced by the signed manifests.
+     *
+     * @param path     file holding the content.
+     * @param filename name of the data object in the container.
+     * @return reference to this AsicAssembler
+     * @throws IOException
+     */
+    public AsicAssembler add(Path path, String filename) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return add(inputStream, filename);
+        }
+    }
+
+    /**
+     * Adds a data object referenced by the signed manifests.
+     *
+     * @param inputStream content of the data object, not closed.
+     * @param filename    name of the data object in the container.
+     * @return reference to this AsicAssembler
+     * @throws IOException
+     * @throws IllegalStateException when the data object is not signed or its digest differs, the latter discarding
+     *                               the container.
+     */
+    public AsicAssembler add(InputStream inputStream, String filename) throws IOException {
+        if (finished)
+            throw new IllegalStateException("Adding content to container after finishing container is not supported.");
+
+        Map<MessageDigestAlgorithm, byte[]> digests = expected.remove(filename);
+        if (digests == null)
+            throw new IllegalStateException(String.format("File not found in signed manifests: %s", filename));
+
+        logger.debug("Writing file '{}' to container", filename);
+        boolean verified = false;
+        try {
+            asicOutputStream.putNextEntry(new ZipEntry(filename));
+
+            for (MessageDigest messageDigest : messageDigestArray)
+                messageDigest.reset();
+            ResourcePool.copy(inputStream, new DigestsOutputStream(asicOutputStream, messageDigestArray));
+            asicOutputStream.closeEntry();
+
+            for (Map.Entry<MessageDigestAlgorithm, byte[]> digest : digests.entrySet())
+                if (!Arrays.equals(messageDigests.get(digest.getKey()).digest(), digest.getValue()))
+                    throw new IllegalStateException(String.format("Mismatching digest for file %s", filename));
+
+            verified = true;
+        } finally {
+            // Content written to the container can not be taken back
+            if (!verified)
+                discard();
+        }
+
+        return this;
+    }
+
+    /**
+     * Writes the signed META-INF entries, unless already written first, and finishes the container. The underlying
+     * stream is not closed.
+     *
+     * @throws IOException
+     * @throws IllegalStateException when a signed data object is not added, discarding the container.
+     */
+    public void finish() throws IOException {
+        if (finished)
+            throw new IllegalStateException("Container is already finished.");
+
+        boolean written = false;
+        try {
+            if (!expected.isEmpty())
+                throw new IllegalStateException(String.format("File not added: %s", expected.keySet().iterator().next()));
+
+            finished = true;
+
+            if (!manifestFirst)
+                writeSignedEntries();
+            asicOutputStream.finish();
+            written = true;
+        } finally {
+            if (written)
+                releaseDigests();
+            else
+                discard();
+        }
+    }
+
+    /**
+     * Abandons the container, releasing pooled digests and deflater. What is written so far is left as is, and is
+     * not a valid container.
+     */
+    public void discard() {
+        finished = true;
+        if (asicOutputStream != null)
+            asicOutputStream.discard();
+        releaseDigests();
+    }
+
+    private void releaseDigests() {
+        for (Map.Entry<MessageDigestAlgorithm, MessageDigest> entry : messageDigests.entrySet())
+            ResourcePool.releaseDigest(entry.getKey(), entry.getValue());
+        messageDigests.clear();
+    }
+
+    private void writeSignedEntries() throws IOException {
+        for (Map.Entry<String, byte[]> entry : signedManifests.getEntries().entrySet())
+            asicOutputStream.writeZipEntry(entry.getKey(), entry.getValue());
+    }
+}
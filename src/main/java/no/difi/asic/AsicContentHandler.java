@@ -0,0 +1,36 @@
+package no.difi.asic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the data objects of a container as it arrives, see {@link AsicReaderFactory#newSubscriber(AsicContentHandler)}.
+ * Methods are called on the thread delivering the container, and no more of the container is requested until they
+ * return. Content is not verified until the container is read to the end.
+ */
+public interface AsicContentHandler {
+
+    /**
+     * Called when a data object starts.
+     *
+     * @param name     name of the data object.
+     * @param mimeType MIME type found in the signed manifests, null when no manifest is read yet.
+     * @throws IOException
+     */
+    void startFile(String name, MimeType mimeType) throws IOException;
+
+    /**
+     * Called with each part of the content of the current data object, in order.
+     *
+     * @param content read-only content, only valid during the call.
+     * @throws IOException
+     */
+    void content(ByteBuffer content) throws IOException;
+
+    /**
+     * Called when the content of the current data object is read and digested.
+     *
+     * @throws IOException
+     */
+    void endFile() throws IOException;
+}
@@ -0,0 +1,113 @@
+package no.difi.asic;
+
+/**
+ * Measurements for a single container entry, reported to an {@link AsicListener}.
+ * <p>
+ * Time is reported in nanoseconds per phase. Phases not relevant for an entry are zero, e.g. data objects are never
+ * signed and signatures are never digested. Time spent reading from or writing to the caller's streams is not
+ * included.
+ */
+public class AsicEntryEvent {
+
+    private final String name;
+
+    private long uncompressedBytes;
+    private long compressedBytes;
+
+    private long digestNanos;
+    private long compressionNanos;
+    private long xmlNanos;
+    private long signingNanos;
+    private long verificationNanos;
+
+    AsicEntryEvent(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return name of the entry in the container.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return size of the entry content, -1 if unknown.
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /**
+     * @return size of the entry as stored in the container, -1 if unknown.
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return time spent calculating the message digest of the entry content.
+     */
+    public long getDigestNanos() {
+        return digestNanos;
+    }
+
+    /**
+     * @return time spent deflating (writing) or inflating (reading) the entry, including ZIP bookkeeping.
+     */
+    public long getCompressionNanos() {
+        return compressionNanos;
+    }
+
+    /**
+     * @return time spent creating or parsing XML, i.e. manifests.
+     */
+    public long getXmlNanos() {
+        return xmlNanos;
+    }
+
+    /**
+     * @return time spent signing with the private key.
+     */
+    public long getSigningNanos() {
+        return signingNanos;
+    }
+
+    /**
+     * @return time spent verifying signatures.
+     */
+    public long getVerificationNanos() {
+        return verificationNanos;
+    }
+
+    void setSizes(long uncompressedBytes, long compressedBytes) {
+        this.uncompressedBytes = uncompressedBytes;
+        this.compressedBytes = compressedBytes;
+    }
+
+    void addDigestNanos(long nanos) {
+        digestNanos += nanos;
+    }
+
+    void addCompressionNanos(long nanos) {
+        compressionNanos += nanos;
+    }
+
+    void addXmlNanos(long nanos) {
+        xmlNanos += nanos;
+    }
+
+    void addSigningNanos(long nanos) {
+        signingNanos += nanos;
+    }
+
+    void addVerificationNanos(long nanos) {
+        verificationNanos += nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s/%s bytes, digest=%sns, compression=%sns, xml=%sns, signing=%sns, verification=%sns",
+                name, uncompressedBytes, compressedBytes, digestNanos, compressionNanos, xmlNanos, signingNanos, verificationNanos);
+    }
+}
@@ -0,0 +1,278 @@
+package no.difi.asic;
+
+import no.difi.asic.pkix.CertificateValidator;
+import no.difi.commons.asic.jaxb.asic.AsicFile;
+import no.difi.commons.asic.jaxb.asic.AsicManifest;
+import no.difi.commons.asic.jaxb.asic.EntryDigest;
+import no.difi.commons.asic.jaxb.opendocument.manifest.Manifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Result of extracting all data objects of a container to a directory, see
+ * {@link AsicReaderFactory#extractAll(Path, Path)}.
+ * <p>
+ * Data objects are inflated, digested and written concurrently to temporary files in the target directory. They are
+ * moved in place only when every data object matches its signed digests, so a rejected container leaves nothing
+ * behind.
+ */
+public class AsicExtraction {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsicExtraction.class);
+
+    private final AsicMetadata asicMetadata;
+    private final Map<String, Path> files;
+    private final Map<String, Map<MessageDigestAlgorithm, byte[]>> digests;
+
+    private AsicExtraction(AsicMetadata asicMetadata, Map<String, Path> files, Map<String, Map<MessageDigestAlgorithm, byte[]>> digests) {
+        this.asicMetadata = asicMetadata;
+        this.files = Collections.unmodifiableMap(files);
+        this.digests = digests;
+    }
+
+    static AsicExtraction extract(Path container, Path targetDirectory, Executor executor, long maxSize,
+                                  MessageDigestAlgorithm[] messageDigestAlgorithms, CertificateValidator certificateValidator) throws IOException {
+        Path directory = targetDirectory.toAbsolutePath().normalize();
+        Files.createDirectories(directory);
+
+        try (ZipFile zipFile = new ZipFile(container.toFile())) {
+            AsicMetadata asicMetadata = AsicMetadata.read(zipFile, messageDigestAlgorithms, certificateValidator);
+
+            // Names and declared sizes are checked before anything is inflated
+            Map<String, Path> files = new LinkedHashMap<>();
+            Set<Path> targets = new HashSet<>();
+            long totalSize = 0;
+            for (String dataObject : asicMetadata.getDataObjects()) {
+                Path target = directory.resolve(dataObject).normalize();
+                if (!target.startsWith(directory) || target.equals(directory))
+                    throw new IllegalStateException(String.format("Entry outside target directory: %s", dataObject));
+                if (!targets.add(target))
+                    throw new IllegalStateException(String.format("Entry extracted to the same file as another entry: %s", dataObject));
+                if (Files.exists(target))
+                    throw new IllegalStateException(String.format("File already exists: %s", target));
+
+                long size = zipFile.getEntry(dataObject).getSize();
+                if (size < 0)
+                    throw new IllegalStateException(String.format("Size of %s is unknown.", dataObject));
+                totalSize += size;
+                if (totalSize > maxSize)
+                    throw new IllegalStateException(String.format("Content exceeds max configured size of %s bytes.", maxSize));
+
+                files.put(dataObject, target);
+            }
+
+            List<CompletableFuture<Extracted>> futures = new ArrayList<>();
+            for (String dataObject : files.keySet())
+                futures.add(CompletableFuture.supplyAsync(() -> extractEntry(zipFile, dataObject, directory, asicMetadata), executor));
+
+            List<Extracted> extracted = new ArrayList<>();
+            try {
+                for (CompletableFuture<Extracted> future : futures)
+                    extracted.add(join(future));
+            } catch (IOException | RuntimeException e) {
+                // Remaining entries are left to finish before their temporary files are removed
+                for (CompletableFuture<Extracted> future : futures) {
+                    Extracted result = future.exceptionally(t -> null).join();
+                    if (result != null)
+                        deleteQuietly(result.temporary);
+                }
+                throw e;
+            }
+
+            // Every data object is verified, so files are moved in place, never replacing a file
+            Map<String, Map<MessageDigestAlgorithm, byte[]>> digests = new LinkedHashMap<>();
+            List<Path> created = new ArrayList<>();
+            try {
+                for (Extracted entry : extracted) {
+                    Path target = files.get(entry.filename);
+                    createDirectories(target.getParent(), created);
+                    Files.move(entry.temporary, target);
+                    created.add(target);
+                    digests.put(entry.filename, entry.digests);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Files and directories are removed in reverse order of creation, followed by remaining temporary files
+                for (int i = created.size() - 1; i >= 0; i--)
+                    deleteQuietly(created.get(i));
+                for (Extracted entry : extracted)
+                    deleteQuietly(entry.temporary);
+                throw e;
+            }
+
+            for (AsicFile asicFile : asicMetadata.getAsicManifest().getFile()) {
+                asicFile.setVerified(true);
+                for (Map.Entry<MessageDigestAlgorithm, byte[]> digest : digests.get(asicFile.getName()).entrySet()) {
+                    EntryDigest entryDigest = new EntryDigest();
+                    entryDigest.setAlgorithm(digest.getKey().getUri());
+                    entryDigest.setValue(digest.getValue());
+                    asicFile.getEntryDigest().add(entryDigest);
+                }
+            }
+
+            return new AsicExtraction(asicMetadata, files, digests);
+        }
+    }
+
+    private static Extracted join(CompletableFuture<Extracted> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    private static Extracted extractEntry(ZipFile zipFile, String filename, Path directory, AsicMetadata asicMetadata) {
+        ZipEntry zipEntry = zipFile.getEntry(filename);
+
+        Map<MessageDigestAlgorithm, byte[]> expected = new EnumMap<>(MessageDigestAlgorithm.class);
+        for (Map.Entry<String, byte[]> digest : asicMetadata.getDigests(filename).entrySet())
+            expected.put(MessageDigestAlgorithm.forUri(digest.getKey()), digest.getValue());
+
+        MessageDigestAlgorithm[] algorithms = expected.keySet().toArray(new MessageDigestAlgorithm[0]);
+        MessageDigest[] messageDigests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++)
+            messageDigests[i] = ResourcePool.acquireDigest(algorithms[i]);
+        byte[] buffer = ResourcePool.acquireBuffer();
+
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(directory, ".asic-", ".part");
+            logger.debug("Extracting {} to {}", filename, temporary);
+
+            long written = 0;
+            try (InputStream inputStream = zipFile.getInputStream(zipEntry);
+                 FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    // Content beyond the size declared in the central directory is never written
+                    written += read;
+                    if (written > zipEntry.getSize())
+                        throw new IllegalStateException(String.format("Content of %s exceeds its declared size.", filename));
+
+                    for (MessageDigest messageDigest : messageDigests)
+                        messageDigest.update(buffer, 0, read);
+
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                    while (byteBuffer.hasRemaining())
+                        channel.write(byteBuffer);
+                }
+            }
+
+            Map<MessageDigestAlgorithm, byte[]> digests = new EnumMap<>(MessageDigestAlgorithm.class);
+            for (int i = 0; i < algorithms.length; i++) {
+                digests.put(algorithms[i], messageDigests[i].digest());
+                if (!Arrays.equals(digests.get(algorithms[i]), expected.get(algorithms[i])))
+                    throw new IllegalStateException(String.format("Mismatching digest for file %s", filename));
+            }
+
+            return new Extracted(filename, temporary, digests);
+        } catch (IOException | RuntimeException e) {
+            if (temporary != null)
+                deleteQuietly(temporary);
+            if (e instanceof IOException)
+                throw new UncheckedIOException((IOException) e);
+            throw (RuntimeException) e;
+        } finally {
+            for (int i = 0; i < algorithms.length; i++)
+                ResourcePool.releaseDigest(algorithms[i], messageDigests[i]);
+            ResourcePool.releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Creates missing directories, recording each created directory after its parent.
+     */
+    private static void createDirectories(Path directory, List<Path> created) throws IOException {
+        if (Files.isDirectory(directory))
+            return;
+
+        createDirectories(directory.getParent(), created);
+        Files.createDirectory(directory);
+        created.add(directory);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // The original failure is reported
+            logger.warn("Unable to delete {}", path);
+        }
+    }
+
+    /**
+     * Signed manifest of the container, where every data object is verified.
+     *
+     * @return value of property.
+     */
+    public AsicManifest getAsicManifest() {
+        return asicMetadata.getAsicManifest();
+    }
+
+    /**
+     * Property getter for the OpenDocument manifest.
+     *
+     * @return value of property, null if document is not found in container.
+     */
+    public Manifest getOasisManifest() {
+        return asicMetadata.getOasisManifest();
+    }
+
+    /**
+     * @return extracted files by name of data object, in the order found in the central directory.
+     */
+    public Map<String, Path> getFiles() {
+        return files;
+    }
+
+    /**
+     * Digests of an extracted file, calculated while written, for each algorithm used by the manifests.
+     *
+     * @param filename name of the data object.
+     * @return digests by algorithm, null when the data object is unknown.
+     */
+    public Map<MessageDigestAlgorithm, byte[]> getDigests(String filename) {
+        return digests.get(filename);
+    }
+
+    private static class Extracted {
+
+        private final String filename;
+        private final Path temporary;
+        private final Map<MessageDigestAlgorithm, byte[]> digests;
+
+        Extracted(String filename, Path temporary, Map<MessageDigestAlgorithm, byte[]> digests) {
+            this.filename = filename;
+            this.temporary = temporary;
+            this.digests = digests;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package no.difi.asic;
 
-import com.google.common.io.ByteStreams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,7 +23,7 @@ class AsicInputStream extends ZipInputStream {
 
         if (zipEntry != null && zipEntry.getName().equals("mimetype")) {
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ByteStreams.copy(this, baos);
+            ResourcePool.copy(this, baos);
 
             logger.debug("Content of mimetype: {}", baos.toString());
             if (!AsicUtils.MIMETYPE_ASICE.equals(baos.toString()))
@@ -36,4 +35,23 @@ class AsicInputStream extends ZipInputStream {
 
         return zipEntry;
     }
+
+    /**
+     * Releases the inflater without closing the underlying stream.
+     */
+    void discard() {
+        inf.end();
+    }
+
+    /**
+     * Ends the inflater when closing, as the zip stream otherwise leaves native memory for the garbage collector.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            inf.end();
+        }
+    }
 }
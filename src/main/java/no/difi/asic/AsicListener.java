@@ -0,0 +1,29 @@
+package no.difi.asic;
+
+/**
+ * Receives events while containers are written or read, e.g. to feed a metrics system.
+ * <p>
+ * Register on {@link AsicWriterFactory#setListener(AsicListener)} or {@link AsicReaderFactory#setListener(AsicListener)}.
+ * Methods are called on the thread using the writer or reader and should return quickly. No measurements are made
+ * when no listener is registered.
+ */
+public interface AsicListener {
+
+    /**
+     * Called before an entry is written or read. Only the name of the event is known at this point.
+     *
+     * @param event event for the entry, the same instance is later passed to {@link #entryFinished(AsicEntryEvent)}.
+     */
+    default void entryStarted(AsicEntryEvent event) {
+        // No action
+    }
+
+    /**
+     * Called when an entry is completely written or read.
+     *
+     * @param event sizes and time spent per phase.
+     */
+    default void entryFinished(AsicEntryEvent event) {
+        // No action
+    }
+}
@@ -0,0 +1,143 @@
+package no.difi.asic;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Creates and signs the manifests of a container from digests alone, without access to the data objects.
+ * <p>
+ * The result is handed to {@link AsicAssembler}, which streams the data objects into a container and checks their
+ * digests, so signing may be done ahead of time and away from the data.
+ */
+public class AsicManifestBuilder {
+
+    private List<AbstractAsicManifest> asicManifests;
+    private OasisManifest oasisManifest = new OasisManifest(MimeType.forString(AsicUtils.MIMETYPE_ASICE));
+    private Set<String> filenames = new HashSet<>();
+    private boolean finished = false;
+
+    AsicManifestBuilder(List<AbstractAsicManifest> asicManifests) {
+        this.asicManifests = asicManifests;
+    }
+
+    /**
+     * Adds a data object using the digest algorithm of the manifests, which must all use the same algorithm.
+     *
+     * @param filename name of the data object in the container.
+     * @param mimeType MIME type of the data object.
+     * @param digest   digest of the content of the data object.
+     * @return reference to this AsicManifestBuilder
+     */
+    public AsicManifestBuilder add(String filename, MimeType mimeType, byte[] digest) {
+        MessageDigestAlgorithm messageDigestAlgorithm = asicManifests.get(0).getMessageDigestAlgorithm();
+        return add(filename, mimeType, Collections.singletonMap(messageDigestAlgorithm, digest));
+    }
+
+    /**
+     * Adds a data object with digests for each algorithm used by the manifests.
+     *
+     * @param filename name of the data object in the container.
+     * @param mimeType MIME type of the data object.
+     * @param digests  digests of the content of the data object.
+     * @return reference to this AsicManifestBuilder
+     */
+    public AsicManifestBuilder add(String filename, MimeType mimeType, Map<MessageDigestAlgorithm, byte[]> digests) {
+        if (finished)
+            throw new IllegalStateException("Adding content to container after signing container is not supported.");
+
+        if (filename.startsWith("META-INF/"))
+            throw new IllegalStateException("Adding files to META-INF is not allowed.");
+
+        if (!filenames.add(filename))
+            throw new IllegalStateException(String.format("File already added: %s", filename));
+
+        for (AbstractAsicManifest manifest : asicManifests)
+            if (!digests.containsKey(manifest.getMessageDigestAlgorithm()))
+                throw new IllegalStateException(String.format("Missing %s digest for file %s", manifest.getMessageDigestAlgorithm(), filename));
+
+        for (AbstractAsicManifest manifest : asicManifests)
+            manifest.add(filename, mimeType, digests.get(manifest.getMessageDigestAlgorithm()));
+        oasisManifest.add(filename, mimeType);
+
+        return this;
+    }
+
+    /**
+     * @see AsicWriter#setRootEntryName(String)
+     */
+    public AsicManifestBuilder setRootEntryName(String name) {
+        boolean found = false;
+        for (AbstractAsicManifest manifest : asicManifests) {
+            if (manifest instanceof CadesAsicManifest) {
+                ((CadesAsicManifest) manifest).setRootfileForEntry(name);
+                found = true;
+            }
+        }
+
+        if (!found)
+            throw new IllegalStateException("ASiC-E XAdES does not support defining root file.");
+
+        return this;
+    }
+
+    /**
+     * Signs the manifests.
+     *
+     * @param signatureHelper signer of the manifests.
+     * @return signed META-INF entries, including the OASIS OpenDocument manifest.
+     */
+    public SignedManifests sign(SignatureHelper signatureHelper) {
+        if (finished)
+            throw new IllegalStateException("Container is already signed.");
+        finished = true;
+
+        Map<String, byte[]> entries = signManifests(asicManifests, new HashSet<>(), signatureHelper);
+        entries.put("META-INF/manifest.xml", oasisManifest.toBytes());
+
+        for (AbstractAsicManifest manifest : asicManifests)
+            manifest.release();
+
+        return new SignedManifests(entries);
+    }
+
+    /**
+     * Creates manifests and signatures, using names not found among the given entry names.
+     *
+     * @return entries by name in the order they should be written.
+     */
+    static Map<String, byte[]> signManifests(List<AbstractAsicManifest> asicManifests, Set<String> entryNames, SignatureHelper signatureHelper) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+
+        for (AbstractAsicManifest manifest : asicManifests) {
+            if (manifest instanceof CadesAsicManifest) {
+                CadesAsicManifest cadesAsicManifest = (CadesAsicManifest) manifest;
+                String manifestFilename = nextFilename(entryNames, "META-INF/" + AsicUtils.ASIC_MANIFEST_BASENAME, ".xml");
+                String signatureFilename = String.format("META-INF/signature-%s.p7s", UUID.randomUUID().toString());
+                cadesAsicManifest.setSignature(signatureFilename, "application/x-pkcs7-signature");
+
+                byte[] manifestBytes = cadesAsicManifest.toBytes();
+                entries.put(manifestFilename, manifestBytes);
+                entries.put(signatureFilename, signatureHelper.signData(manifestBytes));
+            } else {
+                String filename = nextFilename(entryNames, "META-INF/signatures", ".xml");
+                entries.put(filename, ((XadesAsicManifest) manifest).toBytes(signatureHelper));
+            }
+        }
+
+        return entries;
+    }
+
+    private static String nextFilename(Set<String> entryNames, String prefix, String suffix) {
+        String filename = prefix + suffix;
+        for (int counter = 2; entryNames.contains(filename); counter++)
+            filename = prefix + counter + suffix;
+
+        entryNames.add(filename);
+        return filename;
+    }
+}
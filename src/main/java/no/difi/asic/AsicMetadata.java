@@ -0,0 +1,160 @@
+package no.difi.asic;
+
+import no.difi.asic.pkix.CertificateValidator;
+import no.difi.asic.zipbomb.MaxSizeProtectedOutputStream;
+import no.difi.commons.asic.jaxb.asic.AsicFile;
+import no.difi.commons.asic.jaxb.asic.AsicManifest;
+import no.difi.commons.asic.jaxb.asic.Certificate;
+import no.difi.commons.asic.jaxb.opendocument.manifest.Manifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Signed metadata of a container, read from the central directory and the META-INF entries without inflating any
+ * data object.
+ * <p>
+ * Signatures of CAdES manifests are verified, and every data object listed in the manifests must be present in the
+ * container, but <b>no data object is verified against its digest</b>: all files of {@link #getAsicManifest()} are
+ * reported as not verified. Use {@link AsicReader} or {@link AsicVerifier} before trusting the content.
+ */
+public class AsicMetadata {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsicMetadata.class);
+
+    private final ManifestVerifier manifestVerifier;
+    private final AsicManifest asicManifest;
+    private final Manifest manifest;
+    private final List<String> dataObjects;
+
+    private AsicMetadata(ManifestVerifier manifestVerifier, Manifest manifest, List<String> dataObjects) {
+        this.manifestVerifier = manifestVerifier;
+        this.asicManifest = manifestVerifier.getAsicManifest();
+        this.manifest = manifest;
+        this.dataObjects = Collections.unmodifiableList(dataObjects);
+    }
+
+    static AsicMetadata read(Path path, MessageDigestAlgorithm[] messageDigestAlgorithms, CertificateValidator certificateValidator) throws IOException {
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            return read(zipFile, messageDigestAlgorithms, certificateValidator);
+        }
+    }
+
+    static AsicMetadata read(ZipFile zipFile, MessageDigestAlgorithm[] messageDigestAlgorithms, CertificateValidator certificateValidator) throws IOException {
+        ManifestVerifier manifestVerifier = new ManifestVerifier(messageDigestAlgorithms);
+        Map<String, byte[]> signingContent = new HashMap<>();
+        Manifest manifest = null;
+        List<String> dataObjects = new ArrayList<>();
+
+        ZipEntry mimetype = zipFile.getEntry("mimetype");
+        if (mimetype == null || !AsicUtils.MIMETYPE_ASICE.equals(new String(readEntry(zipFile, mimetype))))
+            throw new IllegalStateException("Content is not ASiC-E container.");
+
+        for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+            ZipEntry zipEntry = entries.nextElement();
+            String name = zipEntry.getName();
+
+            if (name.equals("mimetype")) {
+                continue;
+            } else if (!name.startsWith("META-INF/")) {
+                dataObjects.add(name);
+            } else if (AsicUtils.PATTERN_CADES_MANIFEST.matcher(name).matches()) {
+                byte[] content = readEntry(zipFile, zipEntry);
+                String sigReference = CadesAsicManifest.extractAndVerify(new String(content), manifestVerifier);
+                signingContent.put(sigReference, content);
+            } else if (AsicUtils.PATTERN_XADES_SIGNATURES.matcher(name).matches()) {
+                XadesAsicManifest.extractAndVerify(new String(readEntry(zipFile, zipEntry)), manifestVerifier);
+            } else if (AsicUtils.PATTERN_CADES_SIGNATURE.matcher(name).matches()) {
+                // Verified once all manifests are known
+                continue;
+            } else if (name.substring(9).toLowerCase().equals("manifest.xml")) {
+                manifest = OasisManifest.read(new ByteArrayInputStream(readEntry(zipFile, zipEntry)));
+            } else {
+                throw new IllegalStateException(String.format("Contains unknown metadata file: %s", name));
+            }
+        }
+
+        // Every CAdES manifest must be signed
+        for (Map.Entry<String, byte[]> entry : signingContent.entrySet()) {
+            ZipEntry signatureEntry = zipFile.getEntry(entry.getKey());
+            if (signatureEntry == null)
+                throw new IllegalStateException(String.format("Signature not verified: %s", entry.getKey()));
+
+            Certificate certificate = SignatureVerifier.validate(entry.getValue(), readEntry(zipFile, signatureEntry), certificateValidator);
+            certificate.setCert(entry.getKey());
+            manifestVerifier.addCertificate(certificate);
+            logger.debug("Verified signature {}", entry.getKey());
+        }
+
+        // The data objects are not read, so manifests and container must at least list the same files
+        AsicManifest asicManifest = manifestVerifier.getAsicManifest();
+        for (String dataObject : dataObjects)
+            if (!manifestVerifier.contains(dataObject))
+                throw new IllegalStateException(String.format("File not found in signed manifests: %s", dataObject));
+        for (AsicFile asicFile : asicManifest.getFile()) {
+            if (!dataObjects.contains(asicFile.getName()))
+                throw new IllegalStateException(String.format("File not found in container: %s", asicFile.getName()));
+            asicFile.setVerified(false);
+
+            // Sizes are declared in the central directory
+            ZipEntry zipEntry = zipFile.getEntry(asicFile.getName());
+            asicFile.setSize(zipEntry.getSize());
+            asicFile.setCompressedSize(zipEntry.getCompressedSize());
+        }
+
+        return new AsicMetadata(manifestVerifier, manifest, dataObjects);
+    }
+
+    private static byte[] readEntry(ZipFile zipFile, ZipEntry zipEntry) throws IOException {
+        MaxSizeProtectedOutputStream outputStream = new MaxSizeProtectedOutputStream();
+        try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+            ResourcePool.copy(inputStream, outputStream);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * @return signed digests of a data object per digest algorithm URI.
+     */
+    Map<String, byte[]> getDigests(String filename) {
+        return manifestVerifier.getDigests(filename);
+    }
+
+    /**
+     * Signed manifest of the container, holding root file, data objects with MIME types, digests and declared sizes,
+     * and signer certificates. Data objects are always reported as not verified.
+     *
+     * @return value of property.
+     */
+    public AsicManifest getAsicManifest() {
+        return asicManifest;
+    }
+
+    /**
+     * Property getter for the OpenDocument manifest.
+     *
+     * @return value of property, null if document is not found in container.
+     */
+    public Manifest getOasisManifest() {
+        return manifest;
+    }
+
+    /**
+     * @return names of the data objects in the order found in the central directory.
+     */
+    public List<String> getDataObjects() {
+        return dataObjects;
+    }
+}
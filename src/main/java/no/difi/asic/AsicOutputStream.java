@@ -5,52 +5,172 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.zip.CRC32;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.ZipException;
 
 /**
- * Stream handling requirements to ASiC files.
+ * Stream handling requirements to ASiC files, writing entries through an {@link AsicZipWriter}.
  */
-class AsicOutputStream extends ZipOutputStream {
+class AsicOutputStream extends OutputStream {
 
     public static final Logger logger = LoggerFactory.getLogger(AsicOutputStream.class);
 
     public static final String APPLICATION_VND_ETSI_ASIC_E_ZIP = "application/vnd.etsi.asic-e+zip";
 
+    private final AsicZipWriter zipWriter;
+
+    /** Stream of the current entry, otherwise null. */
+    private OutputStream entryOutputStream;
+
+    /** Deflater of the current entry when deflated in blocks, otherwise null. */
+    private ParallelDeflater parallelDeflater;
+
     public AsicOutputStream(OutputStream out) throws IOException {
-        super(out);
+        this(new AsicZipWriter(out));
+    }
+
+    private AsicOutputStream(AsicZipWriter zipWriter) throws IOException {
+        this.zipWriter = zipWriter;
+        writeMimetype();
+    }
+
+    /**
+     * Begins another container written to the given stream, reusing the buffer and deflater of the writer. An
+     * unfinished container is discarded.
+     */
+    void reset(OutputStream out) throws IOException {
+        entryOutputStream = null;
+        releaseParallelDeflater();
+        zipWriter.reset(out);
+        writeMimetype();
+    }
+
+    private void writeMimetype() throws IOException {
+        zipWriter.setComment("mimetype=" + APPLICATION_VND_ETSI_ASIC_E_ZIP);
+        zipWriter.writeMimetype(APPLICATION_VND_ETSI_ASIC_E_ZIP);
+    }
+
+    /**
+     * Begins writing an entry, closing the current entry if any.
+     */
+    public void putNextEntry(ZipEntry zipEntry) throws IOException {
+        closeEntry();
+        entryOutputStream = zipWriter.newEntry(zipEntry);
+    }
+
+    /**
+     * Begins writing an entry whose content is deflated in blocks on the given executor.
+     */
+    void putNextEntry(ZipEntry zipEntry, Executor executor) throws IOException {
+        closeEntry();
+        parallelDeflater = new ParallelDeflater(executor, Deflater.DEFAULT_COMPRESSION);
+        entryOutputStream = zipWriter.newEntry(zipEntry, parallelDeflater);
+    }
+
+    /**
+     * Closes the current entry, updating CRC-32 and sizes of its {@link ZipEntry}.
+     */
+    public void closeEntry() throws IOException {
+        if (entryOutputStream == null)
+            return;
+
+        try {
+            entryOutputStream.close();
+        } finally {
+            entryOutputStream = null;
+            releaseParallelDeflater();
+        }
+    }
+
+    /**
+     * Copies an entry of another container without inflating it, see
+     * {@link AsicZipWriter#copyEntry(String, ZipEntry, ReadableByteChannel)}.
+     */
+    void copyEntry(String name, ZipEntry zipEntry, ReadableByteChannel channel) throws IOException {
+        closeEntry();
+        logger.debug("Copying entry '{}' to container", name);
+        zipWriter.copyEntry(name, zipEntry, channel);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (entryOutputStream == null)
+            throw new ZipException("no current ZIP entry");
+
+        entryOutputStream.write(b, off, len);
+    }
+
+    /**
+     * Writes content held in a buffer to the current entry, see {@link AsicZipWriter#write(ByteBuffer)}.
+     */
+    void write(ByteBuffer content) throws IOException {
+        if (entryOutputStream == null)
+            throw new ZipException("no current ZIP entry");
 
-        setComment("mimetype=" + APPLICATION_VND_ETSI_ASIC_E_ZIP);
-        putMimeTypeAsFirstEntry(APPLICATION_VND_ETSI_ASIC_E_ZIP);
+        zipWriter.write(content);
     }
 
-    private void putMimeTypeAsFirstEntry(String mimeType) throws IOException {
-        ZipEntry mimetypeEntry = new ZipEntry("mimetype");
-        mimetypeEntry.setComment("mimetype=" + mimeType);
-        mimetypeEntry.setMethod(ZipEntry.STORED);
-        mimetypeEntry.setSize(mimeType.getBytes().length);
+    @Override
+    public void flush() throws IOException {
+        zipWriter.flush();
+    }
 
-        CRC32 crc32 = new CRC32();
-        crc32.update(mimeType.getBytes());
-        mimetypeEntry.setCrc(crc32.getValue());
+    /**
+     * Closes the current entry and writes the central directory, without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        closeEntry();
+        zipWriter.finish();
+    }
 
-        writeZipEntry(mimetypeEntry, mimeType.getBytes());
+    @Override
+    public void close() throws IOException {
+        try {
+            closeEntry();
+        } finally {
+            zipWriter.close();
+        }
+    }
+
+    /**
+     * Releases the deflaters and buffer without finishing the container. Has no effect when the stream is closed.
+     */
+    void discard() {
+        entryOutputStream = null;
+        releaseParallelDeflater();
+        zipWriter.discard();
     }
 
     protected void writeZipEntry(String filename, byte[] bytes) throws IOException {
         writeZipEntry(new ZipEntry(filename), bytes);
     }
 
+    /**
+     * Writes an entry held in memory, with CRC-32 and sizes known up front in its local header.
+     */
     protected void writeZipEntry(ZipEntry zipEntry, byte[] bytes) throws IOException {
         try {
             logger.debug("Writing entry '{}' to container", zipEntry.getName());
-            putNextEntry(zipEntry);
-            write(bytes);
             closeEntry();
+            zipWriter.writeEntry(zipEntry, bytes);
         } catch (IOException e) {
             throw new IOException(String.format("Unable to create new ZIP entry for %s: %s", zipEntry.getName(), e.getMessage()), e);
         }
     }
 
+    private void releaseParallelDeflater() {
+        if (parallelDeflater != null) {
+            parallelDeflater.end();
+            parallelDeflater = null;
+        }
+    }
 }
@@ -0,0 +1,473 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Container published as buffers of at most 64 KiB, created by {@link AsicWriterFactory#newPublisher(Executor)}.
+ * <p>
+ * Data objects are added as publishers or channels, followed by {@link #sign(SignatureHelper)}, and are written only
+ * as the subscriber requests buffers: content is requested from a publisher one buffer at a time, and a channel is
+ * read one buffer at a time, whenever the subscriber waits for more than what is already deflated. Buffers of
+ * content larger than {@link #CHUNK_SIZE} are deflated in slices of that size, so memory is bounded by about one
+ * buffer beyond what the subscriber requested, and no thread waits for content or for the subscriber. Work is done
+ * on the given executor, one task at a time.
+ * <p>
+ * Data objects may be added before or after subscribing, but a container may only be published once. Channels are
+ * closed when read, and should not make the reading thread wait for long, such as files; content arriving over the
+ * network is better added as a publisher. Non-blocking channels without content are read again after
+ * {@link #RETRY_DELAY_MILLIS} ms. Cancelling the subscription cancels content being read and abandons the
+ * container.
+ */
+public class AsicPublisher implements Flow.Publisher<ByteBuffer> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsicPublisher.class);
+
+    /** Size of each buffer published, and of each read from a channel. */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /** Delay before reading again from a non-blocking channel without content. */
+    static final long RETRY_DELAY_MILLIS = 10;
+
+    private final AbstractAsicWriter asicWriter;
+    private final Executor executor;
+    private final ChunkOutputStream chunks = new ChunkOutputStream();
+
+    /** Data objects and signing, in the order added. */
+    private final Queue<Step> steps = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicLong requested = new AtomicLong();
+    /** Number of signals not yet handled, the first scheduling the task handling them. */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile Flow.Subscriber<? super ByteBuffer> subscriber;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+    private boolean signed;
+
+    // Only touched by the task handling signals
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private OutputStream entryOutputStream;
+    private boolean finished;
+    private boolean terminated;
+
+    AsicPublisher(AsicWriterFactory asicWriterFactory, Executor executor) throws IOException {
+        this.asicWriter = asicWriterFactory.newContainer(chunks, false);
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a data object whose content is published as buffers, requested one at a time.
+     *
+     * @param content  publisher of the content, subscribed when the data object is written.
+     * @param filename name of the entry.
+     * @param mimeType MIME type of the entry.
+     * @return reference to this publisher.
+     */
+    public AsicPublisher add(Flow.Publisher<? extends ByteBuffer> content, String filename, MimeType mimeType) {
+        return addStep(new PublisherEntry(content, filename, mimeType));
+    }
+
+    /**
+     * Adds a data object read from a channel, closed when read.
+     *
+     * @param channel  channel holding the content.
+     * @param filename name of the entry.
+     * @param mimeType MIME type of the entry.
+     * @return reference to this publisher.
+     */
+    public AsicPublisher add(ReadableByteChannel channel, String filename, MimeType mimeType) {
+        return addStep(new ChannelEntry(channel, filename, mimeType));
+    }
+
+    /**
+     * @see AsicWriter#setRootEntryName(String)
+     */
+    public AsicPublisher setRootEntryName(String name) {
+        asicWriter.setRootEntryName(name);
+        return this;
+    }
+
+    /**
+     * Signs the container once every data object added is written, after which the container is completed.
+     *
+     * @param signatureHelper signer of the container.
+     * @return reference to this publisher.
+     */
+    public AsicPublisher sign(SignatureHelper signatureHelper) {
+        return addStep(new Signing(signatureHelper));
+    }
+
+    private synchronized AsicPublisher addStep(Step step) {
+        if (signed)
+            throw new IllegalStateException("Adding content to container after signing container is not supported.");
+
+        signed = step instanceof Signing;
+        steps.add(step);
+        schedule();
+        return this;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    // No action
+                }
+
+                @Override
+                public void cancel() {
+                    // No action
+                }
+            });
+            subscriber.onError(new IllegalStateException("Container is already published."));
+            return;
+        }
+
+        this.subscriber = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0)
+                    failure = new IllegalArgumentException(String.format("Non-positive number of buffers requested: %s", n));
+                else
+                    requested.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+                schedule();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                schedule();
+            }
+        });
+        schedule();
+    }
+
+    private void schedule() {
+        if (pending.getAndIncrement() == 0)
+            executor.execute(this::drain);
+    }
+
+    private void drain() {
+        int missed = 1;
+        do {
+            try {
+                emit();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+            missed = pending.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Hands deflated buffers to the subscriber, and writes more of the container while the subscriber waits for
+     * more than what is deflated.
+     */
+    private void emit() throws IOException {
+        while (!terminated && subscriber != null) {
+            if (cancelled) {
+                logger.debug("Publishing of container cancelled");
+                abort();
+                return;
+            }
+            if (failure != null) {
+                fail(failure);
+                return;
+            }
+
+            ByteBuffer chunk;
+            while (requested.get() > 0 && !cancelled && (chunk = chunks.ready.poll()) != null) {
+                if (requested.get() != Long.MAX_VALUE)
+                    requested.decrementAndGet();
+                subscriber.onNext(chunk);
+            }
+
+            if (finished && chunks.ready.isEmpty()) {
+                terminated = true;
+                subscriber.onComplete();
+                return;
+            }
+
+            if (cancelled)
+                continue;
+
+            // Nothing is written while what is already deflated covers the demand of the subscriber, so at most
+            // one slice of content is deflated beyond it
+            if (chunks.ready.size() >= requested.get())
+                return;
+
+            Step step = steps.peek();
+            if (step == null || !step.write())
+                return;
+        }
+    }
+
+    private void fail(Throwable throwable) {
+        if (terminated)
+            return;
+
+        abort();
+        subscriber.onError(throwable);
+    }
+
+    private void abort() {
+        terminated = true;
+
+        Step step;
+        while ((step = steps.poll()) != null)
+            step.abort();
+
+        try {
+            asicWriter.discard();
+        } catch (IOException e) {
+            logger.warn("Unable to discard container: {}", e.getMessage());
+        }
+        chunks.ready.clear();
+    }
+
+    /**
+     * Part of the container, written in one or more calls to {@link #write()}.
+     */
+    private abstract static class Step {
+
+        /**
+         * Writes more of the container.
+         *
+         * @return false when waiting for content.
+         */
+        abstract boolean write() throws IOException;
+
+        /**
+         * Releases content not yet read.
+         */
+        void abort() {
+            // No action
+        }
+    }
+
+    private class PublisherEntry extends Step implements Flow.Subscriber<ByteBuffer> {
+
+        private final Flow.Publisher<? extends ByteBuffer> content;
+        private final String filename;
+        private final MimeType mimeType;
+
+        private volatile Flow.Subscription subscription;
+        private volatile ByteBuffer received;
+        private volatile boolean completed;
+        private volatile Throwable contentFailure;
+
+        private boolean started;
+        private boolean requesting;
+
+        PublisherEntry(Flow.Publisher<? extends ByteBuffer> content, String filename, MimeType mimeType) {
+            this.content = content;
+            this.filename = filename;
+            this.mimeType = mimeType;
+        }
+
+        @Override
+        boolean write() throws IOException {
+            if (!started) {
+                started = true;
+                entryOutputStream = asicWriter.newEntry(filename, mimeType);
+                content.subscribe(this);
+                return false;
+            }
+
+            if (contentFailure != null)
+                throw new IOException(String.format("Unable to read content of %s.", filename), contentFailure);
+
+            ByteBuffer byteBuffer = received;
+            if (byteBuffer != null) {
+                writeSlice(byteBuffer);
+                if (!byteBuffer.hasRemaining()) {
+                    received = null;
+                    requesting = false;
+                }
+                return true;
+            }
+
+            if (completed) {
+                entryOutputStream.close();
+                entryOutputStream = null;
+                steps.poll();
+                return true;
+            }
+
+            // Content is requested one buffer at a time, only when the subscriber waits for more
+            if (subscription != null && !requesting) {
+                requesting = true;
+                subscription.request(1);
+            }
+            return false;
+        }
+
+        @Override
+        void abort() {
+            if (subscription != null)
+                subscription.cancel();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            schedule();
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            received = item;
+            schedule();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            contentFailure = throwable;
+            schedule();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            schedule();
+        }
+    }
+
+    private class ChannelEntry extends Step {
+
+        private final ReadableByteChannel channel;
+        private final String filename;
+        private final MimeType mimeType;
+
+        ChannelEntry(ReadableByteChannel channel, String filename, MimeType mimeType) {
+            this.channel = channel;
+            this.filename = filename;
+            this.mimeType = mimeType;
+        }
+
+        @Override
+        boolean write() throws IOException {
+            if (entryOutputStream == null)
+                entryOutputStream = asicWriter.newEntry(filename, mimeType);
+
+            int read = channel.read(ByteBuffer.wrap(buffer));
+            if (read > 0) {
+                entryOutputStream.write(buffer, 0, read);
+                return true;
+            }
+
+            if (read == 0) {
+                // Non-blocking channel without content, tried again after a delay instead of spinning
+                CompletableFuture.delayedExecutor(RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS, executor)
+                        .execute(AsicPublisher.this::schedule);
+                return false;
+            }
+
+            entryOutputStream.close();
+            entryOutputStream = null;
+            channel.close();
+            steps.poll();
+            return true;
+        }
+
+        @Override
+        void abort() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close channel of {}: {}", filename, e.getMessage());
+            }
+        }
+    }
+
+    private class Signing extends Step {
+
+        private final SignatureHelper signatureHelper;
+
+        Signing(SignatureHelper signatureHelper) {
+            this.signatureHelper = signatureHelper;
+        }
+
+        @Override
+        boolean write() throws IOException {
+            asicWriter.sign(signatureHelper);
+            chunks.close();
+            finished = true;
+            steps.poll();
+            return true;
+        }
+    }
+
+    /**
+     * Writes at most {@link #CHUNK_SIZE} bytes of content, leaving the rest until the subscriber asks for more.
+     */
+    private void writeSlice(ByteBuffer byteBuffer) throws IOException {
+        int length = Math.min(CHUNK_SIZE, byteBuffer.remaining());
+        if (byteBuffer.hasArray()) {
+            entryOutputStream.write(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), length);
+            byteBuffer.position(byteBuffer.position() + length);
+        } else {
+            byteBuffer.get(buffer, 0, length);
+            entryOutputStream.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Collects the container in buffers of {@link #CHUNK_SIZE}, ready to be published when full.
+     */
+    private static class ChunkOutputStream extends OutputStream {
+
+        private final Queue<ByteBuffer> ready = new ArrayDeque<>();
+        private ByteBuffer current;
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (current == null)
+                    current = ByteBuffer.allocate(CHUNK_SIZE);
+
+                int length = Math.min(len, current.remaining());
+                current.put(b, off, length);
+                off += length;
+                len -= length;
+
+                if (!current.hasRemaining()) {
+                    ready.add(current.flip());
+                    current = null;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (current != null && current.position() > 0)
+                ready.add(current.flip());
+            current = null;
+        }
+    }
+}
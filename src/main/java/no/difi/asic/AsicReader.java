@@ -1,5 +1,7 @@
 package no.difi.asic;
 
+import no.difi.asic.store.ContentStore;
+import no.difi.commons.asic.jaxb.asic.AsicFile;
 import no.difi.commons.asic.jaxb.asic.AsicManifest;
 
 import java.io.*;
@@ -39,6 +41,26 @@ public interface AsicReader extends Closeable {
      */
     void writeFile(OutputStream outputStream) throws IOException;
 
+    /**
+     * Writes contents of current archive entry to a content-addressed store, keyed by its digest using the first
+     * digest algorithm accepted by the reader. Content already stored is never stored again, but given another
+     * reference. It is only read and verified when its digest is known from a manifest read earlier, as in containers
+     * written with manifests first, and otherwise written aside until its digest is calculated.
+     * <p>
+     * Each call adds one reference to the returned digest as soon as the content is read. Digests are verified
+     * against manifests found later in the container when reading the container to the end, so when
+     * {@link #getNextFile()} or {@link #getAsicManifest()} rejects the container, the caller must
+     * {@link ContentStore#release(MessageDigestAlgorithm, byte[])} every digest returned for it.
+     *
+     * @param contentStore store receiving the content.
+     * @return digest the content is stored under.
+     * @throws IOException
+     * @throws UnsupportedOperationException when the reader does not support stores, the default.
+     */
+    default byte[] writeFile(ContentStore contentStore) throws IOException {
+        throw new UnsupportedOperationException("Reader does not support content stores.");
+    }
+
     /**
      * Returns InputStream to read the content.
      *
@@ -46,5 +68,31 @@ public interface AsicReader extends Closeable {
      */
     InputStream inputStream() throws IOException;
 
+    /**
+     * Provides digests, calculated using every accepted algorithm, and sizes of the current entry once its content is
+     * read to the end. The same record is found in {@link #getAsicManifest()}, where digests and sizes of all
+     * entries are kept.
+     *
+     * @return record of the current entry, null before its content is read.
+     * @throws UnsupportedOperationException when the reader does not provide records of entries, the default.
+     */
+    default AsicFile getCurrentFile() {
+        throw new UnsupportedOperationException("Reader does not provide records of entries.");
+    }
+
     AsicManifest getAsicManifest();
+
+    /**
+     * Prepares this reader for a new container, keeping message digest, collections and settings for reuse.
+     * Any container in progress is abandoned. The previous input stream is not closed, use {@link #close()} first
+     * when the reader owns it.
+     *
+     * @param inputStream stream providing the next container.
+     * @return reference to this AsicReader
+     * @throws IOException
+     * @throws UnsupportedOperationException when the reader can not be reused, the default.
+     */
+    default AsicReader reset(InputStream inputStream) throws IOException {
+        throw new UnsupportedOperationException("Reader can not be reused.");
+    }
 }
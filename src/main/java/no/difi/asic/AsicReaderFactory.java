@@ -1,10 +1,17 @@
 package no.difi.asic;
 
+import no.difi.asic.pkix.CertificateValidator;
+import no.difi.commons.asic.jaxb.asic.AsicManifest;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class AsicReaderFactory {
 
@@ -16,14 +23,117 @@ public class AsicReaderFactory {
         return newFactory(signatureMethod.getMessageDigestAlgorithm());
     }
 
-    static AsicReaderFactory newFactory(MessageDigestAlgorithm messageDigestAlgorithm) {
-        return new AsicReaderFactory(messageDigestAlgorithm);
+    /**
+     * Creates a factory accepting manifests using any of the supplied digest algorithms. Each entry is digested using
+     * all of them in a single pass, so containers holding several manifests with different algorithms can be verified.
+     *
+     * @param messageDigestAlgorithms accepted digest algorithms, the first being assumed when a manifest names none.
+     * @return instantiated AsicReaderFactory
+     */
+    public static AsicReaderFactory newFactory(MessageDigestAlgorithm... messageDigestAlgorithms) {
+        if (messageDigestAlgorithms.length == 0)
+            throw new IllegalStateException("At least one digest algorithm is required.");
+
+        return new AsicReaderFactory(messageDigestAlgorithms);
     }
 
-    private MessageDigestAlgorithm messageDigestAlgorithm;
+    /**
+     * Default limit of the total size of data objects extracted by {@link #extractAll(Path, Path)}, 4 GiB.
+     */
+    public static final long DEFAULT_MAX_EXTRACTED_SIZE = 4L * 1024 * 1024 * 1024;
+
+    private MessageDigestAlgorithm[] messageDigestAlgorithms;
+    private CertificateValidator certificateValidator;
+    private AsicListener listener;
+    private boolean manifestFirst = false;
+    private long maxExtractedSize = DEFAULT_MAX_EXTRACTED_SIZE;
+    private int readAheadDepth = 0;
+    private boolean pipelined = false;
+
+    private AsicReaderFactory(MessageDigestAlgorithm[] messageDigestAlgorithms) {
+        this.messageDigestAlgorithms = messageDigestAlgorithms.clone();
+    }
+
+    /**
+     * Enables validation of the certificate path of CAdES signers. XAdES signatures are not covered.
+     *
+     * @param certificateValidator validator to use, null to only verify signature values.
+     * @return reference to this factory.
+     */
+    public AsicReaderFactory setCertificateValidator(CertificateValidator certificateValidator) {
+        this.certificateValidator = certificateValidator;
+        return this;
+    }
+
+    /**
+     * Sets a listener receiving sizes and timings for each entry read by readers created after this call.
+     *
+     * @param listener listener to notify, null to disable measurements.
+     * @return reference to this factory.
+     */
+    public AsicReaderFactory setListener(AsicListener listener) {
+        this.listener = listener;
+        return this;
+    }
 
-    private AsicReaderFactory(MessageDigestAlgorithm messageDigestAlgorithm) {
-        this.messageDigestAlgorithm = messageDigestAlgorithm;
+    /**
+     * Requires containers to hold signed manifests before any data object, as written by
+     * {@link AsicWriterFactory#setManifestFirst(boolean)}. Each data object is then verified as soon as it is read,
+     * and containers using another layout or holding content not covered by a signature are rejected early. Only
+     * manifests with a verified CAdES signature are trusted, so containers holding XAdES signatures are rejected.
+     *
+     * @param manifestFirst true to require manifests first.
+     * @return reference to this factory.
+     */
+    public AsicReaderFactory setManifestFirst(boolean manifestFirst) {
+        this.manifestFirst = manifestFirst;
+        return this;
+    }
+
+    /**
+     * Limits the total size of data objects extracted by {@link #extractAll(Path, Path)} or visited by
+     * {@link #visit(Path, AsicVisitor, Executor)}, checked against sizes declared in the central directory before
+     * anything is inflated. Data objects are never inflated beyond their declared size. Also limits the content
+     * handed to visitors by {@link #visit(InputStream, AsicVisitor)}, where sizes are only declared up front by local
+     * headers without data descriptor. Defaults to {@link #DEFAULT_MAX_EXTRACTED_SIZE}.
+     *
+     * @param maxExtractedSize maximum number of bytes.
+     * @return reference to this factory.
+     */
+    public AsicReaderFactory setMaxExtractedSize(long maxExtractedSize) {
+        this.maxExtractedSize = maxExtractedSize;
+        return this;
+    }
+
+    /**
+     * Reads containers opened from an {@link InputStream} ahead on a background thread, so waiting for a slow source,
+     * e.g. a HTTP response, overlaps with inflating and digesting on the thread using the reader. The source is read
+     * into buffers of 256 KiB, of which up to the given depth are kept waiting. Reads waiting for the source are
+     * reported as stalled on the "Container Read" flight recorder event.
+     * <p>
+     * Readers must be closed, which stops the background thread. Streams given to {@link AsicReader#reset(InputStream)}
+     * are read as given.
+     *
+     * @param depth number of buffers read ahead, 0 to read on the thread using the reader.
+     * @return reference to this factory.
+     */
+    public AsicReaderFactory setReadAhead(int depth) {
+        this.readAheadDepth = depth;
+        return this;
+    }
+
+    /**
+     * Inflates and digests data objects written by {@link AsicReader#writeFile(OutputStream)} on two threads of
+     * their own, handing chunks of 64 KiB through bounded queues, while the thread using the reader writes them to
+     * the target. Digests are verified as when reading on one thread, and failures are thrown to the thread using the
+     * reader. Pays off for large data objects when inflating, digesting and writing take comparable time.
+     *
+     * @param pipelined true to use separate stages.
+     * @return reference to this factory.
+     */
+    public AsicReaderFactory setPipelinedRead(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
     }
 
     public AsicReader open(File file) throws IOException {
@@ -35,6 +145,120 @@ public class AsicReaderFactory {
     }
 
     public AsicReader open(InputStream inputStream) throws IOException {
-        return new AsicReaderImpl(messageDigestAlgorithm, inputStream);
+        return newReader(inputStream);
+    }
+
+    private AsicReaderImpl newReader(InputStream inputStream) throws IOException {
+        if (readAheadDepth > 0)
+            inputStream = new ReadAheadInputStream(inputStream, readAheadDepth);
+
+        AsicReaderImpl asicReader = new AsicReaderImpl(messageDigestAlgorithms, inputStream, certificateValidator, listener, manifestFirst);
+        asicReader.setPipelined(pipelined);
+        return asicReader;
+    }
+
+    /**
+     * Creates a reader of a container published as buffers, parsing and verifying it as buffers arrive on the thread
+     * delivering them. Data objects are handed to the handler as inflated, and the result of the subscriber is
+     * completed with the verified manifest.
+     *
+     * @param handler receiver of data objects.
+     * @return subscriber to the container, subscribing once.
+     * @see AsicSubscriber
+     */
+    public AsicSubscriber newSubscriber(AsicContentHandler handler) {
+        return new AsicSubscriber(handler, messageDigestAlgorithms, certificateValidator, manifestFirst);
+    }
+
+    public AsicMetadata peek(File file) throws IOException {
+        return peek(file.toPath());
+    }
+
+    /**
+     * Reads the signed metadata of a container without inflating its data objects, using only the central directory
+     * and the META-INF entries. CAdES signatures are verified, but data objects are not verified against their
+     * digests.
+     *
+     * @param file container to read.
+     * @return signed metadata, with every data object marked as not verified.
+     * @throws IOException
+     */
+    public AsicMetadata peek(Path file) throws IOException {
+        return AsicMetadata.read(file, messageDigestAlgorithms, certificateValidator);
+    }
+
+    /**
+     * Extracts and verifies all data objects of a container to a directory, using one thread per processor.
+     *
+     * @see #extractAll(Path, Path, Executor)
+     */
+    public AsicExtraction extractAll(Path file, Path targetDirectory) throws IOException {
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return extractAll(file, targetDirectory, executorService);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Extracts and verifies all data objects of a container to a directory. Data objects are inflated, digested and
+     * written concurrently, and moved in place only when all of them match the signed manifests. Entries resolving
+     * outside the target directory or to existing files are rejected before anything is inflated.
+     *
+     * @param file            container to extract.
+     * @param targetDirectory directory to write data objects to, created when missing.
+     * @param executor        executor inflating the data objects.
+     * @return extracted files with the digests calculated while writing them.
+     * @throws IOException
+     */
+    public AsicExtraction extractAll(Path file, Path targetDirectory, Executor executor) throws IOException {
+        return AsicExtraction.extract(file, targetDirectory, executor, maxExtractedSize, messageDigestAlgorithms, certificateValidator);
+    }
+
+    /**
+     * Hands every data object of a container to a visitor, reading the stream in order. MIME types are known when
+     * signed manifests come before data objects, see {@link #setManifestFirst(boolean)}. Content is never read
+     * beyond the size in the local header of each entry, nor beyond {@link #setMaxExtractedSize(long)} in total.
+     *
+     * @param inputStream container to read.
+     * @param visitor     receiver of data objects.
+     * @return signed manifest of the container, where every data object is verified.
+     * @throws IOException
+     * @see AsicVisitor
+     */
+    public AsicManifest visit(InputStream inputStream, AsicVisitor visitor) throws IOException {
+        return AsicVisiting.visit(newReader(inputStream), visitor, maxExtractedSize);
+    }
+
+    /**
+     * Hands every data object of a container to a visitor, using one thread per processor.
+     *
+     * @see #visit(Path, AsicVisitor, Executor)
+     */
+    public AsicManifest visit(Path file, AsicVisitor visitor) throws IOException {
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return visit(file, visitor, executorService);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Hands every data object of a container to a visitor, concurrently. Signed metadata is read from the central
+     * directory first, so MIME types are always known, and each data object is inflated and digested while the
+     * visitor reads it. The visitor must be thread-safe. Containers declaring more content than
+     * {@link #setMaxExtractedSize(long)} are rejected before any data object is visited.
+     *
+     * @param file     container to read.
+     * @param visitor  receiver of data objects.
+     * @param executor executor calling the visitor.
+     * @return signed manifest of the container, where every data object is verified.
+     * @throws IOException
+     * @see AsicVisitor
+     */
+    public AsicManifest visit(Path file, AsicVisitor visitor, Executor executor) throws IOException {
+        return AsicVisiting.visit(file, visitor, executor, maxExtractedSize, messageDigestAlgorithms, certificateValidator);
     }
 }
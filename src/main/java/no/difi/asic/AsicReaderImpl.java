@@ -1,5 +1,8 @@
 package no.difi.asic;
 
+import no.difi.asic.pkix.CertificateValidator;
+import no.difi.asic.store.ContentStore;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -13,6 +16,10 @@ class AsicReaderImpl extends AbstractAsicReader implements AsicReader {
         super(messageDigestAlgorithm, inputStream);
     }
 
+    AsicReaderImpl(MessageDigestAlgorithm[] messageDigestAlgorithms, InputStream inputStream, CertificateValidator certificateValidator, AsicListener listener, boolean manifestFirst) throws IOException {
+        super(messageDigestAlgorithms, inputStream, certificateValidator, listener, manifestFirst);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -34,9 +41,9 @@ class AsicReaderImpl extends AbstractAsicReader implements AsicReader {
      */
     @Override
     public void writeFile(Path path) throws IOException {
-        OutputStream outputStream = Files.newOutputStream(path);
-        writeFile(outputStream);
-        outputStream.close();
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            writeFile(outputStream);
+        }
     }
 
     /**
@@ -47,8 +54,25 @@ class AsicReaderImpl extends AbstractAsicReader implements AsicReader {
         super.writeFile(outputStream);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] writeFile(ContentStore contentStore) throws IOException {
+        return super.writeFile(contentStore);
+    }
+
     @Override
     public InputStream inputStream() {
         return super.inputStream();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsicReader reset(InputStream inputStream) {
+        open(inputStream);
+        return this;
+    }
 }
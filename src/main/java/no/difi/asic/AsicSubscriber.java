@@ -0,0 +1,540 @@
+package no.difi.asic;
+
+import no.difi.asic.pkix.CertificateValidator;
+import no.difi.asic.zipbomb.MaxSizeProtectedOutputStream;
+import no.difi.commons.asic.jaxb.asic.AsicFile;
+import no.difi.commons.asic.jaxb.asic.AsicManifest;
+import no.difi.commons.asic.jaxb.asic.Certificate;
+import no.difi.commons.asic.jaxb.opendocument.manifest.Manifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a container published as buffers, created by {@link AsicReaderFactory#newSubscriber(AsicContentHandler)}.
+ * <p>
+ * Local headers are parsed as buffers arrive, and each data object is inflated, digested and handed to the handler
+ * on the thread delivering the container, so reading a container needs no thread of its own. One buffer is
+ * requested at a time, once the previous buffer is handled. Manifests and signatures are verified as found, as
+ * when reading a stream, and the result is completed with the verified manifest when the container ends, or
+ * completed exceptionally when the container is rejected or fails.
+ */
+public class AsicSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsicSubscriber.class);
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int ZIP64_END_HEADER = 0x06064b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_DESCRIPTOR = 1 << 3;
+
+    private enum State {
+        SIGNATURE, LOCAL_HEADER, NAME, CONTENT, DESCRIPTOR, TRAILER
+    }
+
+    private final AsicContentHandler handler;
+    private final MessageDigestAlgorithm[] messageDigestAlgorithms;
+    private final MessageDigest[] messageDigests;
+    private final CertificateValidator certificateValidator;
+    private final boolean manifestFirst;
+    private final ManifestVerifier manifestVerifier;
+    private final CompletableFuture<AsicManifest> result = new CompletableFuture<>();
+
+    private final Inflater inflater = ResourcePool.acquireInflater();
+    private final CRC32 crc = new CRC32();
+    private final byte[] output = new byte[64 * 1024];
+
+    /** CAdES manifests by name of their signature, and signatures by name, until both are found. */
+    private final Map<String, byte[]> cadesManifests = new HashMap<>();
+    private final Map<String, byte[]> cadesSignatures = new HashMap<>();
+    private boolean manifestSeen = false;
+    private Manifest manifest;
+
+    private Flow.Subscription subscription;
+    private boolean terminated = false;
+
+    private State state = State.SIGNATURE;
+    /** Header or data descriptor split across buffers, null when none is pending. */
+    private ByteBuffer carry;
+    private boolean firstEntry = true;
+
+    // Current entry
+    private String name;
+    private int flags;
+    private int method;
+    private long expectedCrc;
+    private long expectedCompressedSize;
+    private long expectedSize;
+    private int nameLength;
+    private int extraLength;
+    private boolean zip64;
+    private long size;
+    private long storedRemaining;
+    /** CRC-32 of a data descriptor without signature, -1 when signed, -2 before the first field is read. */
+    private long descriptorCrc;
+    /** Content of the current entry when part of the metadata, otherwise null. */
+    private MaxSizeProtectedOutputStream metadata;
+
+    AsicSubscriber(AsicContentHandler handler, MessageDigestAlgorithm[] messageDigestAlgorithms,
+                   CertificateValidator certificateValidator, boolean manifestFirst) {
+        this.handler = handler;
+        this.messageDigestAlgorithms = messageDigestAlgorithms;
+        this.certificateValidator = certificateValidator;
+        this.manifestFirst = manifestFirst;
+        this.manifestVerifier = new ManifestVerifier(messageDigestAlgorithms);
+
+        messageDigests = new MessageDigest[messageDigestAlgorithms.length];
+        for (int i = 0; i < messageDigestAlgorithms.length; i++)
+            messageDigests[i] = ResourcePool.acquireDigest(messageDigestAlgorithms[i]);
+    }
+
+    /**
+     * @return signed manifest of the container, where every data object is verified, once the container ends.
+     */
+    public CompletableFuture<AsicManifest> getResult() {
+        return result;
+    }
+
+    /**
+     * Property getter for the OpenDocument manifest.
+     *
+     * @return value of property, null if document is not found in container.
+     */
+    public Manifest getOasisManifest() {
+        return manifest;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null || terminated) {
+            subscription.cancel();
+            return;
+        }
+
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        if (terminated)
+            return;
+
+        try {
+            ByteBuffer input = item.duplicate();
+            while (!terminated && next(input))
+                ; // Parsed as far as possible
+        } catch (IOException | RuntimeException e) {
+            subscription.cancel();
+            fail(e);
+            return;
+        }
+
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (terminated)
+            return;
+
+        try {
+            if (state != State.TRAILER)
+                throw new IllegalStateException(name == null || state == State.SIGNATURE ?
+                        "Container ends before central directory." : String.format("Container ends within entry %s.", name));
+
+            // All CAdES signatures and manifests must be verified
+            if (!cadesManifests.isEmpty())
+                throw new IllegalStateException(String.format("Signature not verified: %s", cadesManifests.keySet().iterator().next()));
+            if (!cadesSignatures.isEmpty())
+                throw new IllegalStateException(String.format("Signature not verified: %s", cadesSignatures.keySet().iterator().next()));
+
+            // All files must be signed by minimum one manifest/signature
+            manifestVerifier.verifyAllVerified();
+        } catch (RuntimeException e) {
+            fail(e);
+            return;
+        }
+
+        terminated = true;
+        release();
+        result.complete(manifestVerifier.getAsicManifest());
+    }
+
+    private void fail(Throwable throwable) {
+        if (terminated)
+            return;
+
+        terminated = true;
+        release();
+        result.completeExceptionally(throwable);
+    }
+
+    private void release() {
+        ResourcePool.releaseInflater(inflater);
+        for (int i = 0; i < messageDigestAlgorithms.length; i++)
+            ResourcePool.releaseDigest(messageDigestAlgorithms[i], messageDigests[i]);
+    }
+
+    /**
+     * Parses the next part of the container found in the input.
+     *
+     * @return false when more input is needed.
+     */
+    private boolean next(ByteBuffer input) throws IOException {
+        ByteBuffer header;
+        switch (state) {
+            case SIGNATURE:
+                if ((header = take(input, 4)) == null)
+                    return false;
+
+                int signature = header.getInt(0);
+                if (signature == LOCAL_HEADER) {
+                    state = State.LOCAL_HEADER;
+                } else if (signature == CENTRAL_HEADER || signature == END_HEADER || signature == ZIP64_END_HEADER) {
+                    // Everything needed is found in local headers
+                    state = State.TRAILER;
+                } else {
+                    throw new ZipException(String.format("Unexpected signature 0x%08x.", signature));
+                }
+                return true;
+
+            case LOCAL_HEADER:
+                if ((header = take(input, 26)) == null)
+                    return false;
+
+                flags = header.getShort(2) & 0xFFFF;
+                method = header.getShort(4) & 0xFFFF;
+                expectedCrc = header.getInt(10) & 0xFFFFFFFFL;
+                expectedCompressedSize = header.getInt(14) & 0xFFFFFFFFL;
+                expectedSize = header.getInt(18) & 0xFFFFFFFFL;
+                nameLength = header.getShort(22) & 0xFFFF;
+                extraLength = header.getShort(24) & 0xFFFF;
+                state = State.NAME;
+                return true;
+
+            case NAME:
+                if ((header = take(input, nameLength + extraLength)) == null)
+                    return false;
+
+                byte[] nameBytes = new byte[nameLength];
+                header.get(0, nameBytes);
+                name = new String(nameBytes, StandardCharsets.UTF_8);
+                readExtra(header, nameLength, extraLength);
+                startEntry();
+                return true;
+
+            case CONTENT:
+                if (!input.hasRemaining())
+                    return false;
+
+                if (method == ZipEntry.STORED)
+                    readStored(input);
+                else
+                    inflate(input);
+                return true;
+
+            case DESCRIPTOR:
+                return readDescriptor(input);
+
+            default:
+                // Central directory is not needed
+                input.position(input.limit());
+                return false;
+        }
+    }
+
+    /**
+     * Takes bytes from the input, keeping them until enough has arrived when split across buffers.
+     *
+     * @return little-endian buffer holding exactly the given number of bytes, null when more input is needed.
+     */
+    private ByteBuffer take(ByteBuffer input, int length) {
+        if (carry == null) {
+            if (input.remaining() >= length) {
+                ByteBuffer slice = input.slice(input.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+                input.position(input.position() + length);
+                return slice;
+            }
+            carry = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int available = Math.min(carry.remaining(), input.remaining());
+        carry.put(carry.position(), input, input.position(), available);
+        carry.position(carry.position() + available);
+        input.position(input.position() + available);
+        if (carry.hasRemaining())
+            return null;
+
+        ByteBuffer complete = carry.flip();
+        carry = null;
+        return complete;
+    }
+
+    private void readExtra(ByteBuffer header, int offset, int length) throws ZipException {
+        zip64 = false;
+        int position = offset;
+        while (position + 4 <= offset + length) {
+            int id = header.getShort(position) & 0xFFFF;
+            int size = header.getShort(position + 2) & 0xFFFF;
+            if (id == 0x0001) {
+                // Sizes are only present when too large for the local header, in this order
+                zip64 = true;
+                int field = position + 4;
+                if (expectedSize == 0xFFFFFFFFL && field + 8 <= position + 4 + size) {
+                    expectedSize = header.getLong(field);
+                    field += 8;
+                }
+                if (expectedCompressedSize == 0xFFFFFFFFL && field + 8 <= position + 4 + size)
+                    expectedCompressedSize = header.getLong(field);
+            }
+            position += 4 + size;
+        }
+    }
+
+    private void startEntry() throws IOException {
+        logger.debug("Found file: {}", name);
+
+        if ((flags & FLAG_ENCRYPTED) != 0)
+            throw new ZipException(String.format("Encrypted entry is not supported: %s", name));
+        if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED)
+            throw new ZipException(String.format("Unsupported compression method %s of %s.", method, name));
+        if (method == ZipEntry.STORED && (flags & FLAG_DESCRIPTOR) != 0)
+            throw new ZipException(String.format("Size of stored entry %s is unknown.", name));
+
+        boolean mimetype = firstEntry && name.equals("mimetype");
+        firstEntry = false;
+
+        crc.reset();
+        inflater.reset();
+        size = 0;
+        storedRemaining = expectedSize;
+        metadata = null;
+
+        if (mimetype || name.startsWith("META-INF/")) {
+            metadata = new MaxSizeProtectedOutputStream();
+        } else {
+            if (manifestFirst)
+                requireSignedManifests();
+
+            for (MessageDigest messageDigest : messageDigests)
+                messageDigest.reset();
+
+            AsicFile asicFile = manifestVerifier.getFile(name);
+            handler.startFile(name, asicFile == null || asicFile.getMimetype() == null ? null : MimeType.forString(asicFile.getMimetype()));
+        }
+
+        state = State.CONTENT;
+        if (method == ZipEntry.STORED && expectedSize == 0)
+            endContent(0);
+    }
+
+    /**
+     * Makes sure a data object is found after verified manifests referencing it, as done by readers.
+     */
+    private void requireSignedManifests() {
+        if (!manifestSeen)
+            throw new IllegalStateException(String.format("File found before signed manifests: %s", name));
+
+        if (!cadesManifests.isEmpty() || !cadesSignatures.isEmpty())
+            throw new IllegalStateException(String.format("Signature not verified: %s",
+                    (cadesManifests.isEmpty() ? cadesSignatures : cadesManifests).keySet().iterator().next()));
+
+        if (!manifestVerifier.contains(name))
+            throw new IllegalStateException(String.format("File not found in signed manifests: %s", name));
+    }
+
+    private void readStored(ByteBuffer input) throws IOException {
+        int length = (int) Math.min(storedRemaining, input.remaining());
+        ByteBuffer content = input.slice(input.position(), length);
+        input.position(input.position() + length);
+        storedRemaining -= length;
+
+        consume(content);
+        if (storedRemaining == 0)
+            endContent(expectedSize);
+    }
+
+    private void inflate(ByteBuffer input) throws IOException {
+        inflater.setInput(input);
+        try {
+            while (true) {
+                int length = inflater.inflate(output);
+                if (length > 0)
+                    consume(ByteBuffer.wrap(output, 0, length));
+
+                if (inflater.finished()) {
+                    // The position of the input is right after the deflate stream
+                    endContent(inflater.getBytesRead());
+                    return;
+                }
+                if (inflater.needsDictionary())
+                    throw new ZipException(String.format("Entry %s requires a preset dictionary.", name));
+                if (length == 0 && inflater.needsInput())
+                    return;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(String.format("Invalid content of %s: %s", name, e.getMessage()));
+        }
+    }
+
+    /**
+     * Hands inflated content to the handler, or collects it when part of the metadata.
+     */
+    private void consume(ByteBuffer content) throws IOException {
+        size += content.remaining();
+        if ((flags & FLAG_DESCRIPTOR) == 0 && size > expectedSize)
+            throw new IllegalStateException(String.format("Content of %s exceeds its declared size.", name));
+
+        crc.update(content.duplicate());
+
+        if (metadata != null) {
+            byte[] bytes = new byte[content.remaining()];
+            content.duplicate().get(bytes);
+            metadata.write(bytes, 0, bytes.length);
+            return;
+        }
+
+        for (MessageDigest messageDigest : messageDigests)
+            messageDigest.update(content.duplicate());
+        handler.content(content.asReadOnlyBuffer());
+    }
+
+    private void endContent(long compressedSize) throws IOException {
+        if ((flags & FLAG_DESCRIPTOR) != 0) {
+            expectedCompressedSize = compressedSize;
+            descriptorCrc = -2;
+            state = State.DESCRIPTOR;
+            return;
+        }
+
+        verify(expectedCrc, expectedCompressedSize, expectedSize, compressedSize);
+        finishEntry(compressedSize);
+    }
+
+    /**
+     * Reads the sizes and CRC-32 following content of unknown size, the signature of the data descriptor being
+     * optional.
+     */
+    private boolean readDescriptor(ByteBuffer input) throws IOException {
+        ByteBuffer descriptor;
+        if (descriptorCrc == -2) {
+            if ((descriptor = take(input, 4)) == null)
+                return false;
+
+            int first = descriptor.getInt(0);
+            descriptorCrc = first == DATA_DESCRIPTOR ? -1 : first & 0xFFFFFFFFL;
+            return true;
+        }
+
+        int offset = descriptorCrc == -1 ? 4 : 0;
+        if ((descriptor = take(input, offset + (zip64 ? 16 : 8))) == null)
+            return false;
+
+        long crcValue = descriptorCrc == -1 ? descriptor.getInt(0) & 0xFFFFFFFFL : descriptorCrc;
+        long compressedSizeValue = zip64 ? descriptor.getLong(offset) : descriptor.getInt(offset) & 0xFFFFFFFFL;
+        long sizeValue = zip64 ? descriptor.getLong(offset + 8) : descriptor.getInt(offset + 4) & 0xFFFFFFFFL;
+
+        verify(crcValue, compressedSizeValue, sizeValue, expectedCompressedSize);
+        finishEntry(expectedCompressedSize);
+        return true;
+    }
+
+    private void verify(long crcValue, long compressedSizeValue, long sizeValue, long compressedSize) throws ZipException {
+        if (sizeValue != size)
+            throw new ZipException(String.format("invalid entry size (expected %s but got %s bytes)", sizeValue, size));
+        if (compressedSizeValue != compressedSize)
+            throw new ZipException(String.format("invalid entry compressed size (expected %s but got %s bytes)", compressedSizeValue, compressedSize));
+        if (crcValue != crc.getValue())
+            throw new ZipException(String.format("invalid entry CRC (expected 0x%x but got 0x%x)", crcValue, crc.getValue()));
+    }
+
+    private void finishEntry(long compressedSize) throws IOException {
+        state = State.SIGNATURE;
+
+        if (metadata != null) {
+            handleMetadataEntry(metadata.toByteArray());
+            return;
+        }
+
+        Map<MessageDigestAlgorithm, byte[]> digests = new LinkedHashMap<>();
+        for (int i = 0; i < messageDigests.length; i++)
+            digests.put(messageDigestAlgorithms[i], messageDigests[i].digest());
+        manifestVerifier.recordEntry(name, digests, size, compressedSize);
+
+        // Mismatching digests are rejected by the verifier, leaving data objects no manifest could verify
+        if (manifestFirst && !manifestVerifier.isVerified(name))
+            throw new IllegalStateException(String.format("File not verified: %s", name));
+
+        handler.endFile();
+    }
+
+    /**
+     * Handles the mimetype entry and entries in the META-INF/ directory, as done by readers.
+     */
+    private void handleMetadataEntry(byte[] content) throws IOException {
+        if (!name.startsWith("META-INF/")) {
+            if (!AsicUtils.MIMETYPE_ASICE.equals(new String(content)))
+                throw new IllegalStateException("Content is not ASiC-E container.");
+        } else if (AsicUtils.PATTERN_CADES_MANIFEST.matcher(name).matches()) {
+            // Handling manifest in ASiC CAdES.
+            String sigReference = CadesAsicManifest.extractAndVerify(new String(content), manifestVerifier);
+            cadesManifests.put(sigReference, content);
+            verifyCades(sigReference);
+            manifestSeen = true;
+        } else if (AsicUtils.PATTERN_XADES_SIGNATURES.matcher(name).matches()) {
+            // Handling manifest in ASiC XAdES, where the signature is not verified.
+            if (manifestFirst)
+                throw new IllegalStateException(String.format("Manifest-first layout requires verified CAdES signatures: %s", name));
+
+            XadesAsicManifest.extractAndVerify(new String(content), manifestVerifier);
+        } else if (AsicUtils.PATTERN_CADES_SIGNATURE.matcher(name).matches()) {
+            // Handling signature in ASiC CAdES.
+            cadesSignatures.put(name, content);
+            verifyCades(name);
+        } else if (name.substring(9).toLowerCase().equals("manifest.xml")) {
+            // Read manifest.
+            manifest = OasisManifest.read(new ByteArrayInputStream(content));
+        } else {
+            throw new IllegalStateException(String.format("Contains unknown metadata file: %s", name));
+        }
+    }
+
+    /**
+     * Verifies a CAdES signature once both the signature and the manifest it signs are found.
+     */
+    private void verifyCades(String signatureName) {
+        if (!cadesManifests.containsKey(signatureName) || !cadesSignatures.containsKey(signatureName))
+            return;
+
+        Certificate certificate = SignatureVerifier.validate(cadesManifests.remove(signatureName), cadesSignatures.remove(signatureName), certificateValidator);
+        certificate.setCert(signatureName);
+        manifestVerifier.addCertificate(certificate);
+        logger.debug("Verified signature {}", signatureName);
+    }
+}
@@ -1,15 +1,15 @@
 package no.difi.asic;
 
-import com.google.common.io.ByteStreams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.net.URLConnection;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class AsicUtils {
 
@@ -42,16 +42,8 @@ public class AsicUtils {
      * @param inputStreams Streams for source containers.
      */
     public static void combine(OutputStream outputStream, InputStream... inputStreams) throws IOException {
-        // Statuses
-        int manifestCounter = 0;
-        int fileCounter = 0;
-        boolean containsRootFile = false;
-
         // Open target container
-        AsicOutputStream target = new AsicOutputStream(outputStream);
-
-        // Prepare to combine OASIS OpenDocument Manifests
-        OasisManifest oasisManifest = new OasisManifest(MimeType.forString(MIMETYPE_ASICE));
+        Combination combination = new Combination(outputStream);
 
         for (InputStream inputStream : inputStreams) {
             // Open source container
@@ -60,81 +52,151 @@ public class AsicUtils {
             // Read entries
             ZipEntry zipEntry;
             while ((zipEntry = source.getNextEntry()) != null) {
-                if (PATTERN_CADES_MANIFEST.matcher(zipEntry.getName()).matches()) {
+                if (zipEntry.getName().startsWith("META-INF/")) {
                     // Fetch content
                     ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                    ByteStreams.copy(source, byteArrayOutputStream);
-
-                    // Read manifest
-                    ManifestVerifier manifestVerifier = new ManifestVerifier(null);
-                    CadesAsicManifest.extractAndVerify(byteArrayOutputStream.toString(), manifestVerifier);
-
-                    // Make sure only on rootfile makes it to the source container
-                    if (manifestVerifier.getAsicManifest().getRootfile() != null) {
-                        if (containsRootFile)
-                            throw new IllegalStateException("Multiple rootfiles is not allowed when combining containers.");
-                        containsRootFile = true;
-                    }
+                    ResourcePool.copy(source, byteArrayOutputStream);
+                    byte[] content = byteArrayOutputStream.toByteArray();
 
-                    // Write manifest to container
-                    target.putNextEntry(new ZipEntry("META-INF/" + ASIC_MANIFEST_BASENAME + ++manifestCounter + ".xml"));
-                    ByteStreams.copy(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()), target);
-                } else if (PATTERN_XADES_SIGNATURES.matcher(zipEntry.getName()).matches()) {
-                    // Copy content to target container
-                    target.putNextEntry(new ZipEntry(String.format("META-INF/signatures%s.xml", ++manifestCounter)));
-                    ByteStreams.copy(source, target);
-                } else if (zipEntry.getName().equals("META-INF/manifest.xml")) {
-                    // Fetch content
-                    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                    ByteStreams.copy(source, byteArrayOutputStream);
-
-                    // Copy entries
-                    oasisManifest.append(new OasisManifest(new ByteArrayInputStream(byteArrayOutputStream.toByteArray())));
-
-                    // Nothing to write to target container
-                    target.closeEntry();
-                    continue;
+                    // Write content to container unless merged
+                    String name = combination.addMetadata(zipEntry.getName(), content);
+                    if (name != null)
+                        combination.target.writeZipEntry(name, content);
                 } else {
                     // Copy content to target container
-                    target.putNextEntry(zipEntry);
-                    ByteStreams.copy(source, target);
-
-                    if (!zipEntry.getName().startsWith("META-INF/"))
-                        fileCounter++;
+                    combination.target.putNextEntry(zipEntry);
+                    ResourcePool.copy(source, combination.target);
+                    combination.target.closeEntry();
+                    combination.fileCounter++;
                 }
 
                 source.closeEntry();
-                target.closeEntry();
             }
 
             // Close source container
             source.close();
         }
 
-        // Add manifest if it contains the same amount of files as the container.
-        if (oasisManifest.size() == fileCounter + 1)
-            target.writeZipEntry("META-INF/manifest.xml", oasisManifest.toBytes());
+        combination.finish();
+    }
+
+    /**
+     * Combine multiple containers to one container, copying entries as compressed bytes instead of inflating and
+     * deflating them again.
+     *
+     * OASIS OpenDocument manifest is regenerated if all source containers contains valid manifest.
+     *
+     * @param outputStream Stream for target container.
+     * @param paths        Files of source containers.
+     */
+    public static void combine(OutputStream outputStream, Path... paths) throws IOException {
+        // Open target container
+        Combination combination = new Combination(outputStream);
+
+        for (Path path : paths) {
+            // Open source container, once for content and once for compressed bytes
+            try (ZipFile zipFile = new ZipFile(path.toFile());
+                 FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ZipEntry mimetype = zipFile.getEntry("mimetype");
+                if (mimetype != null && !MIMETYPE_ASICE.equals(new String(readEntry(zipFile, mimetype))))
+                    throw new IllegalStateException("Content is not ASiC-E container.");
+
+                for (ZipCentralDirectory.Record record : ZipCentralDirectory.read(channel).getRecords()) {
+                    ZipEntry zipEntry = zipFile.getEntry(record.getName());
+                    String name = zipEntry.getName();
+
+                    if (name.equals("mimetype")) {
+                        continue;
+                    } else if (name.startsWith("META-INF/")) {
+                        // Nothing to write when merged
+                        name = combination.addMetadata(name, readEntry(zipFile, zipEntry));
+                        if (name == null)
+                            continue;
+                    } else {
+                        combination.fileCounter++;
+                    }
 
-        // Close target container
-        target.close();
+                    // Copy compressed content to target container
+                    channel.position(record.getDataOffset(channel));
+                    combination.target.copyEntry(name, zipEntry, channel);
+                }
+            }
+        }
+
+        combination.finish();
+    }
+
+    private static byte[] readEntry(ZipFile zipFile, ZipEntry zipEntry) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+            ResourcePool.copy(inputStream, byteArrayOutputStream);
+        }
+        return byteArrayOutputStream.toByteArray();
     }
 
+    /**
+     * Detects MIME type using the default registry.
+     *
+     * @see MimeTypeRegistry#detect(String)
+     */
     public static MimeType detectMime(String filename) throws IOException {
-        // Use Files to find content type
-        String mimeType = Files.probeContentType(Paths.get(filename));
+        return MimeTypeRegistry.defaultRegistry().detect(filename);
+    }
+
+    /**
+     * Target container of {@link #combine}, renaming manifests and signatures of the source containers.
+     */
+    private static class Combination {
 
-        // Use URLConnection to find content type
-        if (mimeType == null) {
-            logger.info("Unable to determine MIME type using Files.probeContentType(), trying URLConnection.getFileNameMap()");
-            mimeType = URLConnection.getFileNameMap().getContentTypeFor(filename);
+        private final AsicOutputStream target;
+
+        // Prepare to combine OASIS OpenDocument Manifests
+        private final OasisManifest oasisManifest = new OasisManifest(MimeType.forString(MIMETYPE_ASICE));
+
+        // Statuses
+        private int manifestCounter = 0;
+        private int fileCounter = 0;
+        private boolean containsRootFile = false;
+
+        Combination(OutputStream outputStream) throws IOException {
+            target = new AsicOutputStream(outputStream);
         }
 
-        // Throw exception if content type is not detected
-        if (mimeType == null) {
-            throw new IllegalStateException(String.format("Unable to determine MIME type of %s", filename));
+        /**
+         * @return name of the entry in the target container, or null when the entry is merged.
+         */
+        String addMetadata(String name, byte[] content) {
+            if (PATTERN_CADES_MANIFEST.matcher(name).matches()) {
+                // Read manifest
+                ManifestVerifier manifestVerifier = new ManifestVerifier();
+                CadesAsicManifest.extractAndVerify(new String(content), manifestVerifier);
+
+                // Make sure only on rootfile makes it to the source container
+                if (manifestVerifier.getAsicManifest().getRootfile() != null) {
+                    if (containsRootFile)
+                        throw new IllegalStateException("Multiple rootfiles is not allowed when combining containers.");
+                    containsRootFile = true;
+                }
+
+                return "META-INF/" + ASIC_MANIFEST_BASENAME + ++manifestCounter + ".xml";
+            } else if (PATTERN_XADES_SIGNATURES.matcher(name).matches()) {
+                return String.format("META-INF/signatures%s.xml", ++manifestCounter);
+            } else if (name.equals("META-INF/manifest.xml")) {
+                // Copy entries
+                oasisManifest.append(new OasisManifest(new ByteArrayInputStream(content)));
+                return null;
+            }
+
+            return name;
         }
 
-        return MimeType.forString(mimeType);
-    }
+        void finish() throws IOException {
+            // Add manifest if it contains the same amount of files as the container.
+            if (oasisManifest.size() == fileCounter + 1)
+                target.writeZipEntry("META-INF/manifest.xml", oasisManifest.toBytes());
 
-}
\ No newline at end of file
+            // Close target container
+            target.close();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package no.difi.asic;
 
 import com.google.common.io.ByteStreams;
+import no.difi.asic.pkix.CertificateValidator;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -8,8 +9,30 @@ import java.io.InputStream;
 public class AsicVerifier extends AbstractAsicReader {
 
     AsicVerifier(MessageDigestAlgorithm messageDigestAlgorithm, InputStream inputStream) throws IOException {
-        super(messageDigestAlgorithm, inputStream);
+        this(new MessageDigestAlgorithm[] {messageDigestAlgorithm}, inputStream, null, null, false);
+    }
+
+    AsicVerifier(MessageDigestAlgorithm[] messageDigestAlgorithms, InputStream inputStream, CertificateValidator certificateValidator, AsicListener listener, boolean manifestFirst) throws IOException {
+        super(messageDigestAlgorithms, inputStream, certificateValidator, listener, manifestFirst);
+
+        verify();
+    }
+
+    /**
+     * Verifies another container, keeping message digest and collections for reuse. The result of the previous
+     * verification is replaced.
+     *
+     * @param inputStream stream providing the container, closed when verified.
+     * @return reference to this AsicVerifier
+     * @throws IOException
+     */
+    public AsicVerifier reset(InputStream inputStream) throws IOException {
+        open(inputStream);
+        verify();
+        return this;
+    }
 
+    private void verify() throws IOException {
         while (getNextFile() != null)
             writeFile(ByteStreams.nullOutputStream());
 
@@ -1,5 +1,7 @@
 package no.difi.asic;
 
+import no.difi.asic.pkix.CertificateValidator;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -16,14 +18,62 @@ public class AsicVerifierFactory {
         return newFactory(signatureMethod.getMessageDigestAlgorithm());
     }
 
-    static AsicVerifierFactory newFactory(MessageDigestAlgorithm messageDigestAlgorithm) {
-        return new AsicVerifierFactory(messageDigestAlgorithm);
+    /**
+     * Creates a factory accepting manifests using any of the supplied digest algorithms. Each entry is digested using
+     * all of them in a single pass, so containers holding several manifests with different algorithms can be verified.
+     *
+     * @param messageDigestAlgorithms accepted digest algorithms, the first being assumed when a manifest names none.
+     * @return instantiated AsicVerifierFactory
+     */
+    public static AsicVerifierFactory newFactory(MessageDigestAlgorithm... messageDigestAlgorithms) {
+        if (messageDigestAlgorithms.length == 0)
+            throw new IllegalStateException("At least one digest algorithm is required.");
+
+        return new AsicVerifierFactory(messageDigestAlgorithms);
+    }
+
+    private MessageDigestAlgorithm[] messageDigestAlgorithms;
+    private CertificateValidator certificateValidator;
+    private AsicListener listener;
+    private boolean manifestFirst = false;
+
+    private AsicVerifierFactory(MessageDigestAlgorithm[] messageDigestAlgorithms) {
+        this.messageDigestAlgorithms = messageDigestAlgorithms.clone();
+    }
+
+    /**
+     * Enables validation of the certificate path of CAdES signers. XAdES signatures are not covered.
+     *
+     * @param certificateValidator validator to use, null to only verify signature values.
+     * @return reference to this factory.
+     */
+    public AsicVerifierFactory setCertificateValidator(CertificateValidator certificateValidator) {
+        this.certificateValidator = certificateValidator;
+        return this;
     }
 
-    private MessageDigestAlgorithm messageDigestAlgorithm;
+    /**
+     * Sets a listener receiving sizes and timings for each entry read by verifiers created after this call.
+     *
+     * @param listener listener to notify, null to disable measurements.
+     * @return reference to this factory.
+     */
+    public AsicVerifierFactory setListener(AsicListener listener) {
+        this.listener = listener;
+        return this;
+    }
 
-    private AsicVerifierFactory(MessageDigestAlgorithm messageDigestAlgorithm) {
-        this.messageDigestAlgorithm = messageDigestAlgorithm;
+    /**
+     * Requires containers to hold signed manifests before any data object, as written by
+     * {@link AsicWriterFactory#setManifestFirst(boolean)}. Each data object is then verified as soon as it is read,
+     * and containers using another layout or holding content not covered by a signature are rejected early.
+     *
+     * @param manifestFirst true to require manifests first.
+     * @return reference to this factory.
+     */
+    public AsicVerifierFactory setManifestFirst(boolean manifestFirst) {
+        this.manifestFirst = manifestFirst;
+        return this;
     }
 
     public AsicVerifier verify(File file) throws IOException {
@@ -35,6 +85,6 @@ public class AsicVerifierFactory {
     }
 
     public AsicVerifier verify(InputStream inputStream) throws IOException {
-        return new AsicVerifier(messageDigestAlgorithm, inputStream);
+        return new AsicVerifier(messageDigestAlgorithms, inputStream, certificateValidator, listener, manifestFirst);
     }
 }
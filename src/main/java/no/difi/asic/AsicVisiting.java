@@ -0,0 +1,246 @@
+package no.difi.asic;
+
+import no.difi.asic.pkix.CertificateValidator;
+import no.difi.commons.asic.jaxb.asic.AsicFile;
+import no.difi.commons.asic.jaxb.asic.AsicManifest;
+import no.difi.commons.asic.jaxb.asic.EntryDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Hands the data objects of a container to an {@link AsicVisitor}, see
+ * {@link AsicReaderFactory#visit(InputStream, AsicVisitor)} and {@link AsicReaderFactory#visit(Path, AsicVisitor)}.
+ * <p>
+ * Streams are visited in order using a reader. Containers in files have their signed metadata read from the
+ * central directory first, after which data objects are visited concurrently, each inflated from its own position
+ * in the file and digested while the visitor reads it.
+ */
+final class AsicVisiting {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsicVisiting.class);
+
+    private AsicVisiting() {
+        // No action
+    }
+
+    static AsicManifest visit(AbstractAsicReader asicReader, AsicVisitor visitor, long maxSize) throws IOException {
+        try {
+            // Sizes are declared in local headers unless a data descriptor follows the content
+            long total = 0;
+            String filename;
+            while ((filename = asicReader.getNextFile()) != null) {
+                EntryContent content = new EntryContent(asicReader.inputStream(), filename, asicReader.getDeclaredSize(), maxSize - total);
+                visitor.visitFile(filename, getMimeType(asicReader.getAsicManifest(), filename), content);
+                content.drain();
+                total += content.read;
+            }
+        } finally {
+            asicReader.close();
+        }
+
+        AsicManifest asicManifest = asicReader.getAsicManifest();
+        visitor.visitEnd(asicManifest);
+        return asicManifest;
+    }
+
+    static AsicManifest visit(Path container, AsicVisitor visitor, Executor executor, long maxSize,
+                              MessageDigestAlgorithm[] messageDigestAlgorithms, CertificateValidator certificateValidator) throws IOException {
+        try (ZipFile zipFile = new ZipFile(container.toFile())) {
+            AsicMetadata asicMetadata = AsicMetadata.read(zipFile, messageDigestAlgorithms, certificateValidator);
+            AsicManifest asicManifest = asicMetadata.getAsicManifest();
+
+            // Declared sizes are checked before anything is inflated
+            long totalSize = 0;
+            for (String dataObject : asicMetadata.getDataObjects()) {
+                long size = zipFile.getEntry(dataObject).getSize();
+                if (size < 0)
+                    throw new IllegalStateException(String.format("Size of %s is unknown.", dataObject));
+                totalSize += size;
+                if (totalSize > maxSize)
+                    throw new IllegalStateException(String.format("Content exceeds max configured size of %s bytes.", maxSize));
+            }
+
+            List<CompletableFuture<Map<MessageDigestAlgorithm, byte[]>>> futures = new ArrayList<>();
+            for (String dataObject : asicMetadata.getDataObjects()) {
+                MimeType mimeType = getMimeType(asicManifest, dataObject);
+                futures.add(CompletableFuture.supplyAsync(() -> visitEntry(zipFile, dataObject, mimeType, visitor, asicMetadata), executor));
+            }
+
+            Map<String, Map<MessageDigestAlgorithm, byte[]>> digests = new LinkedHashMap<>();
+            try {
+                for (int i = 0; i < futures.size(); i++)
+                    digests.put(asicMetadata.getDataObjects().get(i), join(futures.get(i)));
+            } finally {
+                // Visitors still running are left to finish before the container is closed
+                for (CompletableFuture<?> future : futures)
+                    future.exceptionally(t -> null).join();
+            }
+
+            for (AsicFile asicFile : asicManifest.getFile()) {
+                asicFile.setVerified(true);
+                for (Map.Entry<MessageDigestAlgorithm, byte[]> digest : digests.get(asicFile.getName()).entrySet()) {
+                    EntryDigest entryDigest = new EntryDigest();
+                    entryDigest.setAlgorithm(digest.getKey().getUri());
+                    entryDigest.setValue(digest.getValue());
+                    asicFile.getEntryDigest().add(entryDigest);
+                }
+            }
+
+            visitor.visitEnd(asicManifest);
+            return asicManifest;
+        }
+    }
+
+    private static Map<MessageDigestAlgorithm, byte[]> join(CompletableFuture<Map<MessageDigestAlgorithm, byte[]>> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    private static Map<MessageDigestAlgorithm, byte[]> visitEntry(ZipFile zipFile, String filename, MimeType mimeType,
+                                                                  AsicVisitor visitor, AsicMetadata asicMetadata) {
+        ZipEntry zipEntry = zipFile.getEntry(filename);
+
+        Map<MessageDigestAlgorithm, byte[]> expected = new EnumMap<>(MessageDigestAlgorithm.class);
+        for (Map.Entry<String, byte[]> digest : asicMetadata.getDigests(filename).entrySet())
+            expected.put(MessageDigestAlgorithm.forUri(digest.getKey()), digest.getValue());
+
+        MessageDigestAlgorithm[] algorithms = expected.keySet().toArray(new MessageDigestAlgorithm[0]);
+        MessageDigest[] messageDigests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++)
+            messageDigests[i] = ResourcePool.acquireDigest(algorithms[i]);
+
+        try {
+            logger.debug("Visiting {}", filename);
+
+            try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                // Content beyond the size declared in the central directory is never handed to the visitor
+                EntryContent content = new EntryContent(new DigestsInputStream(inputStream, messageDigests), filename, zipEntry.getSize(), Long.MAX_VALUE);
+                visitor.visitFile(filename, mimeType, content);
+                content.drain();
+            }
+
+            Map<MessageDigestAlgorithm, byte[]> digests = new EnumMap<>(MessageDigestAlgorithm.class);
+            for (int i = 0; i < algorithms.length; i++) {
+                digests.put(algorithms[i], messageDigests[i].digest());
+                if (!Arrays.equals(digests.get(algorithms[i]), expected.get(algorithms[i])))
+                    throw new IllegalStateException(String.format("Mismatching digest for file %s", filename));
+            }
+
+            return digests;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (int i = 0; i < algorithms.length; i++)
+                ResourcePool.releaseDigest(algorithms[i], messageDigests[i]);
+        }
+    }
+
+    /**
+     * @return MIME type of the data object in the signed manifests, null when not found.
+     */
+    private static MimeType getMimeType(AsicManifest asicManifest, String filename) {
+        for (AsicFile asicFile : asicManifest.getFile())
+            if (asicFile.getName().equals(filename) && asicFile.getMimetype() != null)
+                return MimeType.forString(asicFile.getMimetype());
+        return null;
+    }
+
+    /**
+     * Content of a single data object, ignoring close and never reading beyond its declared size, when known, or the
+     * given maximum size, so the rest is digested by {@link #drain()} once the visitor returns.
+     */
+    private static class EntryContent extends FilterInputStream {
+
+        private final String filename;
+        private final long declaredSize;
+        private final long maxSize;
+        private long read;
+
+        EntryContent(InputStream inputStream, String filename, long declaredSize, long maxSize) {
+            super(inputStream);
+            this.filename = filename;
+            this.declaredSize = declaredSize;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1)
+                count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int length = in.read(b, off, len);
+            if (length > 0)
+                count(length);
+            return length;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped content is still digested
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            int length;
+            while (skipped < n && (length = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) != -1)
+                skipped += length;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // Content is drained after the visitor returns
+        }
+
+        private void count(int length) {
+            read += length;
+            if (declaredSize >= 0 && read > declaredSize)
+                throw new IllegalStateException(String.format("Content of %s exceeds its declared size.", filename));
+            if (read > maxSize)
+                throw new IllegalStateException(String.format("Content of %s exceeds max configured size.", filename));
+        }
+
+        void drain() throws IOException {
+            byte[] buffer = ResourcePool.acquireBuffer();
+            try {
+                while (read(buffer, 0, buffer.length) != -1)
+                    ; // Digested while read
+            } finally {
+                ResourcePool.releaseBuffer(buffer);
+            }
+        }
+    }
+}
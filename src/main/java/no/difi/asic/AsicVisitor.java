@@ -0,0 +1,37 @@
+package no.difi.asic;
+
+import no.difi.commons.asic.jaxb.asic.AsicManifest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Receives the data objects of a container, see {@link AsicReaderFactory#visit(InputStream, AsicVisitor)}. The
+ * library reads, digests and verifies each data object, so a visitor only handles content.
+ * <p>
+ * Containers read from a {@link Path} are visited concurrently, in which case visitors must be thread-safe.
+ */
+public interface AsicVisitor {
+
+    /**
+     * Called once for each data object. Content need not be read to the end nor closed, whatever is left is digested
+     * when the visitor returns. Content is not verified until {@link #visitEnd(AsicManifest)} is called, and a
+     * failure thrown by the visitor stops reading the container.
+     *
+     * @param name     name of the data object.
+     * @param mimeType MIME type found in the signed manifests, null when no manifest is read yet.
+     * @param content  content of the data object, ending with the data object.
+     * @throws IOException
+     */
+    void visitFile(String name, MimeType mimeType, InputStream content) throws IOException;
+
+    /**
+     * Called when every data object is visited and matches the signed manifests.
+     *
+     * @param asicManifest signed manifest of the container, where every data object is verified.
+     */
+    default void visitEnd(AsicManifest asicManifest) {
+        // No action
+    }
+}
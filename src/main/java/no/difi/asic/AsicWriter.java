@@ -1,8 +1,11 @@
 package no.difi.asic;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 
 public interface AsicWriter {
@@ -80,6 +83,32 @@ public interface AsicWriter {
      */
     AsicWriter add(InputStream inputStream, String filename, MimeType mimeType) throws IOException;
 
+    /**
+     * Adds content held in memory under a given entry name and MIME type. The array is read without being copied,
+     * also when written after the manifests, and must not change until the container is signed.
+     *
+     * @param content content of the data object.
+     * @param filename the archive entry name to be used.
+     * @param mimeType explicitly identifies the MIME type of the entry.
+     * @return reference to this AsicWriter
+     * @throws IOException
+     */
+    default AsicWriter add(byte[] content, String filename, MimeType mimeType) throws IOException {
+        return add(new ByteArrayInputStream(content), filename, mimeType);
+    }
+
+    /**
+     * Adds the remaining content of a buffer, heap or direct, under a given entry name and MIME type. The position
+     * of the buffer is left unchanged, and the content must not change until the container is signed.
+     *
+     * @see #add(byte[], String, MimeType)
+     */
+    default AsicWriter add(ByteBuffer content, String filename, MimeType mimeType) throws IOException {
+        byte[] bytes = new byte[content.remaining()];
+        content.duplicate().get(bytes);
+        return add(bytes, filename, mimeType);
+    }
+
     /**
      * Specifies which entry (file) represents the "root" document, i.e. which business document to read first.
      *
@@ -138,4 +167,17 @@ public interface AsicWriter {
      * @throws IOException
      */
     AsicWriter sign(SignatureHelper signatureHelper) throws IOException;
+
+    /**
+     * Prepares this writer for a new container, keeping manifests, message digest and settings for reuse.
+     * An unsigned container in progress is abandoned. Neither the previous nor the new stream is closed by the writer.
+     *
+     * @param outputStream stream into which the next container will be written.
+     * @return reference to this AsicWriter
+     * @throws IOException
+     * @throws UnsupportedOperationException when the writer can not be reused, the default.
+     */
+    default AsicWriter reset(OutputStream outputStream) throws IOException {
+        throw new UnsupportedOperationException("Writer can not be reused.");
+    }
 }
@@ -1,5 +1,6 @@
 package no.difi.asic;
 
+import no.difi.asic.pkix.CertificateValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -8,6 +9,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Creates AsicWriter instances according to the supplied parameters.
@@ -34,13 +39,115 @@ public class AsicWriterFactory {
      * @see SignatureMethod
      */
     public static AsicWriterFactory newFactory(SignatureMethod signatureMethod) {
-        return new AsicWriterFactory(signatureMethod);
+        return newFactory(signatureMethod, signatureMethod.getMessageDigestAlgorithm());
+    }
+
+    /**
+     * Creates an AsicWriterFactory using the supplied signature method and digest algorithm.
+     *
+     * @param signatureMethod the signature method to be used.
+     * @param messageDigestAlgorithm digest algorithm used in the manifest.
+     * @return instantiated AsicWriterFactory
+     */
+    public static AsicWriterFactory newFactory(SignatureMethod signatureMethod, MessageDigestAlgorithm messageDigestAlgorithm) {
+        return new AsicWriterFactory(signatureMethod, messageDigestAlgorithm);
     }
 
     private SignatureMethod signatureMethod;
+    private MessageDigestAlgorithm messageDigestAlgorithm;
+    private List<SignatureMethod> extraSignatureMethods = new ArrayList<>();
+    private List<MessageDigestAlgorithm> extraMessageDigestAlgorithms = new ArrayList<>();
+    private MimeTypeRegistry mimeTypeRegistry = MimeTypeRegistry.defaultRegistry();
+    private AsicListener listener;
+    private boolean manifestFirst = false;
+    private Executor deflateExecutor;
+    private CertificateValidator certificateValidator;
+
+    /** Writer of each thread, handed out again by {@link #newReusableContainer(OutputStream)} once signed. */
+    private final ThreadLocal<AbstractAsicWriter> reusableWriters = new ThreadLocal<>();
 
-    private AsicWriterFactory(SignatureMethod signatureMethod) {
+    private AsicWriterFactory(SignatureMethod signatureMethod, MessageDigestAlgorithm messageDigestAlgorithm) {
         this.signatureMethod = signatureMethod;
+        this.messageDigestAlgorithm = messageDigestAlgorithm;
+    }
+
+    /**
+     * Adds another manifest and signature to containers created by this factory. Digests for all manifests are
+     * computed in the same pass over the content of each entry, and all signatures are made by the same signer.
+     *
+     * @param signatureMethod signature method of the additional signature.
+     * @param messageDigestAlgorithm digest algorithm used in the additional manifest.
+     * @return reference to this factory.
+     */
+    public AsicWriterFactory addSignature(SignatureMethod signatureMethod, MessageDigestAlgorithm messageDigestAlgorithm) {
+        extraSignatureMethods.add(signatureMethod);
+        extraMessageDigestAlgorithms.add(messageDigestAlgorithm);
+        return this;
+    }
+
+    /**
+     * Sets the registry used to detect the MIME type of entries added without an explicit MIME type.
+     *
+     * @param mimeTypeRegistry registry to use.
+     * @return reference to this factory.
+     * @see MimeTypeRegistry#defaultRegistry()
+     */
+    public AsicWriterFactory setMimeTypeRegistry(MimeTypeRegistry mimeTypeRegistry) {
+        this.mimeTypeRegistry = mimeTypeRegistry;
+        return this;
+    }
+
+    /**
+     * Sets a listener receiving sizes and timings for each entry written by writers created after this call.
+     *
+     * @param listener listener to notify, null to disable measurements.
+     * @return reference to this factory.
+     */
+    public AsicWriterFactory setListener(AsicListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Writes manifests and signatures right after the mimetype entry, so receivers may verify signatures before
+     * reading any data object. Data objects are then read twice, once when added and once when the container is
+     * signed, so writers only accept content which may be read twice, such as files. Containers assembled from
+     * signed manifests use the same layout without reading data objects twice. Only CAdES signatures are supported,
+     * as readers do not verify XAdES signatures.
+     *
+     * @param manifestFirst true to write manifests and signatures first.
+     * @return reference to this factory.
+     */
+    public AsicWriterFactory setManifestFirst(boolean manifestFirst) {
+        this.manifestFirst = manifestFirst;
+        return this;
+    }
+
+    /**
+     * Deflates each data object in blocks of 128 KiB compressed concurrently on the given executor, so a single large
+     * data object is compressed using several cores. Blocks are primed with the end of the previous block and
+     * stitched into one deflate stream, so compression is close to deflating on one thread. Digests and CRC-32 are
+     * still calculated on the writing thread.
+     *
+     * @param deflateExecutor executor compressing blocks, null to deflate on the writing thread.
+     * @return reference to this factory.
+     */
+    public AsicWriterFactory setParallelDeflate(Executor deflateExecutor) {
+        this.deflateExecutor = deflateExecutor;
+        return this;
+    }
+
+    /**
+     * Sets the validator of signers of CAdES manifests found in containers to {@link #append(Path)} to. Digests of
+     * existing manifests are only reused when the signature of the manifest is valid and its signer passes the
+     * validator, otherwise every data object is digested from its content.
+     *
+     * @param certificateValidator validator of existing signers, null to always digest data objects when appending.
+     * @return reference to this factory.
+     */
+    public AsicWriterFactory setCertificateValidator(CertificateValidator certificateValidator) {
+        this.certificateValidator = certificateValidator;
+        return this;
     }
 
     /**
@@ -85,14 +192,120 @@ public class AsicWriterFactory {
         return newContainer(outputStream, false);
     }
 
-    AsicWriter newContainer(OutputStream outputStream, boolean closeStreamOnClose) throws IOException {
+    /**
+     * Creates a writer of the supplied output stream, reusing the writer of the calling thread through
+     * {@link AsicWriter#reset(OutputStream)} once its previous container is signed. Manifests, digests and buffers
+     * are then kept, so writing many small containers on the same threads allocates next to nothing once warm.
+     * <p>
+     * A writer must not be used once signed, as it is handed out again. Writers keep the settings of this factory
+     * from when they were created, so the factory should not be changed after the first call.
+     *
+     * @param outputStream stream into which the archive will be written, not closed by the writer.
+     * @return an instance of AsicWriter
+     * @throws IOException
+     */
+    public AsicWriter newReusableContainer(OutputStream outputStream) throws IOException {
+        AbstractAsicWriter asicWriter = reusableWriters.get();
+        if (asicWriter != null && asicWriter.finished)
+            return asicWriter.reset(outputStream);
+
+        // Writer of the thread is busy with a container, or not yet created
+        asicWriter = newContainer(outputStream, false);
+        reusableWriters.set(asicWriter);
+        return asicWriter;
+    }
+
+    /**
+     * Creates a container published as buffers, handling content and requests of the subscriber in the common
+     * fork-join pool.
+     *
+     * @see #newPublisher(Executor)
+     */
+    public AsicPublisher newPublisher() throws IOException {
+        return newPublisher(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a container published as buffers, written only as fast as the subscriber requests them. Data objects
+     * are added as publishers or channels, so neither content nor the container passes through blocking streams.
+     * The manifest-first layout is not supported, as content is read once.
+     *
+     * @param executor executor handling content and requests of the subscriber, one task at a time.
+     * @return an instance of AsicPublisher
+     * @throws IOException
+     * @see AsicPublisher
+     */
+    public AsicPublisher newPublisher(Executor executor) throws IOException {
+        if (manifestFirst)
+            throw new IllegalStateException("Manifest-first layout requires content that can be read twice, such as a Path or a byte array.");
+
+        return new AsicPublisher(this, executor);
+    }
+
+    /**
+     * Prepares adding the manifests and signatures of this factory to an existing container. Data objects are left
+     * as they are, so they are neither inflated nor compressed again. Digests of existing manifests are only reused
+     * for signers trusted by the validator set through {@link #setCertificateValidator(CertificateValidator)}.
+     *
+     * @param path the existing container, replaced once the new container is written.
+     * @return an instance of AsicAppender
+     * @see AsicAppender
+     */
+    public AsicAppender append(Path path) {
+        return new AsicAppender(path, newManifests(), mimeTypeRegistry, certificateValidator);
+    }
+
+    /**
+     * Prepares signing of manifests built from digests, leaving the data objects to {@link #assemble}.
+     *
+     * @return an instance of AsicManifestBuilder
+     */
+    public AsicManifestBuilder newManifestBuilder() {
+        return new AsicManifestBuilder(newManifests());
+    }
+
+    /**
+     * Creates a container from META-INF entries signed ahead of time. The data objects are checked against the
+     * digests in the signed manifests while written.
+     *
+     * @param signedManifests entries created by {@link AsicManifestBuilder#sign(SignatureHelper)}.
+     * @param outputStream stream into which the container will be written.
+     * @return an instance of AsicAssembler
+     * @throws IOException
+     */
+    public AsicAssembler assemble(SignedManifests signedManifests, OutputStream outputStream) throws IOException {
+        return new AsicAssembler(signedManifests, outputStream, manifestFirst);
+    }
+
+    private List<AbstractAsicManifest> newManifests() {
+        List<AbstractAsicManifest> asicManifests = new ArrayList<>();
+        asicManifests.add(AbstractAsicManifest.newManifest(signatureMethod, messageDigestAlgorithm));
+        for (int i = 0; i < extraSignatureMethods.size(); i++)
+            asicManifests.add(AbstractAsicManifest.newManifest(extraSignatureMethods.get(i), extraMessageDigestAlgorithms.get(i)));
+        return asicManifests;
+    }
+
+    AbstractAsicWriter newContainer(OutputStream outputStream, boolean closeStreamOnClose) throws IOException {
+        if (manifestFirst && (signatureMethod == SignatureMethod.XAdES || extraSignatureMethods.contains(SignatureMethod.XAdES)))
+            throw new IllegalStateException("Manifest-first layout requires CAdES signatures.");
+
+        AbstractAsicWriter asicWriter;
         switch (signatureMethod) {
             case CAdES:
-                return new CadesAsicWriter(signatureMethod, outputStream, closeStreamOnClose);
+                asicWriter = new CadesAsicWriter(messageDigestAlgorithm, outputStream, closeStreamOnClose, mimeTypeRegistry, listener);
+                break;
             case XAdES:
-                return new XadesAsicWriter(signatureMethod, outputStream, closeStreamOnClose);
+                asicWriter = new XadesAsicWriter(messageDigestAlgorithm, outputStream, closeStreamOnClose, mimeTypeRegistry, listener);
+                break;
             default:
                 throw new IllegalStateException(String.format("Not implemented: %s", signatureMethod));
         }
+
+        for (int i = 0; i < extraSignatureMethods.size(); i++)
+            asicWriter.addManifest(AbstractAsicManifest.newManifest(extraSignatureMethods.get(i), extraMessageDigestAlgorithms.get(i)));
+        asicWriter.setManifestFirst(manifestFirst);
+        asicWriter.setDeflateExecutor(deflateExecutor);
+
+        return asicWriter;
     }
 }
@@ -0,0 +1,703 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * ZIP writer made for ASiC containers, writing through its own buffer to a channel.
+ * <p>
+ * Entries are written one at a time in one of three ways:
+ * <ul>
+ * <li>streamed through {@link #newEntry(ZipEntry, Deflater)}, with CRC-32 and sizes in a data descriptor,</li>
+ * <li>written from memory through {@link #writeEntry(ZipEntry, byte[])}, with CRC-32 and sizes in the local
+ * header,</li>
+ * <li>copied as compressed bytes from another container through
+ * {@link #copyEntry(String, ZipEntry, ReadableByteChannel)}, without inflating or deflating anything.</li>
+ * </ul>
+ * Extra fields are only written when ZIP64 is needed, which also applies to the end records. The stored
+ * {@code mimetype} entry written by {@link #writeMimetype(String)} thus starts at a fixed offset with no extra
+ * field, as required by ASiC. Streamed entries get an 8 byte data descriptor only when their sizes need it, in the
+ * same way as {@link java.util.zip.ZipOutputStream}.
+ */
+class AsicZipWriter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsicZipWriter.class);
+
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_LENGTH = 30;
+    private static final int DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int RECORD_SIGNATURE = 0x02014b50;
+    private static final int RECORD_LENGTH = 46;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_LENGTH = 56;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_LENGTH = 22;
+
+    private static final int ZIP64_EXTRA = 0x0001;
+
+    private static final int FLAG_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int VERSION_ZIP64 = 45;
+
+    /** Sizes and offsets from this value on are only found in ZIP64 fields. */
+    static final long ZIP64_SIZE = 0xFFFFFFFFL;
+
+    /** Number of entries from which the ZIP64 end records are written. */
+    static final int ZIP64_ENTRIES = 0xFFFF;
+
+    /** Least room in the buffer handed to a deflater. */
+    private static final int DEFLATE_ROOM = 1024;
+
+    private WritableByteChannel channel;
+
+    /** Pooled buffer and deflater, released when the container is finished or discarded. */
+    private ByteBuffer buffer = ResourcePool.acquireWriteBuffer();
+    private Deflater deflater = ResourcePool.acquireDeflater();
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+
+    private byte[] comment = new byte[0];
+
+    /** Bytes handed to the channel. */
+    private long written = 0;
+
+    private EntryOutputStream current;
+    private boolean finished = false;
+    private boolean closed = false;
+
+    AsicZipWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    AsicZipWriter(OutputStream outputStream) {
+        this(new OutputStreamChannel(outputStream));
+    }
+
+    /**
+     * Prepares writing another container to the given stream, keeping the buffer and deflater of an unfinished
+     * container, or acquiring them again when released.
+     */
+    void reset(OutputStream outputStream) {
+        channel = new OutputStreamChannel(outputStream);
+        if (buffer == null)
+            buffer = ResourcePool.acquireWriteBuffer();
+        if (deflater == null)
+            deflater = ResourcePool.acquireDeflater();
+        buffer.clear();
+
+        entries.clear();
+        names.clear();
+        comment = new byte[0];
+        written = 0;
+        current = null;
+        finished = false;
+        closed = false;
+    }
+
+    /**
+     * @return position in the container of the next byte written.
+     */
+    long getPosition() {
+        return written + (buffer == null ? 0 : buffer.position());
+    }
+
+    /**
+     * Sets the comment of the container, written at the very end.
+     */
+    void setComment(String comment) {
+        byte[] bytes = comment.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF)
+            throw new IllegalStateException("ZIP comment is too long.");
+        this.comment = bytes;
+    }
+
+    /**
+     * Writes the stored {@code mimetype} entry, which must be the first entry of the container.
+     */
+    void writeMimetype(String mimeType) throws IOException {
+        if (!entries.isEmpty())
+            throw new IllegalStateException("The mimetype must be the first entry of the container.");
+
+        ZipEntry zipEntry = new ZipEntry("mimetype");
+        zipEntry.setMethod(ZipEntry.STORED);
+        zipEntry.setComment("mimetype=" + mimeType);
+        writeEntry(zipEntry, mimeType.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Writes an entry held in memory, deflated unless the entry is {@link ZipEntry#STORED}. CRC-32 and sizes are
+     * written in the local header and updated on the given entry.
+     */
+    void writeEntry(ZipEntry zipEntry, byte[] bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        zipEntry.setCrc(crc.getValue());
+        zipEntry.setSize(bytes.length);
+
+        byte[] content = bytes;
+        if (zipEntry.getMethod() != ZipEntry.STORED) {
+            zipEntry.setMethod(ZipEntry.DEFLATED);
+            content = deflate(bytes);
+        }
+        zipEntry.setCompressedSize(content.length);
+
+        putEntry(zipEntry.getName(), zipEntry, false);
+        write(content, 0, content.length);
+    }
+
+    /**
+     * Begins an entry deflated by the deflater of the writer, see {@link #newEntry(ZipEntry, Deflater)}.
+     */
+    OutputStream newEntry(ZipEntry zipEntry) throws IOException {
+        return newEntry(zipEntry, deflater);
+    }
+
+    /**
+     * Begins an entry whose content is written to the returned stream, and which ends when the stream is closed.
+     * <p>
+     * Entries are deflated by the given deflater, which must produce raw deflate data, unless the entry is
+     * {@link ZipEntry#STORED}. Stored entries must have their size and CRC-32 set, which are verified when the entry
+     * ends. CRC-32 and sizes of deflated entries are written in a data descriptor. Both are updated on the given
+     * entry when it ends.
+     */
+    OutputStream newEntry(ZipEntry zipEntry, Deflater deflater) throws IOException {
+        Entry entry;
+        if (zipEntry.getMethod() == ZipEntry.STORED) {
+            if (zipEntry.getSize() < 0 || zipEntry.getCrc() < 0)
+                throw new IllegalStateException(String.format("Size and CRC-32 of stored entry %s must be known.", zipEntry.getName()));
+
+            zipEntry.setCompressedSize(zipEntry.getSize());
+            entry = putEntry(zipEntry.getName(), zipEntry, false);
+            current = new EntryOutputStream(entry, zipEntry, null);
+        } else {
+            zipEntry.setMethod(ZipEntry.DEFLATED);
+            deflater.reset();
+            entry = putEntry(zipEntry.getName(), zipEntry, true);
+            current = new EntryOutputStream(entry, zipEntry, deflater);
+        }
+        return current;
+    }
+
+    /**
+     * Writes content of the current entry held in a buffer, which is read without copying it to an array, so direct
+     * buffers are handed to the deflater as they are. The position of the buffer is moved to its limit.
+     */
+    void write(ByteBuffer content) throws IOException {
+        if (current == null)
+            throw new IllegalStateException("No entry to write.");
+
+        current.write(content);
+    }
+
+    /**
+     * Copies an entry as compressed bytes read from the given channel, e.g. an entry of another container. Method,
+     * CRC-32, sizes and time are taken from the given entry, while the name is given separately, making it
+     * possible to rename entries while copying them.
+     */
+    void copyEntry(String name, ZipEntry zipEntry, ReadableByteChannel source) throws IOException {
+        if (zipEntry.getMethod() < 0 || zipEntry.getCrc() < 0 || zipEntry.getSize() < 0 || zipEntry.getCompressedSize() < 0)
+            throw new IllegalStateException(String.format("Method, CRC-32 and sizes of copied entry %s must be known.", zipEntry.getName()));
+
+        putEntry(name, zipEntry, false);
+
+        long remaining = zipEntry.getCompressedSize();
+        while (remaining > 0) {
+            if (!buffer.hasRemaining())
+                flushBuffer();
+
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + (int) Math.min(buffer.remaining(), remaining));
+            int read = source.read(buffer);
+            buffer.limit(limit);
+
+            if (read < 0)
+                throw new IllegalStateException(String.format("Unexpected end of copied entry %s.", zipEntry.getName()));
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Hands buffered bytes to the channel, flushing the underlying stream when writing to a stream.
+     */
+    void flush() throws IOException {
+        if (buffer != null)
+            flushBuffer();
+        if (channel instanceof OutputStreamChannel)
+            ((OutputStreamChannel) channel).outputStream.flush();
+    }
+
+    /**
+     * Ends the current entry, if any, and writes the central directory. Does not close the channel.
+     */
+    void finish() throws IOException {
+        if (finished)
+            return;
+
+        if (current != null)
+            current.close();
+
+        long offset = getPosition();
+        for (Entry entry : entries)
+            writeRecord(entry);
+        long size = getPosition() - offset;
+
+        if (entries.size() >= ZIP64_ENTRIES || offset >= ZIP64_SIZE || size >= ZIP64_SIZE)
+            writeZip64End(offset, size);
+        writeEnd(offset, size);
+
+        flushBuffer();
+        finished = true;
+        release();
+
+        logger.debug("Wrote {} entries in {} bytes", entries.size(), getPosition());
+    }
+
+    /**
+     * Finishes the container and closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        try {
+            finish();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /**
+     * Releases the buffer and deflater of the writer without finishing the container. The channel is left open.
+     */
+    void discard() {
+        current = null;
+        release();
+    }
+
+    private void release() {
+        if (buffer != null) {
+            ResourcePool.releaseWriteBuffer(buffer);
+            buffer = null;
+        }
+        if (deflater != null) {
+            ResourcePool.releaseDeflater(deflater);
+            deflater = null;
+        }
+    }
+
+    private Entry putEntry(String name, ZipEntry zipEntry, boolean descriptor) throws IOException {
+        if (finished)
+            throw new IllegalStateException("Container is already finished.");
+        if (current != null)
+            throw new IllegalStateException(String.format("Entry %s is not closed.", current.zipEntry.getName()));
+        if (!names.add(name))
+            throw new ZipException("duplicate entry: " + name);
+
+        Entry entry = new Entry(name, zipEntry, descriptor, getPosition());
+        entries.add(entry);
+
+        // Sizes known up front needing ZIP64 are found in an extra field of the local header
+        boolean zip64 = !descriptor && entry.sizesNeedZip64();
+
+        ByteBuffer header = allocate(LOCAL_LENGTH + entry.name.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_SIGNATURE);
+        header.putShort((short) entry.version(zip64));
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt((int) entry.dosTime);
+        if (descriptor) {
+            header.putInt(0);
+            header.putInt(0);
+            header.putInt(0);
+        } else {
+            header.putInt((int) entry.crc);
+            header.putInt((int) (zip64 ? ZIP64_SIZE : entry.compressedSize));
+            header.putInt((int) (zip64 ? ZIP64_SIZE : entry.size));
+        }
+        header.putShort((short) entry.name.length);
+        header.putShort((short) (zip64 ? 20 : 0));
+        header.put(entry.name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA);
+            header.putShort((short) 16);
+            header.putLong(entry.size);
+            header.putLong(entry.compressedSize);
+        }
+        write(header.array(), 0, header.position());
+
+        return entry;
+    }
+
+    private void writeDescriptor(Entry entry) throws IOException {
+        boolean zip64 = entry.sizesNeedZip64();
+
+        ByteBuffer descriptor = allocate(zip64 ? 24 : 16);
+        descriptor.putInt(DESCRIPTOR_SIGNATURE);
+        descriptor.putInt((int) entry.crc);
+        if (zip64) {
+            descriptor.putLong(entry.compressedSize);
+            descriptor.putLong(entry.size);
+        } else {
+            descriptor.putInt((int) entry.compressedSize);
+            descriptor.putInt((int) entry.size);
+        }
+        write(descriptor.array(), 0, descriptor.position());
+    }
+
+    private void writeRecord(Entry entry) throws IOException {
+        boolean zip64Sizes = entry.sizesNeedZip64();
+        boolean zip64Offset = entry.offset >= ZIP64_SIZE;
+        int extraLength = zip64Sizes || zip64Offset ? 4 + (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0) : 0;
+        int version = entry.version(extraLength > 0);
+
+        ByteBuffer record = allocate(RECORD_LENGTH + entry.name.length + extraLength + entry.comment.length);
+        record.putInt(RECORD_SIGNATURE);
+        record.putShort((short) version);
+        record.putShort((short) version);
+        record.putShort((short) entry.flags);
+        record.putShort((short) entry.method);
+        record.putInt((int) entry.dosTime);
+        record.putInt((int) entry.crc);
+        record.putInt((int) (zip64Sizes ? ZIP64_SIZE : entry.compressedSize));
+        record.putInt((int) (zip64Sizes ? ZIP64_SIZE : entry.size));
+        record.putShort((short) entry.name.length);
+        record.putShort((short) extraLength);
+        record.putShort((short) entry.comment.length);
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putInt(0);
+        record.putInt((int) (zip64Offset ? ZIP64_SIZE : entry.offset));
+        record.put(entry.name);
+        if (extraLength > 0) {
+            record.putShort((short) ZIP64_EXTRA);
+            record.putShort((short) (extraLength - 4));
+            if (zip64Sizes) {
+                record.putLong(entry.size);
+                record.putLong(entry.compressedSize);
+            }
+            if (zip64Offset)
+                record.putLong(entry.offset);
+        }
+        record.put(entry.comment);
+        write(record.array(), 0, record.position());
+    }
+
+    private void writeZip64End(long offset, long size) throws IOException {
+        long position = getPosition();
+
+        ByteBuffer end = allocate(ZIP64_END_LENGTH + ZIP64_LOCATOR_LENGTH);
+        end.putInt(ZIP64_END_SIGNATURE);
+        end.putLong(ZIP64_END_LENGTH - 12);
+        end.putShort((short) VERSION_ZIP64);
+        end.putShort((short) VERSION_ZIP64);
+        end.putInt(0);
+        end.putInt(0);
+        end.putLong(entries.size());
+        end.putLong(entries.size());
+        end.putLong(size);
+        end.putLong(offset);
+
+        end.putInt(ZIP64_LOCATOR_SIGNATURE);
+        end.putInt(0);
+        end.putLong(position);
+        end.putInt(1);
+        write(end.array(), 0, end.position());
+    }
+
+    private void writeEnd(long offset, long size) throws IOException {
+        ByteBuffer end = allocate(END_LENGTH + comment.length);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(entries.size(), ZIP64_ENTRIES));
+        end.putShort((short) Math.min(entries.size(), ZIP64_ENTRIES));
+        end.putInt((int) Math.min(size, ZIP64_SIZE));
+        end.putInt((int) Math.min(offset, ZIP64_SIZE));
+        end.putShort((short) comment.length);
+        end.put(comment);
+        write(end.array(), 0, end.position());
+    }
+
+    private byte[] deflate(byte[] bytes) {
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length / 2 + 64);
+        byte[] chunk = ResourcePool.acquireBuffer();
+        try {
+            while (!deflater.finished())
+                outputStream.write(chunk, 0, deflater.deflate(chunk));
+        } finally {
+            ResourcePool.releaseBuffer(chunk);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Lets the deflater write straight into the buffer.
+     */
+    private void deflate(Deflater deflater) throws IOException {
+        if (buffer.remaining() < DEFLATE_ROOM)
+            flushBuffer();
+
+        int length = deflater.deflate(buffer.array(), buffer.position(), buffer.remaining());
+        buffer.position(buffer.position() + length);
+    }
+
+    private void write(byte[] bytes, int off, int len) throws IOException {
+        if (len > buffer.remaining()) {
+            flushBuffer();
+
+            // Large writes bypass the buffer
+            if (len >= buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes, off, len));
+                return;
+            }
+        }
+
+        buffer.put(bytes, off, len);
+    }
+
+    private void writeBuffer(ByteBuffer content) throws IOException {
+        if (content.remaining() > buffer.remaining()) {
+            flushBuffer();
+
+            // Large writes bypass the buffer
+            if (content.remaining() >= buffer.capacity()) {
+                writeFully(content);
+                return;
+            }
+        }
+
+        buffer.put(content);
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining())
+            written += channel.write(source);
+    }
+
+    private static ByteBuffer allocate(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Converts a time to the MS-DOS date and time of ZIP headers, in the local time zone.
+     */
+    static long dosTime(long time) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        if (dateTime.getYear() < 1980)
+            return (1 << 21) | (1 << 16);
+
+        return ((long) (dateTime.getYear() - 1980) << 25)
+                | ((long) dateTime.getMonthValue() << 21)
+                | ((long) dateTime.getDayOfMonth() << 16)
+                | ((long) dateTime.getHour() << 11)
+                | ((long) dateTime.getMinute() << 5)
+                | ((long) dateTime.getSecond() >> 1);
+    }
+
+    /**
+     * Stream of an entry, ending the entry when closed.
+     */
+    private class EntryOutputStream extends OutputStream {
+
+        private final Entry entry;
+        private final ZipEntry zipEntry;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final long start;
+        private long size = 0;
+        private boolean closed = false;
+
+        EntryOutputStream(Entry entry, ZipEntry zipEntry, Deflater deflater) {
+            this.entry = entry;
+            this.zipEntry = zipEntry;
+            this.deflater = deflater;
+            this.start = getPosition();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed)
+                throw new IllegalStateException(String.format("Entry %s is closed.", zipEntry.getName()));
+
+            crc.update(b, off, len);
+            size += len;
+
+            if (deflater == null) {
+                AsicZipWriter.this.write(b, off, len);
+            } else {
+                deflater.setInput(b, off, len);
+                while (!deflater.needsInput())
+                    deflate(deflater);
+            }
+        }
+
+        void write(ByteBuffer content) throws IOException {
+            if (closed)
+                throw new IllegalStateException(String.format("Entry %s is closed.", zipEntry.getName()));
+
+            crc.update(content.duplicate());
+            size += content.remaining();
+
+            if (deflater == null) {
+                writeBuffer(content);
+            } else {
+                deflater.setInput(content);
+                while (!deflater.needsInput())
+                    deflate(deflater);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+
+            closed = true;
+            current = null;
+
+            if (deflater == null) {
+                if (size != entry.size)
+                    throw new ZipException(String.format("invalid entry size (expected %s but got %s bytes)", entry.size, size));
+                if (crc.getValue() != entry.crc)
+                    throw new ZipException(String.format("invalid entry crc-32 (expected 0x%x but got 0x%x)", entry.crc, crc.getValue()));
+            } else {
+                deflater.finish();
+                while (!deflater.finished())
+                    deflate(deflater);
+
+                entry.crc = crc.getValue();
+                entry.size = size;
+                entry.compressedSize = getPosition() - start;
+                writeDescriptor(entry);
+            }
+
+            zipEntry.setCrc(entry.crc);
+            zipEntry.setSize(entry.size);
+            zipEntry.setCompressedSize(entry.compressedSize);
+        }
+    }
+
+    /**
+     * Entry as found in the central directory.
+     */
+    private static class Entry {
+
+        private final byte[] name;
+        private final byte[] comment;
+        private final int method;
+        private final int flags;
+        private final long dosTime;
+        private final long offset;
+
+        private long crc;
+        private long size;
+        private long compressedSize;
+
+        Entry(String name, ZipEntry zipEntry, boolean descriptor, long offset) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.comment = zipEntry.getComment() == null ? new byte[0] : zipEntry.getComment().getBytes(StandardCharsets.UTF_8);
+            this.method = zipEntry.getMethod();
+            this.flags = FLAG_UTF8 | (descriptor ? FLAG_DESCRIPTOR : 0);
+            this.dosTime = dosTime(zipEntry.getTime() == -1 ? System.currentTimeMillis() : zipEntry.getTime());
+            this.offset = offset;
+            this.crc = zipEntry.getCrc();
+            this.size = zipEntry.getSize();
+            this.compressedSize = zipEntry.getCompressedSize();
+
+            if (this.name.length > 0xFFFF || this.comment.length > 0xFFFF)
+                throw new IllegalStateException(String.format("Name or comment of entry %s is too long.", name));
+        }
+
+        boolean sizesNeedZip64() {
+            return size >= ZIP64_SIZE || compressedSize >= ZIP64_SIZE;
+        }
+
+        int version(boolean zip64) {
+            if (zip64)
+                return VERSION_ZIP64;
+            return method == ZipEntry.DEFLATED || (flags & FLAG_DESCRIPTOR) != 0 ? VERSION_DEFLATED : VERSION_STORED;
+        }
+    }
+
+    /**
+     * Channel writing to a stream, handing over the array of heap buffers without copying.
+     */
+    private static class OutputStreamChannel implements WritableByteChannel {
+
+        private final OutputStream outputStream;
+        private boolean open = true;
+
+        OutputStreamChannel(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int length = source.remaining();
+            if (source.hasArray()) {
+                outputStream.write(source.array(), source.arrayOffset() + source.position(), length);
+                source.position(source.limit());
+            } else {
+                byte[] bytes = new byte[length];
+                source.get(bytes);
+                outputStream.write(bytes);
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            outputStream.close();
+        }
+    }
+}
@@ -32,16 +32,20 @@ class CadesAsicManifest extends AbstractAsicManifest {
     private ASiCManifestType ASiCManifestType = new ASiCManifestType();
     private boolean rootFilenameIsSet = false;
 
+    // Kept for reuse when the writer is reset
+    private Marshaller marshaller;
+    private ByteArrayOutputStream byteArrayOutputStream;
+
     public CadesAsicManifest(MessageDigestAlgorithm messageDigestAlgorithm) {
         super(messageDigestAlgorithm);
     }
 
     @Override
-    public void add(String filename, MimeType mimeType) {
+    public void add(String filename, MimeType mimeType, byte[] digest) {
         DataObjectReferenceType dataObject = new DataObjectReferenceType();
         dataObject.setURI(filename);
         dataObject.setMimeType(mimeType.toString());
-        dataObject.setDigestValue(messageDigest.digest());
+        dataObject.setDigestValue(digest);
 
         DigestMethodType digestMethodType = new DigestMethodType();
         digestMethodType.setAlgorithm(messageDigestAlgorithm.getUri());
@@ -69,6 +73,15 @@ class CadesAsicManifest extends AbstractAsicManifest {
         }
     }
 
+    @Override
+    void reset() {
+        super.reset();
+
+        ASiCManifestType.getDataObjectReference().clear();
+        ASiCManifestType.setSigReference(null);
+        rootFilenameIsSet = false;
+    }
+
     public void setSignature(String filename, String mimeType) {
         SigReferenceType sigReferenceType = new SigReferenceType();
         sigReferenceType.setURI(filename);
@@ -82,12 +95,15 @@ class CadesAsicManifest extends AbstractAsicManifest {
 
     public byte[] toBytes() {
         try {
-            Marshaller marshaller = jaxbContext.createMarshaller();
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            if (marshaller == null) {
+                marshaller = jaxbContext.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+                byteArrayOutputStream = new ByteArrayOutputStream();
+            }
 
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            marshaller.marshal(objectFactory.createASiCManifest(ASiCManifestType), baos);
-            return baos.toByteArray();
+            byteArrayOutputStream.reset();
+            marshaller.marshal(objectFactory.createASiCManifest(ASiCManifestType), byteArrayOutputStream);
+            return byteArrayOutputStream.toByteArray();
         } catch (JAXBException e) {
             throw new IllegalStateException("Unable to marshall the ASiCManifest into string output", e);
         }
@@ -0,0 +1,50 @@
+package no.difi.asic;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Updates all given message digests with data read.
+ */
+class DigestsInputStream extends FilterInputStream {
+
+    private final MessageDigest[] messageDigests;
+
+    DigestsInputStream(InputStream in, MessageDigest[] messageDigests) {
+        super(in);
+        this.messageDigests = messageDigests;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1)
+            for (MessageDigest messageDigest : messageDigests)
+                messageDigest.update((byte) b);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0)
+            for (MessageDigest messageDigest : messageDigests)
+                messageDigest.update(b, off, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped data must be digested as well.
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        int read = read(buffer, 0, buffer.length);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,34 @@
+package no.difi.asic;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Updates all given message digests with data written, so each entry is read only once whatever the number of
+ * digest algorithms in use.
+ */
+class DigestsOutputStream extends FilterOutputStream {
+
+    private final MessageDigest[] messageDigests;
+
+    DigestsOutputStream(OutputStream out, MessageDigest[] messageDigests) {
+        super(out);
+        this.messageDigests = messageDigests;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        for (MessageDigest messageDigest : messageDigests)
+            messageDigest.update((byte) b);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (MessageDigest messageDigest : messageDigests)
+            messageDigest.update(b, off, len);
+        out.write(b, off, len);
+    }
+}
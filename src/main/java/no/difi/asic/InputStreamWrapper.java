@@ -15,4 +15,9 @@ class InputStreamWrapper extends InputStream {
     public int read() throws IOException {
         return source.read();
     }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return source.read(b, off, len);
+    }
 }
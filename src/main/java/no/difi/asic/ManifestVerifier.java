@@ -3,20 +3,44 @@ package no.difi.asic;
 import no.difi.commons.asic.jaxb.asic.AsicFile;
 import no.difi.commons.asic.jaxb.asic.AsicManifest;
 import no.difi.commons.asic.jaxb.asic.Certificate;
+import no.difi.commons.asic.jaxb.asic.EntryDigest;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 class ManifestVerifier {
 
+    /** Algorithm assumed when no algorithm is given, null when any algorithm is accepted. */
     private MessageDigestAlgorithm messageDigestAlgorithm;
+    private Set<String> digestAlgorithms = new HashSet<>();
 
     private AsicManifest asicManifest = new AsicManifest();
     private Map<String, AsicFile> asicManifestMap = new HashMap<>();
 
-    public ManifestVerifier(MessageDigestAlgorithm messageDigestAlgorithm) {
-        this.messageDigestAlgorithm = messageDigestAlgorithm;
+    /** First digest seen for each file, keyed by file name and digest algorithm URI. */
+    private Map<String, Map<String, byte[]>> digestMap = new HashMap<>();
+
+    /**
+     * @param messageDigestAlgorithms accepted digest algorithms, the first being assumed when none is given. No
+     *                                algorithms accepts any algorithm.
+     */
+    public ManifestVerifier(MessageDigestAlgorithm... messageDigestAlgorithms) {
+        if (messageDigestAlgorithms.length > 0)
+            this.messageDigestAlgorithm = messageDigestAlgorithms[0];
+        for (MessageDigestAlgorithm algorithm : messageDigestAlgorithms)
+            digestAlgorithms.add(algorithm.getUri());
+    }
+
+    /**
+     * Prepares for a new container. A new AsicManifest is created, as the previous may still be used by the caller.
+     */
+    public void reset() {
+        asicManifest = new AsicManifest();
+        asicManifestMap.clear();
+        digestMap.clear();
     }
 
     public void update(String filename, byte[] digest, String sigReference) {
@@ -24,10 +48,14 @@ class ManifestVerifier {
     }
 
     public void update(String filename, String mimetype, byte[] digest, String digestAlgorithm, String sigReference) {
-        if (messageDigestAlgorithm != null && digestAlgorithm != null && !digestAlgorithm.equals(messageDigestAlgorithm.getUri()))
+        if (messageDigestAlgorithm != null && digestAlgorithm != null && !digestAlgorithms.contains(digestAlgorithm))
             throw new IllegalStateException(String.format("Wrong digest method for file %s: %s", filename, digestAlgorithm));
 
+        if (digestAlgorithm == null)
+            digestAlgorithm = messageDigestAlgorithm == null ? "" : messageDigestAlgorithm.getUri();
+
         AsicFile asicFile = asicManifestMap.get(filename);
+        Map<String, byte[]> digests = digestMap.computeIfAbsent(filename, k -> new HashMap<>());
 
         if (asicFile == null) {
             asicFile = new AsicFile();
@@ -37,8 +65,12 @@ class ManifestVerifier {
 
             asicManifest.getFile().add(asicFile);
             asicManifestMap.put(filename, asicFile);
+            digests.put(digestAlgorithm, digest);
+        } else if (!digests.containsKey(digestAlgorithm)) {
+            // First digest using this algorithm, verified when seen again.
+            digests.put(digestAlgorithm, digest);
         } else {
-            if (!Arrays.equals(asicFile.getDigest(), digest))
+            if (!Arrays.equals(digests.get(digestAlgorithm), digest))
                 throw new IllegalStateException(String.format("Mismatching digest for file %s", filename));
 
             asicFile.setVerified(true);
@@ -51,6 +83,29 @@ class ManifestVerifier {
 
     }
 
+    /**
+     * Records digests and sizes calculated from the content of a data object, verifying the digests against any
+     * manifest already seen.
+     *
+     * @param digests digests by algorithm, the first being kept as digest of a file not found in any manifest.
+     */
+    void recordEntry(String filename, Map<MessageDigestAlgorithm, byte[]> digests, long size, long compressedSize) {
+        for (Map.Entry<MessageDigestAlgorithm, byte[]> digest : digests.entrySet())
+            update(filename, null, digest.getValue(), digest.getKey().getUri(), null);
+
+        AsicFile asicFile = asicManifestMap.get(filename);
+        for (Map.Entry<MessageDigestAlgorithm, byte[]> digest : digests.entrySet()) {
+            EntryDigest entryDigest = new EntryDigest();
+            entryDigest.setAlgorithm(digest.getKey().getUri());
+            entryDigest.setValue(digest.getValue());
+            asicFile.getEntryDigest().add(entryDigest);
+        }
+        if (size >= 0)
+            asicFile.setSize(size);
+        if (compressedSize >= 0)
+            asicFile.setCompressedSize(compressedSize);
+    }
+
     public void addCertificate(Certificate certificate) {
         this.asicManifest.getCertificate().add(certificate);
     }
@@ -65,6 +120,43 @@ class ManifestVerifier {
                 throw new IllegalStateException(String.format("File not verified: %s", asicFile.getName()));
     }
 
+    /**
+     * @return true when a manifest or data object with the given name is seen.
+     */
+    boolean contains(String filename) {
+        return asicManifestMap.containsKey(filename);
+    }
+
+    /**
+     * @return record of the file, null when not seen.
+     */
+    AsicFile getFile(String filename) {
+        return asicManifestMap.get(filename);
+    }
+
+    /**
+     * @return true when the file is seen in a manifest and its content matches.
+     */
+    boolean isVerified(String filename) {
+        AsicFile asicFile = asicManifestMap.get(filename);
+        return asicFile != null && asicFile.isVerified();
+    }
+
+    /**
+     * @return first digest seen for the file using the given algorithm, null when none is seen.
+     */
+    byte[] getDigest(String filename, MessageDigestAlgorithm messageDigestAlgorithm) {
+        Map<String, byte[]> digests = digestMap.get(filename);
+        return digests == null ? null : digests.get(messageDigestAlgorithm.getUri());
+    }
+
+    /**
+     * @return first digest seen for the file per digest algorithm URI, empty when the file is unknown.
+     */
+    Map<String, byte[]> getDigests(String filename) {
+        return digestMap.getOrDefault(filename, new HashMap<>());
+    }
+
     public AsicManifest getAsicManifest() {
         return asicManifest;
     }
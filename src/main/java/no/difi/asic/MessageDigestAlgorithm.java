@@ -1,6 +1,9 @@
 package no.difi.asic;
 
-enum MessageDigestAlgorithm {
+/**
+ * Digest algorithms for data objects referenced from manifests.
+ */
+public enum MessageDigestAlgorithm {
     SHA256("SHA-256", "http://www.w3.org/2001/04/xmlenc#sha256"),
     SHA384("SHA-384", "http://www.w3.org/2001/04/xmlenc#sha384"),
     SHA512("SHA-512", "http://www.w3.org/2001/04/xmlenc#sha512");
@@ -13,11 +16,29 @@ enum MessageDigestAlgorithm {
         this.uri = uri;
     }
 
+    /**
+     * @return name of algorithm in Java Cryptography Architecture.
+     */
     public String getAlgorithm() {
         return algorithm;
     }
 
+    /**
+     * @return identifier of algorithm in XML Signature.
+     */
     public String getUri() {
         return uri;
     }
+
+    /**
+     * @param uri identifier of algorithm in XML Signature.
+     * @return algorithm identified by the URI.
+     */
+    public static MessageDigestAlgorithm forUri(String uri) {
+        for (MessageDigestAlgorithm messageDigestAlgorithm : values())
+            if (messageDigestAlgorithm.uri.equals(uri))
+                return messageDigestAlgorithm;
+
+        throw new IllegalStateException(String.format("Unsupported digest method: %s", uri));
+    }
 }
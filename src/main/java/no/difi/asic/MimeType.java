@@ -14,6 +14,16 @@ public class MimeType {
         this.mimeType = mimeType;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MimeType && mimeType.equals(((MimeType) o).mimeType);
+    }
+
+    @Override
+    public int hashCode() {
+        return mimeType.hashCode();
+    }
+
     @Override
     public String toString() {
         return mimeType;
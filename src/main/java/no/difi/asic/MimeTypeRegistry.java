@@ -0,0 +1,165 @@
+package no.difi.asic;
+
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable mapping from file extensions to MIME types, used when entries are added without an explicit MIME type.
+ * <p>
+ * The default registry is preloaded with common document formats and gives the same answer on every host. Asking
+ * the operating system is available as an explicit fallback, see {@link #withContentTypeProbing()}.
+ * <p>
+ * This class is thread safe.
+ */
+public class MimeTypeRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(MimeTypeRegistry.class);
+
+    private static final MimeTypeRegistry DEFAULT = new MimeTypeRegistry(ImmutableMap.<String, MimeType>builder()
+            .put("xml", MimeType.XML)
+            .put("xsd", MimeType.XML)
+            .put("txt", MimeType.forString("text/plain"))
+            .put("csv", MimeType.forString("text/csv"))
+            .put("htm", MimeType.forString("text/html"))
+            .put("html", MimeType.forString("text/html"))
+            .put("json", MimeType.forString("application/json"))
+            .put("pdf", MimeType.forString("application/pdf"))
+            .put("rtf", MimeType.forString("application/rtf"))
+            .put("zip", MimeType.forString("application/zip"))
+            .put("gz", MimeType.forString("application/gzip"))
+            .put("asice", MimeType.forString(AsicUtils.MIMETYPE_ASICE))
+            .put("sce", MimeType.forString(AsicUtils.MIMETYPE_ASICE))
+            .put("p7m", MimeType.forString("application/pkcs7-mime"))
+            .put("p7s", MimeType.forString("application/pkcs7-signature"))
+            .put("bmp", MimeType.forString("image/bmp"))
+            .put("gif", MimeType.forString("image/gif"))
+            .put("jpg", MimeType.forString("image/jpeg"))
+            .put("jpeg", MimeType.forString("image/jpeg"))
+            .put("png", MimeType.forString("image/png"))
+            .put("svg", MimeType.forString("image/svg+xml"))
+            .put("tif", MimeType.forString("image/tiff"))
+            .put("tiff", MimeType.forString("image/tiff"))
+            .put("doc", MimeType.forString("application/msword"))
+            .put("docx", MimeType.forString("application/vnd.openxmlformats-officedocument.wordprocessingml.document"))
+            .put("xls", MimeType.forString("application/vnd.ms-excel"))
+            .put("xlsx", MimeType.forString("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+            .put("ppt", MimeType.forString("application/vnd.ms-powerpoint"))
+            .put("pptx", MimeType.forString("application/vnd.openxmlformats-officedocument.presentationml.presentation"))
+            .put("odt", MimeType.forString("application/vnd.oasis.opendocument.text"))
+            .put("ods", MimeType.forString("application/vnd.oasis.opendocument.spreadsheet"))
+            .put("odp", MimeType.forString("application/vnd.oasis.opendocument.presentation"))
+            .build(), false);
+
+    /**
+     * @return registry holding the preloaded extensions, without operating system fallback.
+     */
+    public static MimeTypeRegistry defaultRegistry() {
+        return DEFAULT;
+    }
+
+    private final ImmutableMap<String, MimeType> extensions;
+    private final boolean contentTypeProbing;
+
+    /** Results of operating system lookups, only used when probing is enabled. */
+    private final Map<String, Optional<MimeType>> probed = new ConcurrentHashMap<>();
+
+    private MimeTypeRegistry(ImmutableMap<String, MimeType> extensions, boolean contentTypeProbing) {
+        this.extensions = extensions;
+        this.contentTypeProbing = contentTypeProbing;
+    }
+
+    /**
+     * Creates a new registry where the given extension maps to the given MIME type.
+     *
+     * @param extension file extension without the leading dot, case insensitive.
+     * @param mimeType  MIME type to use for the extension.
+     * @return new registry including the mapping.
+     */
+    public MimeTypeRegistry register(String extension, MimeType mimeType) {
+        Map<String, MimeType> copy = new HashMap<>(extensions);
+        copy.put(extension.toLowerCase(Locale.ROOT), mimeType);
+        return new MimeTypeRegistry(ImmutableMap.copyOf(copy), contentTypeProbing);
+    }
+
+    /**
+     * Creates a new registry which asks the operating system for extensions not known to the registry, using
+     * {@link Files#probeContentType(java.nio.file.Path)} and {@link URLConnection#getFileNameMap()}. Answers may
+     * differ between hosts. Results are remembered per extension.
+     *
+     * @return new registry with operating system fallback.
+     */
+    public MimeTypeRegistry withContentTypeProbing() {
+        return new MimeTypeRegistry(extensions, true);
+    }
+
+    /**
+     * Looks up the MIME type of a file name.
+     *
+     * @param filename name of file, only the extension is used.
+     * @return MIME type, or null if unknown.
+     */
+    public MimeType lookup(String filename) {
+        String extension = extension(filename);
+
+        MimeType mimeType = extensions.get(extension);
+        if (mimeType == null && contentTypeProbing)
+            mimeType = probed.computeIfAbsent(extension, e -> Optional.ofNullable(probe(filename))).orElse(null);
+
+        return mimeType;
+    }
+
+    /**
+     * Looks up the MIME type of a file name.
+     *
+     * @param filename name of file, only the extension is used.
+     * @return MIME type.
+     * @throws IllegalStateException if the MIME type is unknown.
+     */
+    public MimeType detect(String filename) {
+        MimeType mimeType = lookup(filename);
+
+        if (mimeType == null)
+            throw new IllegalStateException(String.format("Unable to determine MIME type of %s", filename));
+
+        return mimeType;
+    }
+
+    private static MimeType probe(String filename) {
+        String mimeType = null;
+
+        // Use Files to find content type
+        try {
+            mimeType = Files.probeContentType(Paths.get(filename));
+        } catch (IOException | InvalidPathException e) {
+            logger.debug("Files.probeContentType() failed for {}: {}", filename, e.getMessage());
+        }
+
+        // Use URLConnection to find content type
+        if (mimeType == null) {
+            logger.debug("Unable to determine MIME type using Files.probeContentType(), trying URLConnection.getFileNameMap()");
+            mimeType = URLConnection.getFileNameMap().getContentTypeFor(filename);
+        }
+
+        return mimeType == null ? null : MimeType.forString(mimeType);
+    }
+
+    private static String extension(String filename) {
+        int dot = filename.lastIndexOf('.');
+        if (dot < 0 || dot < filename.lastIndexOf('/'))
+            return "";
+
+        return filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -9,6 +9,7 @@ import no.difi.commons.asic.jaxb.opendocument.manifest.Manifest;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.List;
 
 class OasisManifest {
 
@@ -28,6 +29,10 @@ class OasisManifest {
 
     private Manifest manifest = new Manifest();
 
+    // Kept for reuse when the writer is reset
+    private Marshaller marshaller;
+    private ByteArrayOutputStream byteArrayOutputStream;
+
     public OasisManifest(MimeType mimeType) {
         add("/", mimeType);
     }
@@ -54,6 +59,14 @@ class OasisManifest {
                 manifest.getFileEntry().add(fileEntry);
     }
 
+    /**
+     * Removes all entries except the root entry holding the MIME type of the container.
+     */
+    public void reset() {
+        List<FileEntry> fileEntries = manifest.getFileEntry();
+        fileEntries.subList(Math.min(1, fileEntries.size()), fileEntries.size()).clear();
+    }
+
     public int size() {
         return manifest.getFileEntry().size();
     }
@@ -64,10 +77,13 @@ class OasisManifest {
 
     public byte[] toBytes() {
         try {
-            Marshaller marshaller = jaxbContext.createMarshaller();
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            if (marshaller == null) {
+                marshaller = jaxbContext.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+                byteArrayOutputStream = new ByteArrayOutputStream();
+            }
 
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            byteArrayOutputStream.reset();
             marshaller.marshal(manifest, byteArrayOutputStream);
 
             return byteArrayOutputStream.toByteArray();
@@ -0,0 +1,273 @@
+package no.difi.asic;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+
+/**
+ * Deflater compressing blocks of its input concurrently, in the manner of pigz, while producing one raw deflate
+ * stream.
+ * <p>
+ * Input is cut into blocks of {@link #BLOCK_SIZE} bytes, each compressed by its own deflater on the executor. Each
+ * block is primed with the last 32 KiB of the previous block as dictionary, so matches still reach across blocks.
+ * Blocks other than the last end with a sync flush, which ends them on a byte boundary without ending the stream,
+ * so compressed blocks are simply concatenated. Compressed blocks are handed out in order, and input is only
+ * consumed while fewer than {@link #MAX_PENDING} blocks are in progress. The rest is kept, as by any deflater, until
+ * compressed blocks are taken out. Blocks and the deflaters compressing them are taken from {@link ResourcePool}.
+ * <p>
+ * Used as the deflater of a single entry written by {@link AsicZipWriter}, which calculates CRC-32 and sizes
+ * itself.
+ */
+class ParallelDeflater extends Deflater {
+
+    /** Size of uncompressed blocks. */
+    static final int BLOCK_SIZE = ResourcePool.BLOCK_SIZE;
+
+    /** Size of the deflate window, and so of the dictionary taken from the previous block. */
+    static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /** Maximum number of blocks in progress before the caller waits for compressed output. */
+    static final int MAX_PENDING = 4 * Runtime.getRuntime().availableProcessors();
+
+    private final Executor executor;
+    private final int level;
+
+    private final Deque<Block> pending = new ArrayDeque<>();
+
+    /** Input not yet cut into blocks, null when all input is consumed. */
+    private ByteBuffer input;
+
+    private byte[] block;
+    private int blockLength = 0;
+
+    /** Previous block, never modified once handed to the executor, providing the dictionary of the next block. */
+    private byte[] previous;
+    private int previousLength;
+
+    /** Input of the block handed out last, released once the block after it, using it as dictionary, is done. */
+    private byte[] released;
+
+    /** Compressed block being handed out, null when none is. */
+    private byte[] output;
+    private int outputPosition;
+
+    private boolean finish = false;
+    private boolean lastSubmitted = false;
+    private long bytesRead = 0;
+    private long bytesWritten = 0;
+
+    ParallelDeflater(Executor executor, int level) {
+        super(level, true);
+        this.executor = executor;
+        this.level = level;
+    }
+
+    @Override
+    public void setInput(byte[] input, int off, int len) {
+        setInput(ByteBuffer.wrap(input, off, len));
+    }
+
+    @Override
+    public void setInput(ByteBuffer input) {
+        this.input = input;
+        consumeInput();
+    }
+
+    @Override
+    public boolean needsInput() {
+        return input == null && output == null && !outputReady();
+    }
+
+    @Override
+    public void finish() {
+        finish = true;
+        consumeInput();
+    }
+
+    @Override
+    public boolean finished() {
+        return lastSubmitted && output == null && pending.isEmpty();
+    }
+
+    @Override
+    public int deflate(byte[] b, int off, int len, int flush) {
+        if (output == null) {
+            consumeInput();
+
+            // Waits for the next block only when finishing or when too many blocks are in progress
+            if (pending.isEmpty() || !(lastSubmitted || outputReady()))
+                return 0;
+
+            Block next = pending.removeFirst();
+            output = join(next.future);
+            outputPosition = 0;
+
+            // Both blocks using the input of the previous block are done
+            if (released != null)
+                ResourcePool.releaseBlock(released);
+            released = next.input;
+            if (pending.isEmpty() && lastSubmitted) {
+                ResourcePool.releaseBlock(released);
+                released = null;
+            }
+        }
+
+        int length = Math.min(len, output.length - outputPosition);
+        System.arraycopy(output, outputPosition, b, off, length);
+        outputPosition += length;
+        bytesWritten += length;
+
+        if (outputPosition == output.length)
+            output = null;
+
+        return length;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public int getTotalIn() {
+        return (int) bytesRead;
+    }
+
+    @Override
+    public int getTotalOut() {
+        return (int) bytesWritten;
+    }
+
+    @Override
+    public void reset() {
+        // Blocks possibly still read by the executor are left to the garbage collector
+        if (pending.isEmpty() && released != null)
+            ResourcePool.releaseBlock(released);
+        if (block != null)
+            ResourcePool.releaseBlock(block);
+        pending.clear();
+        input = null;
+        block = null;
+        blockLength = 0;
+        previous = null;
+        released = null;
+        output = null;
+        finish = false;
+        lastSubmitted = false;
+        bytesRead = 0;
+        bytesWritten = 0;
+    }
+
+    @Override
+    public void end() {
+        reset();
+        super.end();
+    }
+
+    private boolean outputReady() {
+        return !pending.isEmpty() && (pending.size() >= MAX_PENDING || pending.peekFirst().future.isDone());
+    }
+
+    /**
+     * Cuts input into blocks while fewer than {@link #MAX_PENDING} blocks are in progress, keeping the rest of the
+     * input for later calls. Submits the last block once all input is consumed when finishing.
+     */
+    private void consumeInput() {
+        while (input != null && input.hasRemaining() && pending.size() < MAX_PENDING) {
+            if (block == null)
+                block = ResourcePool.acquireBlock();
+
+            int length = Math.min(input.remaining(), BLOCK_SIZE - blockLength);
+            input.get(block, blockLength, length);
+            blockLength += length;
+            bytesRead += length;
+
+            if (blockLength == BLOCK_SIZE)
+                submit(false);
+        }
+
+        if (input != null && !input.hasRemaining())
+            input = null;
+
+        if (finish && !lastSubmitted && input == null) {
+            if (block == null)
+                block = ResourcePool.acquireBlock();
+            submit(true);
+            lastSubmitted = true;
+        }
+    }
+
+    private void submit(boolean last) {
+        byte[] input = block;
+        int length = blockLength;
+        byte[] dictionary = previous;
+        int dictionaryLength = previousLength;
+
+        pending.addLast(new Block(input, CompletableFuture.supplyAsync(() -> compress(input, length, dictionary, dictionaryLength, last), executor)));
+
+        previous = input;
+        previousLength = length;
+        block = null;
+        blockLength = 0;
+    }
+
+    private byte[] compress(byte[] input, int length, byte[] dictionary, int dictionaryLength, boolean last) {
+        Deflater deflater = ResourcePool.acquireDeflater();
+        byte[] buffer = ResourcePool.acquireBuffer();
+        try {
+            deflater.setLevel(level);
+            if (dictionary != null) {
+                int size = Math.min(DICTIONARY_SIZE, dictionaryLength);
+                deflater.setDictionary(dictionary, dictionaryLength - size, size);
+            }
+            deflater.setInput(input, 0, length);
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(length / 2 + 64);
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished())
+                    outputStream.write(buffer, 0, deflater.deflate(buffer));
+            } else {
+                int len;
+                while ((len = deflater.deflate(buffer, 0, buffer.length, SYNC_FLUSH)) > 0)
+                    outputStream.write(buffer, 0, len);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            ResourcePool.releaseBuffer(buffer);
+            ResourcePool.releaseDeflater(deflater);
+        }
+    }
+
+    /**
+     * Block in progress, keeping its input until it is no longer needed as dictionary.
+     */
+    private static class Block {
+
+        private final byte[] input;
+        private final CompletableFuture<byte[]> future;
+
+        Block(byte[] input, CompletableFuture<byte[]> future) {
+            this.input = input;
+            this.future = future;
+        }
+    }
+
+    private static byte[] join(CompletableFuture<byte[]> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Unable to compress block.", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Stream reading its source ahead on a background thread, so waiting for a slow source, e.g. a HTTP response,
+ * overlaps with inflating and digesting on the thread consuming the stream.
+ * <p>
+ * The background thread fills buffers of {@link #BUFFER_SIZE} bytes, taking what the source has available without
+ * blocking once some bytes are read, and hands them over through a ring of at most {@code depth} filled buffers.
+ * Buffers are recycled once consumed. Failures of the source, checked or not, are thrown to the consumer as
+ * {@link IOException} when it reaches them. Reads finding no filled buffer are counted as stalled, see
+ * {@link #getStalledReads()}.
+ * <p>
+ * The stream must be closed, which stops the background thread and closes the source.
+ */
+class ReadAheadInputStream extends InputStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadAheadInputStream.class);
+
+    /** Size of each buffer in the ring. */
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    /** Marks the end of the source. */
+    private static final Chunk END = new Chunk(null, -1, null);
+
+    private final InputStream source;
+    private final BlockingQueue<Chunk> filled;
+    private final BlockingQueue<byte[]> free;
+    private final Thread thread;
+
+    /** Buffer being consumed, null when the next one is to be taken. */
+    private Chunk current;
+    private int position;
+
+    private volatile boolean stopped = false;
+
+    private long stalledReads = 0;
+    private long stalledNanos = 0;
+
+    /**
+     * @param source stream to read ahead.
+     * @param depth  maximum number of filled buffers waiting to be consumed.
+     */
+    ReadAheadInputStream(InputStream source, int depth) {
+        if (depth < 1)
+            throw new IllegalStateException("Depth of read-ahead must be at least 1.");
+
+        this.source = source;
+        this.filled = new ArrayBlockingQueue<>(depth);
+
+        // One buffer more than the ring holds, as the consumer holds one while the ring is full
+        this.free = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i <= depth; i++)
+            free.add(new byte[BUFFER_SIZE]);
+
+        this.thread = Thread.ofVirtual().name("asic-read-ahead").start(this::fill);
+    }
+
+    private void fill() {
+        try {
+            while (!stopped) {
+                byte[] buffer = free.take();
+
+                int length = source.read(buffer, 0, buffer.length);
+                if (length < 0) {
+                    filled.put(END);
+                    return;
+                }
+
+                // Takes what is already available, without waiting for the buffer to be full
+                int available;
+                while (length < buffer.length && (available = source.available()) > 0) {
+                    int read = source.read(buffer, length, Math.min(available, buffer.length - length));
+                    if (read < 0)
+                        break;
+                    length += read;
+                }
+
+                filled.put(new Chunk(buffer, length, null));
+            }
+        } catch (InterruptedException e) {
+            logger.debug("Read-ahead stopped");
+        } catch (Throwable e) {
+            // Unchecked failures of the source must reach the consumer as well, or it waits forever
+            try {
+                if (!stopped)
+                    filled.put(new Chunk(null, -1, e));
+            } catch (InterruptedException interrupted) {
+                logger.debug("Read-ahead stopped");
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        if (current == null) {
+            current = take();
+            position = 0;
+        }
+
+        if (current.failure != null)
+            throw new IOException(current.failure.getMessage(), current.failure);
+        if (current == END)
+            return -1;
+
+        int length = Math.min(len, current.length - position);
+        System.arraycopy(current.bytes, position, b, off, length);
+        position += length;
+
+        if (position == current.length) {
+            free.offer(current.bytes);
+            current = null;
+        }
+
+        return length;
+    }
+
+    @Override
+    public int available() {
+        if (current != null)
+            return current.length - position;
+
+        Chunk next = filled.peek();
+        return next == null || next.length < 0 ? 0 : next.length;
+    }
+
+    private Chunk take() throws IOException {
+        if (stopped)
+            throw new IOException("Stream is closed.");
+
+        Chunk chunk = filled.poll();
+        if (chunk != null)
+            return chunk;
+
+        stalledReads++;
+        long start = System.nanoTime();
+        try {
+            return filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for content.", e);
+        } finally {
+            stalledNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Stops the background thread without closing the source. The thread ends at the latest when a pending read
+     * of the source returns.
+     */
+    void stop() {
+        stopped = true;
+        thread.interrupt();
+        filled.clear();
+        current = null;
+    }
+
+    /**
+     * Stops the background thread and closes the source.
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+        source.close();
+    }
+
+    /**
+     * @return number of reads waiting for the background thread, as no filled buffer was available.
+     */
+    long getStalledReads() {
+        return stalledReads;
+    }
+
+    /**
+     * @return time spent waiting for the background thread, in nanoseconds.
+     */
+    long getStalledNanos() {
+        return stalledNanos;
+    }
+
+    private static class Chunk {
+
+        private final byte[] bytes;
+        private final int length;
+        private final Throwable failure;
+
+        Chunk(byte[] bytes, int length, Throwable failure) {
+            this.bytes = bytes;
+            this.length = length;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package no.difi.asic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies the content of an entry through three stages connected by bounded queues: inflating from the zip stream
+ * and digesting, each on its own virtual thread, and writing to the target on the calling thread. The target thus
+ * receives a chunk while the following chunks are digested and inflated.
+ * <p>
+ * Chunks reach the target in order and only once digested, so all digests are complete when
+ * {@link #copy(InputStream, MessageDigest[], OutputStream, AsicEntryEvent)} returns, exactly as when copying on
+ * one thread. Failures of a stage are thrown on the calling thread, and a failing target stops the other stages.
+ * Stages run on dedicated threads rather than an executor, as they wait for each other. Buffers are reused across
+ * entries, so an instance serves one reader at a time.
+ */
+class ReadPipeline {
+
+    /** Size of each chunk. */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /** Number of chunks waiting between two stages. */
+    static final int DEPTH = 4;
+
+    /** Every chunk waiting, plus one held by each stage. */
+    private static final int BUFFERS = 2 * DEPTH + 3;
+
+    /** Time between checks for cancellation while a stage waits. */
+    private static final long POLL_MILLIS = 50;
+
+    /** Marks the end of the content. */
+    private static final Chunk END = new Chunk(null, -1, null);
+
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BUFFERS);
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param event receiver of time spent inflating and digesting, null when not measured.
+     */
+    void copy(InputStream source, MessageDigest[] messageDigests, OutputStream target, AsicEntryEvent event) throws IOException {
+        // Buffers held by stages stopped early are replaced
+        while (free.size() < BUFFERS)
+            free.add(new byte[CHUNK_SIZE]);
+
+        BlockingQueue<Chunk> inflated = new ArrayBlockingQueue<>(DEPTH);
+        BlockingQueue<Chunk> digested = new ArrayBlockingQueue<>(DEPTH);
+        cancelled = false;
+
+        Thread inflating = Thread.ofVirtual().name("asic-inflate").start(() -> inflate(source, inflated, event));
+        Thread digesting = Thread.ofVirtual().name("asic-digest").start(() -> digest(messageDigests, inflated, digested, event));
+
+        boolean completed = false;
+        try {
+            Chunk chunk;
+            while ((chunk = take(digested)) != END) {
+                if (chunk.failure instanceof IOException)
+                    throw (IOException) chunk.failure;
+                if (chunk.failure != null)
+                    throw (RuntimeException) chunk.failure;
+
+                target.write(chunk.bytes, 0, chunk.length);
+                free.add(chunk.bytes);
+            }
+            completed = true;
+        } finally {
+            if (!completed)
+                cancelled = true;
+
+            join(inflating);
+            join(digesting);
+
+            recycle(inflated);
+            recycle(digested);
+        }
+    }
+
+    private void inflate(InputStream source, BlockingQueue<Chunk> inflated, AsicEntryEvent event) {
+        try {
+            while (!cancelled) {
+                byte[] buffer = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (buffer == null)
+                    continue;
+
+                long start = event == null ? 0 : System.nanoTime();
+                int length = readFully(source, buffer);
+                if (event != null)
+                    event.addCompressionNanos(System.nanoTime() - start);
+
+                if (length == 0)
+                    free.add(buffer);
+                else if (!put(inflated, new Chunk(buffer, length, null)))
+                    return;
+                if (length < buffer.length) {
+                    put(inflated, END);
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            put(inflated, new Chunk(null, -1, e));
+        } catch (InterruptedException e) {
+            put(inflated, new Chunk(null, -1, new IllegalStateException("Inflating was interrupted.", e)));
+        }
+    }
+
+    private void digest(MessageDigest[] messageDigests, BlockingQueue<Chunk> inflated, BlockingQueue<Chunk> digested, AsicEntryEvent event) {
+        try {
+            Chunk chunk;
+            do {
+                chunk = poll(inflated);
+                if (chunk == null)
+                    return;
+
+                if (chunk.bytes != null) {
+                    long start = event == null ? 0 : System.nanoTime();
+                    for (MessageDigest messageDigest : messageDigests)
+                        messageDigest.update(chunk.bytes, 0, chunk.length);
+                    if (event != null)
+                        event.addDigestNanos(System.nanoTime() - start);
+                }
+            } while (put(digested, chunk) && chunk.bytes != null);
+        } catch (RuntimeException e) {
+            put(digested, new Chunk(null, -1, e));
+        }
+    }
+
+    /**
+     * Fills the buffer unless the end of the source is reached first.
+     */
+    private static int readFully(InputStream source, byte[] buffer) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = source.read(buffer, length, buffer.length - length)) >= 0)
+            length += read;
+        return length;
+    }
+
+    /**
+     * Waits for room in the queue until cancelled.
+     *
+     * @return false when cancelled.
+     */
+    private boolean put(BlockingQueue<Chunk> queue, Chunk chunk) {
+        try {
+            while (!cancelled)
+                if (queue.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS))
+                    return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Waits for a chunk in the queue until cancelled.
+     *
+     * @return null when cancelled.
+     */
+    private Chunk poll(BlockingQueue<Chunk> queue) {
+        try {
+            while (!cancelled) {
+                Chunk chunk = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (chunk != null)
+                    return chunk;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static Chunk take(BlockingQueue<Chunk> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading entry.", e);
+        }
+    }
+
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void recycle(BlockingQueue<Chunk> queue) {
+        Chunk chunk;
+        while ((chunk = queue.poll()) != null)
+            if (chunk.bytes != null)
+                free.add(chunk.bytes);
+    }
+
+    private static class Chunk {
+
+        private final byte[] bytes;
+        private final int length;
+        /** Failure of a stage, either an IOException or a RuntimeException. */
+        private final Exception failure;
+
+        Chunk(byte[] bytes, int length, Exception failure) {
+            this.bytes = bytes;
+            this.length = length;
+            this.failure = failure;
+        }
+    }
+}
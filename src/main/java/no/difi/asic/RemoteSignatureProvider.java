@@ -0,0 +1,149 @@
+package no.difi.asic;
+
+import no.difi.asic.signer.RemoteSigner;
+import no.difi.asic.signer.SigningRequest;
+
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.SignatureSpi;
+import java.util.Collections;
+
+/**
+ * Provider of signature algorithms forwarding digests to a {@link RemoteSigner}.
+ * <p>
+ * Both BouncyCastle (CAdES) and the XML signature API (XAdES) obtain a {@link java.security.Signature} from a
+ * provider and feed it the data to be signed, so routing the signing operation through this provider lets both
+ * formats use a key they never see. The data is digested locally, and only the digest leaves the process.
+ */
+class RemoteSignatureProvider extends Provider {
+
+    private static final String[] DIGESTS = {"SHA1", "SHA256", "SHA384", "SHA512"};
+    private static final String[] KEY_ALGORITHMS = {"RSA", "ECDSA"};
+
+    RemoteSignatureProvider() {
+        super("ASiC-Remote", "1.0", "Signatures created by a RemoteSigner");
+
+        for (String digest : DIGESTS)
+            for (String keyAlgorithm : KEY_ALGORITHMS)
+                putService(new RemoteService(this, digest + "with" + keyAlgorithm, digest.replace("SHA", "SHA-")));
+    }
+
+    private static class RemoteService extends Service {
+
+        private final String digestAlgorithm;
+
+        RemoteService(Provider provider, String algorithm, String digestAlgorithm) {
+            super(provider, "Signature", algorithm, RemoteSignatureSpi.class.getName(),
+                    Collections.singletonList(algorithm.replace("ECDSA", "EC")), null);
+            this.digestAlgorithm = digestAlgorithm;
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException {
+            return new RemoteSignatureSpi(getAlgorithm(), MessageDigest.getInstance(digestAlgorithm));
+        }
+
+        @Override
+        public boolean supportsParameter(Object parameter) {
+            return parameter instanceof RemotePrivateKey;
+        }
+    }
+
+    /**
+     * Private key handle referring to the key of a remote signer.
+     */
+    static class RemotePrivateKey implements PrivateKey {
+
+        private final RemoteSigner remoteSigner;
+        private final String algorithm;
+
+        RemotePrivateKey(RemoteSigner remoteSigner, String algorithm) {
+            this.remoteSigner = remoteSigner;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return null;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return null;
+        }
+    }
+
+    private static class RemoteSignatureSpi extends SignatureSpi {
+
+        private final String signatureAlgorithm;
+        private final MessageDigest messageDigest;
+        private RemoteSigner remoteSigner;
+
+        RemoteSignatureSpi(String signatureAlgorithm, MessageDigest messageDigest) {
+            this.signatureAlgorithm = signatureAlgorithm;
+            this.messageDigest = messageDigest;
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+            if (!(privateKey instanceof RemotePrivateKey))
+                throw new InvalidKeyException("Only keys of remote signers are supported.");
+
+            remoteSigner = ((RemotePrivateKey) privateKey).remoteSigner;
+            messageDigest.reset();
+        }
+
+        @Override
+        protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+            throw new InvalidKeyException("Verification is not supported.");
+        }
+
+        @Override
+        protected void engineUpdate(byte b) {
+            messageDigest.update(b);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] b, int off, int len) {
+            messageDigest.update(b, off, len);
+        }
+
+        @Override
+        protected byte[] engineSign() throws SignatureException {
+            SigningRequest request = new SigningRequest(signatureAlgorithm, messageDigest.getAlgorithm(), messageDigest.digest());
+            try {
+                return remoteSigner.sign(Collections.singletonList(request)).get(0);
+            } catch (IllegalStateException e) {
+                throw new SignatureException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+            throw new SignatureException("Verification is not supported.");
+        }
+
+        @Override
+        @Deprecated
+        protected void engineSetParameter(String param, Object value) {
+            throw new InvalidParameterException("Parameters are not supported.");
+        }
+
+        @Override
+        @Deprecated
+        protected Object engineGetParameter(String param) {
+            throw new InvalidParameterException("Parameters are not supported.");
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package no.difi.asic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps objects which are costly to create for reuse across containers.
+ * <p>
+ * Objects are handed out to a single user at a time and must be released when the user is done. Pools are bounded;
+ * objects released to a full pool are left for the garbage collector, and objects never released are simply lost.
+ * Inflaters and deflaters released to a full pool are ended, as they hold native memory.
+ */
+class ResourcePool {
+
+    /** Size of buffers used when copying streams. */
+    static final int BUFFER_SIZE = 8192;
+
+    /** Size of buffers used when writing containers. */
+    static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /** Size of blocks deflated concurrently, see {@link ParallelDeflater}. */
+    static final int BLOCK_SIZE = 128 * 1024;
+
+    /** Maximum number of idle objects kept per pool. */
+    static final int MAX_IDLE = 64;
+
+    private static final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(MAX_IDLE);
+
+    private static final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(MAX_IDLE);
+
+    private static final BlockingQueue<ByteBuffer> writeBuffers = new ArrayBlockingQueue<>(MAX_IDLE);
+
+    private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(MAX_IDLE);
+
+    private static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(MAX_IDLE);
+
+    private static final Map<MessageDigestAlgorithm, BlockingQueue<MessageDigest>> digests =
+            new EnumMap<>(MessageDigestAlgorithm.class);
+
+    static {
+        for (MessageDigestAlgorithm messageDigestAlgorithm : MessageDigestAlgorithm.values())
+            digests.put(messageDigestAlgorithm, new ArrayBlockingQueue<>(MAX_IDLE));
+    }
+
+    /**
+     * @return a reset message digest for the given algorithm.
+     */
+    static MessageDigest acquireDigest(MessageDigestAlgorithm messageDigestAlgorithm) {
+        MessageDigest messageDigest = digests.get(messageDigestAlgorithm).poll();
+        if (messageDigest != null)
+            return messageDigest;
+
+        try {
+            return MessageDigest.getInstance(messageDigestAlgorithm.getAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(String.format("Algorithm %s not supported", messageDigestAlgorithm.getAlgorithm()), e);
+        }
+    }
+
+    static void releaseDigest(MessageDigestAlgorithm messageDigestAlgorithm, MessageDigest messageDigest) {
+        messageDigest.reset();
+        digests.get(messageDigestAlgorithm).offer(messageDigest);
+    }
+
+    /**
+     * @return number of idle message digests kept for the given algorithm.
+     */
+    static int idleDigests(MessageDigestAlgorithm messageDigestAlgorithm) {
+        return digests.get(messageDigestAlgorithm).size();
+    }
+
+    static byte[] acquireBuffer() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    static void releaseBuffer(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+
+    /**
+     * @return a block of {@link #BLOCK_SIZE} bytes, holding whatever was left by its previous user.
+     */
+    static byte[] acquireBlock() {
+        byte[] block = blocks.poll();
+        return block != null ? block : new byte[BLOCK_SIZE];
+    }
+
+    static void releaseBlock(byte[] block) {
+        blocks.offer(block);
+    }
+
+    /**
+     * @return a cleared buffer of {@link #WRITE_BUFFER_SIZE} bytes.
+     */
+    static ByteBuffer acquireWriteBuffer() {
+        ByteBuffer buffer = writeBuffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    }
+
+    static void releaseWriteBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        writeBuffers.offer(buffer);
+    }
+
+    /**
+     * @return a reset deflater producing raw deflate data at the default compression level, as found in zip entries.
+     */
+    static Deflater acquireDeflater() {
+        Deflater deflater = deflaters.poll();
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        deflater.setLevel(Deflater.DEFAULT_COMPRESSION);
+        if (!deflaters.offer(deflater))
+            deflater.end();
+    }
+
+    /**
+     * @return number of idle deflaters kept.
+     */
+    static int idleDeflaters() {
+        return deflaters.size();
+    }
+
+    /**
+     * @return a reset inflater for raw deflate data, as found in zip entries.
+     */
+    static Inflater acquireInflater() {
+        Inflater inflater = inflaters.poll();
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (!inflaters.offer(inflater))
+            inflater.end();
+    }
+
+    /**
+     * Copies all bytes from input stream to output stream using a pooled buffer. Neither stream is closed.
+     *
+     * @return number of bytes copied.
+     */
+    static long copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = acquireBuffer();
+        try {
+            long total = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package no.difi.asic;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects a container in memory in a chain of segments, as a target for
+ * {@link AsicWriterFactory#newContainer(OutputStream)}. Unlike {@link java.io.ByteArrayOutputStream}, content is never
+ * copied as the output grows, and is handed out as read-only buffers over the segments rather than copied into one
+ * array.
+ * <p>
+ * Each segment is as large as everything written before it, between 8 KiB and 1 MiB, so the number of segments
+ * stays small for small containers and memory wasted at the end stays bounded for large ones.
+ */
+public class SegmentedOutputStream extends OutputStream {
+
+    private static final int MIN_SEGMENT_SIZE = 8 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 1024 * 1024;
+
+    private final List<byte[]> segments = new ArrayList<>();
+    private byte[] current;
+    private int position;
+    private long size;
+
+    public SegmentedOutputStream() {
+        this(MIN_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param expectedSize size of the first segment, e.g. the expected size of the container.
+     */
+    public SegmentedOutputStream(int expectedSize) {
+        if (expectedSize <= 0)
+            throw new IllegalStateException(String.format("Invalid size of segment: %s", expectedSize));
+
+        addSegment(expectedSize);
+    }
+
+    @Override
+    public void write(int b) {
+        if (position == current.length)
+            addSegment(nextSegmentSize());
+
+        current[position++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (position == current.length)
+                addSegment(nextSegmentSize());
+
+            int length = Math.min(len, current.length - position);
+            System.arraycopy(b, off, current, position, length);
+            position += length;
+            off += length;
+            len -= length;
+            size += length;
+        }
+    }
+
+    /**
+     * @return number of bytes written.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Content written so far, as read-only buffers over the segments in order. Buffers stay valid when more is
+     * written, but do not include it.
+     *
+     * @return buffers holding the content, without copying.
+     */
+    public List<ByteBuffer> toByteBuffers() {
+        List<ByteBuffer> byteBuffers = new ArrayList<>(segments.size());
+        for (byte[] segment : segments) {
+            int length = segment == current ? position : segment.length;
+            if (length > 0)
+                byteBuffers.add(ByteBuffer.wrap(segment, 0, length).asReadOnlyBuffer());
+        }
+        return Collections.unmodifiableList(byteBuffers);
+    }
+
+    /**
+     * Copies the content written so far into one array, for callers requiring one.
+     *
+     * @return content as an array.
+     */
+    public byte[] toByteArray() {
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException(String.format("Content of %s bytes does not fit in an array.", size));
+
+        byte[] bytes = new byte[(int) size];
+        int offset = 0;
+        for (ByteBuffer byteBuffer : toByteBuffers()) {
+            int length = byteBuffer.remaining();
+            byteBuffer.get(bytes, offset, length);
+            offset += length;
+        }
+        return bytes;
+    }
+
+    private int nextSegmentSize() {
+        return (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, size));
+    }
+
+    private void addSegment(int segmentSize) {
+        current = new byte[segmentSize];
+        position = 0;
+        segments.add(current);
+    }
+}
@@ -12,6 +12,7 @@ import java.security.Provider;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.List;
 
 import org.bouncycastle.cert.jcajce.JcaCertStore;
 import org.bouncycastle.cms.CMSProcessableByteArray;
@@ -19,7 +20,11 @@ import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.CMSSignedDataGenerator;
 import org.bouncycastle.cms.SignerInfoGenerator;
 import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import no.difi.asic.jfr.SignEvent;
+import no.difi.asic.signer.RemoteSigner;
+import org.bouncycastle.operator.AlgorithmNameFinder;
 import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DefaultAlgorithmNameFinder;
 import org.bouncycastle.operator.DigestCalculatorProvider;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
@@ -32,6 +37,8 @@ import com.google.common.io.BaseEncoding;
 /**
  * Helper class to assist when creating a signature.
  * <p>
+ * The private key is either loaded from a key store or kept by a {@link RemoteSigner}.
+ * <p>
  * Not thread safe
  *
  * @author steinar
@@ -43,6 +50,8 @@ public class SignatureHelper {
     private static final Logger logger = LoggerFactory.getLogger(SignatureHelper.class);
     public static final KeyStoreType DEFAULT_KEY_STORE_TYPE = KeyStoreType.JKS;
 
+    private static final AlgorithmNameFinder algorithmNameFinder = new DefaultAlgorithmNameFinder();
+
     protected final Provider provider;
 
     protected final JcaDigestCalculatorProviderBuilder jcaDigestCalculatorProviderBuilder;
@@ -55,6 +64,9 @@ public class SignatureHelper {
 
     protected JcaContentSignerBuilder jcaContentSignerBuilder;
 
+    /** Provider of signature algorithms when the key is kept by a remote signer, otherwise null. */
+    protected Provider signatureProvider;
+
     /**
      * Loads the keystore and obtains the private key, the public key and the associated certificate
      */
@@ -145,6 +157,27 @@ public class SignatureHelper {
         loadCertificate(keyStore, keyAlias, keyPassword);
     }
 
+    /**
+     * Uses a signer keeping the private key outside this library. Only digests are handed to the signer.
+     *
+     * @param remoteSigner signer holding the private key, e.g. a {@link no.difi.asic.signer.BatchingRemoteSigner}
+     *                     shared by all threads.
+     */
+    public SignatureHelper(RemoteSigner remoteSigner) {
+        this(BCHelper.getProvider());
+
+        List<X509Certificate> certificates = remoteSigner.getCertificateChain();
+        x509Certificate = certificates.get(0);
+        certificateChain = certificates.toArray(new Certificate[0]);
+
+        String keyAlgorithm = x509Certificate.getPublicKey().getAlgorithm();
+        keyPair = new KeyPair(x509Certificate.getPublicKey(), new RemoteSignatureProvider.RemotePrivateKey(remoteSigner, keyAlgorithm));
+        signatureProvider = new RemoteSignatureProvider();
+
+        jcaContentSignerBuilder = new JcaContentSignerBuilder(String.format("SHA1with%s", keyAlgorithm.equals("EC") ? "ECDSA" : keyAlgorithm));
+        jcaContentSignerBuilder.setProvider(signatureProvider);
+    }
+
     protected SignatureHelper(Provider provider) {
         this.provider = provider;
 
@@ -200,10 +233,22 @@ public class SignatureHelper {
             CMSSignedDataGenerator cmsSignedDataGenerator = new CMSSignedDataGenerator();
             cmsSignedDataGenerator.addSignerInfoGenerator(signerInfoGenerator);
             cmsSignedDataGenerator.addCertificates(new JcaCertStore(Arrays.asList(certificateChain)));
+            SignEvent signEvent = new SignEvent();
+            signEvent.begin();
             CMSSignedData cmsSignedData = cmsSignedDataGenerator.generate(new CMSProcessableByteArray(data), false);
-
-            logger.debug(BaseEncoding.base64().encode(cmsSignedData.getEncoded()));
-            return cmsSignedData.getEncoded();
+            byte[] signature = cmsSignedData.getEncoded();
+            signEvent.end();
+
+            if (signEvent.shouldCommit()) {
+                signEvent.format = "CAdES";
+                signEvent.algorithm = algorithmNameFinder.getAlgorithmName(contentSigner.getAlgorithmIdentifier());
+                signEvent.dataBytes = data.length;
+                signEvent.signatureBytes = signature.length;
+                signEvent.commit();
+            }
+
+            logger.debug(BaseEncoding.base64().encode(signature));
+            return signature;
         } catch (Exception e) {
             throw new IllegalStateException(String.format("Unable to sign: %s", e.getMessage()), e);
         }
@@ -217,4 +262,8 @@ public class SignatureHelper {
     Certificate[] getCertificateChain() {
         return certificateChain;
     }
+
+    Provider getSignatureProvider() {
+        return signatureProvider;
+    }
 }
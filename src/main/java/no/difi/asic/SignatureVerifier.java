@@ -1,42 +1,88 @@
 package no.difi.asic;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import no.difi.asic.jfr.VerifyEvent;
+import no.difi.asic.pkix.CertificateValidator;
 import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cms.CMSProcessableByteArray;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.SignerInformation;
 import org.bouncycastle.cms.SignerInformationStore;
+import org.bouncycastle.cms.SignerInformationVerifier;
 import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.bouncycastle.util.Store;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
+ * Verifies CAdES signatures.
+ * <p>
+ * Verifiers created for a signer certificate are kept in a bounded cache keyed by the SHA-256 fingerprint of the
+ * certificate, so containers from a known sender skip certificate parsing and public key setup.
+ *
  * @author erlend
  */
 public class SignatureVerifier {
 
-    private static final Logger logger = LoggerFactory.getLogger(SignatureHelper.class);
+    private static final Logger logger = LoggerFactory.getLogger(SignatureVerifier.class);
+
+    /** Default maximum number of signer certificates kept in the verifier cache. */
+    public static final long DEFAULT_CACHE_SIZE = 256;
 
     private static JcaSimpleSignerInfoVerifierBuilder jcaSimpleSignerInfoVerifierBuilder =
             new JcaSimpleSignerInfoVerifierBuilder().setProvider(BCHelper.getProvider());
 
-    @SuppressWarnings("unchecked")
+    private static volatile Cache<String, CachedSigner> verifierCache = newCache(DEFAULT_CACHE_SIZE);
+
+    private static JcaX509CertificateConverter jcaX509CertificateConverter =
+            new JcaX509CertificateConverter().setProvider(BCHelper.getProvider());
+
     public static no.difi.commons.asic.jaxb.asic.Certificate validate(byte[] data, byte[] signature) {
+        return validate(data, signature, null);
+    }
+
+    /**
+     * Verifies the signature and, when a certificate validator is supplied, the certificate path of the signer.
+     *
+     * @param data                 signed content.
+     * @param signature            detached CMS signature.
+     * @param certificateValidator validator of the signer certificate, null to skip path validation.
+     * @return signer certificate.
+     * @throws IllegalStateException when the signature or the certificate path is invalid.
+     */
+    @SuppressWarnings("unchecked")
+    public static no.difi.commons.asic.jaxb.asic.Certificate validate(byte[] data, byte[] signature, CertificateValidator certificateValidator) {
         no.difi.commons.asic.jaxb.asic.Certificate certificate = null;
+        CachedSigner verifiedSigner = null;
+        Store store = null;
+
+        VerifyEvent verifyEvent = new VerifyEvent();
+        verifyEvent.begin();
 
         try {
             CMSSignedData cmsSignedData = new CMSSignedData(new CMSProcessableByteArray(data), signature);
-            Store store = cmsSignedData.getCertificates();
+            store = cmsSignedData.getCertificates();
             SignerInformationStore signerInformationStore = cmsSignedData.getSignerInfos();
 
             for (SignerInformation signerInformation : signerInformationStore.getSigners()) {
                 X509CertificateHolder x509Certificate = (X509CertificateHolder) store.getMatches(signerInformation.getSID()).iterator().next();
-                logger.info(x509Certificate.getSubject().toString());
+                byte[] encoded = x509Certificate.getEncoded();
+                CachedSigner signer = lookup(x509Certificate, encoded, verifyEvent);
 
-                if (signerInformation.verify(jcaSimpleSignerInfoVerifierBuilder.build(x509Certificate))) {
+                if (signerInformation.verify(signer.verifier)) {
                     certificate = new no.difi.commons.asic.jaxb.asic.Certificate();
-                    certificate.setCertificate(x509Certificate.getEncoded());
-                    certificate.setSubject(x509Certificate.getSubject().toString());
+                    certificate.setCertificate(encoded);
+                    certificate.setSubject(signer.subject);
+                    verifiedSigner = signer;
                 }
             }
         } catch (Exception e) {
@@ -44,9 +90,108 @@ public class SignatureVerifier {
             certificate = null;
         }
 
+        verifyEvent.end();
+        if (verifyEvent.shouldCommit()) {
+            verifyEvent.format = "CAdES";
+            verifyEvent.valid = certificate != null;
+            verifyEvent.signer = verifiedSigner == null ? null : verifiedSigner.subject;
+            verifyEvent.commit();
+        }
+
         if (certificate == null)
             throw new IllegalStateException("Unable to verify signature.");
 
+        if (certificateValidator != null) {
+            Store certificates = store;
+            certificateValidator.validate(verifiedSigner.getCertificate(), () -> toCertificates(certificates));
+        }
+
         return certificate;
     }
+
+    /**
+     * Replaces the verifier cache with an empty cache holding at most the given number of signer certificates.
+     * A size of zero disables caching.
+     *
+     * @param maximumSize maximum number of cached signer certificates.
+     */
+    public static void setCacheSize(long maximumSize) {
+        verifierCache = newCache(maximumSize);
+    }
+
+    /**
+     * Statistics for the verifier cache since it was created.
+     *
+     * @return hit, miss and eviction counts.
+     */
+    public static CacheStats getCacheStats() {
+        return verifierCache.stats();
+    }
+
+    /**
+     * Removes all cached verifiers, e.g. after a signer certificate has been revoked.
+     */
+    public static void invalidateCache() {
+        verifierCache.invalidateAll();
+    }
+
+    private static CachedSigner lookup(X509CertificateHolder x509Certificate, byte[] encoded, VerifyEvent verifyEvent) throws Exception {
+        String fingerprint = Hashing.sha256().hashBytes(encoded).toString();
+
+        CachedSigner signer = verifierCache.getIfPresent(fingerprint);
+        verifyEvent.cached = signer != null;
+        if (signer == null) {
+            logger.debug("Creating verifier for {}", x509Certificate.getSubject());
+            signer = new CachedSigner(jcaSimpleSignerInfoVerifierBuilder.build(x509Certificate), x509Certificate);
+            verifierCache.put(fingerprint, signer);
+        }
+
+        return signer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<X509Certificate> toCertificates(Store store) {
+        List<X509Certificate> certificates = new ArrayList<>();
+        try {
+            for (X509CertificateHolder holder : (Iterable<X509CertificateHolder>) store.getMatches(null))
+                certificates.add(jcaX509CertificateConverter.getCertificate(holder));
+        } catch (CertificateException e) {
+            throw new IllegalStateException(String.format("Unable to read certificates in signature: %s", e.getMessage()), e);
+        }
+        return certificates;
+    }
+
+    private static Cache<String, CachedSigner> newCache(long maximumSize) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    private static class CachedSigner {
+
+        private final SignerInformationVerifier verifier;
+        private final X509CertificateHolder holder;
+        private final String subject;
+
+        private volatile X509Certificate certificate;
+
+        CachedSigner(SignerInformationVerifier verifier, X509CertificateHolder holder) {
+            this.verifier = verifier;
+            this.holder = holder;
+            this.subject = holder.getSubject().toString();
+        }
+
+        /** Converted lazily, as it is only needed for path validation. */
+        X509Certificate getCertificate() {
+            if (certificate == null) {
+                try {
+                    certificate = jcaX509CertificateConverter.getCertificate(holder);
+                } catch (CertificateException e) {
+                    throw new IllegalStateException(String.format("Unable to read signer certificate: %s", e.getMessage()), e);
+                }
+            }
+            return certificate;
+        }
+    }
 }
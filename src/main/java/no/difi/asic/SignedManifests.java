@@ -0,0 +1,75 @@
+package no.difi.asic;
+
+import no.difi.asic.zipbomb.MaxSizeProtectedOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Signed META-INF entries of a container, created from digests by {@link AsicManifestBuilder} and later placed
+ * around the data objects by {@link AsicAssembler}.
+ * <p>
+ * The entries may be moved between processes using {@link #write(OutputStream)} and {@link #read(InputStream)}.
+ */
+public class SignedManifests {
+
+    private final Map<String, byte[]> entries;
+
+    SignedManifests(Map<String, byte[]> entries) {
+        this.entries = Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+    }
+
+    /**
+     * Reads entries written by {@link #write(OutputStream)}.
+     *
+     * @param inputStream stream holding the entries, not closed.
+     * @return signed entries.
+     * @throws IOException
+     */
+    public static SignedManifests read(InputStream inputStream) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+
+        ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+        ZipEntry zipEntry;
+        while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+            if (!zipEntry.getName().startsWith("META-INF/"))
+                throw new IllegalStateException(String.format("Not a metadata file: %s", zipEntry.getName()));
+
+            MaxSizeProtectedOutputStream outputStream = new MaxSizeProtectedOutputStream();
+            ResourcePool.copy(zipInputStream, outputStream);
+            entries.put(zipEntry.getName(), outputStream.toByteArray());
+        }
+
+        return new SignedManifests(entries);
+    }
+
+    /**
+     * @return entries by name, in the order they are written to containers.
+     */
+    public Map<String, byte[]> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Writes the entries as a ZIP archive.
+     *
+     * @param outputStream stream to write to, not closed.
+     * @throws IOException
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
+            zipOutputStream.write(entry.getValue());
+            zipOutputStream.closeEntry();
+        }
+        zipOutputStream.finish();
+    }
+}
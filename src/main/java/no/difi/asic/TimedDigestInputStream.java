@@ -0,0 +1,54 @@
+package no.difi.asic;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Updates message digests with data read, recording time spent reading (inflating) and digesting.
+ * Only used when a listener is registered.
+ */
+class TimedDigestInputStream extends FilterInputStream {
+
+    private final MessageDigest[] messageDigests;
+    private final AsicEntryEvent event;
+
+    TimedDigestInputStream(InputStream in, MessageDigest[] messageDigests, AsicEntryEvent event) {
+        super(in);
+        this.messageDigests = messageDigests;
+        this.event = event;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int read = in.read(b, off, len);
+        long inflated = System.nanoTime();
+        if (read > 0)
+            for (MessageDigest messageDigest : messageDigests)
+                messageDigest.update(b, off, read);
+        event.addCompressionNanos(inflated - start);
+        event.addDigestNanos(System.nanoTime() - inflated);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped data must be digested as well.
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        int read = read(buffer, 0, buffer.length);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
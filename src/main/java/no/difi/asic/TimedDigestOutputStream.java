@@ -0,0 +1,38 @@
+package no.difi.asic;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Updates message digests before passing data on, recording time spent in each step.
+ * Only used when a listener is registered.
+ */
+class TimedDigestOutputStream extends FilterOutputStream {
+
+    private final MessageDigest[] messageDigests;
+    private final AsicEntryEvent event;
+
+    TimedDigestOutputStream(OutputStream out, MessageDigest[] messageDigests, AsicEntryEvent event) {
+        super(out);
+        this.messageDigests = messageDigests;
+        this.event = event;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        for (MessageDigest messageDigest : messageDigests)
+            messageDigest.update(b, off, len);
+        long digested = System.nanoTime();
+        out.write(b, off, len);
+        event.addDigestNanos(digested - start);
+        event.addCompressionNanos(System.nanoTime() - digested);
+    }
+}
@@ -3,6 +3,8 @@ package no.difi.asic;
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Unmarshaller;
+import no.difi.asic.jfr.SignEvent;
+import no.difi.asic.jfr.VerifyEvent;
 import no.difi.commons.asic.jaxb.cades.XAdESSignaturesType;
 import no.difi.commons.asic.jaxb.xades.DataObjectFormatType;
 import no.difi.commons.asic.jaxb.xades.QualifyingPropertiesType;
@@ -109,7 +111,7 @@ class XadesAsicManifest extends AbstractAsicManifest {
     }
 
     @Override
-    public void add(String filename, MimeType mimeType) {
+    public void add(String filename, MimeType mimeType, byte[] digest) {
         String id = String.format("ID_%s", references.size());
 
         references.add(xmlSignatureFactory.newReference(
@@ -117,7 +119,7 @@ class XadesAsicManifest extends AbstractAsicManifest {
                 digestMethod,
                 null,
                 null,
-                id, messageDigest.digest()));
+                id, digest));
 
         // \XAdESSignature\Signature\Object\QualifyingProperties\SignedProperties\SignedDataObjectProperties\DataObjectFormat
         DataObjectFormatType dataObjectFormatType = new DataObjectFormatType();
@@ -135,7 +137,24 @@ class XadesAsicManifest extends AbstractAsicManifest {
         }
     }
 
+    @Override
+    void reset() {
+        super.reset();
+
+        references.clear();
+        signedDataObjectProperties.getDataObjectFormat().clear();
+    }
+
     public byte[] toBytes(SignatureHelper signatureHelper) {
+        return toBytes(signatureHelper, null);
+    }
+
+    /**
+     * Creates the signed manifest, recording time spent signing and time spent on XML in the event when given.
+     */
+    byte[] toBytes(SignatureHelper signatureHelper, AsicEntryEvent event) {
+        long start = event == null ? 0 : System.nanoTime();
+
         // Generer XAdES-dokument som skal signeres, informasjon om nøkkel brukt til signering og informasjon om hva som er signert
         XadesArtifacts xadesArtifacts = createXAdESArtifacts.createArtifactsToSign(
                 signedDataObjectProperties.getDataObjectFormat(),
@@ -161,7 +180,12 @@ class XadesAsicManifest extends AbstractAsicManifest {
         Document signedDocument = DomUtils.newEmptyXmlDocument();
         DOMSignContext signContext = new DOMSignContext(signatureHelper.keyPair.getPrivate(), addXAdESSignaturesElement(signedDocument));
         signContext.setURIDereferencer(signedPropertiesURIDereferencer(xadesArtifacts));
+        if (signatureHelper.getSignatureProvider() != null)
+            signContext.setProperty("org.jcp.xml.dsig.internal.dom.SignatureProvider", signatureHelper.getSignatureProvider());
 
+        SignEvent signEvent = new SignEvent();
+        signEvent.begin();
+        long signingStart = event == null ? 0 : System.nanoTime();
         try {
             xmlSignature.sign(signContext);
         } catch (MarshalException e) {
@@ -169,8 +193,23 @@ class XadesAsicManifest extends AbstractAsicManifest {
         } catch (XMLSignatureException e) {
             throw new IllegalStateException("Could not sign ASiC-E", e);
         }
+        long signingEnd = event == null ? 0 : System.nanoTime();
+        signEvent.end();
+        if (signEvent.shouldCommit()) {
+            signEvent.format = "XAdES";
+            signEvent.algorithm = signatureMethod.getAlgorithm();
+            signEvent.signatureBytes = xmlSignature.getSignatureValue().getValue().length;
+            signEvent.commit();
+        }
+
+        byte[] bytes = DomUtils.serializeToXml(signedDocument);
+
+        if (event != null) {
+            event.addSigningNanos(signingEnd - signingStart);
+            event.addXmlNanos(signingStart - start + System.nanoTime() - signingEnd);
+        }
 
-        return DomUtils.serializeToXml(signedDocument);
+        return bytes;
     }
 
     public List<Reference> getReferences() {
@@ -202,6 +241,9 @@ class XadesAsicManifest extends AbstractAsicManifest {
                 .replace("http://uri.etsi.org/2918/v1.2.1#", ASIC_NAMESPACE)
                 .replaceAll("http://www.w3.org/2000/09/xmldsig#sha", "http://www.w3.org/2001/04/xmlenc#sha");
 
+        VerifyEvent verifyEvent = new VerifyEvent();
+        verifyEvent.begin();
+
         XAdESSignaturesType manifest;
 
         try {
@@ -215,10 +257,19 @@ class XadesAsicManifest extends AbstractAsicManifest {
             SignedInfoType signedInfoType = signature.getSignedInfo();
 
             for (ReferenceType reference : signedInfoType.getReference()) {
-                if (!reference.getURI().startsWith("#"))
+                if (!reference.getURI().startsWith("#")) {
                     manifestVerifier.update(reference.getURI(), null, reference.getDigestValue(), reference.getDigestMethod().getAlgorithm(), null);
+                    verifyEvent.references++;
+                }
             }
         }
+
+        // Signature values of XAdES are not verified, only digests of the referenced data objects.
+        verifyEvent.end();
+        if (verifyEvent.shouldCommit()) {
+            verifyEvent.format = "XAdES";
+            verifyEvent.commit();
+        }
     }
 
 }
@@ -0,0 +1,358 @@
+package no.difi.asic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Central directory of a ZIP file kept as raw records, making it possible to add entries to a container without
+ * touching the compressed data of the entries already present.
+ * <p>
+ * ZIP64 end records are read when present and written when the number of records, size or offset of the central
+ * directory needs them, in the same way as {@link AsicZipWriter}. Offsets of local headers beyond 4 GB are kept in
+ * the ZIP64 extra field of each record.
+ */
+class ZipCentralDirectory {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_LENGTH = 22;
+    private static final int RECORD_SIGNATURE = 0x02014b50;
+    private static final int RECORD_LENGTH = 46;
+    private static final int RECORD_OFFSET_POSITION = 42;
+    private static final int LOCAL_LENGTH = 30;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_LENGTH = 56;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int VERSION_ZIP64 = 45;
+
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private final List<Record> records = new ArrayList<>();
+    private long offset;
+    private byte[] comment;
+
+    /**
+     * Reads the central directory at the end of the file.
+     */
+    static ZipCentralDirectory read(FileChannel channel) throws IOException {
+        int tailLength = (int) Math.min(channel.size(), END_LENGTH + 0xFFFF);
+        ByteBuffer tail = readFully(channel, channel.size() - tailLength, tailLength);
+
+        int end = findEnd(tail);
+        long size = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long offset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+        long zip64End = findZip64End(tail, end);
+        if (zip64End >= 0) {
+            ByteBuffer record = readFully(channel, zip64End, ZIP64_END_LENGTH);
+            size = getZip64Size(record, 0);
+            offset = getZip64Offset(record, 0);
+        }
+
+        return parse(readFully(channel, offset, toLength(size)), offset, tail, end);
+    }
+
+    /**
+     * Reads the central directory of a ZIP file held in memory.
+     */
+    static ZipCentralDirectory read(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        int end = findEnd(buffer);
+        long size = Integer.toUnsignedLong(buffer.getInt(end + 12));
+        long offset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+
+        long zip64End = findZip64End(buffer, end);
+        if (zip64End >= 0) {
+            size = getZip64Size(buffer, toLength(zip64End));
+            offset = getZip64Offset(buffer, toLength(zip64End));
+        }
+
+        ByteBuffer records = ByteBuffer.wrap(bytes, toLength(offset), toLength(size)).slice().order(ByteOrder.LITTLE_ENDIAN);
+        return parse(records, offset, buffer, end);
+    }
+
+    private static ZipCentralDirectory parse(ByteBuffer buffer, long offset, ByteBuffer tail, int end) {
+        ZipCentralDirectory centralDirectory = new ZipCentralDirectory();
+        centralDirectory.offset = offset;
+
+        centralDirectory.comment = new byte[tail.getShort(end + 20) & 0xFFFF];
+        tail.get(end + END_LENGTH, centralDirectory.comment);
+
+        int position = 0;
+        while (position < buffer.limit()) {
+            if (buffer.getInt(position) != RECORD_SIGNATURE)
+                throw new IllegalStateException("Invalid central directory record.");
+
+            int length = RECORD_LENGTH
+                    + (buffer.getShort(position + 28) & 0xFFFF)
+                    + (buffer.getShort(position + 30) & 0xFFFF)
+                    + (buffer.getShort(position + 32) & 0xFFFF);
+            byte[] bytes = new byte[length];
+            buffer.get(position, bytes);
+            centralDirectory.records.add(new Record(bytes));
+
+            position += length;
+        }
+
+        return centralDirectory;
+    }
+
+    private static int findEnd(ByteBuffer buffer) {
+        for (int position = buffer.limit() - END_LENGTH; position >= 0; position--)
+            if (buffer.getInt(position) == END_SIGNATURE)
+                return position;
+
+        throw new IllegalStateException("End of central directory not found.");
+    }
+
+    /**
+     * @return position of the ZIP64 end of central directory record in the file, -1 when there is no locator in front
+     * of the end record.
+     */
+    private static long findZip64End(ByteBuffer buffer, int end) {
+        int locator = end - ZIP64_LOCATOR_LENGTH;
+        if (locator < 0 || buffer.getInt(locator) != ZIP64_LOCATOR_SIGNATURE) {
+            if (buffer.getInt(end + 12) == (int) MAX_OFFSET || buffer.getInt(end + 16) == (int) MAX_OFFSET)
+                throw new IllegalStateException("ZIP64 end of central directory not found.");
+            return -1;
+        }
+
+        return buffer.getLong(locator + 8);
+    }
+
+    private static long getZip64Size(ByteBuffer buffer, int position) {
+        if (buffer.getInt(position) != ZIP64_END_SIGNATURE)
+            throw new IllegalStateException("Invalid ZIP64 end of central directory record.");
+        return buffer.getLong(position + 40);
+    }
+
+    private static long getZip64Offset(ByteBuffer buffer, int position) {
+        return buffer.getLong(position + 48);
+    }
+
+    private static int toLength(long value) {
+        if (value < 0 || value > Integer.MAX_VALUE)
+            throw new IllegalStateException(String.format("Central directory too large: %s bytes", value));
+        return (int) value;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IllegalStateException("Unexpected end of container.");
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return position of the central directory, which is where the data of the entries ends.
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    List<Record> getRecords() {
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * Adds the records of another central directory, moving their local headers by the given number of bytes.
+     */
+    void append(ZipCentralDirectory other, long delta) {
+        for (Record record : other.records)
+            records.add(record.relocate(delta));
+    }
+
+    /**
+     * Writes the records followed by the end of central directory record, preceded by the ZIP64 end records when
+     * needed.
+     *
+     * @param offset position of the central directory in the file.
+     */
+    void write(OutputStream outputStream, long offset) throws IOException {
+        long size = 0;
+        for (Record record : records) {
+            outputStream.write(record.bytes);
+            size += record.bytes.length;
+        }
+
+        if (records.size() >= MAX_ENTRIES || offset >= MAX_OFFSET || size >= MAX_OFFSET) {
+            ByteBuffer zip64End = ByteBuffer.allocate(ZIP64_END_LENGTH + ZIP64_LOCATOR_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            zip64End.putInt(ZIP64_END_SIGNATURE);
+            zip64End.putLong(ZIP64_END_LENGTH - 12);
+            zip64End.putShort((short) VERSION_ZIP64);
+            zip64End.putShort((short) VERSION_ZIP64);
+            zip64End.putInt(0);
+            zip64End.putInt(0);
+            zip64End.putLong(records.size());
+            zip64End.putLong(records.size());
+            zip64End.putLong(size);
+            zip64End.putLong(offset);
+
+            zip64End.putInt(ZIP64_LOCATOR_SIGNATURE);
+            zip64End.putInt(0);
+            zip64End.putLong(offset + size);
+            zip64End.putInt(1);
+            outputStream.write(zip64End.array());
+        }
+
+        ByteBuffer end = ByteBuffer.allocate(END_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(records.size(), MAX_ENTRIES));
+        end.putShort((short) Math.min(records.size(), MAX_ENTRIES));
+        end.putInt((int) Math.min(size, MAX_OFFSET));
+        end.putInt((int) Math.min(offset, MAX_OFFSET));
+        end.putShort((short) comment.length);
+        outputStream.write(end.array());
+        outputStream.write(comment);
+    }
+
+    static class Record {
+
+        private final byte[] bytes;
+
+        Record(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        String getName() {
+            return new String(bytes, RECORD_LENGTH, getShort(28), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return uncompressed size, found in the ZIP64 extra field when too large for the record.
+         */
+        long getSize() {
+            long size = getUnsignedInt(24);
+            return size == MAX_OFFSET ? getZip64Field(0) : size;
+        }
+
+        /**
+         * @return compressed size, found in the ZIP64 extra field when too large for the record.
+         */
+        long getCompressedSize() {
+            long compressedSize = getUnsignedInt(20);
+            return compressedSize == MAX_OFFSET ? getZip64Field(1) : compressedSize;
+        }
+
+        long getLocalHeaderOffset() {
+            long localHeaderOffset = getUnsignedInt(RECORD_OFFSET_POSITION);
+            return localHeaderOffset == MAX_OFFSET ? getZip64Field(2) : localHeaderOffset;
+        }
+
+        /**
+         * Reads the local header of the entry to find where its compressed data starts.
+         */
+        long getDataOffset(FileChannel channel) throws IOException {
+            ByteBuffer header = readFully(channel, getLocalHeaderOffset(), LOCAL_LENGTH);
+            return getLocalHeaderOffset() + LOCAL_LENGTH + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        }
+
+        /**
+         * Moves the local header by the given number of bytes, keeping the offset in the ZIP64 extra field when too
+         * large for the record.
+         */
+        Record relocate(long delta) {
+            long localHeaderOffset = getLocalHeaderOffset() + delta;
+
+            if (getUnsignedInt(RECORD_OFFSET_POSITION) == MAX_OFFSET) {
+                byte[] relocated = bytes.clone();
+                ByteBuffer.wrap(relocated).order(ByteOrder.LITTLE_ENDIAN).putLong(requireZip64Extra() + zip64Position(2), localHeaderOffset);
+                return new Record(relocated);
+            }
+
+            if (localHeaderOffset < MAX_OFFSET) {
+                byte[] relocated = bytes.clone();
+                ByteBuffer.wrap(relocated).order(ByteOrder.LITTLE_ENDIAN).putInt(RECORD_OFFSET_POSITION, (int) localHeaderOffset);
+                return new Record(relocated);
+            }
+
+            // Offset is added to the ZIP64 extra field, after the sizes found there, or in a new extra field
+            int extra = findZip64Extra();
+            int position = extra < 0 ? RECORD_LENGTH + getShort(28) + getShort(30) : extra + zip64Position(2);
+            int added = extra < 0 ? 12 : 8;
+
+            ByteBuffer relocated = ByteBuffer.allocate(bytes.length + added).order(ByteOrder.LITTLE_ENDIAN);
+            relocated.put(bytes, 0, position);
+            if (extra < 0) {
+                relocated.putShort((short) ZIP64_EXTRA);
+                relocated.putShort((short) 8);
+            }
+            relocated.putLong(localHeaderOffset);
+            relocated.put(bytes, position, bytes.length - position);
+
+            if (extra >= 0)
+                relocated.putShort(extra - 2, (short) (relocated.getShort(extra - 2) + 8));
+            relocated.putShort(30, (short) (getShort(30) + added));
+            relocated.putShort(6, (short) Math.max(getShort(6), VERSION_ZIP64));
+            relocated.putInt(RECORD_OFFSET_POSITION, (int) MAX_OFFSET);
+            return new Record(relocated.array());
+        }
+
+        private long getZip64Field(int field) {
+            return buffer().getLong(requireZip64Extra() + zip64Position(field));
+        }
+
+        private int requireZip64Extra() {
+            int extra = findZip64Extra();
+            if (extra < 0)
+                throw new IllegalStateException(String.format("ZIP64 extra field not found: %s", getName()));
+            return extra;
+        }
+
+        /**
+         * @return position of the data of the ZIP64 extra field, -1 when not found.
+         */
+        private int findZip64Extra() {
+            ByteBuffer buffer = buffer();
+            int position = RECORD_LENGTH + getShort(28);
+            int end = position + getShort(30);
+            while (position + 4 <= end) {
+                int length = buffer.getShort(position + 2) & 0xFFFF;
+                if ((buffer.getShort(position) & 0xFFFF) == ZIP64_EXTRA)
+                    return position + 4;
+                position += 4 + length;
+            }
+            return -1;
+        }
+
+        /**
+         * @return position within the ZIP64 extra field of the given field, as only fields too large for the record
+         * are present: uncompressed size, compressed size and local header offset, in that order.
+         */
+        private int zip64Position(int field) {
+            int position = 0;
+            if (field > 0 && getUnsignedInt(24) == MAX_OFFSET)
+                position += 8;
+            if (field > 1 && getUnsignedInt(20) == MAX_OFFSET)
+                position += 8;
+            return position;
+        }
+
+        private int getShort(int position) {
+            return buffer().getShort(position) & 0xFFFF;
+        }
+
+        private long getUnsignedInt(int position) {
+            return Integer.toUnsignedLong(buffer().getInt(position));
+        }
+
+        private ByteBuffer buffer() {
+            return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
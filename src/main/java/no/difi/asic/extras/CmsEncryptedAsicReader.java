@@ -2,6 +2,10 @@ package no.difi.asic.extras;
 
 import com.google.common.io.ByteStreams;
 import no.difi.asic.AsicReader;
+import no.difi.asic.MessageDigestAlgorithm;
+import no.difi.asic.jfr.CmsEvent;
+import no.difi.asic.store.ContentStore;
+import no.difi.commons.asic.jaxb.asic.AsicFile;
 import no.difi.commons.asic.jaxb.asic.AsicManifest;
 import org.bouncycastle.cms.CMSEnvelopedDataParser;
 import org.bouncycastle.cms.RecipientInformation;
@@ -10,6 +14,9 @@ import org.bouncycastle.cms.jcajce.JceKeyTransEnvelopedRecipient;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.util.Collection;
 
@@ -56,6 +63,9 @@ public class CmsEncryptedAsicReader extends CmsEncryptedAsicAbstract implements
                 ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
                 asicReader.writeFile(byteArrayOutputStream);
 
+                CmsEvent cmsEvent = new CmsEvent();
+                cmsEvent.begin();
+
                 CMSEnvelopedDataParser cmsEnvelopedDataParser = new CMSEnvelopedDataParser(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
                 // expect exactly one recipient
                 Collection<?> recipients = cmsEnvelopedDataParser.getRecipientInfos().getRecipients();
@@ -66,6 +76,16 @@ public class CmsEncryptedAsicReader extends CmsEncryptedAsicAbstract implements
                 RecipientInformation recipient = (RecipientInformation) recipients.iterator().next();
                 byte[] decryptedData = recipient.getContent(new JceKeyTransEnvelopedRecipient(privateKey).setProvider(BC));
 
+                cmsEvent.end();
+                if (cmsEvent.shouldCommit()) {
+                    cmsEvent.operation = "decrypt";
+                    cmsEvent.entry = currentFile;
+                    cmsEvent.algorithm = cmsEnvelopedDataParser.getEncryptionAlgOID();
+                    cmsEvent.plainBytes = decryptedData.length;
+                    cmsEvent.encryptedBytes = byteArrayOutputStream.size();
+                    cmsEvent.commit();
+                }
+
                 ByteStreams.copy(new ByteArrayInputStream(decryptedData), outputStream);
             } catch (Exception e) {
                 throw new IOException(e.getMessage(), e);
@@ -75,6 +95,28 @@ public class CmsEncryptedAsicReader extends CmsEncryptedAsicAbstract implements
         }
     }
 
+    /**
+     * Encrypted entries are stored decrypted, keyed by their SHA-256 digest, as manifests only hold digests of the
+     * encrypted content. Other entries are stored as by the wrapped reader.
+     */
+    @Override
+    public byte[] writeFile(ContentStore contentStore) throws IOException {
+        if (!currentFile.endsWith(".p7m"))
+            return asicReader.writeFile(contentStore);
+
+        try (ContentStore.PendingContent pendingContent = contentStore.newContent()) {
+            DigestOutputStream outputStream = new DigestOutputStream(pendingContent.getOutputStream(),
+                    MessageDigest.getInstance(MessageDigestAlgorithm.SHA256.getAlgorithm()));
+            writeFile(outputStream);
+
+            byte[] digest = outputStream.getMessageDigest().digest();
+            pendingContent.commit(MessageDigestAlgorithm.SHA256, digest);
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
     @Override
     public InputStream inputStream() throws IOException {
         PipedInputStream pipedInputStream = new PipedInputStream();
@@ -84,11 +126,26 @@ public class CmsEncryptedAsicReader extends CmsEncryptedAsicAbstract implements
         return pipedInputStream;
     }
 
+    @Override
+    public AsicReader reset(InputStream inputStream) throws IOException {
+        asicReader.reset(inputStream);
+        currentFile = null;
+        return this;
+    }
+
     @Override
     public void close() throws IOException {
         asicReader.close();
     }
 
+    /**
+     * Digests and sizes are those of the entry as stored in the container, i.e. of the encrypted content.
+     */
+    @Override
+    public AsicFile getCurrentFile() {
+        return asicReader.getCurrentFile();
+    }
+
     @Override
     public AsicManifest getAsicManifest() {
         AsicManifest asicManifest = asicReader.getAsicManifest();
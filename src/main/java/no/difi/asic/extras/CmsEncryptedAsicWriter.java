@@ -1,10 +1,11 @@
 package no.difi.asic.extras;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.cert.X509Certificate;
@@ -26,6 +27,7 @@ import no.difi.asic.AsicWriter;
 import no.difi.asic.KeyStoreType;
 import no.difi.asic.MimeType;
 import no.difi.asic.SignatureHelper;
+import no.difi.asic.jfr.CmsEvent;
 
 /**
  * Wrapper to seamlessly encode specific files.
@@ -88,7 +90,7 @@ public class CmsEncryptedAsicWriter extends CmsEncryptedAsicAbstract implements
      */
     @Override
     public AsicWriter add(InputStream inputStream, String filename) throws IOException {
-        return add(inputStream, filename, AsicUtils.detectMime(filename));
+        return asicWriter.add(inputStream, filename);
     }
 
     /**
@@ -118,6 +120,22 @@ public class CmsEncryptedAsicWriter extends CmsEncryptedAsicAbstract implements
         return asicWriter.add(inputStream, filename, mimeType);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsicWriter add(byte[] content, String filename, MimeType mimeType) throws IOException {
+        return asicWriter.add(content, filename, mimeType);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsicWriter add(ByteBuffer content, String filename, MimeType mimeType) throws IOException {
+        return asicWriter.add(content, filename, mimeType);
+    }
+
     public AsicWriter addEncrypted(File file) throws IOException {
         return addEncrypted(file.toPath());
     }
@@ -157,6 +175,9 @@ public class CmsEncryptedAsicWriter extends CmsEncryptedAsicAbstract implements
             ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
             ByteStreams.copy(inputStream, byteArrayOutputStream);
 
+            CmsEvent cmsEvent = new CmsEvent();
+            cmsEvent.begin();
+
             CMSEnvelopedDataGenerator cmsEnvelopedDataGenerator = new CMSEnvelopedDataGenerator();
             cmsEnvelopedDataGenerator.addRecipientInfoGenerator(new JceKeyTransRecipientInfoGenerator(certificate).setProvider(BC));
             CMSEnvelopedData data = cmsEnvelopedDataGenerator.generate(
@@ -164,9 +185,21 @@ public class CmsEncryptedAsicWriter extends CmsEncryptedAsicAbstract implements
                     new JceCMSContentEncryptorBuilder(cmsAlgorithm).setProvider(BC).build()
             );
 
+            byte[] encrypted = data.getEncoded();
+
+            cmsEvent.end();
+            if (cmsEvent.shouldCommit()) {
+                cmsEvent.operation = "encrypt";
+                cmsEvent.entry = filename;
+                cmsEvent.algorithm = cmsAlgorithm.getId();
+                cmsEvent.plainBytes = byteArrayOutputStream.size();
+                cmsEvent.encryptedBytes = encrypted.length;
+                cmsEvent.commit();
+            }
+
             this.entryNeames.add(filename);
 
-            return asicWriter.add(new ByteArrayInputStream(data.getEncoded()), filename + ".p7m", mimeType);
+            return asicWriter.add(encrypted, filename + ".p7m", mimeType);
         } catch (Exception e) {
             throw new IOException(e.getMessage(), e);
         }
@@ -195,6 +228,13 @@ public class CmsEncryptedAsicWriter extends CmsEncryptedAsicAbstract implements
         return asicWriter.sign(signatureHelper);
     }
 
+    @Override
+    public AsicWriter reset(OutputStream outputStream) throws IOException {
+        asicWriter.reset(outputStream);
+        entryNeames.clear();
+        return this;
+    }
+
     @Override
     public AsicWriter sign (File keyStoreFile, String keyStorePassword, KeyStoreType keyStoreType, String keyAlias, String keyPassword) throws IOException {
         return asicWriter.sign(keyStoreFile, keyStorePassword, keyStoreType, keyAlias, keyPassword);
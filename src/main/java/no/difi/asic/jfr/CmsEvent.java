@@ -0,0 +1,32 @@
+package no.difi.asic.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Encryption or decryption of an entry using CMS.
+ */
+@Name("no.difi.asic.Cms")
+@Label("CMS Encryption")
+@Category("ASiC")
+@Description("Encryption or decryption of an entry using CMS.")
+@StackTrace(false)
+public class CmsEvent extends Event {
+
+    @Label("Operation")
+    @Description("encrypt or decrypt")
+    public String operation;
+
+    @Label("Entry")
+    public String entry;
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("Plain Bytes")
+    @DataAmount
+    public long plainBytes;
+
+    @Label("Encrypted Bytes")
+    @DataAmount
+    public long encryptedBytes;
+}
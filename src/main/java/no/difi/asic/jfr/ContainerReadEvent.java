@@ -0,0 +1,32 @@
+package no.difi.asic.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Reading of a container, from reader creation until all entries are read and verified.
+ */
+@Name("no.difi.asic.ContainerRead")
+@Label("Container Read")
+@Category("ASiC")
+@Description("Reading of a container, from reader creation until all entries are read and verified.")
+public class ContainerReadEvent extends Event {
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Signatures")
+    public int signatures;
+
+    @Label("Uncompressed Bytes")
+    @DataAmount
+    public long uncompressedBytes;
+
+    @Label("Stalled Reads")
+    @Description("Reads waiting for the source when reading ahead")
+    public long stalledReads;
+
+    @Label("Stalled Time")
+    @Description("Time spent waiting for the source when reading ahead")
+    @Timespan
+    public long stalledTime;
+}
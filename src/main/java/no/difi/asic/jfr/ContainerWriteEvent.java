@@ -0,0 +1,23 @@
+package no.difi.asic.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Creation of a container, from writer creation until the container is signed and finished.
+ */
+@Name("no.difi.asic.ContainerWrite")
+@Label("Container Write")
+@Category("ASiC")
+@Description("Creation of a container, from writer creation until the container is signed and finished.")
+public class ContainerWriteEvent extends Event {
+
+    @Label("Signature Method")
+    public String signatureMethod;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Uncompressed Bytes")
+    @DataAmount
+    public long uncompressedBytes;
+}
@@ -0,0 +1,29 @@
+package no.difi.asic.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Entry read from a container, including decompression and digest calculation.
+ */
+@Name("no.difi.asic.EntryRead")
+@Label("Entry Read")
+@Category("ASiC")
+@Description("Entry read from a container, including decompression and digest calculation.")
+@StackTrace(false)
+public class EntryReadEvent extends Event {
+
+    @Label("Entry")
+    public String entry;
+
+    @Label("Metadata")
+    @Description("Entry is located in META-INF")
+    public boolean metadata;
+
+    @Label("Uncompressed Bytes")
+    @DataAmount
+    public long uncompressedBytes;
+
+    @Label("Compressed Bytes")
+    @DataAmount
+    public long compressedBytes;
+}
@@ -0,0 +1,28 @@
+package no.difi.asic.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Data object added to a container, including digest calculation and compression.
+ */
+@Name("no.difi.asic.EntryWrite")
+@Label("Entry Write")
+@Category("ASiC")
+@Description("Data object added to a container, including digest calculation and compression.")
+@StackTrace(false)
+public class EntryWriteEvent extends Event {
+
+    @Label("Entry")
+    public String entry;
+
+    @Label("MIME Type")
+    public String mimeType;
+
+    @Label("Uncompressed Bytes")
+    @DataAmount
+    public long uncompressedBytes;
+
+    @Label("Compressed Bytes")
+    @DataAmount
+    public long compressedBytes;
+}
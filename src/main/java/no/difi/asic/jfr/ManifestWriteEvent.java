@@ -0,0 +1,24 @@
+package no.difi.asic.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Generation of a manifest in META-INF.
+ */
+@Name("no.difi.asic.ManifestWrite")
+@Label("Manifest Write")
+@Category("ASiC")
+@Description("Generation of a manifest in META-INF.")
+@StackTrace(false)
+public class ManifestWriteEvent extends Event {
+
+    @Label("Manifest")
+    public String manifest;
+
+    @Label("References")
+    public int references;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,30 @@
+package no.difi.asic.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Creation of a signature using the private key.
+ */
+@Name("no.difi.asic.Sign")
+@Label("Sign")
+@Category("ASiC")
+@Description("Creation of a signature using the private key.")
+@StackTrace(false)
+public class SignEvent extends Event {
+
+    @Label("Format")
+    @Description("CAdES or XAdES")
+    public String format;
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("Data Bytes")
+    @Description("Size of the signed manifest, zero for XAdES where the manifest is created while signing")
+    @DataAmount
+    public long dataBytes;
+
+    @Label("Signature Bytes")
+    @DataAmount
+    public long signatureBytes;
+}
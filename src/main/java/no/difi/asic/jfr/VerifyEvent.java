@@ -0,0 +1,32 @@
+package no.difi.asic.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Verification of a CAdES signature, or extraction of digests from a XAdES signature.
+ */
+@Name("no.difi.asic.Verify")
+@Label("Signature Verification")
+@Category("ASiC")
+@Description("Verification of a CAdES signature, or extraction of digests from a XAdES signature.")
+@StackTrace(false)
+public class VerifyEvent extends Event {
+
+    @Label("Format")
+    @Description("CAdES or XAdES")
+    public String format;
+
+    @Label("Signer")
+    public String signer;
+
+    @Label("References")
+    @Description("Number of data objects covered by the signature, only reported for XAdES")
+    public int references;
+
+    @Label("Cached Verifier")
+    @Description("Verifier for the signer certificate was found in cache")
+    public boolean cached;
+
+    @Label("Valid")
+    public boolean valid;
+}
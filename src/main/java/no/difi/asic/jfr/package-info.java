@@ -0,0 +1,8 @@
+/**
+ * JDK Flight Recorder events emitted while writing, signing, reading and verifying containers.
+ * <p>
+ * Events are registered under the "ASiC" category and are enabled through the normal JFR settings, e.g.
+ * {@code -XX:StartFlightRecording:settings=profile}. Fields that are costly to produce, like signer subjects, are
+ * only computed when the event is going to be committed.
+ */
+package no.difi.asic.jfr;
@@ -0,0 +1,313 @@
+package no.difi.asic.pkix;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.CertPathBuilder;
+import java.security.cert.CertStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.PKIXCertPathBuilderResult;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CertSelector;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Validates signer certificates against a set of trust anchors, optionally checking revocation.
+ * <p>
+ * Successful path validations are cached per certificate until the first of: the configured maximum cache time,
+ * expiry of any certificate in the path, or the next update of any revocation response used. Revocation responses
+ * are cached per certificate until their next update. Failed validations are never cached. Revocation responses are
+ * treated as unavailable when past their next update, dated in the future, or, without next update, older than the
+ * configured maximum response age.
+ * <p>
+ * This class is thread safe once configured.
+ */
+public class CertificateValidator {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateValidator.class);
+
+    public static final long DEFAULT_CACHE_SIZE = 1024;
+    public static final Duration DEFAULT_MAX_CACHE_TIME = Duration.ofHours(1);
+    public static final Duration DEFAULT_MAX_RESPONSE_AGE = Duration.ofDays(1);
+
+    /**
+     * Creates a validator trusting the certificates found in the supplied key store.
+     *
+     * @param trustStore key store holding trusted certificates.
+     * @return instantiated validator without revocation checking.
+     */
+    public static CertificateValidator newValidator(KeyStore trustStore) {
+        try {
+            Set<X509Certificate> anchors = new HashSet<>();
+            for (String alias : Collections.list(trustStore.aliases())) {
+                Certificate certificate = trustStore.getCertificate(alias);
+                if (certificate instanceof X509Certificate)
+                    anchors.add((X509Certificate) certificate);
+            }
+            return newValidator(anchors);
+        } catch (KeyStoreException e) {
+            throw new IllegalStateException(String.format("Unable to read trust store: %s", e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Creates a validator trusting the supplied certificates.
+     *
+     * @param trustedCertificates trusted certificates.
+     * @return instantiated validator without revocation checking.
+     */
+    public static CertificateValidator newValidator(Collection<X509Certificate> trustedCertificates) {
+        if (trustedCertificates.isEmpty())
+            throw new IllegalArgumentException("At least one trusted certificate is required.");
+
+        return new CertificateValidator(trustedCertificates);
+    }
+
+    private final Set<X509Certificate> trustedCertificates;
+    private final Set<TrustAnchor> trustAnchors = new HashSet<>();
+
+    private RevocationSource revocationSource;
+    private boolean softFail = false;
+    private Duration maxCacheTime = DEFAULT_MAX_CACHE_TIME;
+    private Duration maxResponseAge = DEFAULT_MAX_RESPONSE_AGE;
+
+    private Cache<String, Instant> pathCache;
+    private Cache<String, CachedStatus> revocationCache;
+
+    private CertificateValidator(Collection<X509Certificate> trustedCertificates) {
+        this.trustedCertificates = new HashSet<>(trustedCertificates);
+        for (X509Certificate certificate : trustedCertificates)
+            trustAnchors.add(new TrustAnchor(certificate, null));
+
+        setCacheSize(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Enables revocation checking of every certificate in the path below the trust anchor.
+     *
+     * @param revocationSource source of revocation information, null disables revocation checking.
+     * @return reference to this validator.
+     */
+    public CertificateValidator setRevocationSource(RevocationSource revocationSource) {
+        this.revocationSource = revocationSource;
+        return this;
+    }
+
+    /**
+     * Accept certificates when revocation information cannot be obtained. Revoked certificates are always rejected.
+     *
+     * @param softFail true to accept certificates with unavailable or unknown revocation status.
+     * @return reference to this validator.
+     */
+    public CertificateValidator setSoftFail(boolean softFail) {
+        this.softFail = softFail;
+        return this;
+    }
+
+    /**
+     * @param maxCacheTime upper limit for how long a successful validation or a revocation response without next
+     *                     update is trusted.
+     * @return reference to this validator.
+     */
+    public CertificateValidator setMaxCacheTime(Duration maxCacheTime) {
+        this.maxCacheTime = maxCacheTime;
+        return this;
+    }
+
+    /**
+     * @param maxResponseAge maximum age of revocation responses without next update. Responses past their next update
+     *                       or dated in the future are always rejected.
+     * @return reference to this validator.
+     */
+    public CertificateValidator setMaxResponseAge(Duration maxResponseAge) {
+        this.maxResponseAge = maxResponseAge;
+        return this;
+    }
+
+    /**
+     * Replaces the caches with empty caches holding at most the given number of entries each. A size of zero
+     * disables caching.
+     *
+     * @param maximumSize maximum number of entries per cache.
+     * @return reference to this validator.
+     */
+    public CertificateValidator setCacheSize(long maximumSize) {
+        pathCache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        revocationCache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        return this;
+    }
+
+    public CacheStats getPathCacheStats() {
+        return pathCache.stats();
+    }
+
+    public CacheStats getRevocationCacheStats() {
+        return revocationCache.stats();
+    }
+
+    /**
+     * @see #validate(X509Certificate, Supplier)
+     */
+    public void validate(X509Certificate certificate, Collection<X509Certificate> intermediates) {
+        validate(certificate, () -> intermediates);
+    }
+
+    /**
+     * Validates the certificate path from the supplied certificate to one of the trust anchors.
+     *
+     * @param certificate   certificate to validate.
+     * @param intermediates supplier of certificates available for building the path, only used when no cached
+     *                      result is found.
+     * @throws IllegalStateException when no valid path is found or a certificate in the path is revoked.
+     */
+    public void validate(X509Certificate certificate, Supplier<? extends Collection<X509Certificate>> intermediates) {
+        Instant now = Instant.now();
+        String key = fingerprint(certificate);
+
+        Instant validUntil = pathCache.getIfPresent(key);
+        if (validUntil != null && now.isBefore(validUntil))
+            return;
+
+        Instant expiry = now.plus(maxCacheTime);
+
+        if (trustedCertificates.contains(certificate)) {
+            checkValidity(certificate, now);
+            pathCache.put(key, min(expiry, certificate.getNotAfter().toInstant()));
+            return;
+        }
+
+        PKIXCertPathBuilderResult result = buildPath(certificate, intermediates.get());
+
+        @SuppressWarnings("unchecked")
+        List<X509Certificate> path = (List<X509Certificate>) result.getCertPath().getCertificates();
+        for (X509Certificate pathCertificate : path)
+            expiry = min(expiry, pathCertificate.getNotAfter().toInstant());
+
+        if (revocationSource != null) {
+            for (int i = 0; i < path.size(); i++) {
+                X509Certificate issuer = i + 1 < path.size() ? path.get(i + 1) : result.getTrustAnchor().getTrustedCert();
+                Instant statusExpiry = checkRevocation(path.get(i), issuer, now);
+
+                // Do not remember results based on missing revocation information.
+                if (statusExpiry == null)
+                    return;
+
+                expiry = min(expiry, statusExpiry);
+            }
+        }
+
+        pathCache.put(key, expiry);
+    }
+
+    private PKIXCertPathBuilderResult buildPath(X509Certificate certificate, Collection<X509Certificate> intermediates) {
+        try {
+            X509CertSelector selector = new X509CertSelector();
+            selector.setCertificate(certificate);
+
+            PKIXBuilderParameters parameters = new PKIXBuilderParameters(trustAnchors, selector);
+            parameters.setRevocationEnabled(false);
+            parameters.addCertStore(CertStore.getInstance("Collection", new CollectionCertStoreParameters(intermediates)));
+
+            return (PKIXCertPathBuilderResult) CertPathBuilder.getInstance("PKIX").build(parameters);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(String.format("Unable to validate certificate path for %s: %s",
+                    certificate.getSubjectX500Principal(), e.getMessage()), e);
+        }
+    }
+
+    /**
+     * @return time the revocation status expires, or null when soft failing without revocation information.
+     */
+    private Instant checkRevocation(X509Certificate certificate, X509Certificate issuer, Instant now) {
+        String key = fingerprint(issuer) + ":" + certificate.getSerialNumber().toString(16);
+
+        CachedStatus cached = revocationCache.getIfPresent(key);
+        if (cached == null || !now.isBefore(cached.expiry)) {
+            RevocationStatus status;
+            try {
+                status = revocationSource.getStatus(certificate, issuer);
+                RevocationStatus.checkFreshness(status.getThisUpdate(), status.getNextUpdate(), now, maxResponseAge);
+            } catch (IOException | RuntimeException e) {
+                if (softFail) {
+                    logger.warn("Revocation status unavailable for {}: {}", certificate.getSubjectX500Principal(), e.getMessage());
+                    return null;
+                }
+                throw new IllegalStateException(String.format("Unable to check revocation status for %s: %s",
+                        certificate.getSubjectX500Principal(), e.getMessage()), e);
+            }
+
+            Instant expiry = now.plus(maxCacheTime);
+            if (status.getNextUpdate() != null)
+                expiry = min(expiry, status.getNextUpdate());
+
+            cached = new CachedStatus(status, expiry);
+            if (now.isBefore(expiry))
+                revocationCache.put(key, cached);
+        }
+
+        switch (cached.status.getStatus()) {
+            case GOOD:
+                return cached.expiry;
+            case REVOKED:
+                throw new IllegalStateException(String.format("Certificate %s is revoked.", certificate.getSubjectX500Principal()));
+            default:
+                if (softFail) {
+                    logger.warn("Revocation status unknown for {}", certificate.getSubjectX500Principal());
+                    return null;
+                }
+                throw new IllegalStateException(String.format("Revocation status unknown for %s.", certificate.getSubjectX500Principal()));
+        }
+    }
+
+    private static void checkValidity(X509Certificate certificate, Instant now) {
+        try {
+            certificate.checkValidity(Date.from(now));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(String.format("Certificate %s is not valid: %s",
+                    certificate.getSubjectX500Principal(), e.getMessage()), e);
+        }
+    }
+
+    private static String fingerprint(X509Certificate certificate) {
+        try {
+            return Hashing.sha256().hashBytes(certificate.getEncoded()).toString();
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException(String.format("Unable to encode certificate: %s", e.getMessage()), e);
+        }
+    }
+
+    private static Instant min(Instant a, Instant b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static class CachedStatus {
+
+        private final RevocationStatus status;
+        private final Instant expiry;
+
+        CachedStatus(RevocationStatus status, Instant expiry) {
+            this.status = status;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package no.difi.asic.pkix;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLConnection;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up revocation status using the CRL distribution points of the certificate.
+ * <p>
+ * Downloaded CRLs are kept until their next update, as one CRL usually covers many certificates. CRLs past their
+ * next update or issued in the future are rejected.
+ */
+public class CrlRevocationSource implements RevocationSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrlRevocationSource.class);
+
+    private final Duration timeout;
+
+    private final Map<String, X509CRL> crls = new ConcurrentHashMap<>();
+
+    public CrlRevocationSource() {
+        this(Duration.ofSeconds(10));
+    }
+
+    /**
+     * @param timeout connect and read timeout when downloading CRLs.
+     */
+    public CrlRevocationSource(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public RevocationStatus getStatus(X509Certificate certificate, X509Certificate issuer) throws IOException {
+        List<String> urls = distributionPoints(certificate);
+        if (urls.isEmpty())
+            throw new IOException(String.format("No CRL distribution point found for %s", certificate.getSubjectX500Principal()));
+
+        IOException failure = null;
+        for (String url : urls) {
+            try {
+                X509CRL crl = getCrl(url, issuer);
+
+                X509CRLEntry entry = crl.getRevokedCertificate(certificate);
+                return new RevocationStatus(entry == null ? RevocationStatus.Status.GOOD : RevocationStatus.Status.REVOKED,
+                        crl.getThisUpdate().toInstant(),
+                        crl.getNextUpdate() == null ? null : crl.getNextUpdate().toInstant());
+            } catch (IOException e) {
+                logger.warn("Unable to use CRL {}: {}", url, e.getMessage());
+                failure = e;
+            }
+        }
+
+        throw failure;
+    }
+
+    private X509CRL getCrl(String url, X509Certificate issuer) throws IOException {
+        X509CRL crl = crls.get(url);
+        if (crl != null && crl.getNextUpdate() != null && crl.getNextUpdate().toInstant().isAfter(Instant.now()))
+            return crl;
+
+        try (InputStream inputStream = fetch(url)) {
+            crl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(inputStream);
+            crl.verify(issuer.getPublicKey());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(String.format("Invalid CRL: %s", e.getMessage()), e);
+        }
+
+        if (!crl.getIssuerX500Principal().equals(issuer.getSubjectX500Principal()))
+            throw new IOException("CRL is not issued by the issuer of the certificate");
+
+        RevocationStatus.checkFreshness(crl.getThisUpdate().toInstant(),
+                crl.getNextUpdate() == null ? null : crl.getNextUpdate().toInstant(), Instant.now(), null);
+
+        crls.put(url, crl);
+        return crl;
+    }
+
+    /**
+     * Opens the CRL at the given location. Override to use another transport.
+     *
+     * @param url location of the CRL.
+     * @return stream holding the DER encoded CRL.
+     */
+    protected InputStream fetch(String url) throws IOException {
+        URLConnection connection = URI.create(url).toURL().openConnection();
+        connection.setConnectTimeout((int) timeout.toMillis());
+        connection.setReadTimeout((int) timeout.toMillis());
+        return connection.getInputStream();
+    }
+
+    static List<String> distributionPoints(X509Certificate certificate) throws IOException {
+        List<String> urls = new ArrayList<>();
+
+        byte[] extension = certificate.getExtensionValue(Extension.cRLDistributionPoints.getId());
+        if (extension == null)
+            return urls;
+
+        CRLDistPoint crlDistPoint = CRLDistPoint.getInstance(
+                ASN1Primitive.fromByteArray(ASN1OctetString.getInstance(extension).getOctets()));
+
+        for (DistributionPoint distributionPoint : crlDistPoint.getDistributionPoints()) {
+            DistributionPointName name = distributionPoint.getDistributionPoint();
+            if (name == null || name.getType() != DistributionPointName.FULL_NAME)
+                continue;
+
+            for (GeneralName generalName : GeneralNames.getInstance(name.getName()).getNames())
+                if (generalName.getTagNo() == GeneralName.uniformResourceIdentifier)
+                    urls.add(generalName.getName().toString());
+        }
+
+        return urls;
+    }
+}
@@ -0,0 +1,210 @@
+package no.difi.asic.pkix;
+
+import com.google.common.io.ByteStreams;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Looks up revocation status using the OCSP responder named in the Authority Information Access extension of the
+ * certificate.
+ * <p>
+ * Responses must be signed by the issuer, or by a responder certificate issued by the issuer for OCSP signing.
+ * Requests carry a nonce, which must be echoed by responders supporting nonces, so old responses cannot be replayed.
+ * Responses past their next update or dated in the future are rejected.
+ */
+public class OcspRevocationSource implements RevocationSource {
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final Duration timeout;
+
+    private boolean nonceRequired = false;
+
+    public OcspRevocationSource() {
+        this(Duration.ofSeconds(10));
+    }
+
+    /**
+     * @param timeout connect and read timeout for requests to the responder.
+     */
+    public OcspRevocationSource(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Reject responses without nonce. Only enable for responders known to support nonces, as many responders serve
+     * pre-produced responses.
+     *
+     * @param nonceRequired true to require the nonce of the request in responses.
+     * @return reference to this source.
+     */
+    public OcspRevocationSource setNonceRequired(boolean nonceRequired) {
+        this.nonceRequired = nonceRequired;
+        return this;
+    }
+
+    @Override
+    public RevocationStatus getStatus(X509Certificate certificate, X509Certificate issuer) throws IOException {
+        String url = responderUrl(certificate);
+        if (url == null)
+            throw new IOException(String.format("No OCSP responder found for %s", certificate.getSubjectX500Principal()));
+
+        try {
+            CertificateID certificateID = new CertificateID(
+                    new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                    new JcaX509CertificateHolder(issuer), certificate.getSerialNumber());
+
+            byte[] nonce = new byte[16];
+            random.nextBytes(nonce);
+            Extension nonceExtension = Extension.create(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false, new DEROctetString(nonce));
+
+            OCSPReqBuilder ocspReqBuilder = new OCSPReqBuilder()
+                    .addRequest(certificateID)
+                    .setRequestExtensions(new Extensions(nonceExtension));
+
+            OCSPResp ocspResp = new OCSPResp(post(url, ocspReqBuilder.build().getEncoded()));
+            if (ocspResp.getStatus() != OCSPResp.SUCCESSFUL)
+                throw new IOException(String.format("OCSP responder %s returned status %s", url, ocspResp.getStatus()));
+
+            BasicOCSPResp basicOCSPResp = (BasicOCSPResp) ocspResp.getResponseObject();
+            verifyResponder(basicOCSPResp, issuer);
+            verifyNonce(basicOCSPResp, nonceExtension);
+
+            for (SingleResp singleResp : basicOCSPResp.getResponses()) {
+                if (!singleResp.getCertID().equals(certificateID))
+                    continue;
+
+                CertificateStatus certificateStatus = singleResp.getCertStatus();
+                RevocationStatus.Status status = certificateStatus == CertificateStatus.GOOD ? RevocationStatus.Status.GOOD
+                        : certificateStatus instanceof RevokedStatus ? RevocationStatus.Status.REVOKED
+                        : RevocationStatus.Status.UNKNOWN;
+
+                Instant thisUpdate = singleResp.getThisUpdate().toInstant();
+                Instant nextUpdate = singleResp.getNextUpdate() == null ? null : singleResp.getNextUpdate().toInstant();
+                RevocationStatus.checkFreshness(thisUpdate, nextUpdate, Instant.now(), null);
+
+                return new RevocationStatus(status, thisUpdate, nextUpdate);
+            }
+
+            throw new IOException(String.format("OCSP responder %s did not answer for requested certificate", url));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(String.format("Unable to check OCSP status: %s", e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Sends the DER encoded request to the responder. Override to use another transport.
+     *
+     * @param url     responder URL.
+     * @param request DER encoded OCSP request.
+     * @return DER encoded OCSP response.
+     */
+    protected byte[] post(String url, byte[] request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        connection.setConnectTimeout((int) timeout.toMillis());
+        connection.setReadTimeout((int) timeout.toMillis());
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/ocsp-request");
+        connection.setRequestProperty("Accept", "application/ocsp-response");
+
+        try {
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(request);
+            }
+
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+                throw new IOException(String.format("OCSP responder %s returned HTTP %s", url, connection.getResponseCode()));
+
+            try (InputStream inputStream = connection.getInputStream()) {
+                return ByteStreams.toByteArray(inputStream);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void verifyResponder(BasicOCSPResp basicOCSPResp, X509Certificate issuer) throws Exception {
+        JcaContentVerifierProviderBuilder verifierProviderBuilder = new JcaContentVerifierProviderBuilder();
+
+        if (basicOCSPResp.isSignatureValid(verifierProviderBuilder.build(issuer.getPublicKey())))
+            return;
+
+        // Delegated responder
+        for (X509CertificateHolder holder : basicOCSPResp.getCerts()) {
+            X509Certificate responder = new JcaX509CertificateConverter().getCertificate(holder);
+            if (!responder.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())
+                    || responder.getExtendedKeyUsage() == null
+                    || !responder.getExtendedKeyUsage().contains(KeyPurposeId.id_kp_OCSPSigning.getId()))
+                continue;
+
+            responder.verify(issuer.getPublicKey());
+            responder.checkValidity();
+
+            if (basicOCSPResp.isSignatureValid(verifierProviderBuilder.build(responder.getPublicKey())))
+                return;
+        }
+
+        throw new IOException("OCSP response is not signed by an authorized responder");
+    }
+
+    private void verifyNonce(BasicOCSPResp basicOCSPResp, Extension nonceExtension) throws IOException {
+        Extension extension = basicOCSPResp.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+        if (extension == null) {
+            if (nonceRequired)
+                throw new IOException("OCSP response does not contain nonce");
+            return;
+        }
+
+        if (!extension.getExtnValue().equals(nonceExtension.getExtnValue()))
+            throw new IOException("OCSP response does not match nonce of request");
+    }
+
+    static String responderUrl(X509Certificate certificate) throws IOException {
+        byte[] extension = certificate.getExtensionValue(Extension.authorityInfoAccess.getId());
+        if (extension == null)
+            return null;
+
+        AuthorityInformationAccess authorityInformationAccess = AuthorityInformationAccess.getInstance(
+                ASN1Primitive.fromByteArray(ASN1OctetString.getInstance(extension).getOctets()));
+
+        for (AccessDescription accessDescription : authorityInformationAccess.getAccessDescriptions())
+            if (accessDescription.getAccessMethod().equals(AccessDescription.id_ad_ocsp)
+                    && accessDescription.getAccessLocation().getTagNo() == GeneralName.uniformResourceIdentifier)
+                return accessDescription.getAccessLocation().getName().toString();
+
+        return null;
+    }
+}
@@ -0,0 +1,26 @@
+package no.difi.asic.pkix;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Source of revocation information used by {@link CertificateValidator}.
+ * <p>
+ * Implementations are expected to be thread safe. Results are cached by the validator until their next update, so
+ * implementations need not cache themselves.
+ *
+ * @see OcspRevocationSource
+ * @see CrlRevocationSource
+ */
+public interface RevocationSource {
+
+    /**
+     * Looks up the revocation status of a certificate.
+     *
+     * @param certificate certificate to check.
+     * @param issuer      certificate of the issuer of the certificate to check.
+     * @return status reported by the source.
+     * @throws IOException when the source is unreachable or returns an unusable response.
+     */
+    RevocationStatus getStatus(X509Certificate certificate, X509Certificate issuer) throws IOException;
+}
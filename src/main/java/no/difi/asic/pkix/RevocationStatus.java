@@ -0,0 +1,72 @@
+package no.difi.asic.pkix;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Revocation status of a single certificate as reported by an OCSP responder or a CRL.
+ */
+public class RevocationStatus {
+
+    public enum Status {
+        GOOD,
+        REVOKED,
+        UNKNOWN
+    }
+
+    /**
+     * Tolerated difference between the clock of the source and the local clock.
+     */
+    static final Duration CLOCK_SKEW = Duration.ofMinutes(5);
+
+    private final Status status;
+    private final Instant thisUpdate;
+    private final Instant nextUpdate;
+
+    /**
+     * @param status     reported status.
+     * @param thisUpdate time the status was known to be correct.
+     * @param nextUpdate time newer information will be available, null if not provided by the source.
+     */
+    public RevocationStatus(Status status, Instant thisUpdate, Instant nextUpdate) {
+        this.status = status;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getThisUpdate() {
+        return thisUpdate;
+    }
+
+    public Instant getNextUpdate() {
+        return nextUpdate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (thisUpdate=%s, nextUpdate=%s)", status, thisUpdate, nextUpdate);
+    }
+
+    /**
+     * Rejects revocation information that is not yet valid, past its next update, or, when no next update is given,
+     * older than the given maximum age.
+     *
+     * @param maxAge maximum age of information without next update, null to accept any age.
+     * @throws IOException when the information is not fresh.
+     */
+    static void checkFreshness(Instant thisUpdate, Instant nextUpdate, Instant now, Duration maxAge) throws IOException {
+        if (thisUpdate == null)
+            throw new IOException("Revocation information is not dated");
+        if (thisUpdate.isAfter(now.plus(CLOCK_SKEW)))
+            throw new IOException(String.format("Revocation information is dated in the future (thisUpdate=%s)", thisUpdate));
+        if (nextUpdate != null && nextUpdate.isBefore(now))
+            throw new IOException(String.format("Revocation information is past its next update (nextUpdate=%s)", nextUpdate));
+        if (nextUpdate == null && maxAge != null && thisUpdate.isBefore(now.minus(maxAge)))
+            throw new IOException(String.format("Revocation information is older than %s (thisUpdate=%s)", maxAge, thisUpdate));
+    }
+}
@@ -0,0 +1,168 @@
+package no.difi.asic.signer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Collects signing requests from concurrent callers and hands them to another signer in a single call.
+ * <p>
+ * The first caller of a batch waits up to the given delay for other callers, or until the batch is full, and then
+ * signs the whole batch on behalf of everybody. No threads are started. Callers give up waiting for their signatures
+ * after a timeout, so a hanging remote signer does not block every caller of a batch forever.
+ */
+public class BatchingRemoteSigner implements RemoteSigner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingRemoteSigner.class);
+
+    /** Default time a caller waits for its signatures, see {@link #setTimeout(long, TimeUnit)}. */
+    public static final long DEFAULT_TIMEOUT_SECONDS = 60;
+
+    private final RemoteSigner remoteSigner;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private long timeoutNanos = TimeUnit.SECONDS.toNanos(DEFAULT_TIMEOUT_SECONDS);
+
+    private final Object lock = new Object();
+    private Batch batch;
+
+    /**
+     * @param remoteSigner signer receiving the batches.
+     * @param maxBatchSize maximum number of requests in one call.
+     * @param maxDelay     maximum time to wait for a batch to fill up.
+     * @param unit         unit of the delay.
+     */
+    public BatchingRemoteSigner(RemoteSigner remoteSigner, int maxBatchSize, long maxDelay, TimeUnit unit) {
+        if (maxBatchSize < 1)
+            throw new IllegalStateException("Batch size must be at least 1.");
+
+        this.remoteSigner = remoteSigner;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * Sets how long a caller waits for its signatures from batches signed by other callers. A caller signing a batch
+     * itself waits for the remote signer, whose own timeouts apply.
+     *
+     * @param timeout maximum time to wait.
+     * @param unit    unit of the timeout.
+     * @return reference to this signer.
+     */
+    public BatchingRemoteSigner setTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0)
+            throw new IllegalStateException("Timeout must be positive.");
+
+        this.timeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    @Override
+    public List<X509Certificate> getCertificateChain() {
+        return remoteSigner.getCertificateChain();
+    }
+
+    @Override
+    public List<byte[]> sign(List<SigningRequest> requests) {
+        long timeout = System.nanoTime() + timeoutNanos;
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        List<Batch> leading = new ArrayList<>();
+
+        synchronized (lock) {
+            for (SigningRequest request : requests) {
+                if (batch == null) {
+                    batch = new Batch();
+                    leading.add(batch);
+                }
+
+                futures.add(batch.add(request));
+
+                if (batch.requests.size() >= maxBatchSize) {
+                    batch = null;
+                    lock.notifyAll();
+                }
+            }
+
+            // The caller opening a batch signs it once it is full or the delay has passed
+            long deadline = System.nanoTime() + maxDelayNanos;
+            long remaining;
+            while (batch != null && leading.contains(batch) && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (leading.contains(batch))
+                batch = null;
+        }
+
+        try {
+            for (Batch opened : leading)
+                opened.sign();
+        } finally {
+            // Other callers must not wait for batches left unsigned, e.g. by an Error
+            for (Batch opened : leading)
+                opened.abandon();
+        }
+
+        List<byte[]> signatures = new ArrayList<>();
+        try {
+            for (CompletableFuture<byte[]> future : futures)
+                signatures.add(future.get(Math.max(0, timeout - System.nanoTime()), TimeUnit.NANOSECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for signature.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(String.format("Unable to sign: %s", e.getCause().getMessage()), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(String.format("No signature within %s ms.", TimeUnit.NANOSECONDS.toMillis(timeoutNanos)), e);
+        }
+        return signatures;
+    }
+
+    private class Batch {
+
+        private final List<SigningRequest> requests = new ArrayList<>();
+        private final List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+
+        CompletableFuture<byte[]> add(SigningRequest request) {
+            CompletableFuture<byte[]> future = new CompletableFuture<>();
+            requests.add(request);
+            futures.add(future);
+            return future;
+        }
+
+        void sign() {
+            logger.debug("Signing batch of {} requests", requests.size());
+            try {
+                List<byte[]> signatures = remoteSigner.sign(requests);
+                if (signatures.size() != requests.size())
+                    throw new IllegalStateException(String.format("Expected %s signatures, got %s.", requests.size(), signatures.size()));
+
+                for (int i = 0; i < futures.size(); i++)
+                    futures.get(i).complete(signatures.get(i));
+            } catch (RuntimeException e) {
+                for (CompletableFuture<byte[]> future : futures)
+                    future.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Fails requests of the batch not yet signed.
+         */
+        void abandon() {
+            for (CompletableFuture<byte[]> future : futures)
+                future.completeExceptionally(new IllegalStateException("Batch was not signed."));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package no.difi.asic.signer;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+/**
+ * Signer keeping its private key outside this library, e.g. in a network attached HSM.
+ * <p>
+ * Only digests are handed to the signer: the digest of the DER encoded signed attributes for CAdES and the digest
+ * of the canonicalized SignedInfo for XAdES. Several requests may be given in one call, allowing implementations to
+ * use a single round-trip. Implementations must be thread safe.
+ * <p>
+ * Each request holds the plain digest, not a DER encoded {@code DigestInfo}. For RSA, implementations must produce
+ * a PKCS#1 v1.5 signature as {@link SigningRequest#getSignatureAlgorithm()} would, i.e. wrap the digest in a
+ * {@code DigestInfo} naming {@link SigningRequest#getDigestAlgorithm()} before the private key operation. This is
+ * what {@code NONEwithRSA} over a {@code DigestInfo} or a PKCS#11 {@code CKM_RSA_PKCS} mechanism expects, while HSM
+ * and cloud APIs signing "a digest" for a named algorithm usually do the wrapping themselves. For ECDSA, the digest
+ * is signed as it is.
+ *
+ * @see BatchingRemoteSigner
+ * @see no.difi.asic.SignatureHelper#SignatureHelper(RemoteSigner)
+ */
+public interface RemoteSigner {
+
+    /**
+     * @return certificate chain of the signing key, starting with the certificate of the signer.
+     */
+    List<X509Certificate> getCertificateChain();
+
+    /**
+     * Creates signature values for the given digests.
+     *
+     * @param requests digests to sign.
+     * @return signature values in the same order as the requests. RSA signatures are PKCS#1 v1.5 signatures over the
+     * {@code DigestInfo} of the digest, ECDSA signatures are DER encoded.
+     * @throws IllegalStateException when signing fails.
+     */
+    List<byte[]> sign(List<SigningRequest> requests);
+}
@@ -0,0 +1,38 @@
+package no.difi.asic.signer;
+
+/**
+ * Digest to be signed by a {@link RemoteSigner}.
+ */
+public class SigningRequest {
+
+    private final String signatureAlgorithm;
+    private final String digestAlgorithm;
+    private final byte[] digest;
+
+    public SigningRequest(String signatureAlgorithm, String digestAlgorithm, byte[] digest) {
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.digestAlgorithm = digestAlgorithm;
+        this.digest = digest;
+    }
+
+    /**
+     * @return JCA name of the signature algorithm, e.g. "SHA256withRSA".
+     */
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /**
+     * @return JCA name of the digest algorithm, e.g. "SHA-256".
+     */
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * @return plain digest of the data to be signed, not wrapped in a {@code DigestInfo}.
+     */
+    public byte[] getDigest() {
+        return digest;
+    }
+}
@@ -0,0 +1,79 @@
+package no.difi.asic.store;
+
+import no.difi.asic.MessageDigestAlgorithm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Content-addressed store of data objects, keyed by their digest and shared across containers.
+ * <p>
+ * Each stored content has a reference count. Content is added with one reference through {@link #newContent()},
+ * further references are added by {@link #retain(MessageDigestAlgorithm, byte[])} and removed by
+ * {@link #release(MessageDigestAlgorithm, byte[])}, which deletes content without references. Implementations must
+ * be thread safe.
+ *
+ * @see FileContentStore
+ * @see no.difi.asic.AsicReader#writeFile(ContentStore)
+ */
+public interface ContentStore {
+
+    /**
+     * Adds a reference to stored content.
+     *
+     * @param messageDigestAlgorithm algorithm of the digest.
+     * @param digest                 digest of the content.
+     * @return true when the content is stored and a reference is added, false when the content is not stored.
+     * @throws IOException
+     */
+    boolean retain(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException;
+
+    /**
+     * Removes a reference to stored content, deleting the content when no references are left.
+     *
+     * @param messageDigestAlgorithm algorithm of the digest.
+     * @param digest                 digest of the content.
+     * @return number of references left, 0 when the content is deleted or not stored.
+     * @throws IOException
+     */
+    int release(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException;
+
+    /**
+     * @param messageDigestAlgorithm algorithm of the digest.
+     * @param digest                 digest of the content.
+     * @return stream providing the stored content.
+     * @throws IOException when the content is not stored.
+     */
+    InputStream open(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException;
+
+    /**
+     * Prepares for adding content whose digest is not yet known.
+     *
+     * @return content to write, discarded when closed without being committed.
+     * @throws IOException
+     */
+    PendingContent newContent() throws IOException;
+
+    /**
+     * Content being written to a store.
+     */
+    interface PendingContent extends Closeable {
+
+        /**
+         * @return stream receiving the content, closed by {@link #commit(MessageDigestAlgorithm, byte[])}.
+         */
+        OutputStream getOutputStream();
+
+        /**
+         * Stores the content written with one reference. Content already stored under the same digest is kept and
+         * given another reference, and the content written is discarded.
+         *
+         * @param messageDigestAlgorithm algorithm of the digest.
+         * @param digest                 digest of the content written, calculated by the caller.
+         * @throws IOException
+         */
+        void commit(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException;
+    }
+}
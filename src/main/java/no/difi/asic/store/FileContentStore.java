@@ -0,0 +1,159 @@
+package no.difi.asic.store;
+
+import com.google.common.io.BaseEncoding;
+import no.difi.asic.MessageDigestAlgorithm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Content store keeping each content as a file in a local directory.
+ * <p>
+ * Content is found at {@code <algorithm>/<first two hex digits>/<hex digest>}, with its reference count in a file
+ * next to it ending in {@code .refs}. Content is written to a temporary file and moved in place when committed.
+ * Reference counts are guarded within this instance only, so a directory must not be shared by several instances
+ * at the same time.
+ */
+public class FileContentStore implements ContentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileContentStore.class);
+
+    private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+    private final Path directory;
+    private final Path temporaryDirectory;
+
+    /**
+     * @param directory root of the store, created when missing.
+     * @throws IOException
+     */
+    public FileContentStore(Path directory) throws IOException {
+        this.directory = directory;
+        this.temporaryDirectory = directory.resolve("tmp");
+        Files.createDirectories(temporaryDirectory);
+    }
+
+    /**
+     * Provides the file holding content, which must not be modified.
+     *
+     * @param messageDigestAlgorithm algorithm of the digest.
+     * @param digest                 digest of the content.
+     * @return location of the content, which may not exist.
+     */
+    public Path getPath(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) {
+        String hex = HEX.encode(digest);
+        return directory.resolve(messageDigestAlgorithm.name()).resolve(hex.substring(0, 2)).resolve(hex);
+    }
+
+    @Override
+    public synchronized boolean retain(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException {
+        Path path = getPath(messageDigestAlgorithm, digest);
+        if (!Files.exists(path))
+            return false;
+
+        writeReferences(path, readReferences(path) + 1);
+        return true;
+    }
+
+    @Override
+    public synchronized int release(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException {
+        Path path = getPath(messageDigestAlgorithm, digest);
+        if (!Files.exists(path))
+            return 0;
+
+        int references = readReferences(path) - 1;
+        if (references > 0) {
+            writeReferences(path, references);
+        } else {
+            logger.debug("Deleting {}", path);
+            Files.delete(path);
+            Files.deleteIfExists(referencesPath(path));
+        }
+        return Math.max(references, 0);
+    }
+
+    @Override
+    public InputStream open(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException {
+        return Files.newInputStream(getPath(messageDigestAlgorithm, digest));
+    }
+
+    @Override
+    public PendingContent newContent() throws IOException {
+        return new PendingFile(Files.createTempFile(temporaryDirectory, "content-", ".part"));
+    }
+
+    private synchronized void commit(Path temporary, MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException {
+        if (retain(messageDigestAlgorithm, digest)) {
+            logger.debug("Content {} already stored", HEX.encode(digest));
+            Files.delete(temporary);
+            return;
+        }
+
+        Path path = getPath(messageDigestAlgorithm, digest);
+        Files.createDirectories(path.getParent());
+        try {
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path);
+        }
+        writeReferences(path, 1);
+    }
+
+    private static Path referencesPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".refs");
+    }
+
+    private static int readReferences(Path path) throws IOException {
+        Path references = referencesPath(path);
+        if (!Files.exists(references))
+            return 1;
+        return Integer.parseInt(new String(Files.readAllBytes(references), StandardCharsets.US_ASCII).trim());
+    }
+
+    private static void writeReferences(Path path, int references) throws IOException {
+        Files.write(referencesPath(path), String.valueOf(references).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private class PendingFile implements PendingContent {
+
+        private final Path temporary;
+        private final OutputStream outputStream;
+        private boolean committed = false;
+
+        PendingFile(Path temporary) throws IOException {
+            this.temporary = temporary;
+            this.outputStream = Files.newOutputStream(temporary);
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public void commit(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException {
+            if (committed)
+                throw new IllegalStateException("Content is already committed.");
+
+            outputStream.close();
+            FileContentStore.this.commit(temporary, messageDigestAlgorithm, digest);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                outputStream.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+}
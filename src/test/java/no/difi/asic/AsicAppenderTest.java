@@ -0,0 +1,283 @@
+package no.difi.asic;
+
+import no.difi.asic.pkix.CertificateValidator;
+import no.difi.asic.signer.RemoteSigner;
+import no.difi.asic.signer.SigningRequest;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.testng.Assert.*;
+
+public class AsicAppenderTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicAppenderTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @Test
+    public void appendKeepsDataObjects() throws Exception {
+        Path path = createContainer();
+        byte[] original = Files.readAllBytes(path);
+
+        long offset;
+        try (FileChannel channel = FileChannel.open(path)) {
+            offset = ZipCentralDirectory.read(channel).getOffset();
+        }
+
+        AsicWriterFactory.newFactory(SignatureMethod.CAdES, MessageDigestAlgorithm.SHA512)
+                .addSignature(SignatureMethod.XAdES, MessageDigestAlgorithm.SHA256)
+                .setCertificateValidator(CertificateValidator.newValidator(keyStore()))
+                .append(path)
+                .setRootEntryName("content1.txt")
+                .sign(signatureHelper);
+
+        // Entries written before are left untouched
+        byte[] appended = Files.readAllBytes(path);
+        assertEquals(Arrays.copyOf(appended, (int) offset), Arrays.copyOf(original, (int) offset));
+
+        // Central directory lists old and new entries
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            assertEquals(zipFile.size(), 9);
+            assertNotNull(zipFile.getEntry("META-INF/ASiCManifest2.xml"));
+            assertNotNull(zipFile.getEntry("META-INF/signatures.xml"));
+            assertEquals(zipFile.getComment(), "mimetype=" + AsicUtils.MIMETYPE_ASICE);
+        }
+
+        AsicReader asicReader = AsicReaderFactory.newFactory(MessageDigestAlgorithm.SHA256, MessageDigestAlgorithm.SHA512).open(path);
+        String filename;
+        int counter = 0;
+        while ((filename = asicReader.getNextFile()) != null) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            asicReader.writeFile(outputStream);
+            assertEquals(outputStream.toString(), filename.replace("content", "content ").replace(".txt", ""));
+            counter++;
+        }
+        asicReader.close();
+
+        assertEquals(counter, 2);
+        assertEquals(asicReader.getAsicManifest().getRootfile(), "content1.txt");
+        assertEquals(asicReader.getAsicManifest().getCertificate().size(), 2);
+
+        Files.delete(path);
+    }
+
+    @Test
+    public void appendWithRecomputedDigests() throws IOException {
+        Path path = createContainer();
+
+        AsicWriterFactory.newFactory()
+                .append(path)
+                .setRecomputeDigests(true)
+                .sign(signatureHelper);
+
+        AsicVerifier asicVerifier = AsicVerifierFactory.newFactory().verify(path);
+        assertEquals(asicVerifier.getAsicManifest().getFile().size(), 2);
+        assertEquals(asicVerifier.getAsicManifest().getCertificate().size(), 2);
+
+        Files.delete(path);
+    }
+
+    @Test
+    public void digestsAreOnlyReusedFromTrustedSigners() throws Exception {
+        // Data object replaced after signing, leaving the signed manifest in place
+        Path path = replaceEntry(createContainer(), "content1.txt", "forged".getBytes());
+        byte[] actual = MessageDigest.getInstance("SHA-256").digest("forged".getBytes());
+        byte[] signed = MessageDigest.getInstance("SHA-256").digest("content 1".getBytes());
+
+        // Without validator
+        assertEquals(appendedDigest(path, AsicWriterFactory.newFactory()), actual);
+
+        // Signer not trusted
+        X509Certificate other = otherCertificate();
+        assertEquals(appendedDigest(path, AsicWriterFactory.newFactory()
+                .setCertificateValidator(CertificateValidator.newValidator(Collections.singletonList(other)))), actual);
+
+        // Trusted signer, whose digests are reused
+        assertEquals(appendedDigest(path, AsicWriterFactory.newFactory()
+                .setCertificateValidator(CertificateValidator.newValidator(keyStore()))), signed);
+
+        Files.delete(path);
+    }
+
+    @Test
+    public void failedAppendLeavesContainer() throws Exception {
+        Path path = createContainer();
+        byte[] original = Files.readAllBytes(path);
+
+        X509Certificate certificate = (X509Certificate) keyStore().getCertificate("selfsigned");
+        SignatureHelper failing = new SignatureHelper(new RemoteSigner() {
+            @Override
+            public List<X509Certificate> getCertificateChain() {
+                return Collections.singletonList(certificate);
+            }
+
+            @Override
+            public List<byte[]> sign(List<SigningRequest> requests) {
+                throw new IllegalStateException("Signer unavailable");
+            }
+        });
+
+        try {
+            AsicWriterFactory.newFactory().append(path).sign(failing);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        assertEquals(Files.readAllBytes(path), original);
+
+        // Temporary files are removed
+        AsicWriterFactory.newFactory().append(path).sign(signatureHelper);
+        try (Stream<Path> files = Files.list(path.getParent())) {
+            assertEquals(files.filter(file -> file.getFileName().toString().startsWith(path.getFileName().toString())).count(), 1);
+        }
+
+        Files.delete(path);
+    }
+
+    @Test
+    public void appendToZip64Container() throws IOException {
+        // As many entries as fit without ZIP64, so the container is written with ZIP64 end records
+        int count = AsicZipWriter.ZIP64_ENTRIES - 1;
+        Path path = Files.createTempFile("asic-append", ".asice");
+        try (AsicZipWriter zipWriter = new AsicZipWriter(Files.newOutputStream(path))) {
+            zipWriter.writeMimetype(AsicUtils.MIMETYPE_ASICE);
+            for (int i = 0; i < count; i++)
+                zipWriter.writeEntry(new ZipEntry("content" + i + ".txt"), ("content " + i).getBytes());
+        }
+
+        AsicWriterFactory.newFactory().append(path).sign(signatureHelper);
+
+        try (FileChannel channel = FileChannel.open(path);
+             ZipFile zipFile = new ZipFile(path.toFile())) {
+            assertEquals(ZipCentralDirectory.read(channel).getRecords().size(), count + 3);
+            assertEquals(zipFile.size(), count + 3);
+            assertNotNull(zipFile.getEntry("META-INF/ASiCManifest.xml"));
+        }
+
+        AsicVerifier asicVerifier = AsicVerifierFactory.newFactory().verify(path);
+        assertEquals(asicVerifier.getAsicManifest().getFile().size(), count);
+
+        Files.delete(path);
+    }
+
+    @Test
+    public void rootfileRequiresCades() throws IOException {
+        Path path = createContainer();
+
+        try {
+            AsicWriterFactory.newFactory(SignatureMethod.XAdES).append(path).setRootEntryName("content1.txt");
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        Files.delete(path);
+    }
+
+    /**
+     * Appends a CAdES signature and returns the SHA-256 digest of content1.txt found in the new manifest.
+     */
+    private byte[] appendedDigest(Path source, AsicWriterFactory asicWriterFactory) throws IOException {
+        Path path = Files.createTempFile("asic-append", ".asice");
+        Files.copy(source, path, StandardCopyOption.REPLACE_EXISTING);
+
+        List<String> names = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            zipFile.stream().forEach(zipEntry -> names.add(zipEntry.getName()));
+        }
+
+        asicWriterFactory.append(path).sign(signatureHelper);
+
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            ZipEntry manifest = zipFile.stream()
+                    .filter(zipEntry -> AsicUtils.PATTERN_CADES_MANIFEST.matcher(zipEntry.getName()).matches())
+                    .filter(zipEntry -> !names.contains(zipEntry.getName()))
+                    .findFirst().get();
+
+            ManifestVerifier manifestVerifier = new ManifestVerifier();
+            try (InputStream inputStream = zipFile.getInputStream(manifest)) {
+                CadesAsicManifest.extractAndVerify(new String(inputStream.readAllBytes()), manifestVerifier);
+            }
+            return manifestVerifier.getDigest("content1.txt", MessageDigestAlgorithm.SHA256);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static Path replaceEntry(Path path, String name, byte[] content) throws IOException {
+        Path replaced = Files.createTempFile("asic-append", ".asice");
+        try (ZipFile zipFile = new ZipFile(path.toFile());
+             AsicZipWriter zipWriter = new AsicZipWriter(Files.newOutputStream(replaced))) {
+            zipWriter.writeMimetype(AsicUtils.MIMETYPE_ASICE);
+            for (ZipEntry zipEntry : Collections.list(zipFile.entries())) {
+                if (zipEntry.getName().equals("mimetype"))
+                    continue;
+                try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                    byte[] bytes = zipEntry.getName().equals(name) ? content : inputStream.readAllBytes();
+                    zipWriter.writeEntry(new ZipEntry(zipEntry.getName()), bytes);
+                }
+            }
+        }
+        Files.delete(path);
+        return replaced;
+    }
+
+    private KeyStore keyStore() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        keyStore.load(getClass().getResourceAsStream("/keystore.jks"), "changeit".toCharArray());
+        return keyStore;
+    }
+
+    private static X509Certificate otherCertificate() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+        X500Name name = new X500Name("CN=Other");
+        Date now = new Date();
+        return new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(name, BigInteger.ONE,
+                new Date(now.getTime() - 86_400_000L), new Date(now.getTime() + 86_400_000L), name, keyPair.getPublic())
+                .build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+    }
+
+    private Path createContainer() throws IOException {
+        Path path = Files.createTempFile("asic-append", ".asice");
+
+        AsicWriterFactory.newFactory()
+                .newContainer(path)
+                .add(new ByteArrayInputStream("content 1".getBytes()), "content1.txt")
+                .add(new ByteArrayInputStream("content 2".getBytes()), "content2.txt")
+                .sign(signatureHelper);
+
+        return path;
+    }
+}
@@ -0,0 +1,122 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public class AsicAssemblerTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicAssemblerTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @Test
+    public void assembleFromPresignedManifests() throws Exception {
+        // Signed where only digests are known, then moved to where the data is
+        ByteArrayOutputStream transfer = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory()
+                .addSignature(SignatureMethod.XAdES, MessageDigestAlgorithm.SHA512)
+                .newManifestBuilder()
+                .add("content1.txt", MimeType.forString("text/plain"), digests("content 1"))
+                .add("content2.xml", MimeType.XML, digests("<content/>"))
+                .setRootEntryName("content2.xml")
+                .sign(signatureHelper)
+                .write(transfer);
+
+        SignedManifests signedManifests = SignedManifests.read(new ByteArrayInputStream(transfer.toByteArray()));
+        assertTrue(signedManifests.getEntries().containsKey("META-INF/ASiCManifest.xml"));
+        assertTrue(signedManifests.getEntries().containsKey("META-INF/signatures.xml"));
+        assertTrue(signedManifests.getEntries().containsKey("META-INF/manifest.xml"));
+
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory()
+                .assemble(signedManifests, container)
+                .add(new ByteArrayInputStream("<content/>".getBytes()), "content2.xml")
+                .add(new ByteArrayInputStream("content 1".getBytes()), "content1.txt")
+                .finish();
+
+        AsicReader asicReader = AsicReaderFactory.newFactory(MessageDigestAlgorithm.SHA256, MessageDigestAlgorithm.SHA512)
+                .open(new ByteArrayInputStream(container.toByteArray()));
+        assertEquals(asicReader.getNextFile(), "content2.xml");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        asicReader.writeFile(outputStream);
+        assertEquals(outputStream.toString(), "<content/>");
+        assertEquals(asicReader.getNextFile(), "content1.txt");
+        assertNull(asicReader.getNextFile());
+        asicReader.close();
+
+        assertEquals(asicReader.getAsicManifest().getRootfile(), "content2.xml");
+        assertEquals(asicReader.getAsicManifest().getCertificate().size(), 1);
+    }
+
+    @Test
+    public void mismatchingContentIsRejected() throws Exception {
+        SignedManifests signedManifests = AsicWriterFactory.newFactory()
+                .newManifestBuilder()
+                .add("content.txt", MimeType.forString("text/plain"), digests("content").get(MessageDigestAlgorithm.SHA256))
+                .sign(signatureHelper);
+
+        AsicAssembler asicAssembler = AsicWriterFactory.newFactory().assemble(signedManifests, new ByteArrayOutputStream());
+
+        try {
+            asicAssembler.add(new ByteArrayInputStream("other".getBytes()), "other.txt");
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        try {
+            asicAssembler.add(new ByteArrayInputStream("tampered".getBytes()), "content.txt");
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        // Rejected content discards the container
+        try {
+            asicAssembler.finish();
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+            assertEquals(e.getMessage(), "Container is already finished.");
+        }
+
+        try {
+            AsicWriterFactory.newFactory().assemble(signedManifests, new ByteArrayOutputStream()).finish();
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+            assertEquals(e.getMessage(), "File not added: content.txt");
+        }
+    }
+
+    @Test
+    public void digestRequiredForEachManifest() throws IOException {
+        AsicManifestBuilder asicManifestBuilder = AsicWriterFactory.newFactory()
+                .addSignature(SignatureMethod.CAdES, MessageDigestAlgorithm.SHA512)
+                .newManifestBuilder();
+
+        try {
+            asicManifestBuilder.add("content.txt", MimeType.forString("text/plain"), new byte[32]);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    private static Map<MessageDigestAlgorithm, byte[]> digests(String content) throws Exception {
+        Map<MessageDigestAlgorithm, byte[]> digests = new EnumMap<>(MessageDigestAlgorithm.class);
+        for (MessageDigestAlgorithm messageDigestAlgorithm : MessageDigestAlgorithm.values())
+            digests.put(messageDigestAlgorithm, MessageDigest.getInstance(messageDigestAlgorithm.getAlgorithm()).digest(content.getBytes()));
+        return digests;
+    }
+}
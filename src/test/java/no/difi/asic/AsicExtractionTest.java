@@ -0,0 +1,174 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+public class AsicExtractionTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicExtractionTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @Test
+    public void extractAllVerifiesAndReportsDigests() throws Exception {
+        Path container = createContainer("content1.txt", "folder/content2.txt");
+        Path directory = Files.createTempDirectory("asic");
+
+        AsicExtraction asicExtraction = AsicReaderFactory.newFactory().extractAll(container, directory);
+
+        assertEquals(asicExtraction.getFiles().size(), 2);
+        assertEquals(new String(Files.readAllBytes(directory.resolve("content1.txt"))), "content of content1.txt");
+        assertEquals(new String(Files.readAllBytes(directory.resolve("folder/content2.txt"))), "content of folder/content2.txt");
+        assertEquals(asicExtraction.getDigests("content1.txt").get(MessageDigestAlgorithm.SHA256),
+                MessageDigest.getInstance("SHA-256").digest("content of content1.txt".getBytes()));
+        assertTrue(asicExtraction.getAsicManifest().getFile().get(0).isVerified());
+        assertEquals(asicExtraction.getAsicManifest().getCertificate().size(), 1);
+
+        // Only the data objects are left in the target directory
+        try (Stream<Path> files = Files.walk(directory)) {
+            assertEquals(files.filter(Files::isRegularFile).count(), 2);
+        }
+
+        // Existing files are not overwritten
+        try {
+            AsicReaderFactory.newFactory().extractAll(container, directory);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        delete(directory);
+        Files.delete(container);
+    }
+
+    @Test
+    public void tamperedContainerLeavesNothingBehind() throws IOException {
+        Path container = createContainer("content1.txt", "content2.txt");
+        try (FileSystem fileSystem = FileSystems.newFileSystem(container)) {
+            Files.write(fileSystem.getPath("content2.txt"), "tampered".getBytes());
+        }
+        Path directory = Files.createTempDirectory("asic");
+
+        try {
+            AsicReaderFactory.newFactory().extractAll(container, directory);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(files.count(), 0);
+        }
+
+        delete(directory);
+        Files.delete(container);
+    }
+
+    @Test
+    public void pathTraversalIsRejected() throws IOException {
+        Path container = createContainer("../outside.txt");
+        Path directory = Files.createTempDirectory("asic");
+
+        try {
+            AsicReaderFactory.newFactory().extractAll(container, directory.resolve("target"));
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+        assertFalse(Files.exists(directory.resolve("outside.txt")));
+
+        delete(directory);
+        Files.delete(container);
+    }
+
+    @Test
+    public void entriesExtractedToSameFileAreRejected() throws IOException {
+        Path container = createContainer("content.txt", "folder/../content.txt");
+        Path directory = Files.createTempDirectory("asic");
+
+        try {
+            AsicReaderFactory.newFactory().extractAll(container, directory);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(files.count(), 0);
+        }
+
+        delete(directory);
+        Files.delete(container);
+    }
+
+    @Test
+    public void failedMoveLeavesNothingBehind() throws IOException {
+        // The file "folder.txt" is in place of the directory needed by the second entry
+        Path container = createContainer("folder.txt", "folder.txt/content.txt");
+        Path directory = Files.createTempDirectory("asic");
+
+        try {
+            AsicReaderFactory.newFactory().extractAll(container, directory);
+            fail("Exception expected.");
+        } catch (IOException e) {
+            log.info(e.getMessage());
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(files.count(), 0);
+        }
+
+        delete(directory);
+        Files.delete(container);
+    }
+
+    @Test
+    public void declaredSizeIsLimited() throws IOException {
+        Path container = createContainer("content.txt");
+        Path directory = Files.createTempDirectory("asic");
+
+        try {
+            AsicReaderFactory.newFactory()
+                    .setMaxExtractedSize(10)
+                    .extractAll(container, directory);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        delete(directory);
+        Files.delete(container);
+    }
+
+    private Path createContainer(String... filenames) throws IOException {
+        Path path = Files.createTempFile("asic", ".asice");
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            AsicWriter asicWriter = AsicWriterFactory.newFactory().newContainer(outputStream);
+            for (String filename : filenames)
+                asicWriter.add(new ByteArrayInputStream(("content of " + filename).getBytes()), filename);
+            asicWriter.sign(signatureHelper);
+        }
+        return path;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+}
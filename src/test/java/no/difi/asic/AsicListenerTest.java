@@ -0,0 +1,115 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public class AsicListenerTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicListenerTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    private byte[] content = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. Lorem ipsum dolor sit amet.".getBytes();
+
+    @Test
+    public void cadesWriterAndReaderReportEntries() throws IOException {
+        RecordingListener writerListener = new RecordingListener();
+
+        ByteArrayOutputStream containerOutput = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory(SignatureMethod.CAdES)
+                .setListener(writerListener)
+                .newContainer(containerOutput)
+                .add(new ByteArrayInputStream(content), "content1.txt")
+                .add(new ByteArrayInputStream(content), "content2.txt")
+                .sign(signatureHelper);
+
+        assertTrue(writerListener.started.containsAll(writerListener.finished.keySet()));
+        assertEquals(writerListener.finished.size(), 5);
+
+        AsicEntryEvent data = writerListener.finished.get("content1.txt");
+        assertEquals(data.getUncompressedBytes(), content.length);
+        assertTrue(data.getCompressedBytes() > 0);
+        assertTrue(data.getDigestNanos() > 0);
+        assertEquals(data.getSigningNanos(), 0);
+
+        AsicEntryEvent manifest = writerListener.finished.get("META-INF/ASiCManifest.xml");
+        assertTrue(manifest.getXmlNanos() > 0);
+
+        AsicEntryEvent signature = writerListener.finished.entrySet().stream()
+                .filter(e -> e.getKey().endsWith(".p7s")).findFirst().get().getValue();
+        assertTrue(signature.getSigningNanos() > 0);
+
+        // Read back, both by copying and by streaming
+        RecordingListener readerListener = new RecordingListener();
+        AsicReader asicReader = AsicReaderFactory.newFactory()
+                .setListener(readerListener)
+                .open(new ByteArrayInputStream(containerOutput.toByteArray()));
+
+        assertEquals(asicReader.getNextFile(), "content1.txt");
+        asicReader.writeFile(ByteStreams.nullOutputStream());
+        assertEquals(asicReader.getNextFile(), "content2.txt");
+        ByteStreams.exhaust(asicReader.inputStream());
+        assertNull(asicReader.getNextFile());
+        asicReader.close();
+
+        assertEquals(readerListener.finished.size(), 5);
+        for (String name : new String[]{"content1.txt", "content2.txt"}) {
+            AsicEntryEvent event = readerListener.finished.get(name);
+            assertEquals(event.getUncompressedBytes(), content.length);
+            assertEquals(event.getCompressedBytes(), data.getCompressedBytes());
+            assertTrue(event.getDigestNanos() > 0);
+        }
+
+        // Signature is verified when the last of manifest and signature is read
+        long verification = 0;
+        for (AsicEntryEvent event : readerListener.finished.values()) {
+            log.info(event.toString());
+            verification += event.getVerificationNanos();
+        }
+        assertTrue(verification > 0);
+    }
+
+    @Test
+    public void xadesWriterReportsSigning() throws IOException {
+        RecordingListener listener = new RecordingListener();
+
+        AsicWriterFactory.newFactory(SignatureMethod.XAdES)
+                .setListener(listener)
+                .newContainer(new ByteArrayOutputStream())
+                .add(new ByteArrayInputStream(content), "content.txt")
+                .sign(signatureHelper);
+
+        AsicEntryEvent signatures = listener.finished.get("META-INF/signatures.xml");
+        assertTrue(signatures.getSigningNanos() > 0);
+        assertTrue(signatures.getXmlNanos() > 0);
+        assertTrue(signatures.getCompressedBytes() > 0);
+    }
+
+    private static class RecordingListener implements AsicListener {
+
+        private List<String> started = new ArrayList<>();
+        private Map<String, AsicEntryEvent> finished = new LinkedHashMap<>();
+
+        @Override
+        public void entryStarted(AsicEntryEvent event) {
+            started.add(event.getName());
+        }
+
+        @Override
+        public void entryFinished(AsicEntryEvent event) {
+            finished.put(event.getName(), event);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.testng.Assert.*;
+
+public class AsicManifestFirstTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicManifestFirstTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @Test
+    public void manifestsAreWrittenFirst() throws IOException {
+        byte[] container = createContainer();
+
+        List<String> entries = entries(container);
+        assertEquals(entries.get(0), "mimetype");
+        assertTrue(entries.get(1).startsWith("META-INF/"));
+        assertEquals(entries.get(entries.size() - 2), "content1.txt");
+        assertEquals(entries.get(entries.size() - 1), "content2.txt");
+
+        AsicReader asicReader = AsicReaderFactory.newFactory()
+                .setManifestFirst(true)
+                .open(new ByteArrayInputStream(container));
+        assertEquals(asicReader.getNextFile(), "content1.txt");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        asicReader.writeFile(outputStream);
+        assertEquals(outputStream.toString(), "content 1");
+        assertEquals(asicReader.getNextFile(), "content2.txt");
+        assertNull(asicReader.getNextFile());
+        asicReader.close();
+
+        assertEquals(asicReader.getAsicManifest().getCertificate().size(), 1);
+
+        // Containers using the manifest-first layout are still readable by any reader
+        AsicVerifierFactory.newFactory().verify(new ByteArrayInputStream(container));
+    }
+
+    @Test
+    public void tamperedContentIsRejectedWhenRead() throws IOException {
+        byte[] container = rewrite(createContainer(), "content1.txt", "tampered".getBytes());
+
+        AsicReader asicReader = AsicReaderFactory.newFactory()
+                .setManifestFirst(true)
+                .open(new ByteArrayInputStream(container));
+        assertEquals(asicReader.getNextFile(), "content1.txt");
+
+        // Rejected before the next data object is read
+        try {
+            asicReader.getNextFile();
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+        asicReader.close();
+    }
+
+    @Test
+    public void unsignedContentIsRejected() throws IOException {
+        byte[] container = rewrite(createContainer(), "unsigned.txt", "unsigned".getBytes());
+
+        AsicReader asicReader = AsicReaderFactory.newFactory()
+                .setManifestFirst(true)
+                .open(new ByteArrayInputStream(container));
+
+        try {
+            asicReader.getNextFile();
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+        asicReader.close();
+    }
+
+    @Test
+    public void contentBeforeManifestsIsRejected() throws IOException {
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory()
+                .newContainer(container)
+                .add(new ByteArrayInputStream("content".getBytes()), "content.txt")
+                .sign(signatureHelper);
+
+        try {
+            AsicVerifierFactory.newFactory()
+                    .setManifestFirst(true)
+                    .verify(new ByteArrayInputStream(container.toByteArray()));
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void writerRequiresContentReadTwice() throws IOException {
+        AsicWriter asicWriter = AsicWriterFactory.newFactory()
+                .setManifestFirst(true)
+                .newContainer(new ByteArrayOutputStream());
+
+        try {
+            asicWriter.add(new ByteArrayInputStream("content".getBytes()), "content.txt");
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void fileChangedBeforeSigningIsRejected() throws IOException {
+        Path file = Files.createTempFile("asic", ".txt");
+        try {
+            Files.write(file, "content".getBytes());
+            AsicWriter asicWriter = AsicWriterFactory.newFactory()
+                    .setManifestFirst(true)
+                    .newContainer(new ByteArrayOutputStream())
+                    .add(file, "content.txt");
+            Files.write(file, "changed".getBytes());
+
+            try {
+                asicWriter.sign(signatureHelper);
+                fail("Exception expected.");
+            } catch (IllegalStateException e) {
+                log.info(e.getMessage());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void assembledManifestsAreWrittenFirst() throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest("content".getBytes());
+        SignedManifests signedManifests = AsicWriterFactory.newFactory()
+                .newManifestBuilder()
+                .add("content.txt", MimeType.forString("text/plain"), digest)
+                .sign(signatureHelper);
+
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory()
+                .setManifestFirst(true)
+                .assemble(signedManifests, container)
+                .add(new ByteArrayInputStream("content".getBytes()), "content.txt")
+                .finish();
+
+        List<String> entries = entries(container.toByteArray());
+        assertEquals(entries.get(entries.size() - 1), "content.txt");
+
+        AsicVerifier asicVerifier = AsicVerifierFactory.newFactory()
+                .setManifestFirst(true)
+                .verify(new ByteArrayInputStream(container.toByteArray()));
+        assertEquals(asicVerifier.getAsicManifest().getFile().size(), 1);
+    }
+
+    @Test
+    public void forgedXadesManifestIsRejected() throws IOException {
+        ByteArrayOutputStream signed = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory(SignatureMethod.XAdES)
+                .newContainer(signed)
+                .add(new ByteArrayInputStream("forged".getBytes()), "content.txt")
+                .sign(signatureHelper);
+
+        // Any signature value, the digests in the manifest match the content
+        String signatures = new String(readEntry(signed.toByteArray(), "META-INF/signatures.xml"))
+                .replaceAll("SignatureValue([^>]*)>[^<]+<", "SignatureValue$1>Zm9yZ2Vk<");
+
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        try (AsicZipWriter zipWriter = new AsicZipWriter(container)) {
+            zipWriter.writeMimetype(AsicUtils.MIMETYPE_ASICE);
+            zipWriter.writeEntry(new ZipEntry("META-INF/signatures.xml"), signatures.getBytes());
+            zipWriter.writeEntry(new ZipEntry("content.txt"), "forged".getBytes());
+        }
+
+        AsicReader asicReader = AsicReaderFactory.newFactory()
+                .setManifestFirst(true)
+                .open(new ByteArrayInputStream(container.toByteArray()));
+        try {
+            asicReader.getNextFile();
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+        asicReader.close();
+    }
+
+    @Test
+    public void writerRequiresCadesSignatures() throws IOException {
+        try {
+            AsicWriterFactory.newFactory(SignatureMethod.XAdES)
+                    .setManifestFirst(true)
+                    .newContainer(new ByteArrayOutputStream());
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    private byte[] createContainer() throws IOException {
+        Path directory = Files.createTempDirectory("asic");
+        try {
+            Path file1 = Files.write(directory.resolve("content1.txt"), "content 1".getBytes());
+            Path file2 = Files.write(directory.resolve("content2.txt"), "content 2".getBytes());
+
+            ByteArrayOutputStream container = new ByteArrayOutputStream();
+            AsicWriterFactory.newFactory()
+                    .setManifestFirst(true)
+                    .newContainer(container)
+                    .add(file1, "content1.txt")
+                    .add(file2, "content2.txt")
+                    .sign(signatureHelper);
+            return container.toByteArray();
+        } finally {
+            Files.delete(directory.resolve("content1.txt"));
+            Files.delete(directory.resolve("content2.txt"));
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Copies a container, replacing the content of an entry, or adding it right after the metadata when not found.
+     */
+    private static byte[] rewrite(byte[] container, String name, byte[] content) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        boolean written = false;
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(container));
+             ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                if (!written && !zipEntry.getName().equals("mimetype") && !zipEntry.getName().startsWith("META-INF/")) {
+                    if (!zipEntry.getName().equals(name)) {
+                        zipOutputStream.putNextEntry(new ZipEntry(name));
+                        zipOutputStream.write(content);
+                        zipOutputStream.closeEntry();
+                    }
+                    written = true;
+                }
+
+                zipOutputStream.putNextEntry(new ZipEntry(zipEntry.getName()));
+                zipOutputStream.write(zipEntry.getName().equals(name) ? content : zipInputStream.readAllBytes());
+                zipOutputStream.closeEntry();
+            }
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] readEntry(byte[] container, String name) throws IOException {
+        ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(container));
+        ZipEntry zipEntry;
+        while ((zipEntry = zipInputStream.getNextEntry()) != null)
+            if (zipEntry.getName().equals(name))
+                return zipInputStream.readAllBytes();
+        throw new IllegalStateException(String.format("Entry not found: %s", name));
+    }
+
+    private static List<String> entries(byte[] container) throws IOException {
+        List<String> entries = new ArrayList<>();
+        ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(container));
+        ZipEntry zipEntry;
+        while ((zipEntry = zipInputStream.getNextEntry()) != null)
+            entries.add(zipEntry.getName());
+        return entries;
+    }
+}
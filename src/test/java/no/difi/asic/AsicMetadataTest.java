@@ -0,0 +1,77 @@
+package no.difi.asic;
+
+import no.difi.commons.asic.jaxb.asic.AsicFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.testng.Assert.*;
+
+public class AsicMetadataTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicMetadataTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @Test
+    public void peekReadsSignedMetadata() throws IOException {
+        Path path = Files.createTempFile("asic", ".asice");
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            AsicWriterFactory.newFactory()
+                    .addSignature(SignatureMethod.XAdES, MessageDigestAlgorithm.SHA256)
+                    .newContainer(outputStream)
+                    .add(new ByteArrayInputStream("content 1".getBytes()), "content1.txt")
+                    .add(new ByteArrayInputStream("<content/>".getBytes()), "content2.xml", MimeType.XML)
+                    .setRootEntryName("content1.txt")
+                    .sign(signatureHelper);
+        }
+
+        AsicMetadata asicMetadata = AsicReaderFactory.newFactory().peek(path);
+        assertEquals(asicMetadata.getDataObjects(), Arrays.asList("content1.txt", "content2.xml"));
+        assertEquals(asicMetadata.getAsicManifest().getRootfile(), "content1.txt");
+        assertEquals(asicMetadata.getAsicManifest().getCertificate().size(), 1);
+        assertEquals(asicMetadata.getAsicManifest().getFile().size(), 2);
+        assertEquals(asicMetadata.getAsicManifest().getFile().get(1).getMimetype(), MimeType.XML.toString());
+        assertNotNull(asicMetadata.getOasisManifest());
+
+        // Data objects are never read
+        for (AsicFile asicFile : asicMetadata.getAsicManifest().getFile())
+            assertFalse(asicFile.isVerified());
+
+        Files.delete(path);
+    }
+
+    @Test
+    public void peekRejectsUnsignedContent() throws IOException {
+        Path path = Files.createTempFile("asic", ".asice");
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            AsicWriterFactory.newFactory()
+                    .newContainer(outputStream)
+                    .add(new ByteArrayInputStream("content".getBytes()), "content.txt")
+                    .sign(signatureHelper);
+        }
+
+        // Adding a data object unknown to the manifests is detected from the central directory alone
+        try (FileSystem fileSystem = FileSystems.newFileSystem(path)) {
+            Files.write(fileSystem.getPath("unsigned.txt"), "unsigned".getBytes());
+        }
+
+        try {
+            AsicReaderFactory.newFactory().peek(path);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        Files.delete(path);
+    }
+}
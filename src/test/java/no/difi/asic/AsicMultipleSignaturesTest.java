@@ -0,0 +1,86 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.testng.Assert.*;
+
+public class AsicMultipleSignaturesTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicMultipleSignaturesTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @Test
+    public void writeAndReadSeveralSignatures() throws IOException {
+        byte[] container = createContainer();
+
+        // Each manifest is written using its own name
+        List<String> entries = new ArrayList<>();
+        ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(container));
+        ZipEntry zipEntry;
+        while ((zipEntry = zipInputStream.getNextEntry()) != null)
+            entries.add(zipEntry.getName());
+        assertTrue(entries.contains("META-INF/ASiCManifest.xml"));
+        assertTrue(entries.contains("META-INF/ASiCManifest2.xml"));
+        assertTrue(entries.contains("META-INF/signatures.xml"));
+
+        AsicReader asicReader = AsicReaderFactory.newFactory(MessageDigestAlgorithm.SHA256, MessageDigestAlgorithm.SHA512)
+                .open(new ByteArrayInputStream(container));
+
+        List<String> files = new ArrayList<>();
+        String filename;
+        while ((filename = asicReader.getNextFile()) != null) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            asicReader.writeFile(outputStream);
+            files.add(filename);
+        }
+        asicReader.close();
+
+        assertEquals(files.size(), 2);
+        assertEquals(asicReader.getAsicManifest().getRootfile(), "content1.txt");
+
+        // Both CAdES signatures are verified
+        assertEquals(asicReader.getAsicManifest().getCertificate().size(), 2);
+    }
+
+    @Test
+    public void readerRequiresAllAlgorithms() throws IOException {
+        byte[] container = createContainer();
+
+        try {
+            AsicVerifierFactory.newFactory(MessageDigestAlgorithm.SHA256).verify(new ByteArrayInputStream(container));
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        AsicVerifier asicVerifier = AsicVerifierFactory.newFactory(MessageDigestAlgorithm.SHA512, MessageDigestAlgorithm.SHA256)
+                .verify(new ByteArrayInputStream(container));
+        assertEquals(asicVerifier.getAsicManifest().getFile().size(), 2);
+    }
+
+    private byte[] createContainer() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        AsicWriterFactory.newFactory(SignatureMethod.CAdES, MessageDigestAlgorithm.SHA512)
+                .addSignature(SignatureMethod.XAdES, MessageDigestAlgorithm.SHA256)
+                .addSignature(SignatureMethod.CAdES, MessageDigestAlgorithm.SHA256)
+                .newContainer(outputStream)
+                .add(new ByteArrayInputStream("content 1".getBytes()), "content1.txt")
+                .add(new ByteArrayInputStream("content 2".getBytes()), "content2.txt")
+                .setRootEntryName("content1.txt")
+                .sign(signatureHelper);
+
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,298 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+public class AsicPublisherTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicPublisherTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    private static final MimeType OCTET_STREAM = MimeType.forString("application/octet-stream");
+
+    @Test
+    public void publishContainer() throws Exception {
+        byte[] content1 = TestUtil.content(1, 500_000);
+        byte[] content2 = TestUtil.content(2, 300_000);
+        byte[] content3 = TestUtil.content(3, 100);
+
+        AsicPublisher asicPublisher = AsicWriterFactory.newFactory().newPublisher()
+                .add(new ContentPublisher(content1, 10_000, false), "content1.bin", OCTET_STREAM)
+                .add(Channels.newChannel(new ByteArrayInputStream(content2)), "content2.bin", OCTET_STREAM);
+
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        asicPublisher.subscribe(subscriber);
+
+        // Entries are still accepted after subscribing
+        asicPublisher.add(new ContentPublisher(content3, 7, true), "content3.bin", OCTET_STREAM)
+                .sign(signatureHelper);
+
+        byte[] container = subscriber.result.get(30, TimeUnit.SECONDS);
+
+        AsicReader asicReader = AsicReaderFactory.newFactory().open(new ByteArrayInputStream(container));
+        assertEquals(asicReader.getNextFile(), "content1.bin");
+        assertEquals(read(asicReader), content1);
+        assertEquals(asicReader.getNextFile(), "content2.bin");
+        assertEquals(read(asicReader), content2);
+        assertEquals(asicReader.getNextFile(), "content3.bin");
+        assertEquals(read(asicReader), content3);
+        assertNull(asicReader.getNextFile());
+        asicReader.close();
+    }
+
+    @Test
+    public void contentIsRequestedOnDemand() throws Exception {
+        ContentPublisher content = new ContentPublisher(TestUtil.content(4, 10_000_000), 8192, false);
+
+        AsicPublisher asicPublisher = AsicWriterFactory.newFactory().newPublisher(Runnable::run)
+                .add(content, "content.bin", OCTET_STREAM)
+                .sign(signatureHelper);
+
+        CollectingSubscriber subscriber = new CollectingSubscriber(1);
+        asicPublisher.subscribe(subscriber);
+
+        // Only enough content to fill the first buffer is requested
+        assertEquals(subscriber.chunks, 1);
+        assertTrue(content.requested.get() < 20, String.valueOf(content.requested.get()));
+
+        subscriber.subscription.cancel();
+        assertTrue(content.cancelled);
+        assertFalse(subscriber.result.isDone());
+    }
+
+    @Test
+    public void largeBuffersAreDeflatedOnDemand() throws Exception {
+        ContentPublisher content = new ContentPublisher(TestUtil.content(5, 10_000_000), 10_000_000, true);
+
+        AsicPublisher asicPublisher = AsicWriterFactory.newFactory().newPublisher(Runnable::run)
+                .add(content, "content.bin", OCTET_STREAM)
+                .sign(signatureHelper);
+
+        CollectingSubscriber subscriber = new CollectingSubscriber(1);
+        asicPublisher.subscribe(subscriber);
+
+        // The single buffer of content is only deflated as far as needed by the first buffer published
+        assertEquals(subscriber.chunks, 1);
+        assertTrue(content.last.position() <= 4 * AsicPublisher.CHUNK_SIZE, String.valueOf(content.last.position()));
+
+        subscriber.subscription.cancel();
+    }
+
+    @Test
+    public void emptyNonBlockingChannelIsReadAgainLater() throws Exception {
+        byte[] content = TestUtil.content(6, 1000);
+        AtomicInteger reads = new AtomicInteger();
+        long ready = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        ReadableByteChannel channel = new ReadableByteChannel() {
+            private final ReadableByteChannel delegate = Channels.newChannel(new ByteArrayInputStream(content));
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                reads.incrementAndGet();
+                return System.nanoTime() < ready ? 0 : delegate.read(dst);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return delegate.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+        };
+
+        AsicPublisher asicPublisher = AsicWriterFactory.newFactory().newPublisher()
+                .add(channel, "content.bin", OCTET_STREAM)
+                .sign(signatureHelper);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        asicPublisher.subscribe(subscriber);
+
+        AsicReader asicReader = AsicReaderFactory.newFactory().open(new ByteArrayInputStream(subscriber.result.get(30, TimeUnit.SECONDS)));
+        assertEquals(asicReader.getNextFile(), "content.bin");
+        assertEquals(read(asicReader), content);
+        asicReader.close();
+
+        // Read about every 10 ms while empty, rather than over and over
+        assertTrue(reads.get() < 100, String.valueOf(reads.get()));
+    }
+
+    @Test
+    public void failingContentFailsContainer() throws Exception {
+        Flow.Publisher<ByteBuffer> content = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                subscriber.onError(new IOException("Connection reset"));
+            }
+
+            @Override
+            public void cancel() {
+                // No action
+            }
+        });
+
+        AsicPublisher asicPublisher = AsicWriterFactory.newFactory().newPublisher()
+                .add(content, "content.bin", OCTET_STREAM)
+                .sign(signatureHelper);
+
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        asicPublisher.subscribe(subscriber);
+
+        try {
+            subscriber.result.get(30, TimeUnit.SECONDS);
+            fail("Exception expected.");
+        } catch (ExecutionException e) {
+            log.info(e.getCause().getMessage());
+            assertEquals(e.getCause().getMessage(), "Unable to read content of content.bin.");
+            assertEquals(e.getCause().getCause().getMessage(), "Connection reset");
+        }
+    }
+
+    @Test
+    public void publishedOnlyOnce() throws Exception {
+        AsicPublisher asicPublisher = AsicWriterFactory.newFactory().newPublisher()
+                .add(new ContentPublisher(TestUtil.content(5, 10), 10, false), "content.bin", OCTET_STREAM)
+                .sign(signatureHelper);
+
+        CollectingSubscriber first = new CollectingSubscriber();
+        asicPublisher.subscribe(first);
+        CollectingSubscriber second = new CollectingSubscriber();
+        asicPublisher.subscribe(second);
+
+        assertTrue(first.result.get(30, TimeUnit.SECONDS).length > 0);
+        try {
+            second.result.get(30, TimeUnit.SECONDS);
+            fail("Exception expected.");
+        } catch (ExecutionException e) {
+            log.info(e.getCause().getMessage());
+        }
+
+        try {
+            asicPublisher.add(new ContentPublisher(new byte[1], 1, false), "late.bin", OCTET_STREAM);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void manifestFirstIsRejected() throws IOException {
+        AsicWriterFactory.newFactory().setManifestFirst(true).newPublisher();
+    }
+
+    private static byte[] read(AsicReader asicReader) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        asicReader.writeFile(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Publishes content in buffers of a given size, counting buffers requested.
+     */
+    private static class ContentPublisher implements Flow.Publisher<ByteBuffer> {
+
+        private final byte[] content;
+        private final int chunkSize;
+        private final boolean direct;
+        private final AtomicLong requested = new AtomicLong();
+        private volatile boolean cancelled;
+        /** Last buffer published. */
+        private volatile ByteBuffer last;
+
+        ContentPublisher(byte[] content, int chunkSize, boolean direct) {
+            this.content = content;
+            this.chunkSize = chunkSize;
+            this.direct = direct;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private int position = 0;
+
+                @Override
+                public void request(long n) {
+                    requested.addAndGet(n);
+                    for (long i = 0; i < n && position < content.length; i++) {
+                        int length = Math.min(chunkSize, content.length - position);
+                        ByteBuffer byteBuffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+                        byteBuffer.put(content, position, length).flip();
+                        position += length;
+                        last = byteBuffer;
+                        subscriber.onNext(byteBuffer);
+                    }
+                    if (position == content.length)
+                        subscriber.onComplete();
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Collects the container, requesting one buffer at a time up to an optional limit.
+     */
+    private static class CollectingSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+        private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        private final int maxChunks;
+        private Flow.Subscription subscription;
+        private int chunks;
+
+        CollectingSubscriber() {
+            this(Integer.MAX_VALUE);
+        }
+
+        CollectingSubscriber(int maxChunks) {
+            this.maxChunks = maxChunks;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            byte[] bytes = new byte[item.remaining()];
+            item.get(bytes);
+            outputStream.write(bytes, 0, bytes.length);
+            if (++chunks < maxChunks)
+                subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(outputStream.toByteArray());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package no.difi.asic;
 
 import com.google.common.io.ByteStreams;
+import no.difi.commons.asic.jaxb.asic.AsicFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
@@ -10,6 +11,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.security.MessageDigest;
 
 import static org.testng.Assert.*;
 
@@ -161,4 +163,43 @@ public class AsicReaderImplTest {
         }
 
     }
+
+    @Test
+    public void exposeDigestsAndSizes() throws Exception {
+        ByteArrayOutputStream containerOutput = new ByteArrayOutputStream();
+        asicWriterFactory.newContainer(containerOutput)
+                .add(new ByteArrayInputStream(fileContent1.getBytes()), "content1.txt", MimeType.forString("text/plain"))
+                .add(new ByteArrayInputStream(fileContent2.getBytes()), "content2.txt", MimeType.forString("text/plain"))
+                .sign(signatureHelper);
+
+        AsicReader asicReader = AsicReaderFactory.newFactory(MessageDigestAlgorithm.SHA256, MessageDigestAlgorithm.SHA512)
+                .open(new ByteArrayInputStream(containerOutput.toByteArray()));
+
+        assertEquals(asicReader.getNextFile(), "content1.txt");
+        assertNull(asicReader.getCurrentFile());
+        asicReader.writeFile(ByteStreams.nullOutputStream());
+
+        // Available as soon as the entry is read, before any manifest is seen
+        AsicFile asicFile = asicReader.getCurrentFile();
+        assertEquals(asicFile.getName(), "content1.txt");
+        assertEquals(asicFile.getEntryDigest().size(), 2);
+        assertEquals(asicFile.getEntryDigest().get(0).getAlgorithm(), MessageDigestAlgorithm.SHA256.getUri());
+        assertEquals(asicFile.getEntryDigest().get(0).getValue(), MessageDigest.getInstance("SHA-256").digest(fileContent1.getBytes()));
+        assertEquals(asicFile.getEntryDigest().get(1).getValue(), MessageDigest.getInstance("SHA-512").digest(fileContent1.getBytes()));
+        assertEquals((long) asicFile.getSize(), fileContent1.length());
+        assertTrue(asicFile.getCompressedSize() > 0);
+        assertFalse(asicFile.isVerified());
+
+        // Entries read through a stream are recorded when moving on
+        assertEquals(asicReader.getNextFile(), "content2.txt");
+        ByteStreams.exhaust(asicReader.inputStream());
+        assertNull(asicReader.getNextFile());
+        asicReader.close();
+
+        for (AsicFile file : asicReader.getAsicManifest().getFile()) {
+            assertTrue(file.isVerified());
+            assertEquals(file.getEntryDigest().size(), 2);
+            assertNotNull(file.getSize());
+        }
+    }
 }
@@ -0,0 +1,160 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.*;
+
+public class AsicResetTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicResetTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @Test
+    public void cadesWriterAndReaderAreReused() throws IOException {
+        reuse(SignatureMethod.CAdES);
+    }
+
+    @Test
+    public void xadesWriterAndReaderAreReused() throws IOException {
+        reuse(SignatureMethod.XAdES);
+    }
+
+    private void reuse(SignatureMethod signatureMethod) throws IOException {
+        List<byte[]> containers = new ArrayList<>();
+
+        AsicWriter asicWriter = null;
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream containerOutput = new ByteArrayOutputStream();
+            asicWriter = asicWriter == null ?
+                    AsicWriterFactory.newFactory(signatureMethod).newContainer(containerOutput) :
+                    asicWriter.reset(containerOutput);
+
+            asicWriter.add(new ByteArrayInputStream(("content " + i).getBytes()), "content" + i + ".txt")
+                    .sign(signatureHelper);
+            containers.add(containerOutput.toByteArray());
+        }
+
+        AsicReader asicReader = null;
+        for (int i = 0; i < containers.size(); i++) {
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(containers.get(i));
+            asicReader = asicReader == null ?
+                    AsicReaderFactory.newFactory(signatureMethod).open(inputStream) :
+                    asicReader.reset(inputStream);
+
+            // Only the entry of the current container is found.
+            assertEquals(asicReader.getNextFile(), "content" + i + ".txt");
+            ByteArrayOutputStream fileOutput = new ByteArrayOutputStream();
+            asicReader.writeFile(fileOutput);
+            assertEquals(fileOutput.toString(), "content " + i);
+            assertNull(asicReader.getNextFile());
+
+            assertEquals(asicReader.getAsicManifest().getFile().size(), 1);
+        }
+        asicReader.close();
+
+        AsicVerifier asicVerifier = AsicVerifierFactory.newFactory(signatureMethod).verify(new ByteArrayInputStream(containers.get(0)));
+        asicVerifier.reset(new ByteArrayInputStream(containers.get(2)));
+        assertEquals(asicVerifier.getAsicManifest().getFile().get(0).getName(), "content2.txt");
+    }
+
+    @Test
+    public void unsignedContainerIsAbandoned() throws IOException {
+        AsicWriter asicWriter = AsicWriterFactory.newFactory()
+                .newContainer(new ByteArrayOutputStream())
+                .add(new ByteArrayInputStream("abandoned".getBytes()), "abandoned.txt");
+
+        ByteArrayOutputStream containerOutput = new ByteArrayOutputStream();
+        asicWriter.reset(containerOutput)
+                .add(new ByteArrayInputStream("kept".getBytes()), "kept.txt")
+                .sign(signatureHelper);
+
+        AsicVerifier asicVerifier = AsicVerifierFactory.newFactory().verify(new ByteArrayInputStream(containerOutput.toByteArray()));
+        assertEquals(asicVerifier.getAsicManifest().getFile().size(), 1);
+        assertEquals(asicVerifier.getAsicManifest().getFile().get(0).getName(), "kept.txt");
+    }
+
+    @Test
+    public void reusableContainersShareWriterOfThread() throws Exception {
+        AsicWriterFactory asicWriterFactory = AsicWriterFactory.newFactory();
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        AsicWriter asicWriter = asicWriterFactory.newReusableContainer(first)
+                .add(new ByteArrayInputStream("first".getBytes()), "first.txt");
+
+        // Writer busy with a container is not handed out again
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        AsicWriter other = asicWriterFactory.newReusableContainer(second);
+        assertNotSame(other, asicWriter);
+        asicWriter.sign(signatureHelper);
+        other.add(new ByteArrayInputStream("second".getBytes()), "second.txt").sign(signatureHelper);
+
+        // Signed writer of the thread is reused
+        ByteArrayOutputStream third = new ByteArrayOutputStream();
+        assertSame(asicWriterFactory.newReusableContainer(third), other);
+        other.add(new ByteArrayInputStream("third".getBytes()), "third.txt").sign(signatureHelper);
+
+        // Other threads have writers of their own
+        AtomicReference<AsicWriter> writerOfThread = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                writerOfThread.set(asicWriterFactory.newReusableContainer(new ByteArrayOutputStream()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotNull(writerOfThread.get());
+        assertNotSame(writerOfThread.get(), other);
+
+        assertEquals(AsicVerifierFactory.newFactory().verify(new ByteArrayInputStream(first.toByteArray())).getAsicManifest().getFile().get(0).getName(), "first.txt");
+        assertEquals(AsicVerifierFactory.newFactory().verify(new ByteArrayInputStream(second.toByteArray())).getAsicManifest().getFile().get(0).getName(), "second.txt");
+        assertEquals(AsicVerifierFactory.newFactory().verify(new ByteArrayInputStream(third.toByteArray())).getAsicManifest().getFile().get(0).getName(), "third.txt");
+    }
+
+    @Test
+    public void writerNotSupportingResetIsRejected() throws IOException {
+        AsicWriter asicWriter = (AsicWriter) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{AsicWriter.class},
+                (proxy, method, args) -> method.isDefault() ? InvocationHandler.invokeDefault(proxy, method, args) : null);
+        try {
+            asicWriter.reset(new ByteArrayOutputStream());
+            fail("Exception expected.");
+        } catch (UnsupportedOperationException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void readerResetKeepsPreviousManifest() throws IOException {
+        ByteArrayOutputStream containerOutput = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory()
+                .newContainer(containerOutput)
+                .add(new ByteArrayInputStream("content".getBytes()), "content.txt")
+                .sign(signatureHelper);
+
+        AsicReader asicReader = AsicReaderFactory.newFactory().open(new ByteArrayInputStream(containerOutput.toByteArray()));
+        while (asicReader.getNextFile() != null)
+            asicReader.writeFile(new ByteArrayOutputStream());
+
+        int files = asicReader.getAsicManifest().getFile().size();
+        no.difi.commons.asic.jaxb.asic.AsicManifest previous = asicReader.getAsicManifest();
+
+        asicReader.reset(new ByteArrayInputStream(containerOutput.toByteArray()));
+        assertEquals(previous.getFile().size(), files);
+        assertEquals(asicReader.getAsicManifest().getFile().size(), 0);
+        asicReader.close();
+    }
+}
@@ -0,0 +1,223 @@
+package no.difi.asic;
+
+import no.difi.commons.asic.jaxb.asic.AsicManifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class AsicSubscriberTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicSubscriberTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    private static final MimeType OCTET_STREAM = MimeType.forString("application/octet-stream");
+
+    private static final int[] SIZES = {0, 1, 100_000, 300_000};
+
+    @Test
+    public void readContainerInChunks() throws Exception {
+        byte[] container = TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES);
+
+        for (int chunkSize : new int[]{1, 7, 8192, container.length}) {
+            CollectingHandler handler = new CollectingHandler();
+            AsicSubscriber asicSubscriber = AsicReaderFactory.newFactory().newSubscriber(handler);
+            new ChunkPublisher(container, chunkSize, false).subscribe(asicSubscriber);
+
+            assertContents(handler, asicSubscriber.getResult().get(30, TimeUnit.SECONDS));
+            assertNotNull(asicSubscriber.getOasisManifest());
+        }
+    }
+
+    @Test
+    public void readManifestFirstFromSubmissionPublisher() throws Exception {
+        byte[] container = TestUtil.createContainer(AsicWriterFactory.newFactory().setManifestFirst(true), signatureHelper, SIZES);
+
+        CollectingHandler handler = new CollectingHandler();
+        AsicSubscriber asicSubscriber = AsicReaderFactory.newFactory().setManifestFirst(true).newSubscriber(handler);
+        try (SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(asicSubscriber);
+            for (int position = 0; position < container.length; position += 5000) {
+                ByteBuffer byteBuffer = ByteBuffer.allocateDirect(Math.min(5000, container.length - position));
+                publisher.submit(byteBuffer.put(container, position, byteBuffer.capacity()).flip());
+            }
+        }
+
+        assertContents(handler, asicSubscriber.getResult().get(30, TimeUnit.SECONDS));
+
+        // MIME types are known when manifests come first
+        for (MimeType mimeType : handler.mimeTypes.values())
+            assertEquals(mimeType, OCTET_STREAM);
+    }
+
+    @Test
+    public void readEntriesWithDataDescriptors() throws Exception {
+        // Rewritten entries are deflated with sizes in data descriptors
+        byte[] container = TestUtil.rewrite(TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES), null);
+
+        CollectingHandler handler = new CollectingHandler();
+        AsicSubscriber asicSubscriber = AsicReaderFactory.newFactory().newSubscriber(handler);
+        new ChunkPublisher(container, 3, true).subscribe(asicSubscriber);
+
+        assertContents(handler, asicSubscriber.getResult().get(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void tamperedContentIsRejected() throws Exception {
+        byte[] container = TestUtil.rewrite(TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES), "content2.bin");
+
+        AsicSubscriber asicSubscriber = AsicReaderFactory.newFactory().newSubscriber(new CollectingHandler());
+        new ChunkPublisher(container, 8192, false).subscribe(asicSubscriber);
+
+        try {
+            asicSubscriber.getResult().get(30, TimeUnit.SECONDS);
+            fail("Exception expected.");
+        } catch (ExecutionException e) {
+            log.info(e.getCause().getMessage());
+            assertEquals(e.getCause().getMessage(), "Mismatching digest for file content2.bin");
+        }
+    }
+
+    @Test
+    public void truncatedContainerIsRejected() throws Exception {
+        byte[] container = TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES);
+
+        AsicSubscriber asicSubscriber = AsicReaderFactory.newFactory().newSubscriber(new CollectingHandler());
+        ChunkPublisher publisher = new ChunkPublisher(Arrays.copyOf(container, container.length / 2), 8192, false);
+        publisher.subscribe(asicSubscriber);
+
+        try {
+            asicSubscriber.getResult().get(30, TimeUnit.SECONDS);
+            fail("Exception expected.");
+        } catch (ExecutionException e) {
+            log.info(e.getCause().getMessage());
+            assertEquals(e.getCause().getMessage(), "Container ends within entry content3.bin.");
+        }
+    }
+
+    @Test
+    public void failingHandlerCancelsSubscription() throws Exception {
+        byte[] container = TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES);
+
+        AsicSubscriber asicSubscriber = AsicReaderFactory.newFactory().newSubscriber(new CollectingHandler() {
+            @Override
+            public void content(ByteBuffer content) throws IOException {
+                throw new IOException("Disk full");
+            }
+        });
+        ChunkPublisher publisher = new ChunkPublisher(container, 8192, false);
+        publisher.subscribe(asicSubscriber);
+
+        try {
+            asicSubscriber.getResult().get(30, TimeUnit.SECONDS);
+            fail("Exception expected.");
+        } catch (ExecutionException e) {
+            log.info(e.getCause().getMessage());
+            assertEquals(e.getCause().getMessage(), "Disk full");
+        }
+        assertTrue(publisher.cancelled);
+    }
+
+    private static void assertContents(CollectingHandler handler, AsicManifest asicManifest) {
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        for (Map.Entry<String, ByteArrayOutputStream> entry : handler.contents.entrySet())
+            contents.put(entry.getKey(), entry.getValue().toByteArray());
+
+        TestUtil.assertContents(contents, asicManifest, SIZES);
+        assertEquals(asicManifest.getCertificate().size(), 1);
+    }
+    private static class CollectingHandler implements AsicContentHandler {
+
+        private final Map<String, ByteArrayOutputStream> contents = new LinkedHashMap<>();
+        private final Map<String, MimeType> mimeTypes = new LinkedHashMap<>();
+        private ByteArrayOutputStream current;
+
+        @Override
+        public void startFile(String name, MimeType mimeType) {
+            current = new ByteArrayOutputStream();
+            contents.put(name, current);
+            mimeTypes.put(name, mimeType);
+        }
+
+        @Override
+        public void content(ByteBuffer content) throws IOException {
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            current.write(bytes);
+        }
+
+        @Override
+        public void endFile() {
+            current = null;
+        }
+    }
+
+    /**
+     * Publishes content in buffers of a given size on the thread requesting them.
+     */
+    private static class ChunkPublisher implements Flow.Publisher<ByteBuffer> {
+
+        private final byte[] content;
+        private final int chunkSize;
+        private final boolean direct;
+        private volatile boolean cancelled;
+
+        ChunkPublisher(byte[] content, int chunkSize, boolean direct) {
+            this.content = content;
+            this.chunkSize = chunkSize;
+            this.direct = direct;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private int position = 0;
+                private long demand = 0;
+                private boolean emitting = false;
+
+                @Override
+                public void request(long n) {
+                    demand += n;
+                    // Requests made while emitting are served by the loop below
+                    if (emitting)
+                        return;
+
+                    emitting = true;
+                    while (demand > 0 && !cancelled && position <= content.length) {
+                        if (position == content.length) {
+                            position++;
+                            subscriber.onComplete();
+                            break;
+                        }
+
+                        demand--;
+                        int length = Math.min(chunkSize, content.length - position);
+                        ByteBuffer byteBuffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+                        byteBuffer.put(content, position, length).flip();
+                        position += length;
+                        subscriber.onNext(byteBuffer);
+                    }
+                    emitting = false;
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+}
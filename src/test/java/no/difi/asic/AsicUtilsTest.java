@@ -9,7 +9,10 @@ import org.testng.annotations.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import static org.testng.Assert.*;
@@ -235,6 +238,55 @@ public class AsicUtilsTest {
         zipInputStream.close();
     }
 
+    @Test
+    public void combineFiles() throws IOException {
+        Path source1 = Files.createTempFile("asic", ".asice");
+        asicWriterFactory.newContainer(source1)
+                .add(new ByteArrayInputStream(fileContent1.getBytes()), "content1.txt", MimeType.forString("text/plain"))
+                .sign(signatureHelper);
+
+        Path source2 = Files.createTempFile("asic", ".asice");
+        asicWriterFactory.newContainer(source2)
+                .add(new ByteArrayInputStream(fileContent2.getBytes()), "content2.txt", MimeType.forString("text/plain"))
+                .sign(signatureHelper);
+
+        // Combine containers
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        AsicUtils.combine(target, source1, source2);
+
+        // Compressed content is copied unchanged
+        try (ZipFile zipFile = new ZipFile(source1.toFile())) {
+            ZipEntry zipEntry = zipFile.getEntry("content1.txt");
+            ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(target.toByteArray()));
+            assertEquals(zipInputStream.getNextEntry().getName(), "mimetype");
+            ZipEntry copied = zipInputStream.getNextEntry();
+            assertEquals(copied.getName(), "content1.txt");
+            assertEquals(copied.getCrc(), zipEntry.getCrc());
+            assertEquals(copied.getCompressedSize(), zipEntry.getCompressedSize());
+            zipInputStream.close();
+        }
+
+        // Read container (asic)
+        AsicReader asicReader = asicReaderFactory.open(new ByteArrayInputStream(target.toByteArray()));
+
+        assertEquals(asicReader.getNextFile(), "content1.txt");
+        ByteArrayOutputStream fileStream = new ByteArrayOutputStream();
+        asicReader.writeFile(fileStream);
+        assertEquals(fileStream.toString(), fileContent1);
+
+        assertEquals(asicReader.getNextFile(), "content2.txt");
+        fileStream = new ByteArrayOutputStream();
+        asicReader.writeFile(fileStream);
+        assertEquals(fileStream.toString(), fileContent2);
+
+        assertNull(asicReader.getNextFile());
+        assertEquals(asicReader.getAsicManifest().getCertificate().size(), 2);
+        asicReader.close();
+
+        Files.delete(source1);
+        Files.delete(source2);
+    }
+
     // Making Cobertura happy!
     @Test
     public void constructor() {
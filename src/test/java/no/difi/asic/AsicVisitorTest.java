@@ -0,0 +1,168 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import no.difi.commons.asic.jaxb.asic.AsicFile;
+import no.difi.commons.asic.jaxb.asic.AsicManifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.*;
+
+public class AsicVisitorTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicVisitorTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    private static final MimeType OCTET_STREAM = MimeType.forString("application/octet-stream");
+
+    private static final int[] SIZES = {100_000, 200_000, 300_000};
+
+    @Test
+    public void visitStream() throws IOException {
+        byte[] container = TestUtil.createContainer(AsicWriterFactory.newFactory().setManifestFirst(true), signatureHelper, SIZES);
+
+        Map<String, byte[]> contents = new ConcurrentHashMap<>();
+        AtomicBoolean ended = new AtomicBoolean();
+        AsicManifest asicManifest = AsicReaderFactory.newFactory().visit(new ByteArrayInputStream(container), new AsicVisitor() {
+            @Override
+            public void visitFile(String name, MimeType mimeType, InputStream content) throws IOException {
+                assertEquals(mimeType, OCTET_STREAM);
+                contents.put(name, ByteStreams.toByteArray(content));
+            }
+
+            @Override
+            public void visitEnd(AsicManifest asicManifest) {
+                ended.set(true);
+            }
+        });
+
+        assertTrue(ended.get());
+        assertContents(contents, asicManifest);
+    }
+
+    @Test
+    public void visitFileConcurrently() throws IOException {
+        Path file = Files.createTempFile("asic-", ".asice");
+        try {
+            Files.write(file, TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES));
+
+            Map<String, byte[]> contents = new ConcurrentHashMap<>();
+            AsicManifest asicManifest = AsicReaderFactory.newFactory().visit(file, (name, mimeType, content) -> {
+                assertEquals(mimeType, OCTET_STREAM);
+                contents.put(name, ByteStreams.toByteArray(content));
+            });
+
+            assertContents(contents, asicManifest);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void partiallyReadContentIsVerified() throws IOException {
+        byte[] container = TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES);
+
+        AsicManifest asicManifest = AsicReaderFactory.newFactory().visit(new ByteArrayInputStream(container), (name, mimeType, content) -> {
+            assertNull(mimeType);
+            content.read(new byte[10]);
+            content.close();
+        });
+
+        assertEquals(asicManifest.getFile().size(), 3);
+        for (AsicFile asicFile : asicManifest.getFile())
+            assertTrue(asicFile.isVerified());
+    }
+
+    @Test
+    public void streamedContentBeyondMaxExtractedSizeIsRejected() throws IOException {
+        // Entries are streamed with data descriptors, so sizes are not known before content is read
+        byte[] container = TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES);
+
+        AtomicBoolean ended = new AtomicBoolean();
+        try {
+            AsicReaderFactory.newFactory().setMaxExtractedSize(250_000).visit(new ByteArrayInputStream(container), new AsicVisitor() {
+                @Override
+                public void visitFile(String name, MimeType mimeType, InputStream content) {
+                    // Content is drained by the library
+                }
+
+                @Override
+                public void visitEnd(AsicManifest asicManifest) {
+                    ended.set(true);
+                }
+            });
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+            assertEquals(e.getMessage(), "Content of content1.bin exceeds max configured size.");
+        }
+        assertFalse(ended.get());
+    }
+
+    @Test
+    public void fileDeclaringMoreThanMaxExtractedSizeIsRejected() throws IOException {
+        Path file = Files.createTempFile("asic-", ".asice");
+        try {
+            Files.write(file, TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES));
+
+            AtomicBoolean visited = new AtomicBoolean();
+            try {
+                AsicReaderFactory.newFactory().setMaxExtractedSize(250_000).visit(file, (name, mimeType, content) -> visited.set(true));
+                fail("Exception expected.");
+            } catch (IllegalStateException e) {
+                log.info(e.getMessage());
+                assertEquals(e.getMessage(), "Content exceeds max configured size of 250000 bytes.");
+            }
+            assertFalse(visited.get());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void tamperedContentIsRejected() throws IOException {
+        Path file = Files.createTempFile("asic-", ".asice");
+        try {
+            Files.write(file, TestUtil.rewrite(TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES), "content1.bin"));
+
+            AtomicBoolean ended = new AtomicBoolean();
+            try {
+                AsicReaderFactory.newFactory().visit(file, new AsicVisitor() {
+                    @Override
+                    public void visitFile(String name, MimeType mimeType, InputStream content) throws IOException {
+                        ByteStreams.exhaust(content);
+                    }
+
+                    @Override
+                    public void visitEnd(AsicManifest asicManifest) {
+                        ended.set(true);
+                    }
+                });
+                fail("Exception expected.");
+            } catch (IllegalStateException e) {
+                log.info(e.getMessage());
+                assertEquals(e.getMessage(), "Mismatching digest for file content1.bin");
+            }
+            assertFalse(ended.get());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertContents(Map<String, byte[]> contents, AsicManifest asicManifest) {
+        TestUtil.assertContents(contents, asicManifest, SIZES);
+        for (AsicFile asicFile : asicManifest.getFile())
+            assertEquals(asicFile.getEntryDigest().size(), 1);
+    }
+}
@@ -0,0 +1,194 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.testng.Assert.*;
+
+public class AsicZipWriterTest {
+
+    private static Logger log = LoggerFactory.getLogger(AsicZipWriterTest.class);
+
+    @Test
+    public void entriesAreReadableByZipFileAndStream() throws IOException {
+        byte[] streamed = TestUtil.compressibleContent(300_000, 8);
+        byte[] known = "<manifest/>".getBytes(StandardCharsets.UTF_8);
+        byte[] stored = "stored".getBytes(StandardCharsets.UTF_8);
+
+        Path path = Files.createTempFile("asic", ".zip");
+        try (AsicZipWriter zipWriter = new AsicZipWriter(FileChannel.open(path, StandardOpenOption.WRITE))) {
+            zipWriter.setComment("mimetype=" + AsicUtils.MIMETYPE_ASICE);
+            zipWriter.writeMimetype(AsicUtils.MIMETYPE_ASICE);
+
+            ZipEntry streamedEntry = new ZipEntry("streamed.txt");
+            try (OutputStream outputStream = zipWriter.newEntry(streamedEntry)) {
+                outputStream.write(streamed);
+            }
+            assertEquals(streamedEntry.getSize(), streamed.length);
+            assertTrue(streamedEntry.getCompressedSize() < streamed.length);
+
+            zipWriter.writeEntry(new ZipEntry("META-INF/known.xml"), known);
+
+            ZipEntry storedEntry = new ZipEntry("stored.txt");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            storedEntry.setCrc(crc(stored));
+            try (OutputStream outputStream = zipWriter.newEntry(storedEntry)) {
+                outputStream.write(stored);
+            }
+        }
+
+        // The mimetype is stored first without extra field, so its content is found at offset 38
+        byte[] bytes = Files.readAllBytes(path);
+        assertEquals(new String(bytes, 30, 8, StandardCharsets.US_ASCII), "mimetype");
+        assertEquals(new String(bytes, 38, AsicUtils.MIMETYPE_ASICE.length(), StandardCharsets.US_ASCII), AsicUtils.MIMETYPE_ASICE);
+
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            assertEquals(zipFile.getComment(), "mimetype=" + AsicUtils.MIMETYPE_ASICE);
+            assertEquals(zipFile.getEntry("mimetype").getMethod(), ZipEntry.STORED);
+            assertEquals(read(zipFile, "streamed.txt"), streamed);
+            assertEquals(read(zipFile, "META-INF/known.xml"), known);
+            assertEquals(read(zipFile, "stored.txt"), stored);
+        }
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+            assertEquals(zipInputStream.getNextEntry().getName(), "mimetype");
+            assertEquals(zipInputStream.getNextEntry().getName(), "streamed.txt");
+            assertEquals(ByteStreams.toByteArray(zipInputStream), streamed);
+
+            // Sizes are found in the local header
+            ZipEntry zipEntry = zipInputStream.getNextEntry();
+            assertEquals(zipEntry.getName(), "META-INF/known.xml");
+            assertEquals(zipEntry.getSize(), known.length);
+            assertEquals(ByteStreams.toByteArray(zipInputStream), known);
+
+            assertEquals(zipInputStream.getNextEntry().getName(), "stored.txt");
+            assertEquals(ByteStreams.toByteArray(zipInputStream), stored);
+            assertNull(zipInputStream.getNextEntry());
+        }
+
+        Files.delete(path);
+    }
+
+    @Test
+    public void copyEntryWithoutInflating() throws IOException {
+        byte[] content = TestUtil.compressibleContent(100_000, 8);
+
+        ByteArrayOutputStream source = new ByteArrayOutputStream();
+        ZipEntry sourceEntry = new ZipEntry("content.txt");
+        sourceEntry.setMethod(ZipEntry.DEFLATED);
+        sourceEntry.setTime(0);
+        try (AsicZipWriter zipWriter = new AsicZipWriter(source)) {
+            zipWriter.writeEntry(sourceEntry, content);
+        }
+
+        // Compressed content starts right after the local header
+        byte[] compressed = new byte[(int) sourceEntry.getCompressedSize()];
+        System.arraycopy(source.toByteArray(), 30 + "content.txt".length(), compressed, 0, compressed.length);
+
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (AsicZipWriter zipWriter = new AsicZipWriter(Channels.newChannel(target))) {
+            zipWriter.copyEntry("renamed.txt", sourceEntry, Channels.newChannel(new ByteArrayInputStream(compressed)));
+        }
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(target.toByteArray()))) {
+            ZipEntry zipEntry = zipInputStream.getNextEntry();
+            assertEquals(zipEntry.getName(), "renamed.txt");
+            assertEquals(zipEntry.getCrc(), sourceEntry.getCrc());
+            assertEquals(zipEntry.getCompressedSize(), compressed.length);
+            assertEquals(ByteStreams.toByteArray(zipInputStream), content);
+        }
+    }
+
+    @Test
+    public void zip64EndRecordsForManyEntries() throws IOException {
+        int count = AsicZipWriter.ZIP64_ENTRIES + 10;
+
+        Path path = Files.createTempFile("asic", ".zip");
+        try (AsicZipWriter zipWriter = new AsicZipWriter(FileChannel.open(path, StandardOpenOption.WRITE))) {
+            zipWriter.writeMimetype(AsicUtils.MIMETYPE_ASICE);
+
+            byte[] empty = new byte[0];
+            for (int i = 0; i < count; i++) {
+                ZipEntry zipEntry = new ZipEntry("entry" + i);
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipWriter.writeEntry(zipEntry, empty);
+            }
+        }
+
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            assertEquals(zipFile.size(), count + 1);
+            assertNotNull(zipFile.getEntry("entry" + (count - 1)));
+        }
+
+        Files.delete(path);
+    }
+
+    @Test
+    public void rejectsDuplicateEntries() throws IOException {
+        AsicZipWriter zipWriter = new AsicZipWriter(new ByteArrayOutputStream());
+        zipWriter.writeEntry(new ZipEntry("content.txt"), new byte[1]);
+
+        try {
+            zipWriter.writeEntry(new ZipEntry("content.txt"), new byte[1]);
+            fail("Exception expected.");
+        } catch (ZipException e) {
+            log.info(e.getMessage());
+        }
+
+        zipWriter.close();
+    }
+
+    @Test
+    public void rejectsWrongSizeOfStoredEntry() throws IOException {
+        AsicZipWriter zipWriter = new AsicZipWriter(new ByteArrayOutputStream());
+
+        ZipEntry zipEntry = new ZipEntry("stored.txt");
+        zipEntry.setMethod(ZipEntry.STORED);
+        zipEntry.setSize(2);
+        zipEntry.setCrc(0);
+
+        try {
+            OutputStream outputStream = zipWriter.newEntry(zipEntry);
+            outputStream.write(1);
+            outputStream.close();
+            fail("Exception expected.");
+        } catch (ZipException e) {
+            log.info(e.getMessage());
+        }
+
+        zipWriter.discard();
+    }
+
+    private static byte[] read(ZipFile zipFile, String name) throws IOException {
+        try (InputStream inputStream = zipFile.getInputStream(zipFile.getEntry(name))) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        return crc32.getValue();
+    }
+
+}
@@ -0,0 +1,72 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.testng.Assert.*;
+
+public class MimeTypeRegistryTest {
+
+    private static Logger log = LoggerFactory.getLogger(MimeTypeRegistryTest.class);
+
+    @Test
+    public void defaultRegistry() {
+        MimeTypeRegistry registry = MimeTypeRegistry.defaultRegistry();
+
+        assertEquals(registry.detect("bii-envelope.xml"), MimeType.XML);
+        assertSame(registry.detect("a.xml"), registry.detect("b.XML"));
+        assertEquals(registry.detect("folder/document.pdf").toString(), "application/pdf");
+        assertEquals(registry.detect("archive.tar.gz").toString(), "application/gzip");
+
+        assertNull(registry.lookup("envelope.aaz"));
+        assertNull(registry.lookup("no-extension"));
+        assertNull(registry.lookup("folder.xml/no-extension"));
+
+        try {
+            registry.detect("envelope.aaz");
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void registeredOverrides() {
+        MimeType edifact = MimeType.forString("application/edifact");
+        MimeTypeRegistry registry = MimeTypeRegistry.defaultRegistry()
+                .register("EDI", edifact)
+                .register("txt", MimeType.forString("text/plain; charset=utf-8"));
+
+        assertSame(registry.detect("invoice.edi"), edifact);
+        assertEquals(registry.detect("readme.txt").toString(), "text/plain; charset=utf-8");
+
+        // Default registry is unchanged
+        assertNull(MimeTypeRegistry.defaultRegistry().lookup("invoice.edi"));
+        assertEquals(MimeTypeRegistry.defaultRegistry().detect("readme.txt").toString(), "text/plain");
+    }
+
+    @Test
+    public void contentTypeProbingIsOptIn() {
+        // Known to the JDK file name map, but not preloaded
+        assertNull(MimeTypeRegistry.defaultRegistry().lookup("page.xhtml"));
+        assertNotNull(MimeTypeRegistry.defaultRegistry().withContentTypeProbing().lookup("page.xhtml"));
+    }
+
+    @Test
+    public void writerUsesFactoryRegistry() throws Exception {
+        ByteArrayOutputStream containerOutput = new ByteArrayOutputStream();
+
+        AsicWriterFactory.newFactory()
+                .setMimeTypeRegistry(MimeTypeRegistry.defaultRegistry().register("aaz", MimeType.XML))
+                .newContainer(containerOutput)
+                .add(new ByteArrayInputStream("<envelope/>".getBytes()), "envelope.aaz")
+                .sign(new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit"));
+
+        AsicVerifier asicVerifier = AsicVerifierFactory.newFactory().verify(new ByteArrayInputStream(containerOutput.toByteArray()));
+        assertEquals(asicVerifier.getAsicManifest().getFile().get(0).getMimetype(), MimeType.XML.toString());
+    }
+}
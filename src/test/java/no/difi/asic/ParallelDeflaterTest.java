@@ -0,0 +1,147 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipFile;
+
+import static org.testng.Assert.*;
+
+public class ParallelDeflaterTest {
+
+    private ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @AfterClass
+    public void shutdown() {
+        executorService.shutdown();
+    }
+
+    @Test
+    public void blocksFormOneDeflateStream() throws IOException {
+        for (int size : new int[]{0, 1, ParallelDeflater.BLOCK_SIZE, 5 * ParallelDeflater.BLOCK_SIZE + 17}) {
+            byte[] content = TestUtil.compressibleContent(size, 4);
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            ParallelDeflater deflater = new ParallelDeflater(executorService, Deflater.DEFAULT_COMPRESSION);
+            try (DeflaterOutputStream outputStream = new DeflaterOutputStream(compressed, deflater)) {
+                outputStream.write(content);
+            }
+
+            assertEquals(deflater.getBytesRead(), size);
+            assertEquals(deflater.getBytesWritten(), compressed.size());
+            assertEquals(inflate(compressed.toByteArray()), content);
+            deflater.end();
+        }
+    }
+
+    @Test
+    public void dictionaryKeepsCompressionAcrossBlocks() throws IOException {
+        // Repeats of a random sequence longer than the block size, only found through the dictionary
+        byte[] sequence = TestUtil.content(1, 1000);
+        byte[] content = new byte[8 * ParallelDeflater.BLOCK_SIZE];
+        for (int i = 0; i < content.length; i++)
+            content[i] = sequence[i % sequence.length];
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream outputStream = new DeflaterOutputStream(compressed, new ParallelDeflater(executorService, Deflater.DEFAULT_COMPRESSION))) {
+            outputStream.write(content);
+        }
+
+        assertTrue(compressed.size() < content.length / 100, "Compressed to " + compressed.size());
+        assertEquals(inflate(compressed.toByteArray()), content);
+    }
+
+    @Test
+    public void inputIsConsumedWhileFewBlocksAreInProgress() throws IOException {
+        byte[] content = TestUtil.compressibleContent((ParallelDeflater.MAX_PENDING + 3) * ParallelDeflater.BLOCK_SIZE + 17, 4);
+
+        // Blocks are only compressed when asked to
+        List<Runnable> tasks = new ArrayList<>();
+        ParallelDeflater deflater = new ParallelDeflater(tasks::add, Deflater.DEFAULT_COMPRESSION);
+
+        deflater.setInput(content, 0, content.length);
+        assertEquals(tasks.size(), ParallelDeflater.MAX_PENDING);
+        assertEquals(deflater.getBytesRead(), (long) ParallelDeflater.MAX_PENDING * ParallelDeflater.BLOCK_SIZE);
+        assertFalse(deflater.needsInput());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[ResourcePool.BUFFER_SIZE];
+        while (!deflater.needsInput()) {
+            while (!tasks.isEmpty())
+                tasks.remove(0).run();
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        assertEquals(deflater.getBytesRead(), content.length);
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            while (!tasks.isEmpty())
+                tasks.remove(0).run();
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        assertEquals(inflate(compressed.toByteArray()), content);
+        deflater.end();
+    }
+
+    @Test
+    public void writeContainerUsingParallelDeflate() throws IOException {
+        byte[] large = TestUtil.compressibleContent(3 * ParallelDeflater.BLOCK_SIZE + 5, 4);
+        ByteBuffer direct = ByteBuffer.allocateDirect(large.length).put(large).flip();
+        Path path = Files.createTempFile("asic", ".asice");
+
+        AsicWriterFactory.newFactory()
+                .setParallelDeflate(executorService)
+                .newContainer(path)
+                .add(new ByteArrayInputStream(large), "large.txt")
+                .add(new ByteArrayInputStream("small".getBytes()), "small.txt")
+                .add(direct, "direct.txt", MimeType.forString("text/plain"))
+                .sign(signatureHelper);
+
+        // Sizes and CRC-32 are those of the uncompressed content
+        try (ZipFile zipFile = new ZipFile(path.toFile());
+             InputStream inputStream = zipFile.getInputStream(zipFile.getEntry("large.txt"))) {
+            assertEquals(zipFile.getEntry("large.txt").getSize(), large.length);
+            assertEquals(ByteStreams.toByteArray(inputStream), large);
+        }
+
+        AsicReader asicReader = AsicReaderFactory.newFactory().open(path);
+        assertEquals(asicReader.getNextFile(), "large.txt");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        asicReader.writeFile(outputStream);
+        assertEquals(outputStream.toByteArray(), large);
+        assertEquals(asicReader.getNextFile(), "small.txt");
+        assertEquals(asicReader.getNextFile(), "direct.txt");
+        outputStream.reset();
+        asicReader.writeFile(outputStream);
+        assertEquals(outputStream.toByteArray(), large);
+        assertNull(asicReader.getNextFile());
+        asicReader.close();
+
+        Files.delete(path);
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        try (InputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(compressed), new Inflater(true))) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package no.difi.asic;
+
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import static org.testng.Assert.*;
+
+public class ReadAheadInputStreamTest {
+
+    private static Logger log = LoggerFactory.getLogger(ReadAheadInputStreamTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @Test
+    public void readsSourceAhead() throws IOException {
+        byte[] content = TestUtil.content(1, 3 * ReadAheadInputStream.BUFFER_SIZE + 17);
+
+        try (ReadAheadInputStream inputStream = new ReadAheadInputStream(new SlowInputStream(new ByteArrayInputStream(content), 0), 2)) {
+            assertEquals(inputStream.read(), content[0] & 0xFF);
+            assertEquals(ByteStreams.toByteArray(inputStream), Arrays.copyOfRange(content, 1, content.length));
+            assertEquals(inputStream.read(), -1);
+        }
+    }
+
+    @Test
+    public void failureOfSourceReachesConsumer() throws IOException {
+        InputStream source = new SlowInputStream(new ByteArrayInputStream(new byte[10_000]), 0) {
+            private int read = 0;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (read >= 5_000)
+                    throw new IOException("Connection reset");
+                int length = super.read(b, off, len);
+                read += length;
+                return length;
+            }
+        };
+
+        try (ReadAheadInputStream inputStream = new ReadAheadInputStream(source, 4)) {
+            ByteStreams.toByteArray(inputStream);
+            fail("Exception expected.");
+        } catch (IOException e) {
+            log.info(e.getMessage());
+            assertEquals(e.getMessage(), "Connection reset");
+        }
+    }
+
+    @Test
+    public void uncheckedFailureOfSourceReachesConsumer() throws IOException {
+        InputStream source = new SlowInputStream(new ByteArrayInputStream(new byte[10_000]), 0) {
+            private int read = 0;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (read >= 5_000)
+                    throw new UncheckedIOException(new IOException("Connection reset"));
+                int length = super.read(b, off, len);
+                read += length;
+                return length;
+            }
+        };
+
+        try (ReadAheadInputStream inputStream = new ReadAheadInputStream(source, 4)) {
+            ByteStreams.toByteArray(inputStream);
+            fail("Exception expected.");
+        } catch (IOException e) {
+            log.info(e.getMessage());
+            assertTrue(e.getCause() instanceof UncheckedIOException);
+        }
+    }
+
+    @Test
+    public void readContainerFromSlowSource() throws IOException {
+        byte[] content = TestUtil.content(2, 1024 * 1024);
+
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory()
+                .newContainer(container)
+                .add(new ByteArrayInputStream(content), "content.bin", MimeType.forString("application/octet-stream"))
+                .sign(signatureHelper);
+
+        AsicReader asicReader = AsicReaderFactory.newFactory()
+                .setReadAhead(4)
+                .open(new SlowInputStream(new ByteArrayInputStream(container.toByteArray()), 1));
+
+        assertEquals(asicReader.getNextFile(), "content.bin");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        asicReader.writeFile(outputStream);
+        assertEquals(outputStream.toByteArray(), content);
+        assertNull(asicReader.getNextFile());
+        asicReader.close();
+    }
+
+    @Test
+    public void stalledReadsAreCounted() throws IOException {
+        try (ReadAheadInputStream inputStream = new ReadAheadInputStream(new SlowInputStream(new ByteArrayInputStream(new byte[100_000]), 1), 4)) {
+            ByteStreams.toByteArray(inputStream);
+
+            assertTrue(inputStream.getStalledReads() > 0);
+            assertTrue(inputStream.getStalledNanos() > 0);
+        }
+    }
+
+    /**
+     * Source giving at most 8 KiB per read, sleeping before each read, with nothing available up front.
+     */
+    private static class SlowInputStream extends FilterInputStream {
+
+        private final long sleep;
+
+        SlowInputStream(InputStream inputStream, long sleep) {
+            super(inputStream);
+            this.sleep = sleep;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return super.read(b, off, Math.min(len, 8192));
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+    }
+}
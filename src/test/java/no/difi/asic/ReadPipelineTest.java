@@ -0,0 +1,87 @@
+package no.difi.asic;
+
+import no.difi.commons.asic.jaxb.asic.AsicFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class ReadPipelineTest {
+
+    private static Logger log = LoggerFactory.getLogger(ReadPipelineTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    private static final int[] SIZES = {0, 1, ReadPipeline.CHUNK_SIZE, 20 * ReadPipeline.CHUNK_SIZE + 3};
+
+    @Test
+    public void pipelinedReadMatchesSingleThreadedRead() throws IOException {
+        byte[] container = TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES);
+
+        List<AsicFile> expected = read(AsicReaderFactory.newFactory(MessageDigestAlgorithm.SHA256, MessageDigestAlgorithm.SHA512), container);
+        List<AsicFile> actual = read(AsicReaderFactory.newFactory(MessageDigestAlgorithm.SHA256, MessageDigestAlgorithm.SHA512).setPipelinedRead(true), container);
+
+        assertEquals(actual.size(), SIZES.length);
+        for (int i = 0; i < SIZES.length; i++) {
+            assertEquals(actual.get(i).getSize(), Long.valueOf(SIZES[i]));
+            assertEquals(actual.get(i).getEntryDigest().size(), 2);
+            for (int j = 0; j < 2; j++)
+                assertEquals(actual.get(i).getEntryDigest().get(j).getValue(), expected.get(i).getEntryDigest().get(j).getValue());
+        }
+    }
+
+    @Test
+    public void tamperedContentIsRejected() throws IOException {
+        byte[] container = TestUtil.rewrite(TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES), "content3.bin");
+
+        AsicReader asicReader = AsicReaderFactory.newFactory().setPipelinedRead(true).open(new ByteArrayInputStream(container));
+        try {
+            while (asicReader.getNextFile() != null)
+                asicReader.writeFile(new ByteArrayOutputStream());
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+        asicReader.close();
+    }
+
+    @Test
+    public void failingTargetStopsPipeline() throws IOException {
+        AsicReader asicReader = AsicReaderFactory.newFactory().setPipelinedRead(true).open(new ByteArrayInputStream(TestUtil.createContainer(AsicWriterFactory.newFactory(), signatureHelper, SIZES)));
+        while (!"content3.bin".equals(asicReader.getNextFile()))
+            asicReader.writeFile(new ByteArrayOutputStream());
+
+        try {
+            asicReader.writeFile(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("Disk full");
+                }
+            });
+            fail("Exception expected.");
+        } catch (IOException e) {
+            log.info(e.getMessage());
+            assertEquals(e.getMessage(), "Disk full");
+        }
+        asicReader.close();
+    }
+
+    private static List<AsicFile> read(AsicReaderFactory asicReaderFactory, byte[] container) throws IOException {
+        List<AsicFile> files = new ArrayList<>();
+        try (AsicReader asicReader = asicReaderFactory.open(new ByteArrayInputStream(container))) {
+            while (asicReader.getNextFile() != null) {
+                asicReader.writeFile(new ByteArrayOutputStream());
+                files.add(asicReader.getCurrentFile());
+            }
+        }
+        return files;
+    }
+}
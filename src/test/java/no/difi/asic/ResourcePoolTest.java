@@ -0,0 +1,224 @@
+package no.difi.asic;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.testng.Assert.*;
+
+public class ResourcePoolTest {
+
+    @Test
+    public void releasedDigestIsResetAndReused() throws Exception {
+        // Digests released by other tests would be handed out first
+        while (ResourcePool.idleDigests(MessageDigestAlgorithm.SHA256) > 0)
+            ResourcePool.acquireDigest(MessageDigestAlgorithm.SHA256);
+
+        MessageDigest messageDigest = ResourcePool.acquireDigest(MessageDigestAlgorithm.SHA256);
+        messageDigest.update("partial".getBytes());
+        ResourcePool.releaseDigest(MessageDigestAlgorithm.SHA256, messageDigest);
+
+        MessageDigest reused = ResourcePool.acquireDigest(MessageDigestAlgorithm.SHA256);
+        assertSame(reused, messageDigest);
+        assertEquals(reused.digest(), MessageDigest.getInstance("SHA-256").digest());
+
+        // Pools are kept per algorithm
+        assertEquals(ResourcePool.acquireDigest(MessageDigestAlgorithm.SHA512).getAlgorithm(), "SHA-512");
+    }
+
+    @Test
+    public void copyUsesPooledBuffer() throws Exception {
+        byte[] content = TestUtil.content(1, ResourcePool.BUFFER_SIZE * 3 + 17);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        assertEquals(ResourcePool.copy(new ByteArrayInputStream(content), outputStream), content.length);
+        assertEquals(outputStream.toByteArray(), content);
+
+        byte[] buffer = ResourcePool.acquireBuffer();
+        assertEquals(buffer.length, ResourcePool.BUFFER_SIZE);
+        ResourcePool.releaseBuffer(buffer);
+    }
+
+    @Test
+    public void releasedInflaterIsResetAndReused() throws Exception {
+        byte[] content = "Lorem ipsum dolor sit amet".getBytes();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content);
+        deflater.finish();
+        byte[] deflated = new byte[256];
+        int length = deflater.deflate(deflated);
+        deflater.end();
+
+        Inflater inflater = ResourcePool.acquireInflater();
+        inflater.setInput(deflated, 0, length / 2);
+        inflater.inflate(new byte[256]);
+        ResourcePool.releaseInflater(inflater);
+
+        Inflater reused = ResourcePool.acquireInflater();
+        assertSame(reused, inflater);
+
+        byte[] inflated = new byte[256];
+        reused.setInput(deflated, 0, length);
+        assertEquals(Arrays.copyOf(inflated, reused.inflate(inflated)), content);
+        assertTrue(reused.finished());
+        ResourcePool.releaseInflater(reused);
+    }
+
+    @Test
+    public void releasedDeflaterIsResetAndReused() throws Exception {
+        byte[] content = "Lorem ipsum dolor sit amet".getBytes();
+
+        // Empties the pool, so the released deflater is the only one returned
+        List<Deflater> idle = new ArrayList<>();
+        while (ResourcePool.idleDeflaters() > 0)
+            idle.add(ResourcePool.acquireDeflater());
+
+        Deflater deflater = ResourcePool.acquireDeflater();
+        deflater.setInput("partial".getBytes());
+        deflater.deflate(new byte[256], 0, 256, Deflater.SYNC_FLUSH);
+        ResourcePool.releaseDeflater(deflater);
+
+        Deflater reused = ResourcePool.acquireDeflater();
+        assertSame(reused, deflater);
+
+        byte[] deflated = new byte[256];
+        reused.setInput(content);
+        reused.finish();
+        int length = reused.deflate(deflated);
+        ResourcePool.releaseDeflater(reused);
+
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(deflated, 0, length);
+        byte[] inflated = new byte[256];
+        assertEquals(Arrays.copyOf(inflated, inflater.inflate(inflated)), content);
+        inflater.end();
+
+        for (Deflater d : idle)
+            ResourcePool.releaseDeflater(d);
+    }
+
+    @Test
+    public void writerReleasesDeflaterWhenSignedAndReusesItWhenReset() throws Exception {
+        SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+        List<Deflater> idle = new ArrayList<>();
+        while (ResourcePool.idleDeflaters() > 0)
+            idle.add(ResourcePool.acquireDeflater());
+
+        AsicWriter asicWriter = AsicWriterFactory.newFactory()
+                .newContainer(new ByteArrayOutputStream())
+                .add(new ByteArrayInputStream("content".getBytes()), "content.txt");
+        asicWriter.sign(signatureHelper);
+        assertEquals(ResourcePool.idleDeflaters(), 1);
+
+        asicWriter.reset(new ByteArrayOutputStream())
+                .add(new ByteArrayInputStream("content".getBytes()), "content.txt");
+        assertEquals(ResourcePool.idleDeflaters(), 0);
+
+        // Resetting an unfinished container keeps the deflater
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        asicWriter.reset(container)
+                .add(new ByteArrayInputStream("content".getBytes()), "content.txt")
+                .sign(signatureHelper);
+        assertEquals(ResourcePool.idleDeflaters(), 1);
+
+        AsicVerifierFactory.newFactory().verify(new ByteArrayInputStream(container.toByteArray()));
+
+        for (Deflater deflater : idle)
+            ResourcePool.releaseDeflater(deflater);
+    }
+
+    @Test
+    public void writerReleasesDigestsWhenSigningFails() throws Exception {
+        List<MessageDigest> idle = new ArrayList<>();
+        while (ResourcePool.idleDigests(MessageDigestAlgorithm.SHA512) > 0)
+            idle.add(ResourcePool.acquireDigest(MessageDigestAlgorithm.SHA512));
+
+        byte[] content = "content".getBytes();
+        AsicWriter asicWriter = AsicWriterFactory.newFactory(SignatureMethod.CAdES, MessageDigestAlgorithm.SHA512)
+                .setManifestFirst(true)
+                .newContainer(new ByteArrayOutputStream())
+                .add(content, "content.txt", MimeType.forString("text/plain"));
+        content[0] = 'C';
+
+        try {
+            asicWriter.sign(new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit"));
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            assertEquals(ResourcePool.idleDigests(MessageDigestAlgorithm.SHA512), 1);
+        }
+
+        for (MessageDigest messageDigest : idle)
+            ResourcePool.releaseDigest(MessageDigestAlgorithm.SHA512, messageDigest);
+    }
+
+    @Test
+    public void writerReleasesDigestsWhenSigned() throws Exception {
+        // Empties the pool, so the digest of the writer is the only one returned
+        List<MessageDigest> idle = new ArrayList<>();
+        while (ResourcePool.idleDigests(MessageDigestAlgorithm.SHA512) > 0)
+            idle.add(ResourcePool.acquireDigest(MessageDigestAlgorithm.SHA512));
+
+        AsicWriter asicWriter = AsicWriterFactory.newFactory(SignatureMethod.CAdES, MessageDigestAlgorithm.SHA512)
+                .addSignature(SignatureMethod.XAdES, MessageDigestAlgorithm.SHA512)
+                .newContainer(new ByteArrayOutputStream())
+                .add(new ByteArrayInputStream("content".getBytes()), "content.txt");
+        assertEquals(ResourcePool.idleDigests(MessageDigestAlgorithm.SHA512), 0);
+
+        asicWriter.sign(new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit"));
+
+        // Both manifests share one digest
+        assertEquals(ResourcePool.idleDigests(MessageDigestAlgorithm.SHA512), 1);
+
+        for (MessageDigest messageDigest : idle)
+            ResourcePool.releaseDigest(MessageDigestAlgorithm.SHA512, messageDigest);
+    }
+
+    @Test
+    public void assemblerReleasesDeflaterAndDigestsWhenDiscarded() throws Exception {
+        SignedManifests signedManifests = AsicWriterFactory.newFactory()
+                .newManifestBuilder()
+                .add("content.txt", MimeType.forString("text/plain"), MessageDigest.getInstance("SHA-256").digest("content".getBytes()))
+                .sign(new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit"));
+
+        List<MessageDigest> idleDigests = new ArrayList<>();
+        while (ResourcePool.idleDigests(MessageDigestAlgorithm.SHA256) > 0)
+            idleDigests.add(ResourcePool.acquireDigest(MessageDigestAlgorithm.SHA256));
+        List<Deflater> idleDeflaters = new ArrayList<>();
+        while (ResourcePool.idleDeflaters() > 0)
+            idleDeflaters.add(ResourcePool.acquireDeflater());
+
+        // Rejected content
+        AsicAssembler asicAssembler = AsicWriterFactory.newFactory().assemble(signedManifests, new ByteArrayOutputStream());
+        try {
+            asicAssembler.add(new ByteArrayInputStream("tampered".getBytes()), "content.txt");
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            assertEquals(ResourcePool.idleDigests(MessageDigestAlgorithm.SHA256), 1);
+            assertEquals(ResourcePool.idleDeflaters(), 1);
+        }
+
+        // Content not added
+        asicAssembler = AsicWriterFactory.newFactory().assemble(signedManifests, new ByteArrayOutputStream());
+        assertEquals(ResourcePool.idleDigests(MessageDigestAlgorithm.SHA256), 0);
+        try {
+            asicAssembler.finish();
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            assertEquals(ResourcePool.idleDigests(MessageDigestAlgorithm.SHA256), 1);
+            assertEquals(ResourcePool.idleDeflaters(), 1);
+        }
+
+        for (MessageDigest messageDigest : idleDigests)
+            ResourcePool.releaseDigest(MessageDigestAlgorithm.SHA256, messageDigest);
+        for (Deflater deflater : idleDeflaters)
+            ResourcePool.releaseDeflater(deflater);
+    }
+}
@@ -0,0 +1,133 @@
+package no.difi.asic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.*;
+
+public class SegmentedOutputStreamTest {
+
+    private static Logger log = LoggerFactory.getLogger(SegmentedOutputStreamTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    private static final MimeType OCTET_STREAM = MimeType.forString("application/octet-stream");
+
+    @Test
+    public void collectsContentInSegments() {
+        byte[] content = TestUtil.content(1, 3_000_000);
+
+        SegmentedOutputStream outputStream = new SegmentedOutputStream(100);
+        outputStream.write(content[0]);
+        outputStream.write(content, 1, 99_999);
+        outputStream.write(content, 100_000, content.length - 100_000);
+
+        assertEquals(outputStream.size(), content.length);
+        assertEquals(outputStream.toByteArray(), content);
+
+        List<ByteBuffer> byteBuffers = outputStream.toByteBuffers();
+        assertTrue(byteBuffers.size() > 1);
+        assertTrue(byteBuffers.get(0).isReadOnly());
+        assertEquals(byteBuffers.get(0).remaining(), 100);
+    }
+
+    @Test
+    public void writeContainerFromMemory() throws IOException {
+        byte[] content1 = TestUtil.content(2, 200_000);
+        byte[] content2 = TestUtil.content(3, 100_000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(content2.length + 10).put(new byte[10]).put(content2);
+        direct.position(10);
+
+        SegmentedOutputStream container = new SegmentedOutputStream();
+        AsicWriterFactory.newFactory().newContainer(container)
+                .add(content1, "content1.bin", OCTET_STREAM)
+                .add(direct, "content2.bin", OCTET_STREAM)
+                .sign(signatureHelper);
+
+        // Position of the buffer is left as given
+        assertEquals(direct.position(), 10);
+
+        AsicReader asicReader = AsicReaderFactory.newFactory().open(toInputStream(container));
+        assertEquals(asicReader.getNextFile(), "content1.bin");
+        assertEquals(read(asicReader), content1);
+        assertEquals(asicReader.getNextFile(), "content2.bin");
+        assertEquals(read(asicReader), content2);
+        assertNull(asicReader.getNextFile());
+        asicReader.close();
+    }
+
+    @Test
+    public void writeManifestFirstFromMemory() throws IOException {
+        byte[] content = TestUtil.content(4, 100_000);
+
+        SegmentedOutputStream container = new SegmentedOutputStream();
+        AsicWriterFactory.newFactory().setManifestFirst(true).newContainer(container)
+                .add(content, "content.bin", OCTET_STREAM)
+                .sign(signatureHelper);
+
+        AsicReader asicReader = AsicReaderFactory.newFactory().setManifestFirst(true).open(toInputStream(container));
+        assertEquals(asicReader.getNextFile(), "content.bin");
+        assertEquals(read(asicReader), content);
+        assertNull(asicReader.getNextFile());
+        asicReader.close();
+    }
+
+    @Test
+    public void changedContentIsRejected() throws IOException {
+        byte[] content = TestUtil.content(5, 1_000);
+
+        AsicWriter asicWriter = AsicWriterFactory.newFactory().setManifestFirst(true).newContainer(new SegmentedOutputStream())
+                .add(content, "content.bin", OCTET_STREAM);
+        content[0] ^= 1;
+
+        try {
+            asicWriter.sign(signatureHelper);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+            assertEquals(e.getMessage(), "Content of content.bin changed while writing container.");
+        }
+    }
+
+    private static InputStream toInputStream(SegmentedOutputStream outputStream) {
+        List<InputStream> inputStreams = outputStream.toByteBuffers().stream()
+                .map(SegmentedOutputStreamTest::toInputStream)
+                .collect(Collectors.toList());
+        return new SequenceInputStream(Collections.enumeration(inputStreams));
+    }
+
+    private static InputStream toInputStream(ByteBuffer byteBuffer) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return byteBuffer.hasRemaining() ? byteBuffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!byteBuffer.hasRemaining())
+                    return -1;
+                int length = Math.min(len, byteBuffer.remaining());
+                byteBuffer.get(b, off, length);
+                return length;
+            }
+        };
+    }
+
+    private static byte[] read(AsicReader asicReader) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        asicReader.writeFile(outputStream);
+        return outputStream.toByteArray();
+    }
+
+}
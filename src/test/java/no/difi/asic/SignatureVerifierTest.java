@@ -0,0 +1,68 @@
+package no.difi.asic;
+
+import com.google.common.cache.CacheStats;
+import no.difi.commons.asic.jaxb.asic.Certificate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class SignatureVerifierTest {
+
+    private static Logger log = LoggerFactory.getLogger(SignatureVerifierTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @AfterMethod
+    public void resetCache() {
+        SignatureVerifier.setCacheSize(SignatureVerifier.DEFAULT_CACHE_SIZE);
+    }
+
+    @Test
+    public void verifierIsReusedForSameCertificate() {
+        SignatureVerifier.setCacheSize(SignatureVerifier.DEFAULT_CACHE_SIZE);
+
+        byte[] data1 = "first manifest".getBytes();
+        byte[] data2 = "second manifest".getBytes();
+
+        Certificate certificate1 = SignatureVerifier.validate(data1, signatureHelper.signData(data1));
+        Certificate certificate2 = SignatureVerifier.validate(data2, signatureHelper.signData(data2));
+
+        assertEquals(certificate1.getSubject(), certificate2.getSubject());
+        assertEquals(certificate1.getCertificate(), certificate2.getCertificate());
+
+        CacheStats stats = SignatureVerifier.getCacheStats();
+        assertEquals(stats.missCount(), 1);
+        assertEquals(stats.hitCount(), 1);
+    }
+
+    @Test
+    public void disabledCacheStillVerifies() {
+        SignatureVerifier.setCacheSize(0);
+
+        byte[] data = "manifest".getBytes();
+        byte[] signature = signatureHelper.signData(data);
+
+        SignatureVerifier.validate(data, signature);
+        SignatureVerifier.validate(data, signature);
+
+        assertEquals(SignatureVerifier.getCacheStats().hitCount(), 0);
+    }
+
+    @Test
+    public void cachedVerifierRejectsInvalidSignature() {
+        byte[] data = "manifest".getBytes();
+        byte[] signature = signatureHelper.signData(data);
+
+        SignatureVerifier.validate(data, signature);
+
+        try {
+            SignatureVerifier.validate("tampered".getBytes(), signature);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+    }
+}
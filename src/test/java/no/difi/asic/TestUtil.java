@@ -1,9 +1,24 @@
 package no.difi.asic;
 
+import no.difi.commons.asic.jaxb.asic.AsicFile;
+import no.difi.commons.asic.jaxb.asic.AsicManifest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.testng.Assert.*;
 
 /**
  * @author steinar
@@ -50,4 +65,81 @@ public class TestUtil {
     public static String keyPairAlias() {
         return "selfsigned";
     }
+
+    /**
+     * Provides random content, the same for the same seed.
+     */
+    public static byte[] content(int seed, int size) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    /**
+     * Provides compressible content made of the given number of letters, the same for the same size.
+     */
+    public static byte[] compressibleContent(int size, int letters) {
+        byte[] content = new byte[size];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++)
+            content[i] = (byte) ('a' + random.nextInt(letters));
+        return content;
+    }
+
+    /**
+     * Creates a signed container holding one data object "content{i}.bin" of {@link #content(int, int)} for each
+     * size. Manifest-first layout reads content twice, so content is written to files.
+     */
+    public static byte[] createContainer(AsicWriterFactory asicWriterFactory, SignatureHelper signatureHelper, int... sizes) throws IOException {
+        Path directory = Files.createTempDirectory("asic-");
+        try {
+            ByteArrayOutputStream container = new ByteArrayOutputStream();
+            AsicWriter asicWriter = asicWriterFactory.newContainer(container);
+            for (int i = 0; i < sizes.length; i++)
+                asicWriter.add(Files.write(directory.resolve("content" + i + ".bin"), content(i, sizes[i])), "content" + i + ".bin", MimeType.forString("application/octet-stream"));
+            asicWriter.sign(signatureHelper);
+            return container.toByteArray();
+        } finally {
+            for (int i = 0; i < sizes.length; i++)
+                Files.deleteIfExists(directory.resolve("content" + i + ".bin"));
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Asserts content read from a container made by {@link #createContainer(AsicWriterFactory, SignatureHelper, int...)}
+     * and that every data object of its manifest is verified.
+     */
+    public static void assertContents(Map<String, byte[]> contents, AsicManifest asicManifest, int... sizes) {
+        assertEquals(contents.size(), sizes.length);
+        for (int i = 0; i < sizes.length; i++)
+            assertEquals(contents.get("content" + i + ".bin"), content(i, sizes[i]));
+
+        assertEquals(asicManifest.getFile().size(), sizes.length);
+        for (AsicFile asicFile : asicManifest.getFile())
+            assertTrue(asicFile.isVerified());
+    }
+
+    /**
+     * Copies a container with every entry deflated by ZipOutputStream, flipping the first byte of the given entry.
+     *
+     * @param name entry to change, null to only copy.
+     */
+    public static byte[] rewrite(byte[] container, String name) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(container));
+             ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                byte[] content = zipInputStream.readAllBytes();
+                if (zipEntry.getName().equals(name))
+                    content[0] ^= 1;
+
+                zipOutputStream.putNextEntry(new ZipEntry(zipEntry.getName()));
+                zipOutputStream.write(content);
+                zipOutputStream.closeEntry();
+            }
+        }
+        return outputStream.toByteArray();
+    }
 }
@@ -0,0 +1,56 @@
+package no.difi.asic;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+
+import static org.testng.Assert.*;
+
+public class ZipCentralDirectoryTest {
+
+    @Test
+    public void recordsAreRelocatedBeyondZip64Offset() throws IOException {
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        try (AsicZipWriter zipWriter = new AsicZipWriter(container)) {
+            zipWriter.writeMimetype(AsicUtils.MIMETYPE_ASICE);
+            zipWriter.writeEntry(new ZipEntry("content.txt"), "content".getBytes());
+        }
+
+        ZipCentralDirectory.Record record = ZipCentralDirectory.read(container.toByteArray()).getRecords().get(1);
+        long offset = record.getLocalHeaderOffset();
+
+        // Offset is moved to a new ZIP64 extra field
+        ZipCentralDirectory.Record relocated = record.relocate(5L * 1024 * 1024 * 1024);
+        assertEquals(relocated.getName(), "content.txt");
+        assertEquals(relocated.getLocalHeaderOffset(), offset + 5L * 1024 * 1024 * 1024);
+        assertEquals(relocated.getSize(), record.getSize());
+        assertEquals(relocated.getCompressedSize(), record.getCompressedSize());
+
+        // Offset already in the ZIP64 extra field is updated in place
+        relocated = relocated.relocate(-1024);
+        assertEquals(relocated.getName(), "content.txt");
+        assertEquals(relocated.getLocalHeaderOffset(), offset + 5L * 1024 * 1024 * 1024 - 1024);
+    }
+
+    @Test
+    public void zip64EndRecordsAreReadAndWritten() throws IOException {
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        try (AsicZipWriter zipWriter = new AsicZipWriter(container)) {
+            zipWriter.writeMimetype(AsicUtils.MIMETYPE_ASICE);
+            for (int i = 1; i < AsicZipWriter.ZIP64_ENTRIES; i++)
+                zipWriter.writeEntry(new ZipEntry("content" + i + ".txt"), new byte[0]);
+        }
+
+        ZipCentralDirectory centralDirectory = ZipCentralDirectory.read(container.toByteArray());
+        assertEquals(centralDirectory.getRecords().size(), AsicZipWriter.ZIP64_ENTRIES);
+
+        // Written again in the same way as the writer did
+        byte[] bytes = container.toByteArray();
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+        rewritten.write(bytes, 0, (int) centralDirectory.getOffset());
+        centralDirectory.write(rewritten, centralDirectory.getOffset());
+        assertEquals(rewritten.toByteArray(), bytes);
+    }
+}
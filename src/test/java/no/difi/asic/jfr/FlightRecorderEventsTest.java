@@ -0,0 +1,89 @@
+package no.difi.asic.jfr;
+
+import com.google.common.io.ByteStreams;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import no.difi.asic.AsicReader;
+import no.difi.asic.AsicReaderFactory;
+import no.difi.asic.AsicWriterFactory;
+import no.difi.asic.SignatureHelper;
+import no.difi.asic.SignatureMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.*;
+
+public class FlightRecorderEventsTest {
+
+    private static Logger log = LoggerFactory.getLogger(FlightRecorderEventsTest.class);
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @Test
+    public void eventsAreRecorded() throws Exception {
+        Path recordingFile = Files.createTempFile("asic", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"ContainerWrite", "EntryWrite", "ManifestWrite", "Sign", "ContainerRead", "EntryRead", "Verify"})
+                recording.enable("no.difi.asic." + name).withThreshold(java.time.Duration.ZERO);
+            recording.start();
+
+            ByteArrayOutputStream containerOutput = new ByteArrayOutputStream();
+            AsicWriterFactory.newFactory(SignatureMethod.CAdES)
+                    .newContainer(containerOutput)
+                    .add(new ByteArrayInputStream("Hello world".getBytes()), "hello.txt")
+                    .sign(signatureHelper);
+
+            AsicReader asicReader = AsicReaderFactory.newFactory().open(new ByteArrayInputStream(containerOutput.toByteArray()));
+            while (asicReader.getNextFile() != null)
+                asicReader.writeFile(ByteStreams.nullOutputStream());
+            asicReader.close();
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        Files.delete(recordingFile);
+
+        List<String> names = events.stream().map(e -> e.getEventType().getName()).collect(Collectors.toList());
+        log.info("Recorded: {}", names);
+
+        RecordedEvent containerWrite = single(events, "no.difi.asic.ContainerWrite");
+        assertEquals(containerWrite.getString("signatureMethod"), "CAdES");
+        assertEquals(containerWrite.getInt("entries"), 1);
+
+        RecordedEvent entryWrite = single(events, "no.difi.asic.EntryWrite");
+        assertEquals(entryWrite.getString("entry"), "hello.txt");
+        assertEquals(entryWrite.getString("mimeType"), "text/plain");
+        assertEquals(entryWrite.getLong("uncompressedBytes"), 11);
+
+        assertEquals(events.stream().filter(e -> e.getEventType().getName().equals("no.difi.asic.ManifestWrite")).count(), 2);
+        assertEquals(single(events, "no.difi.asic.Sign").getString("format"), "CAdES");
+
+        RecordedEvent verify = single(events, "no.difi.asic.Verify");
+        assertTrue(verify.getBoolean("valid"));
+        assertNotNull(verify.getString("signer"));
+
+        RecordedEvent containerRead = single(events, "no.difi.asic.ContainerRead");
+        assertEquals(containerRead.getInt("entries"), 4);
+        assertEquals(containerRead.getInt("signatures"), 1);
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+        assertEquals(matching.size(), 1, name);
+        return matching.get(0);
+    }
+}
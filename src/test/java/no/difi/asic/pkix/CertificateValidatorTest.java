@@ -0,0 +1,351 @@
+package no.difi.asic.pkix;
+
+import no.difi.asic.AsicReader;
+import no.difi.asic.AsicReaderFactory;
+import no.difi.asic.AsicWriterFactory;
+import no.difi.asic.MimeType;
+import no.difi.asic.SignatureHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import static org.testng.Assert.*;
+
+public class CertificateValidatorTest {
+
+    private static Logger log = LoggerFactory.getLogger(CertificateValidatorTest.class);
+
+    private TestPki pki = new TestPki();
+
+    @Test
+    public void trustedSelfSignedCertificate() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        keyStore.load(getClass().getResourceAsStream("/keystore.jks"), "changeit".toCharArray());
+
+        byte[] container = createContainer(new SignatureHelper(keyStore, null, "changeit"));
+
+        AsicReaderFactory asicReaderFactory = AsicReaderFactory.newFactory()
+                .setCertificateValidator(CertificateValidator.newValidator(keyStore));
+        readAll(asicReaderFactory, container);
+    }
+
+    @Test
+    public void untrustedSigner() throws Exception {
+        byte[] container = createContainer(new SignatureHelper(pki.issueSigner("Signer"), "signer", "changeit"));
+
+        AsicReaderFactory asicReaderFactory = AsicReaderFactory.newFactory()
+                .setCertificateValidator(CertificateValidator.newValidator(Collections.singletonList(new TestPki().getCaCertificate())));
+
+        try {
+            readAll(asicReaderFactory, container);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void revocationStatusIsCached() throws Exception {
+        StandInSource source = new StandInSource(Instant.now().plusSeconds(3600));
+        CertificateValidator validator = CertificateValidator.newValidator(Collections.singletonList(pki.getCaCertificate()))
+                .setRevocationSource(source);
+
+        byte[] container = createContainer(new SignatureHelper(pki.issueSigner("Signer"), "signer", "changeit"));
+        AsicReaderFactory asicReaderFactory = AsicReaderFactory.newFactory().setCertificateValidator(validator);
+
+        readAll(asicReaderFactory, container);
+        readAll(asicReaderFactory, container);
+
+        assertEquals(source.calls.get(), 1);
+        assertEquals(validator.getPathCacheStats().hitCount(), 1);
+    }
+
+    @Test
+    public void expiredRevocationStatusIsRejected() throws Exception {
+        StandInSource source = new StandInSource(Instant.now(), Instant.now().minusSeconds(1));
+        X509Certificate certificate = (X509Certificate) pki.issueSigner("Signer").getCertificate("signer");
+
+        try {
+            CertificateValidator.newValidator(Collections.singletonList(pki.getCaCertificate()))
+                    .setRevocationSource(source)
+                    .validate(certificate, Collections.emptyList());
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        // Soft failing treats the status as unavailable, which is never cached
+        CertificateValidator validator = CertificateValidator.newValidator(Collections.singletonList(pki.getCaCertificate()))
+                .setRevocationSource(source)
+                .setSoftFail(true);
+        validator.validate(certificate, Collections.emptyList());
+        validator.validate(certificate, Collections.emptyList());
+
+        assertEquals(source.calls.get(), 3);
+    }
+
+    @Test
+    public void oldRevocationStatusWithoutNextUpdateIsRejected() throws Exception {
+        X509Certificate certificate = (X509Certificate) pki.issueSigner("Signer").getCertificate("signer");
+
+        CertificateValidator validator = CertificateValidator.newValidator(Collections.singletonList(pki.getCaCertificate()))
+                .setRevocationSource(new StandInSource(Instant.now().minus(Duration.ofHours(2)), null))
+                .setMaxResponseAge(Duration.ofHours(1));
+
+        try {
+            validator.validate(certificate, Collections.emptyList());
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        validator.setMaxResponseAge(Duration.ofHours(3)).validate(certificate, Collections.emptyList());
+    }
+
+    @Test
+    public void staleOcspResponseIsRejected() throws Exception {
+        X509Certificate certificate = (X509Certificate) pki.issueSigner("Signer").getCertificate("signer");
+        long now = System.currentTimeMillis();
+
+        // Past next update
+        assertOcspRejected(certificate, request -> pki.ocspResponse(request, new Date(now - 7_200_000L), new Date(now - 60_000L), true));
+        // Dated in the future
+        assertOcspRejected(certificate, request -> pki.ocspResponse(request, new Date(now + 3_600_000L), new Date(now + 7_200_000L), true));
+    }
+
+    @Test
+    public void replayedOcspResponseIsRejected() throws Exception {
+        X509Certificate certificate = (X509Certificate) pki.issueSigner("Signer").getCertificate("signer");
+
+        byte[][] recorded = new byte[1][];
+        new StandInOcsp() {
+            @Override
+            protected byte[] post(String url, byte[] request) {
+                recorded[0] = super.post(url, request);
+                return recorded[0];
+            }
+        }.getStatus(certificate, pki.getCaCertificate());
+
+        // Valid response, but for the nonce of the earlier request
+        assertOcspRejected(certificate, request -> recorded[0]);
+    }
+
+    @Test
+    public void nonceIsRequiredWhenConfigured() throws Exception {
+        X509Certificate certificate = (X509Certificate) pki.issueSigner("Signer").getCertificate("signer");
+        Date nextUpdate = new Date(System.currentTimeMillis() + 3_600_000L);
+
+        OcspRevocationSource withoutNonce = new OcspRevocationSource() {
+            @Override
+            protected byte[] post(String url, byte[] request) {
+                return pki.ocspResponse(request, new Date(), nextUpdate, false);
+            }
+        };
+        assertEquals(withoutNonce.getStatus(certificate, pki.getCaCertificate()).getStatus(), RevocationStatus.Status.GOOD);
+
+        try {
+            withoutNonce.setNonceRequired(true).getStatus(certificate, pki.getCaCertificate());
+            fail("Exception expected.");
+        } catch (IOException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void staleCrlIsRejected() throws Exception {
+        X509Certificate certificate = (X509Certificate) pki.issueSigner("Signer").getCertificate("signer");
+        long now = System.currentTimeMillis();
+
+        CrlRevocationSource crl = new CrlRevocationSource() {
+            @Override
+            protected InputStream fetch(String url) throws IOException {
+                try {
+                    return new ByteArrayInputStream(pki.crl(new Date(now - 7_200_000L), new Date(now - 60_000L)).getEncoded());
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+
+        try {
+            crl.getStatus(certificate, pki.getCaCertificate());
+            fail("Exception expected.");
+        } catch (IOException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void revokedSignerIsRejected() throws Exception {
+        KeyStore signer = pki.issueSigner("Revoked");
+        pki.revoke((X509Certificate) signer.getCertificate("signer"));
+
+        CertificateValidator validator = CertificateValidator.newValidator(Collections.singletonList(pki.getCaCertificate()))
+                .setRevocationSource(new StandInOcsp());
+
+        byte[] container = createContainer(new SignatureHelper(signer, "signer", "changeit"));
+
+        try {
+            readAll(AsicReaderFactory.newFactory().setCertificateValidator(validator), container);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void softFailWhenSourceIsUnavailable() throws Exception {
+        RevocationSource unavailable = (certificate, issuer) -> {
+            throw new IOException("Responder unavailable");
+        };
+
+        X509Certificate certificate = (X509Certificate) pki.issueSigner("Signer").getCertificate("signer");
+        List<X509Certificate> intermediates = Collections.emptyList();
+
+        try {
+            CertificateValidator.newValidator(Collections.singletonList(pki.getCaCertificate()))
+                    .setRevocationSource(unavailable)
+                    .validate(certificate, intermediates);
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+
+        CertificateValidator.newValidator(Collections.singletonList(pki.getCaCertificate()))
+                .setRevocationSource(unavailable)
+                .setSoftFail(true)
+                .validate(certificate, intermediates);
+    }
+
+    @Test
+    public void ocspSource() throws Exception {
+        KeyStore good = pki.issueSigner("Good");
+        KeyStore revoked = pki.issueSigner("Revoked");
+        pki.revoke((X509Certificate) revoked.getCertificate("signer"));
+
+        StandInOcsp ocsp = new StandInOcsp();
+        assertEquals(ocsp.getStatus((X509Certificate) good.getCertificate("signer"), pki.getCaCertificate()).getStatus(),
+                RevocationStatus.Status.GOOD);
+        assertEquals(ocsp.getStatus((X509Certificate) revoked.getCertificate("signer"), pki.getCaCertificate()).getStatus(),
+                RevocationStatus.Status.REVOKED);
+
+        // Response signed by someone else
+        try {
+            ocsp.getStatus((X509Certificate) good.getCertificate("signer"), new TestPki().getCaCertificate());
+            fail("Exception expected.");
+        } catch (IOException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void crlSource() throws Exception {
+        KeyStore good = pki.issueSigner("Good");
+        KeyStore revoked = pki.issueSigner("Revoked");
+        pki.revoke((X509Certificate) revoked.getCertificate("signer"));
+
+        AtomicInteger downloads = new AtomicInteger();
+        CrlRevocationSource crl = new CrlRevocationSource() {
+            @Override
+            protected InputStream fetch(String url) throws IOException {
+                assertEquals(url, TestPki.CRL_URL);
+                downloads.incrementAndGet();
+                try {
+                    return new ByteArrayInputStream(pki.crl().getEncoded());
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+
+        assertEquals(crl.getStatus((X509Certificate) good.getCertificate("signer"), pki.getCaCertificate()).getStatus(),
+                RevocationStatus.Status.GOOD);
+        assertEquals(crl.getStatus((X509Certificate) revoked.getCertificate("signer"), pki.getCaCertificate()).getStatus(),
+                RevocationStatus.Status.REVOKED);
+
+        // One download serves both certificates
+        assertEquals(downloads.get(), 1);
+    }
+
+    private void assertOcspRejected(X509Certificate certificate, UnaryOperator<byte[]> responder) {
+        OcspRevocationSource ocsp = new OcspRevocationSource() {
+            @Override
+            protected byte[] post(String url, byte[] request) {
+                return responder.apply(request);
+            }
+        };
+
+        try {
+            ocsp.getStatus(certificate, pki.getCaCertificate());
+            fail("Exception expected.");
+        } catch (IOException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    private byte[] createContainer(SignatureHelper signatureHelper) throws IOException {
+        ByteArrayOutputStream containerOutput = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory().newContainer(containerOutput)
+                .add(new ByteArrayInputStream("Lorem ipsum".getBytes()), "content.txt", MimeType.forString("text/plain"))
+                .sign(signatureHelper);
+        return containerOutput.toByteArray();
+    }
+
+    private void readAll(AsicReaderFactory asicReaderFactory, byte[] container) throws IOException {
+        try (AsicReader asicReader = asicReaderFactory.open(new ByteArrayInputStream(container))) {
+            while (asicReader.getNextFile() != null)
+                asicReader.writeFile(new ByteArrayOutputStream());
+        }
+    }
+
+    /**
+     * Stand-in revocation source reporting every certificate as good.
+     */
+    private static class StandInSource implements RevocationSource {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Instant thisUpdate;
+        private final Instant nextUpdate;
+
+        StandInSource(Instant nextUpdate) {
+            this(null, nextUpdate);
+        }
+
+        StandInSource(Instant thisUpdate, Instant nextUpdate) {
+            this.thisUpdate = thisUpdate;
+            this.nextUpdate = nextUpdate;
+        }
+
+        @Override
+        public RevocationStatus getStatus(X509Certificate certificate, X509Certificate issuer) {
+            calls.incrementAndGet();
+            return new RevocationStatus(RevocationStatus.Status.GOOD, thisUpdate == null ? Instant.now() : thisUpdate, nextUpdate);
+        }
+    }
+
+    /**
+     * Local OCSP responder backed by the test CA.
+     */
+    private class StandInOcsp extends OcspRevocationSource {
+
+        @Override
+        protected byte[] post(String url, byte[] request) {
+            assertEquals(url, TestPki.OCSP_URL);
+            return pki.ocspResponse(request, new Date(System.currentTimeMillis() + 3_600_000L));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package no.difi.asic.pkix;
+
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CRLConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal certificate authority for tests, acting as OCSP responder and CRL issuer.
+ */
+class TestPki {
+
+    static final String OCSP_URL = "http://ocsp.example.invalid/";
+    static final String CRL_URL = "http://crl.example.invalid/ca.crl";
+
+    private static final AtomicLong serials = new AtomicLong(System.currentTimeMillis());
+
+    private final KeyPair caKeyPair = newKeyPair();
+    private final X509Certificate caCertificate;
+
+    private final Set<BigInteger> revoked = new HashSet<>();
+
+    TestPki() {
+        try {
+            X500Name name = new X500Name("CN=Test CA");
+            X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, nextSerial(), yesterday(), tomorrow(), name, caKeyPair.getPublic())
+                    .addExtension(Extension.basicConstraints, true, new BasicConstraints(true))
+                    .addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign | KeyUsage.digitalSignature));
+            caCertificate = sign(builder);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    X509Certificate getCaCertificate() {
+        return caCertificate;
+    }
+
+    /**
+     * @return key store holding a private key and certificate chain under alias "signer" with password "changeit".
+     */
+    KeyStore issueSigner(String commonName) {
+        try {
+            KeyPair keyPair = newKeyPair();
+            X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(caCertificate, nextSerial(), yesterday(), tomorrow(),
+                    new X500Name("CN=" + commonName), keyPair.getPublic())
+                    .addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature | KeyUsage.nonRepudiation))
+                    .addExtension(Extension.authorityInfoAccess, false, new AuthorityInformationAccess(AccessDescription.id_ad_ocsp,
+                            new GeneralName(GeneralName.uniformResourceIdentifier, OCSP_URL)))
+                    .addExtension(Extension.cRLDistributionPoints, false, new CRLDistPoint(new DistributionPoint[]{
+                            new DistributionPoint(new DistributionPointName(new GeneralNames(
+                                    new GeneralName(GeneralName.uniformResourceIdentifier, CRL_URL))), null, null)}));
+
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(null, null);
+            keyStore.setKeyEntry("signer", keyPair.getPrivate(), "changeit".toCharArray(), new X509Certificate[]{sign(builder), caCertificate});
+            return keyStore;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    void revoke(X509Certificate certificate) {
+        revoked.add(certificate.getSerialNumber());
+    }
+
+    byte[] ocspResponse(byte[] request, Date nextUpdate) {
+        return ocspResponse(request, new Date(), nextUpdate, true);
+    }
+
+    /**
+     * @param echoNonce whether to return the nonce of the request, as responders supporting nonces do.
+     */
+    byte[] ocspResponse(byte[] request, Date thisUpdate, Date nextUpdate, boolean echoNonce) {
+        try {
+            OCSPReq ocspReq = new OCSPReq(request);
+            BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(new RespID(new JcaX509CertificateHolder(caCertificate).getSubject()));
+            for (Req req : ocspReq.getRequestList()) {
+                CertificateID certificateID = req.getCertID();
+                CertificateStatus status = revoked.contains(certificateID.getSerialNumber())
+                        ? new RevokedStatus(yesterday(), CRLReason.keyCompromise) : CertificateStatus.GOOD;
+                builder.addResponse(certificateID, status, thisUpdate, nextUpdate, null);
+            }
+            Extension nonce = ocspReq.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+            if (echoNonce && nonce != null)
+                builder.setResponseExtensions(new Extensions(nonce));
+            return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL,
+                    builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(caKeyPair.getPrivate()), null, new Date())).getEncoded();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    X509CRL crl() {
+        return crl(new Date(), tomorrow());
+    }
+
+    X509CRL crl(Date thisUpdate, Date nextUpdate) {
+        try {
+            X509v2CRLBuilder builder = new X509v2CRLBuilder(new JcaX509CertificateHolder(caCertificate).getSubject(), thisUpdate);
+            builder.setNextUpdate(nextUpdate);
+            for (BigInteger serial : revoked)
+                builder.addCRLEntry(serial, yesterday(), CRLReason.keyCompromise);
+            return new JcaX509CRLConverter().getCRL(builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(caKeyPair.getPrivate())));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private X509Certificate sign(X509v3CertificateBuilder builder) throws Exception {
+        return new JcaX509CertificateConverter().getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(caKeyPair.getPrivate())));
+    }
+
+    private static KeyPair newKeyPair() {
+        try {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            return keyPairGenerator.generateKeyPair();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static BigInteger nextSerial() {
+        return BigInteger.valueOf(serials.incrementAndGet());
+    }
+
+    private static Date yesterday() {
+        return new Date(System.currentTimeMillis() - 86_400_000L);
+    }
+
+    private static Date tomorrow() {
+        return new Date(System.currentTimeMillis() + 86_400_000L);
+    }
+}
@@ -0,0 +1,259 @@
+package no.difi.asic.signer;
+
+import no.difi.asic.AsicVerifier;
+import no.difi.asic.AsicVerifierFactory;
+import no.difi.asic.AsicWriterFactory;
+import no.difi.asic.SignatureHelper;
+import no.difi.asic.SignatureMethod;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.DigestInfo;
+import org.bouncycastle.operator.DefaultDigestAlgorithmIdentifierFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.testng.Assert.*;
+
+public class RemoteSignerTest {
+
+    private static Logger log = LoggerFactory.getLogger(RemoteSignerTest.class);
+
+    @Test
+    public void cadesSignedRemotely() throws Exception {
+        SimulatedRemoteSigner remoteSigner = new SimulatedRemoteSigner(10);
+
+        byte[] container = createContainer(SignatureMethod.CAdES, new SignatureHelper(remoteSigner));
+
+        AsicVerifier asicVerifier = AsicVerifierFactory.newFactory().verify(new ByteArrayInputStream(container));
+        assertEquals(asicVerifier.getAsicManifest().getCertificate().size(), 1);
+        assertEquals(remoteSigner.calls.get(), 1);
+    }
+
+    @Test
+    public void xadesSignedRemotely() throws Exception {
+        SimulatedRemoteSigner remoteSigner = new SimulatedRemoteSigner(10);
+
+        byte[] container = createContainer(SignatureMethod.XAdES, new SignatureHelper(remoteSigner));
+        assertEquals(remoteSigner.calls.get(), 1);
+
+        // Verifies the signature value over SignedInfo
+        ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(container));
+        ZipEntry zipEntry;
+        while (!(zipEntry = zipInputStream.getNextEntry()).getName().equals("META-INF/signatures.xml"))
+            log.debug("Skipping {}", zipEntry.getName());
+
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        Document document = documentBuilderFactory.newDocumentBuilder().parse(zipInputStream);
+        Element signatureElement = (Element) document.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature").item(0);
+
+        DOMValidateContext validateContext = new DOMValidateContext(remoteSigner.getCertificateChain().get(0).getPublicKey(), signatureElement);
+        XMLSignature xmlSignature = XMLSignatureFactory.getInstance("DOM").unmarshalXMLSignature(validateContext);
+        assertTrue(xmlSignature.getSignatureValue().validate(validateContext));
+    }
+
+    @Test
+    public void concurrentContainersShareRoundTrips() throws Exception {
+        int containers = 6;
+        SimulatedRemoteSigner remoteSigner = new SimulatedRemoteSigner(50);
+        BatchingRemoteSigner batchingRemoteSigner = new BatchingRemoteSigner(remoteSigner, containers, 1, TimeUnit.SECONDS);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(containers);
+        List<Future<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < containers; i++)
+            futures.add(executorService.submit((Callable<byte[]>) () ->
+                    createContainer(SignatureMethod.CAdES, new SignatureHelper(batchingRemoteSigner))));
+
+        for (Future<byte[]> future : futures)
+            AsicVerifierFactory.newFactory().verify(new ByteArrayInputStream(future.get()));
+        executorService.shutdown();
+
+        log.info("{} containers signed using {} calls", containers, remoteSigner.calls.get());
+        assertTrue(remoteSigner.calls.get() < containers);
+        assertEquals(remoteSigner.requests.get(), containers);
+    }
+
+    @Test
+    public void failingSignerFailsSigning() throws Exception {
+        RemoteSigner remoteSigner = new SimulatedRemoteSigner(0) {
+            @Override
+            public List<byte[]> sign(List<SigningRequest> requests) {
+                throw new IllegalStateException("HSM unavailable");
+            }
+        };
+
+        try {
+            createContainer(SignatureMethod.CAdES, new SignatureHelper(new BatchingRemoteSigner(remoteSigner, 10, 1, TimeUnit.MILLISECONDS)));
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void callersGiveUpOnHangingSigner() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RemoteSigner remoteSigner = new SimulatedRemoteSigner(0) {
+            @Override
+            public List<byte[]> sign(List<SigningRequest> requests) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.sign(requests);
+            }
+        };
+        BatchingRemoteSigner batchingRemoteSigner = new BatchingRemoteSigner(remoteSigner, 10, 500, TimeUnit.MILLISECONDS)
+                .setTimeout(300, TimeUnit.MILLISECONDS);
+
+        // The leader is stuck in the remote signer, while the follower in the same batch gives up
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<List<byte[]>> leader = executorService.submit(() -> batchingRemoteSigner.sign(Collections.singletonList(request())));
+        Thread.sleep(100);
+
+        try {
+            batchingRemoteSigner.sign(Collections.singletonList(request()));
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        release.countDown();
+        leader.get(10, TimeUnit.SECONDS);
+        executorService.shutdown();
+    }
+
+    @Test
+    public void errorInLeaderFailsFollowers() throws Exception {
+        RemoteSigner remoteSigner = new SimulatedRemoteSigner(0) {
+            @Override
+            public List<byte[]> sign(List<SigningRequest> requests) {
+                throw new OutOfMemoryError("Simulated");
+            }
+        };
+        BatchingRemoteSigner batchingRemoteSigner = new BatchingRemoteSigner(remoteSigner, 10, 500, TimeUnit.MILLISECONDS);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<List<byte[]>> leader = executorService.submit(() -> batchingRemoteSigner.sign(Collections.singletonList(request())));
+        Thread.sleep(100);
+
+        long start = System.nanoTime();
+        try {
+            batchingRemoteSigner.sign(Collections.singletonList(request()));
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+            assertEquals(e.getCause().getMessage(), "Batch was not signed.");
+        }
+        // Failed as soon as the leader failed, not after the timeout
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(BatchingRemoteSigner.DEFAULT_TIMEOUT_SECONDS));
+
+        try {
+            leader.get(10, TimeUnit.SECONDS);
+            fail("Exception expected.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OutOfMemoryError);
+        }
+        executorService.shutdown();
+    }
+
+    private static SigningRequest request() throws Exception {
+        return new SigningRequest("SHA256withRSA", "SHA-256", MessageDigest.getInstance("SHA-256").digest("content".getBytes()));
+    }
+
+    private static byte[] createContainer(SignatureMethod signatureMethod, SignatureHelper signatureHelper) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory(signatureMethod)
+                .newContainer(outputStream)
+                .add(new ByteArrayInputStream("content".getBytes()), "content.txt")
+                .sign(signatureHelper);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Stand-in for an HSM reached over the network, signing digests with a key from the test key store.
+     */
+    private static class SimulatedRemoteSigner implements RemoteSigner {
+
+        private final long latencyMillis;
+        private final PrivateKey privateKey;
+        private final List<X509Certificate> certificateChain = new ArrayList<>();
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+
+        SimulatedRemoteSigner(long latencyMillis) throws Exception {
+            this.latencyMillis = latencyMillis;
+
+            KeyStore keyStore = KeyStore.getInstance("JKS");
+            keyStore.load(getClass().getResourceAsStream("/keystore.jks"), "changeit".toCharArray());
+            String alias = keyStore.aliases().nextElement();
+            privateKey = (PrivateKey) keyStore.getKey(alias, "changeit".toCharArray());
+            for (java.security.cert.Certificate certificate : keyStore.getCertificateChain(alias))
+                certificateChain.add((X509Certificate) certificate);
+        }
+
+        @Override
+        public List<X509Certificate> getCertificateChain() {
+            return certificateChain;
+        }
+
+        @Override
+        public List<byte[]> sign(List<SigningRequest> signingRequests) {
+            calls.incrementAndGet();
+            requests.addAndGet(signingRequests.size());
+
+            try {
+                Thread.sleep(latencyMillis);
+
+                List<byte[]> signatures = new ArrayList<>();
+                for (SigningRequest request : signingRequests) {
+                    assertTrue(request.getSignatureAlgorithm().endsWith("withRSA"));
+
+                    AlgorithmIdentifier algorithmIdentifier = new AlgorithmIdentifier(
+                            new DefaultDigestAlgorithmIdentifierFinder().find(request.getDigestAlgorithm()).getAlgorithm(), DERNull.INSTANCE);
+                    Signature signature = Signature.getInstance("NONEwithRSA");
+                    signature.initSign(privateKey);
+                    signature.update(new DigestInfo(algorithmIdentifier, request.getDigest()).getEncoded());
+                    signatures.add(signature.sign());
+                }
+                return signatures;
+            } catch (Exception e) {
+                throw new IllegalStateException(String.format("Unable to sign: %s", e.getMessage()), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package no.difi.asic.store;
+
+import com.google.common.io.ByteStreams;
+import no.difi.asic.AsicReader;
+import no.difi.asic.AsicReaderFactory;
+import no.difi.asic.AsicWriterFactory;
+import no.difi.asic.MessageDigestAlgorithm;
+import no.difi.asic.SignatureHelper;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+public class FileContentStoreTest {
+
+    private SignatureHelper signatureHelper = new SignatureHelper(getClass().getResourceAsStream("/keystore.jks"), "changeit", null, "changeit");
+
+    @Test
+    public void sharedContentIsStoredOnce() throws Exception {
+        Path directory = Files.createTempDirectory("store");
+        FileContentStore contentStore = new FileContentStore(directory);
+        byte[] terms = MessageDigest.getInstance("SHA-256").digest("terms".getBytes());
+
+        // First container stores both data objects
+        assertEquals(extract(createContainer("letter 1", false), contentStore), terms);
+        Path path = contentStore.getPath(MessageDigestAlgorithm.SHA256, terms);
+        assertTrue(Files.exists(path));
+        FileTime modified = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(path, modified);
+
+        // Manifests are read first, so the stored content is only verified
+        extract(createContainer("letter 2", true), contentStore);
+        assertEquals(Files.getLastModifiedTime(path), modified);
+
+        // Manifests are read last, so the content is written before the store finds it
+        extract(createContainer("letter 3", false), contentStore);
+
+        try (InputStream inputStream = contentStore.open(MessageDigestAlgorithm.SHA256, terms)) {
+            assertEquals(new String(ByteStreams.toByteArray(inputStream)), "terms");
+        }
+
+        assertEquals(contentStore.release(MessageDigestAlgorithm.SHA256, terms), 2);
+        assertEquals(contentStore.release(MessageDigestAlgorithm.SHA256, terms), 1);
+        assertEquals(contentStore.release(MessageDigestAlgorithm.SHA256, terms), 0);
+        assertFalse(Files.exists(path));
+        assertFalse(contentStore.retain(MessageDigestAlgorithm.SHA256, terms));
+
+        // Nothing is left behind from content already stored
+        try (Stream<Path> files = Files.list(directory.resolve("tmp"))) {
+            assertEquals(files.count(), 0);
+        }
+
+        delete(directory);
+    }
+
+    @Test
+    public void storedContentIsNotCommittedAgain() throws Exception {
+        Path directory = Files.createTempDirectory("store");
+        FileContentStore fileContentStore = new FileContentStore(directory);
+        byte[] terms = MessageDigest.getInstance("SHA-256").digest("terms".getBytes());
+        extract(createContainer("letter 1", false), fileContentStore);
+
+        // Manifests are read last, so the store is asked for the content once it is digested
+        List<String> committed = new ArrayList<>();
+        ContentStore contentStore = new ContentStore() {
+            @Override
+            public boolean retain(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException {
+                return fileContentStore.retain(messageDigestAlgorithm, digest);
+            }
+
+            @Override
+            public int release(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException {
+                return fileContentStore.release(messageDigestAlgorithm, digest);
+            }
+
+            @Override
+            public InputStream open(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException {
+                return fileContentStore.open(messageDigestAlgorithm, digest);
+            }
+
+            @Override
+            public PendingContent newContent() throws IOException {
+                PendingContent pendingContent = fileContentStore.newContent();
+                return new PendingContent() {
+                    @Override
+                    public OutputStream getOutputStream() {
+                        return pendingContent.getOutputStream();
+                    }
+
+                    @Override
+                    public void commit(MessageDigestAlgorithm messageDigestAlgorithm, byte[] digest) throws IOException {
+                        committed.add(Base64.getEncoder().encodeToString(digest));
+                        pendingContent.commit(messageDigestAlgorithm, digest);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        pendingContent.close();
+                    }
+                };
+            }
+        };
+        extract(createContainer("letter 2", false), contentStore);
+
+        byte[] letter = MessageDigest.getInstance("SHA-256").digest("letter 2".getBytes());
+        assertEquals(committed, Collections.singletonList(Base64.getEncoder().encodeToString(letter)));
+        assertEquals(fileContentStore.release(MessageDigestAlgorithm.SHA256, terms), 1);
+
+        delete(directory);
+    }
+
+    @Test
+    public void digestsOfRejectedContainerAreReleasedByCaller() throws IOException {
+        Path container = Files.createTempFile("asic", ".asice");
+        Files.write(container, createContainer("letter", false));
+        try (FileSystem fileSystem = FileSystems.newFileSystem(container)) {
+            Files.write(fileSystem.getPath("letter.txt"), "tampered".getBytes());
+        }
+
+        Path directory = Files.createTempDirectory("store");
+        FileContentStore contentStore = new FileContentStore(directory);
+
+        List<byte[]> digests = new ArrayList<>();
+        AsicReader asicReader = AsicReaderFactory.newFactory().open(Files.newInputStream(container));
+        try {
+            while (asicReader.getNextFile() != null)
+                digests.add(asicReader.writeFile(contentStore));
+            fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            // Content is stored before the manifest is found
+            assertEquals(digests.size(), 2);
+            for (byte[] digest : digests)
+                contentStore.release(MessageDigestAlgorithm.SHA256, digest);
+        }
+        asicReader.close();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            assertEquals(files.filter(Files::isRegularFile).count(), 0);
+        }
+
+        delete(directory);
+        Files.delete(container);
+    }
+
+    private byte[] createContainer(String letter, boolean manifestFirst) throws IOException {
+        Path directory = Files.createTempDirectory("asic");
+        Path file1 = Files.write(directory.resolve("terms.txt"), "terms".getBytes());
+        Path file2 = Files.write(directory.resolve("letter.txt"), letter.getBytes());
+
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        AsicWriterFactory.newFactory()
+                .setManifestFirst(manifestFirst)
+                .newContainer(container)
+                .add(file1, "terms.txt")
+                .add(file2, "letter.txt")
+                .sign(signatureHelper);
+
+        Files.delete(file1);
+        Files.delete(file2);
+        Files.delete(directory);
+
+        return container.toByteArray();
+    }
+
+    /**
+     * @return digest of the first data object.
+     */
+    private static byte[] extract(byte[] container, ContentStore contentStore) throws IOException {
+        byte[] first = null;
+        AsicReader asicReader = AsicReaderFactory.newFactory().open(new ByteArrayInputStream(container));
+        while (asicReader.getNextFile() != null) {
+            byte[] digest = asicReader.writeFile(contentStore);
+            if (first == null)
+                first = digest;
+        }
+        asicReader.close();
+        return first;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(file);
+        }
+    }
+}